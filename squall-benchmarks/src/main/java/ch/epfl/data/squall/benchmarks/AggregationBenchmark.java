@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.data.squall.expressions.ColumnReference;
+import ch.epfl.data.squall.operators.AggregateCountOperator;
+import ch.epfl.data.squall.operators.AggregateOperator;
+import ch.epfl.data.squall.operators.AggregateSumOperator;
+import ch.epfl.data.squall.storage.BasicStore;
+import ch.epfl.data.squall.types.DoubleType;
+import ch.epfl.data.squall.utilities.MyUtilities;
+
+/**
+ * AggregationStorage.update with LINEITEM tuples: SUM(l_extendedprice) or
+ * COUNT(*), grouped by l_returnflag (3 groups) or by l_partkey (up to 200000
+ * groups), in the generic AggregationStorage and in
+ * PrimitiveAggregationStorage (DIP_PRIMITIVE_AGGREGATION). The group keys are
+ * hashed up front, so that only the storage is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AggregationBenchmark {
+
+    private static final int ROWS = 1 << 18;
+
+    @Param({ "SUM", "COUNT" })
+    public String aggregate;
+
+    @Param({ "l_returnflag", "l_partkey" })
+    public String groupBy;
+
+    // DIP_PRIMITIVE_AGGREGATION
+    @Param({ "false", "true" })
+    public String primitive;
+
+    private List<List<String>> _tuples;
+    private String[] _groupKeys;
+    private BasicStore _storage;
+    private int _next = 0;
+
+    @Setup
+    public void setup() {
+	final Map conf = TpchData.conf();
+	conf.put("DIP_PRIMITIVE_AGGREGATION", primitive);
+	final int groupByColumn = groupBy.equals("l_returnflag") ? TpchData.L_RETURNFLAG
+		: TpchData.L_PARTKEY;
+	final AggregateOperator agg;
+	if (aggregate.equals("SUM"))
+	    agg = new AggregateSumOperator(new ColumnReference(
+		    new DoubleType(), TpchData.L_EXTENDEDPRICE), conf)
+		    .setGroupByColumns(groupByColumn);
+	else
+	    agg = new AggregateCountOperator(conf)
+		    .setGroupByColumns(groupByColumn);
+	_storage = agg.getStorage();
+
+	_tuples = TpchData.tuples(TpchData.lineitem(ROWS, 1));
+	_groupKeys = new String[_tuples.size()];
+	for (int i = 0; i < _groupKeys.length; i++)
+	    _groupKeys[i] = MyUtilities.createHashString(_tuples.get(i),
+		    agg.getGroupByColumns(), conf);
+    }
+
+    @Benchmark
+    public Object update() {
+	final int position = _next;
+	_next = (_next + 1) % _groupKeys.length;
+	return _storage.update(_tuples.get(position), _groupKeys[position]);
+    }
+}
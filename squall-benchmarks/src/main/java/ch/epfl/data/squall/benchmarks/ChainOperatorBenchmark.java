@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.benchmarks;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.data.squall.expressions.ColumnReference;
+import ch.epfl.data.squall.expressions.Multiplication;
+import ch.epfl.data.squall.expressions.Subtraction;
+import ch.epfl.data.squall.expressions.ValueExpression;
+import ch.epfl.data.squall.expressions.ValueSpecification;
+import ch.epfl.data.squall.operators.AggregateSumOperator;
+import ch.epfl.data.squall.operators.ChainOperator;
+import ch.epfl.data.squall.operators.ProjectOperator;
+import ch.epfl.data.squall.operators.SelectOperator;
+import ch.epfl.data.squall.predicates.ComparisonPredicate;
+import ch.epfl.data.squall.types.DateType;
+import ch.epfl.data.squall.types.DoubleType;
+
+/**
+ * ChainOperator.process with the LINEITEM side of TPC-H Q3 followed by its
+ * aggregation: l_shipdate > 1995-03-15, projection of l_orderkey,
+ * l_extendedprice and l_discount, and SUM(l_extendedprice * (1 -
+ * l_discount)) grouped by l_orderkey.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ChainOperatorBenchmark {
+
+    private static final int ROWS = 1 << 18;
+
+    private List<List<String>> _tuples;
+    private ChainOperator _chain;
+    private int _next = 0;
+
+    @Benchmark
+    public List<String> process() {
+	final List<String> tuple = _tuples.get(_next);
+	_next = (_next + 1) % _tuples.size();
+	return _chain.process(tuple, 0);
+    }
+
+    @Setup
+    public void setup() {
+	final Map conf = TpchData.conf();
+	final DateType dateConv = new DateType();
+	final DoubleType doubleConv = new DoubleType();
+	final Date date = dateConv.fromString("1995-03-15");
+
+	final SelectOperator selection = new SelectOperator(
+		new ComparisonPredicate(ComparisonPredicate.GREATER_OP,
+			new ColumnReference(dateConv, TpchData.L_SHIPDATE),
+			new ValueSpecification(dateConv, date)));
+	final ProjectOperator projection = new ProjectOperator(new int[] {
+		TpchData.L_ORDERKEY, TpchData.L_EXTENDEDPRICE,
+		TpchData.L_DISCOUNT });
+	final ValueExpression<Double> substract = new Subtraction(
+		new ValueSpecification(doubleConv, 1.0), new ColumnReference(
+			doubleConv, 2));
+	final ValueExpression<Double> product = new Multiplication(
+		new ColumnReference(doubleConv, 1), substract);
+	final AggregateSumOperator agg = new AggregateSumOperator(product,
+		conf).setGroupByColumns(0);
+	_chain = new ChainOperator(selection, projection, agg);
+
+	_tuples = TpchData.tuples(TpchData.lineitem(ROWS, 1));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.data.squall.predicates.ComparisonPredicate;
+import ch.epfl.data.squall.storage.indexes.DoubleHashIndex;
+import ch.epfl.data.squall.storage.indexes.HashIndex;
+import ch.epfl.data.squall.storage.indexes.Index;
+import ch.epfl.data.squall.storage.indexes.IntHashIndex;
+import ch.epfl.data.squall.storage.indexes.LongHashIndex;
+import ch.epfl.data.squall.storage.indexes.RowIdCursor;
+
+/**
+ * Probe cost of the equi-join indexes: the generic HashIndex against the
+ * primitive IntHashIndex, LongHashIndex and DoubleHashIndex. Each index holds
+ * "entries" row-ids spread over entries / rowsPerKey keys. Probes go through
+ * the Index interface with pre-boxed keys and walk the RowIdCursor, as the
+ * joiners do, so that only the index structure is measured. The 100M point needs a large heap for
+ * HashIndex, e.g. "jmh:run -jvmArgs -Xmx48g".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HashIndexBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({ "1000000", "10000000", "100000000" })
+    public int entries;
+
+    @Param({ "4" })
+    public int rowsPerKey;
+
+    @Param({ "int", "long", "double" })
+    public String keyType;
+
+    @Param({ "HashIndex", "primitive" })
+    public String index;
+
+    private Index _index;
+    private Object[] _probeKeys;
+    private int _next = 0;
+
+    private Object key(long value) {
+	if (keyType.equals("int"))
+	    return Integer.valueOf((int) value);
+	else if (keyType.equals("long"))
+	    // spread keys over the high bits too
+	    return Long.valueOf(value * 0x100000001L);
+	else
+	    return Double.valueOf(value / 4.0);
+    }
+
+    private Index newIndex(int expectedKeys) {
+	if (index.equals("HashIndex"))
+	    return new HashIndex<Object>();
+	else if (keyType.equals("int"))
+	    return new IntHashIndex(expectedKeys);
+	else if (keyType.equals("long"))
+	    return new LongHashIndex(expectedKeys);
+	else
+	    return new DoubleHashIndex(expectedKeys);
+    }
+
+    @Setup
+    public void setup() {
+	final int numKeys = Math.max(1, entries / rowsPerKey);
+	final Random random = new Random(42);
+	_index = newIndex(numKeys);
+	for (int rowId = 0; rowId < entries; rowId++)
+	    _index.put(rowId, key(random.nextInt(numKeys)));
+	// a quarter of the probes miss
+	_probeKeys = new Object[PROBES];
+	for (int i = 0; i < PROBES; i++)
+	    _probeKeys[i] = key(random.nextInt(numKeys + numKeys / 3));
+    }
+
+    @Benchmark
+    public int probe() {
+	final Object key = _probeKeys[_next];
+	_next = (_next + 1) & (PROBES - 1);
+	final RowIdCursor cursor = _index.getCursor(
+		ComparisonPredicate.EQUAL_OP, key);
+	// consumed, so that the walk is not optimized away
+	int sum = 0;
+	while (cursor.hasNext())
+	    sum += cursor.next();
+	return sum;
+    }
+}
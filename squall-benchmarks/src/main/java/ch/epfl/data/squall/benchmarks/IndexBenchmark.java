@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.benchmarks;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.data.squall.predicates.ComparisonPredicate;
+import ch.epfl.data.squall.storage.indexes.BalancedBinaryTreeIndex;
+import ch.epfl.data.squall.storage.indexes.BplusTreeIndex;
+import ch.epfl.data.squall.storage.indexes.DoubleHashIndex;
+import ch.epfl.data.squall.storage.indexes.HashIndex;
+import ch.epfl.data.squall.storage.indexes.Index;
+import ch.epfl.data.squall.storage.indexes.IntHashIndex;
+import ch.epfl.data.squall.storage.indexes.LongHashIndex;
+import ch.epfl.data.squall.storage.indexes.RowIdCursor;
+
+/**
+ * Put and probe of every Index implementation, keyed by l_partkey of
+ * LINEITEM rows, as in a PARTSUPP-LINEITEM join. The hash indexes are probed
+ * for equality; the tree indexes, which serve the band joins, for the keys
+ * in [key - band, key]. Probes go through getValues, which collects the
+ * row-ids, and through getCursor, which streams them. Puts go to an index
+ * which is recreated before each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IndexBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({ "100000", "1000000" })
+    public int rows;
+
+    @Param({ "HashIndex", "IntHashIndex", "LongHashIndex", "DoubleHashIndex",
+	    "BalancedBinaryTreeIndex", "BplusTreeIndex" })
+    public String index;
+
+    // width of the tree probes
+    @Param({ "4" })
+    public int band;
+
+    private Index _filled;
+    private Index _inserted;
+    private Object[] _keys;
+    private Object[] _probeKeys;
+    private int _operator;
+    private int _nextInsert = 0;
+    private int _nextProbe = 0;
+
+    private Object key(String column) {
+	if (index.equals("LongHashIndex"))
+	    return Long.valueOf(column);
+	else if (index.equals("DoubleHashIndex"))
+	    return Double.valueOf(column);
+	else
+	    return Integer.valueOf(column);
+    }
+
+    private Index newIndex() {
+	if (index.equals("HashIndex"))
+	    return new HashIndex<Integer>();
+	else if (index.equals("IntHashIndex"))
+	    return new IntHashIndex();
+	else if (index.equals("LongHashIndex"))
+	    return new LongHashIndex();
+	else if (index.equals("DoubleHashIndex"))
+	    return new DoubleHashIndex();
+	// with NONGREATER_OP, a probe for key returns [key + diff, key]
+	else if (index.equals("BalancedBinaryTreeIndex"))
+	    return new BalancedBinaryTreeIndex<Integer>().setDiff(-band);
+	else if (index.equals("BplusTreeIndex"))
+	    // as PredicateCreateIndexesVisitor creates it
+	    return new BplusTreeIndex<Integer>(100, 100).setDiff(-band);
+	else
+	    throw new RuntimeException("Unknown index " + index);
+    }
+
+    private Object nextProbeKey() {
+	final Object key = _probeKeys[_nextProbe];
+	_nextProbe = (_nextProbe + 1) & (PROBES - 1);
+	return key;
+    }
+
+    @Benchmark
+    public TIntArrayList probe() {
+	return _filled.getValues(_operator, nextProbeKey());
+    }
+
+    @Benchmark
+    public int probeCursor() {
+	final RowIdCursor cursor = _filled.getCursor(_operator, nextProbeKey());
+	int sum = 0;
+	if (cursor != null)
+	    while (cursor.hasNext())
+		sum += cursor.next();
+	return sum;
+    }
+
+    @Benchmark
+    public void put() {
+	_inserted.put(_nextInsert, _keys[_nextInsert]);
+	_nextInsert = (_nextInsert + 1) % _keys.length;
+    }
+
+    @Setup
+    public void setup() {
+	final List<List<String>> tuples = TpchData.tuples(TpchData.lineitem(
+		rows, 1));
+	_keys = new Object[tuples.size()];
+	for (int rowId = 0; rowId < _keys.length; rowId++)
+	    _keys[rowId] = key(tuples.get(rowId).get(TpchData.L_PARTKEY));
+	_filled = newIndex();
+	for (int rowId = 0; rowId < _keys.length; rowId++)
+	    _filled.put(rowId, _keys[rowId]);
+	_operator = index.endsWith("TreeIndex") ? ComparisonPredicate.NONGREATER_OP
+		: ComparisonPredicate.EQUAL_OP;
+	// the probes are join keys of the other relation: PARTSUPP has every
+	// part key
+	final Random random = new Random(TpchData.SEED);
+	_probeKeys = new Object[PROBES];
+	for (int i = 0; i < PROBES; i++)
+	    _probeKeys[i] = key(String.valueOf(1 + random.nextInt(200000)));
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+	_inserted = newIndex();
+	_nextInsert = 0;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.data.squall.expressions.ColumnReference;
+import ch.epfl.data.squall.expressions.ValueSpecification;
+import ch.epfl.data.squall.predicates.ComparisonPredicate;
+import ch.epfl.data.squall.types.DateType;
+import ch.epfl.data.squall.types.DoubleType;
+import ch.epfl.data.squall.types.IntegerType;
+import ch.epfl.data.squall.types.StringType;
+
+/**
+ * ComparisonPredicate.test on parsed LINEITEM tuples, for each column type
+ * of the TPC-H selections: l_quantity < 24 (integer), l_discount > 0.05
+ * (double), l_shipdate > 1995-03-15 (date) and l_returnflag = 'R' (string).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PredicateBenchmark {
+
+    private static final int ROWS = 1 << 16;
+
+    @Param({ "integer", "double", "date", "string" })
+    public String type;
+
+    private List<List<String>> _tuples;
+    private ComparisonPredicate _predicate;
+    private int _next = 0;
+
+    private ComparisonPredicate newPredicate() {
+	if (type.equals("integer")) {
+	    final IntegerType ic = new IntegerType();
+	    return new ComparisonPredicate(ComparisonPredicate.LESS_OP,
+		    new ColumnReference(ic, TpchData.L_QUANTITY),
+		    new ValueSpecification(ic, 24));
+	} else if (type.equals("double")) {
+	    final DoubleType dc = new DoubleType();
+	    return new ComparisonPredicate(ComparisonPredicate.GREATER_OP,
+		    new ColumnReference(dc, TpchData.L_DISCOUNT),
+		    new ValueSpecification(dc, 0.05));
+	} else if (type.equals("date")) {
+	    final DateType dateConv = new DateType();
+	    return new ComparisonPredicate(ComparisonPredicate.GREATER_OP,
+		    new ColumnReference(dateConv, TpchData.L_SHIPDATE),
+		    new ValueSpecification(dateConv,
+			    dateConv.fromString("1995-03-15")));
+	} else if (type.equals("string")) {
+	    final StringType sc = new StringType();
+	    return new ComparisonPredicate(new ColumnReference(sc,
+		    TpchData.L_RETURNFLAG), new ValueSpecification(sc, "R"));
+	} else
+	    throw new RuntimeException("Unknown type " + type);
+    }
+
+    @Setup
+    public void setup() {
+	_tuples = TpchData.tuples(TpchData.lineitem(ROWS, 1));
+	_predicate = newPredicate();
+    }
+
+    @Benchmark
+    public boolean test() {
+	final List<String> tuple = _tuples.get(_next);
+	_next = (_next + 1) % _tuples.size();
+	return _predicate.test(tuple);
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import ch.epfl.data.squall.utilities.MyUtilities;
+
+/**
+ * Input of the benchmarks: rows of the TPC-H ORDERS and LINEITEM tables, in
+ * the dbgen layout ("|" after each column). The rows are generated from a
+ * fixed seed, with the key ranges and value domains of dbgen at the given
+ * scale factor, so that every run (and every Squall version) sees the same
+ * data without a dbgen installation.
+ *
+ * If the system property "tpch.dir" points to a dbgen output directory, the
+ * first rows of its orders.tbl or lineitem.tbl are taken instead, e.g.
+ * "jmh:run -jvmArgs -Dtpch.dir=test/data/tpch/0.01G" (there is no lineitem
+ * table in the repository test data).
+ */
+public class TpchData {
+
+    public static final long SEED = 42;
+
+    // columns of ORDERS
+    public static final int O_ORDERKEY = 0;
+    public static final int O_CUSTKEY = 1;
+    public static final int O_ORDERSTATUS = 2;
+    public static final int O_TOTALPRICE = 3;
+    public static final int O_ORDERDATE = 4;
+    public static final int O_ORDERPRIORITY = 5;
+
+    // columns of LINEITEM
+    public static final int L_ORDERKEY = 0;
+    public static final int L_PARTKEY = 1;
+    public static final int L_SUPPKEY = 2;
+    public static final int L_QUANTITY = 4;
+    public static final int L_EXTENDEDPRICE = 5;
+    public static final int L_DISCOUNT = 6;
+    public static final int L_RETURNFLAG = 8;
+    public static final int L_SHIPDATE = 10;
+
+    private static final String[] PRIORITIES = { "1-URGENT", "2-HIGH",
+	    "3-MEDIUM", "4-NOT SPECIFIED", "5-LOW" };
+    private static final String[] INSTRUCTIONS = { "DELIVER IN PERSON",
+	    "COLLECT COD", "NONE", "TAKE BACK RETURN" };
+    private static final String[] MODES = { "REG AIR", "AIR", "RAIL", "SHIP",
+	    "TRUCK", "MAIL", "FOB" };
+    private static final String[] WORDS = { "furiously", "sly", "careful",
+	    "blithe", "quick", "fluffy", "slow", "quiet", "ruthless", "thin",
+	    "close", "dogged", "daring", "brave", "stealthy", "permanent",
+	    "enticing", "idle", "busy", "regular", "final", "ironic", "even",
+	    "bold", "silent", "foxes", "ideas", "theodolites", "pinto", "beans",
+	    "instructions", "dependencies", "excuses", "platelets",
+	    "asymptotes", "courts", "dolphins", "multipliers", "sauternes",
+	    "warthogs", "frets", "dinos", "attainments", "somas", "Tiresias",
+	    "patterns", "forges", "braids", "hockey", "players", "frays",
+	    "warhorses", "dugouts", "notornis", "epitaphs", "pearls", "tithes",
+	    "waters", "orbits", "gifts", "sheaves", "depths", "sentiments",
+	    "decoys", "realms", "pains", "grouches", "escapades", "sleep",
+	    "wake", "are", "cajole", "haggle", "nag", "use", "boost", "affix",
+	    "detect", "integrate", "maintain", "nod", "was", "lose", "sublate",
+	    "solve", "thrash", "promise", "engage", "hinder", "print", "x-ray",
+	    "breach", "eat", "grow", "impress", "mold", "poach", "serve",
+	    "run", "dazzle", "snooze", "doze", "unwind", "kindle", "play",
+	    "hang", "believe", "doubt" };
+
+    // days since 1992-01-01 of the first day of each month, non-leap year
+    private static final int[] MONTH_STARTS = { 0, 31, 59, 90, 120, 151, 181,
+	    212, 243, 273, 304, 334, 365 };
+
+    private static void appendComment(StringBuilder row, Random random,
+	    int maxLength) {
+	final int start = row.length();
+	final int length = 10 + random.nextInt(maxLength - 10);
+	while (row.length() - start < length)
+	    row.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+	row.setLength(start + length);
+	row.append('|');
+    }
+
+    /*
+     * days after 1992-01-01 as yyyy-MM-dd, February has always 28 days
+     */
+    private static void appendDate(StringBuilder row, int days) {
+	final int year = 1992 + days / 365;
+	int dayOfYear = days % 365;
+	int month = 0;
+	while (MONTH_STARTS[month + 1] <= dayOfYear)
+	    month++;
+	dayOfYear -= MONTH_STARTS[month];
+	row.append(year).append('-');
+	if (month < 9)
+	    row.append('0');
+	row.append(month + 1).append('-');
+	if (dayOfYear < 9)
+	    row.append('0');
+	row.append(dayOfYear + 1).append('|');
+    }
+
+    private static void appendMoney(StringBuilder row, long cents) {
+	row.append(cents / 100).append('.');
+	if (cents % 100 < 10)
+	    row.append('0');
+	row.append(cents % 100).append('|');
+    }
+
+    /*
+     * The Squall configuration the benchmarked code reads: the delimiters of
+     * the TPC-H query configurations
+     */
+    public static Map conf() {
+	final Map conf = new HashMap();
+	conf.put("DIP_GLOBAL_ADD_DELIMITER", "|");
+	conf.put("DIP_GLOBAL_SPLIT_DELIMITER", "\\|");
+	conf.put("DIP_READ_SPLIT_DELIMITER", "\\|");
+	conf.put("STORAGE_MEMORY_SIZE_MB", "4096");
+	return conf;
+    }
+
+    public static List<String> lineitem(int rows, double scaleFactor) {
+	final List<String> fromFile = readTable("lineitem", rows);
+	if (fromFile != null)
+	    return fromFile;
+	final Random random = new Random(SEED);
+	final int parts = Math.max(1, (int) (200000 * scaleFactor));
+	final int suppliers = Math.max(1, (int) (10000 * scaleFactor));
+	final List<String> result = new ArrayList<String>(rows);
+	final StringBuilder row = new StringBuilder();
+	long orderKey = 1;
+	int lineNumber = 1;
+	int linesInOrder = 1 + random.nextInt(7);
+	for (int i = 0; i < rows; i++) {
+	    if (lineNumber > linesInOrder) {
+		// dbgen uses the first 8 keys out of each 32
+		orderKey = orderKey % 32 == 8 ? orderKey + 25 : orderKey + 1;
+		lineNumber = 1;
+		linesInOrder = 1 + random.nextInt(7);
+	    }
+	    row.setLength(0);
+	    final int partKey = 1 + random.nextInt(parts);
+	    final int quantity = 1 + random.nextInt(50);
+	    final long partPrice = 90000 + (partKey / 10) % 20001 + 100
+		    * (partKey % 1000);
+	    final int shipDate = 1 + random.nextInt(2405);
+	    row.append(orderKey).append('|');
+	    row.append(partKey).append('|');
+	    row.append(1 + random.nextInt(suppliers)).append('|');
+	    row.append(lineNumber++).append('|');
+	    row.append(quantity).append('|');
+	    appendMoney(row, quantity * partPrice);
+	    // discount and tax
+	    appendMoney(row, random.nextInt(11));
+	    appendMoney(row, random.nextInt(9));
+	    // shipped before 1995-06-17 are returned (R or A) or not (N)
+	    if (shipDate < 1263)
+		row.append(random.nextBoolean() ? "R|F|" : "A|F|");
+	    else
+		row.append("N|O|");
+	    appendDate(row, shipDate);
+	    appendDate(row, Math.max(0, shipDate - 30 + random.nextInt(61)));
+	    appendDate(row, shipDate + 1 + random.nextInt(30));
+	    row.append(INSTRUCTIONS[random.nextInt(INSTRUCTIONS.length)])
+		    .append('|');
+	    row.append(MODES[random.nextInt(MODES.length)]).append('|');
+	    appendComment(row, random, 43);
+	    result.add(row.toString());
+	}
+	return result;
+    }
+
+    public static List<String> orders(int rows, double scaleFactor) {
+	final List<String> fromFile = readTable("orders", rows);
+	if (fromFile != null)
+	    return fromFile;
+	final Random random = new Random(SEED);
+	final int customers = Math.max(1, (int) (150000 * scaleFactor));
+	final List<String> result = new ArrayList<String>(rows);
+	final StringBuilder row = new StringBuilder();
+	long orderKey = 1;
+	for (int i = 0; i < rows; i++) {
+	    row.setLength(0);
+	    final int orderDate = random.nextInt(2406 - 151);
+	    row.append(orderKey).append('|');
+	    row.append(1 + random.nextInt(customers)).append('|');
+	    row.append(orderDate < 1263 ? "F" : (random.nextInt(20) == 0 ? "P"
+		    : "O")).append('|');
+	    appendMoney(row, 85000 + (long) (random.nextDouble() * 55000000));
+	    appendDate(row, orderDate);
+	    row.append(PRIORITIES[random.nextInt(PRIORITIES.length)]).append(
+		    '|');
+	    row.append("Clerk#");
+	    final String clerk = String.valueOf(1 + random.nextInt(Math.max(1,
+		    (int) (1000 * scaleFactor))));
+	    for (int j = clerk.length(); j < 9; j++)
+		row.append('0');
+	    row.append(clerk).append('|');
+	    row.append("0|");
+	    appendComment(row, random, 79);
+	    result.add(row.toString());
+	    orderKey = orderKey % 32 == 8 ? orderKey + 25 : orderKey + 1;
+	}
+	return result;
+    }
+
+    // null if tpch.dir is not set
+    private static List<String> readTable(String table, int rows) {
+	final String dir = System.getProperty("tpch.dir");
+	if (dir == null)
+	    return null;
+	final File file = new File(dir, table + ".tbl");
+	final List<String> result = new ArrayList<String>(rows);
+	try {
+	    final BufferedReader reader = new BufferedReader(new FileReader(
+		    file));
+	    try {
+		String line;
+		while (result.size() < rows && (line = reader.readLine()) != null)
+		    result.add(line);
+	    } finally {
+		reader.close();
+	    }
+	} catch (final IOException e) {
+	    throw new RuntimeException("Cannot read " + file + ": "
+		    + MyUtilities.getStackTrace(e));
+	}
+	if (result.isEmpty())
+	    throw new RuntimeException(file + " is empty!");
+	return result;
+    }
+
+    /*
+     * rows parsed with the benchmark configuration
+     */
+    public static List<List<String>> tuples(List<String> rows) {
+	final Map conf = conf();
+	final List<List<String>> result = new ArrayList<List<String>>(
+		rows.size());
+	for (final String row : rows)
+	    result.add(MyUtilities.stringToTuple(row, conf));
+	return result;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.data.squall.utilities.MyUtilities;
+
+/**
+ * Per-tuple cost of the conversions every component does: parsing a
+ * LINEITEM row (stringToTuple), serializing it back (tupleToString) and
+ * building the hash string of the join/group-by columns (createHashString).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TupleConversionBenchmark {
+
+    private static final int ROWS = 1 << 16;
+
+    // l_orderkey, l_partkey, l_suppkey
+    @Param({ "1", "3" })
+    public int hashColumns;
+
+    private Map _conf;
+    private List<String> _rows;
+    private List<List<String>> _tuples;
+    private List<Integer> _hashIndexes;
+    private int _next = 0;
+
+    @Benchmark
+    public String createHashString() {
+	return MyUtilities.createHashString(nextTuple(), _hashIndexes, _conf);
+    }
+
+    private int nextPosition() {
+	final int position = _next;
+	_next = (_next + 1) % _rows.size();
+	return position;
+    }
+
+    private List<String> nextTuple() {
+	return _tuples.get(nextPosition());
+    }
+
+    @Setup
+    public void setup() {
+	_conf = TpchData.conf();
+	_rows = TpchData.lineitem(ROWS, 1);
+	_tuples = TpchData.tuples(_rows);
+	_hashIndexes = Arrays.asList(TpchData.L_ORDERKEY, TpchData.L_PARTKEY,
+		TpchData.L_SUPPKEY).subList(0, hashColumns);
+    }
+
+    @Benchmark
+    public List<String> stringToTuple() {
+	return MyUtilities.stringToTuple(_rows.get(nextPosition()), _conf);
+    }
+
+    @Benchmark
+    public String tupleToString() {
+	return MyUtilities.tupleToString(nextTuple(), _conf);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.data.squall.storage.TupleStorage;
+import ch.epfl.data.squall.utilities.MyUtilities;
+
+/**
+ * Insert and get of LINEITEM rows in the joiner storage, on the heap
+ * (TupleStorage) and off the heap (OffHeapTupleStorage). Inserts go to a
+ * storage which is emptied before each iteration; gets read random row-ids
+ * of a storage holding "rows" tuples, and then decode them as the joiners
+ * do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TupleStorageBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({ "100000", "1000000" })
+    public int rows;
+
+    // DIP_TUPLE_STORAGE
+    @Param({ "HEAP", "OFF_HEAP" })
+    public String storage;
+
+    private Map _conf;
+    private List<String> _rows;
+    private TupleStorage _filled;
+    private TupleStorage _inserted;
+    private int[] _probeIds;
+    private int _nextInsert = 0;
+    private int _nextProbe = 0;
+
+    @Benchmark
+    public String get() {
+	final int rowId = _probeIds[_nextProbe];
+	_nextProbe = (_nextProbe + 1) & (PROBES - 1);
+	return _filled.get(rowId);
+    }
+
+    @Benchmark
+    public List<String> getTuple() {
+	return MyUtilities.stringToTuple(get(), _conf);
+    }
+
+    @Benchmark
+    public int insert() {
+	final String row = _rows.get(_nextInsert);
+	_nextInsert = (_nextInsert + 1) % _rows.size();
+	return _inserted.insert(row);
+    }
+
+    private TupleStorage newStorage() {
+	_conf.put("DIP_TUPLE_STORAGE", storage);
+	return MyUtilities.createTupleStorage(_conf);
+    }
+
+    @Setup
+    public void setup() {
+	_conf = TpchData.conf();
+	_rows = TpchData.lineitem(rows, 1);
+	_filled = newStorage();
+	for (final String row : _rows)
+	    _filled.insert(row);
+	_inserted = newStorage();
+	final Random random = new Random(TpchData.SEED);
+	_probeIds = new int[PROBES];
+	for (int i = 0; i < PROBES; i++)
+	    _probeIds[i] = random.nextInt(_filled.size());
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+	_inserted.clear();
+	_nextInsert = 0;
+    }
+}
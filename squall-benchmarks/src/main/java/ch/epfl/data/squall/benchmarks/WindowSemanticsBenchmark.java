@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import backtype.storm.tuple.Tuple;
+import ch.epfl.data.squall.components.DataSourceComponent;
+import ch.epfl.data.squall.operators.ChainOperator;
+import ch.epfl.data.squall.storm_components.InterchangingComponent;
+import ch.epfl.data.squall.storm_components.StormBoltComponent;
+import ch.epfl.data.squall.storm_components.StormComponent;
+import ch.epfl.data.squall.utilities.SystemParameters;
+import ch.epfl.data.squall.window_semantics.WindowSemanticsManager;
+
+/**
+ * WindowSemanticsManager.joinPreProcessingIfSlidingWindowSemantics, which a
+ * joiner calls for each stored tuple matching an incoming one: without
+ * window semantics, and with a sliding window, where the stored timestamp is
+ * cut off the stored tuple first. The stored tuples are ORDERS rows; half of
+ * them fall out of the window.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class WindowSemanticsBenchmark {
+
+    /*
+     * Only the window fields and the configuration of a bolt are read
+     */
+    private static class WindowBolt extends StormBoltComponent {
+	private static final long serialVersionUID = 1L;
+
+	public WindowBolt(Map conf) {
+	    super(new DataSourceComponent("BENCHMARK", ""), Arrays
+		    .asList("BENCHMARK"), StormComponent.INTERMEDIATE, conf);
+	}
+
+	@Override
+	public void aggBatchSend() {
+	}
+
+	@Override
+	public void execute(Tuple stormTupleRcv) {
+	    throw new RuntimeException("Not used in the benchmark!");
+	}
+
+	@Override
+	public ChainOperator getChainOperator() {
+	    return null;
+	}
+
+	@Override
+	public String getInfoID() {
+	    return "WindowBolt " + getID();
+	}
+
+	@Override
+	protected InterchangingComponent getInterComp() {
+	    return null;
+	}
+
+	@Override
+	public long getNumSentTuples() {
+	    return 0;
+	}
+
+	@Override
+	protected void printStatistics(int type) {
+	}
+
+	@Override
+	public void purgeStaleStateFromWindow() {
+	}
+    }
+
+    private static final int ROWS = 1 << 16;
+
+    private static final long WINDOW_MILLIS = 1000;
+
+    @Param({ "none", "sliding" })
+    public String semantics;
+
+    private WindowBolt _bolt;
+    private String[] _storedTuples;
+    private Tuple _stormTuple;
+    private final StringBuilder _oppositeTupleString = new StringBuilder();
+    private int _next = 0;
+
+    @Benchmark
+    public long joinPreProcessing() {
+	_oppositeTupleString.setLength(0);
+	_oppositeTupleString.append(_storedTuples[_next]);
+	_next = (_next + 1) % _storedTuples.length;
+	return WindowSemanticsManager.joinPreProcessingIfSlidingWindowSemantics(
+		_bolt, _oppositeTupleString, _stormTuple);
+    }
+
+    @Setup
+    public void setup() {
+	final boolean sliding = semantics.equals("sliding");
+	WindowSemanticsManager._IS_WINDOW_SEMANTICS = sliding;
+	_bolt = new WindowBolt(TpchData.conf());
+	if (sliding)
+	    _bolt._windowSize = WINDOW_MILLIS;
+
+	// the incoming tuple arrives at now; a Storm Tuple needs a topology
+	// context, and only the timestamp field is read
+	final long now = System.currentTimeMillis();
+	_stormTuple = (Tuple) Proxy.newProxyInstance(
+		Tuple.class.getClassLoader(), new Class[] { Tuple.class },
+		new InvocationHandler() {
+		    @Override
+		    public Object invoke(Object proxy, Method method,
+			    Object[] args) {
+			if (method.getName().equals("getLongByField")
+				&& StormComponent.TIMESTAMP.equals(args[0]))
+			    return now;
+			throw new RuntimeException("Not used in the benchmark: "
+				+ method);
+		    }
+		});
+
+	final List<String> rows = TpchData.orders(ROWS, 1);
+	final Random random = new Random(TpchData.SEED);
+	_storedTuples = new String[rows.size()];
+	for (int i = 0; i < _storedTuples.length; i++)
+	    if (sliding)
+		_storedTuples[i] = (now - random.nextInt(2 * (int) WINDOW_MILLIS))
+			+ SystemParameters.STORE_TIMESTAMP_DELIMITER
+			+ rows.get(i);
+	    else
+		_storedTuples[i] = rows.get(i);
+    }
+
+    @TearDown
+    public void tearDown() {
+	WindowSemanticsManager._IS_WINDOW_SEMANTICS = false;
+    }
+}
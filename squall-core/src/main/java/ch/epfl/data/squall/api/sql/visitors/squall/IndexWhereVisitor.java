@@ -358,7 +358,9 @@ public class IndexWhereVisitor implements ExpressionVisitor, ItemsListVisitor {
 	final ValueExpression right = _exprStack.pop();
 	final ValueExpression left = _exprStack.pop();
 
-	final LikePredicate lp = new LikePredicate(left, right);
+	final String escape = le.getEscape();
+	final LikePredicate lp = new LikePredicate(left, right, le.isNot(),
+		escape == null || escape.isEmpty() ? null : escape.charAt(0));
 	_predStack.push(lp);
     }
 
@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.codegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a class file with the few constructs the generated evaluators need:
+ * methods without exception handlers, constants, method and field
+ * references, and forward or backward jumps. The class file version is 49,
+ * so no stack map frames are needed. Class names are internal names
+ * (ch/epfl/...), and the stack depth is tracked by the callers passing the
+ * stack effect of each instruction.
+ */
+public class ClassFileWriter {
+
+    public static class Label {
+	private int _position = -1;
+    }
+
+    public class MethodWriter {
+	private final int _access;
+	private final int _name;
+	private final int _descriptor;
+	private final ByteArrayOutputStream _code = new ByteArrayOutputStream();
+	// (position of the instruction, position of its offset, label)
+	private final List<Object[]> _jumps = new ArrayList<Object[]>();
+	private int _maxLocals;
+	private int _stack = 0;
+	private int _maxStack = 0;
+
+	private MethodWriter(int access, String name, String descriptor,
+		int maxLocals) {
+	    _access = access;
+	    _name = utf8(name);
+	    _descriptor = utf8(descriptor);
+	    _maxLocals = maxLocals;
+	}
+
+	/*
+	 * Pushes an int constant with the shortest instruction
+	 */
+	public void iconst(int value) {
+	    if (value >= -1 && value <= 5)
+		op(ICONST_0 + value, 1);
+	    else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+		op(BIPUSH, 1);
+		u1(value);
+	    } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+		op(SIPUSH, 1);
+		u2(value);
+	    } else
+		ldc(intConstant(value), 1);
+	}
+
+	public void jump(int opcode, Label target, int stackDelta) {
+	    final int position = _code.size();
+	    op(opcode, stackDelta);
+	    _jumps.add(new Object[] { position, _code.size(), target });
+	    u2(0);
+	}
+
+	private void ldc(int index, int size) {
+	    if (size == 2) {
+		op(LDC2_W, 2);
+		u2(index);
+	    } else if (index < 256) {
+		op(LDC, 1);
+		u1(index);
+	    } else {
+		op(LDC_W, 1);
+		u2(index);
+	    }
+	}
+
+	public void ldc(double value) {
+	    ldc(doubleConstant(value), 2);
+	}
+
+	public void ldc(long value) {
+	    ldc(longConstant(value), 2);
+	}
+
+	public void ldc(String value) {
+	    ldc(stringConstant(value), 1);
+	}
+
+	public void mark(Label label) {
+	    label._position = _code.size();
+	}
+
+	/*
+	 * argumentSlots without the receiver; the stack effect is computed from
+	 * the slots of the arguments and of the result
+	 */
+	public void invoke(int opcode, String owner, String name,
+		String descriptor, int argumentSlots, int resultSlots) {
+	    final boolean isInterface = opcode == INVOKEINTERFACE;
+	    final int receiver = opcode == INVOKESTATIC ? 0 : 1;
+	    op(opcode, resultSlots - argumentSlots - receiver);
+	    u2(methodRef(owner, name, descriptor, isInterface));
+	    if (isInterface) {
+		u1(argumentSlots + 1);
+		u1(0);
+	    }
+	}
+
+	public void op(int opcode, int stackDelta) {
+	    _code.write(opcode);
+	    _stack += stackDelta;
+	    if (_stack < 0)
+		throw new RuntimeException("Negative stack depth in "
+			+ _className + "!");
+	    _maxStack = Math.max(_maxStack, _stack);
+	}
+
+	public void field(int opcode, String owner, String name,
+		String descriptor, int stackDelta) {
+	    op(opcode, stackDelta);
+	    u2(fieldRef(owner, name, descriptor));
+	}
+
+	/*
+	 * The depth reached at the label by a jump, when it differs from the
+	 * fall-through one (e.g. after a goto)
+	 */
+	public void setStack(int depth) {
+	    _stack = depth;
+	}
+
+	public void type(int opcode, String className, int stackDelta) {
+	    op(opcode, stackDelta);
+	    u2(classRef(className));
+	}
+
+	public void u1(int value) {
+	    _code.write(value);
+	}
+
+	public void u2(int value) {
+	    _code.write(value >>> 8);
+	    _code.write(value);
+	}
+
+	/*
+	 * Local variable instruction; a local of two slots counts its first one
+	 */
+	public void var(int opcode, int local, int stackDelta) {
+	    if (local > 255)
+		throw new RuntimeException("Too many locals in " + _className
+			+ "!");
+	    op(opcode, stackDelta);
+	    u1(local);
+	    final int slots = (opcode == LLOAD || opcode == DLOAD
+		    || opcode == LSTORE || opcode == DSTORE) ? 2 : 1;
+	    _maxLocals = Math.max(_maxLocals, local + slots);
+	}
+
+	private void write(DataOutputStream out) throws IOException {
+	    final byte[] code = _code.toByteArray();
+	    for (final Object[] jump : _jumps) {
+		final Label target = (Label) jump[2];
+		if (target._position < 0)
+		    throw new RuntimeException("Unmarked label in "
+			    + _className + "!");
+		final int offset = target._position - (Integer) jump[0];
+		if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+		    throw new RuntimeException("Method too long in "
+			    + _className + "!");
+		code[(Integer) jump[1]] = (byte) (offset >>> 8);
+		code[(Integer) jump[1] + 1] = (byte) offset;
+	    }
+	    out.writeShort(_access);
+	    out.writeShort(_name);
+	    out.writeShort(_descriptor);
+	    out.writeShort(1);
+	    // Code attribute
+	    out.writeShort(utf8("Code"));
+	    out.writeInt(12 + code.length);
+	    out.writeShort(_maxStack);
+	    out.writeShort(_maxLocals);
+	    out.writeInt(code.length);
+	    out.write(code);
+	    out.writeShort(0); // exception table
+	    out.writeShort(0); // attributes
+	}
+    }
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    public static final int ICONST_0 = 0x03;
+    public static final int BIPUSH = 0x10;
+    public static final int SIPUSH = 0x11;
+    public static final int LDC = 0x12;
+    public static final int LDC_W = 0x13;
+    public static final int LDC2_W = 0x14;
+    public static final int ILOAD = 0x15;
+    public static final int LLOAD = 0x16;
+    public static final int DLOAD = 0x18;
+    public static final int ALOAD = 0x19;
+    public static final int ISTORE = 0x36;
+    public static final int LSTORE = 0x37;
+    public static final int DSTORE = 0x39;
+    public static final int ASTORE = 0x3a;
+    public static final int ACONST_NULL = 0x01;
+    public static final int LCONST_0 = 0x09;
+    public static final int DCONST_0 = 0x0e;
+    public static final int POP = 0x57;
+    public static final int DUP = 0x59;
+    public static final int DADD = 0x63;
+    public static final int DSUB = 0x67;
+    public static final int DMUL = 0x6b;
+    public static final int DDIV = 0x6f;
+    public static final int IDIV = 0x6c;
+    public static final int I2L = 0x85;
+    public static final int I2D = 0x87;
+    public static final int L2D = 0x8a;
+    public static final int D2I = 0x8e;
+    public static final int D2L = 0x8f;
+    public static final int LCMP = 0x94;
+    public static final int IFEQ = 0x99;
+    public static final int IFNE = 0x9a;
+    public static final int IFLT = 0x9b;
+    public static final int IFGE = 0x9c;
+    public static final int IFGT = 0x9d;
+    public static final int IFLE = 0x9e;
+    public static final int GOTO = 0xa7;
+    public static final int IRETURN = 0xac;
+    public static final int LRETURN = 0xad;
+    public static final int DRETURN = 0xaf;
+    public static final int RETURN = 0xb1;
+    public static final int GETFIELD = 0xb4;
+    public static final int INVOKEVIRTUAL = 0xb6;
+    public static final int INVOKESPECIAL = 0xb7;
+    public static final int INVOKESTATIC = 0xb8;
+    public static final int INVOKEINTERFACE = 0xb9;
+    public static final int CHECKCAST = 0xc0;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final String _className;
+    private final int _thisClass;
+    private final int _superClass;
+    private final ByteArrayOutputStream _poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream _pool = new DataOutputStream(_poolBytes);
+    private final Map<String, Integer> _poolIndexes = new HashMap<String, Integer>();
+    private int _poolSize = 1;
+    private final List<MethodWriter> _methods = new ArrayList<MethodWriter>();
+
+    public ClassFileWriter(String className, String superName) {
+	_className = className;
+	_thisClass = classRef(className);
+	_superClass = classRef(superName);
+    }
+
+    public int classRef(String className) {
+	final int name = utf8(className);
+	return constant("C" + className, CONSTANT_CLASS, name, -1);
+    }
+
+    /*
+     * Adds a constant of one or two u2 references (second < 0 for one)
+     */
+    private int constant(String key, int tag, int first, int second) {
+	final Integer existing = _poolIndexes.get(key);
+	if (existing != null)
+	    return existing;
+	try {
+	    _pool.writeByte(tag);
+	    _pool.writeShort(first);
+	    if (second >= 0)
+		_pool.writeShort(second);
+	} catch (final IOException e) {
+	    throw new RuntimeException(e);
+	}
+	return newIndex(key, 1);
+    }
+
+    public int doubleConstant(double value) {
+	final String key = "D" + Double.doubleToRawLongBits(value);
+	final Integer existing = _poolIndexes.get(key);
+	if (existing != null)
+	    return existing;
+	try {
+	    _pool.writeByte(CONSTANT_DOUBLE);
+	    _pool.writeDouble(value);
+	} catch (final IOException e) {
+	    throw new RuntimeException(e);
+	}
+	return newIndex(key, 2);
+    }
+
+    public int fieldRef(String owner, String name, String descriptor) {
+	return constant("F" + owner + "." + name + ":" + descriptor,
+		CONSTANT_FIELDREF, classRef(owner),
+		nameAndType(name, descriptor));
+    }
+
+    public int intConstant(int value) {
+	final String key = "I" + value;
+	final Integer existing = _poolIndexes.get(key);
+	if (existing != null)
+	    return existing;
+	try {
+	    _pool.writeByte(CONSTANT_INTEGER);
+	    _pool.writeInt(value);
+	} catch (final IOException e) {
+	    throw new RuntimeException(e);
+	}
+	return newIndex(key, 1);
+    }
+
+    public int longConstant(long value) {
+	final String key = "J" + value;
+	final Integer existing = _poolIndexes.get(key);
+	if (existing != null)
+	    return existing;
+	try {
+	    _pool.writeByte(CONSTANT_LONG);
+	    _pool.writeLong(value);
+	} catch (final IOException e) {
+	    throw new RuntimeException(e);
+	}
+	return newIndex(key, 2);
+    }
+
+    public MethodWriter method(int access, String name, String descriptor,
+	    int maxLocals) {
+	final MethodWriter method = new MethodWriter(access, name, descriptor,
+		maxLocals);
+	_methods.add(method);
+	return method;
+    }
+
+    public int methodRef(String owner, String name, String descriptor,
+	    boolean isInterface) {
+	return constant((isInterface ? "IM" : "M") + owner + "." + name
+		+ descriptor, isInterface ? CONSTANT_INTERFACE_METHODREF
+		: CONSTANT_METHODREF, classRef(owner), nameAndType(name,
+		descriptor));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+	return constant("N" + name + ":" + descriptor, CONSTANT_NAME_AND_TYPE,
+		utf8(name), utf8(descriptor));
+    }
+
+    // long and double constants take two entries
+    private int newIndex(String key, int entries) {
+	final int index = _poolSize;
+	_poolSize += entries;
+	if (_poolSize > 0xffff)
+	    throw new RuntimeException("Too many constants in " + _className
+		    + "!");
+	_poolIndexes.put(key, index);
+	return index;
+    }
+
+    public int stringConstant(String value) {
+	return constant("S" + value, CONSTANT_STRING, utf8(value), -1);
+    }
+
+    public byte[] toByteArray() {
+	final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	final DataOutputStream out = new DataOutputStream(bytes);
+	try {
+	    // constants of the attributes have to be added before the pool is
+	    // written
+	    utf8("Code");
+	    out.writeInt(0xcafebabe);
+	    out.writeShort(0); // minor version
+	    out.writeShort(49); // Java 5
+	    out.writeShort(_poolSize);
+	    out.write(_poolBytes.toByteArray());
+	    out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+	    out.writeShort(_thisClass);
+	    out.writeShort(_superClass);
+	    out.writeShort(0); // interfaces
+	    out.writeShort(0); // fields
+	    out.writeShort(_methods.size());
+	    for (final MethodWriter method : _methods)
+		method.write(out);
+	    out.writeShort(0); // attributes
+	} catch (final IOException e) {
+	    throw new RuntimeException(e);
+	}
+	return bytes.toByteArray();
+    }
+
+    public int utf8(String value) {
+	final String key = "U" + value;
+	final Integer existing = _poolIndexes.get(key);
+	if (existing != null)
+	    return existing;
+	try {
+	    _pool.writeByte(CONSTANT_UTF8);
+	    _pool.writeUTF(value);
+	} catch (final IOException e) {
+	    throw new RuntimeException(e);
+	}
+	return newIndex(key, 1);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.codegen;
+
+/**
+ * Defines the generated classes.
+ */
+public class CodegenRuntime {
+
+    /*
+     * Each generated class gets its own loader, so that it is unloaded with
+     * the operator which uses it
+     */
+    private static class Loader extends ClassLoader {
+	private Loader() {
+	    super(CodegenRuntime.class.getClassLoader());
+	}
+
+	private Class define(String name, byte[] bytes) {
+	    return defineClass(name, bytes, 0, bytes.length);
+	}
+    }
+
+    public static Class define(String internalName, byte[] bytes) {
+	return new Loader().define(internalName.replace('/', '.'), bytes);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.codegen;
+
+import java.util.List;
+
+import ch.epfl.data.squall.expressions.ValueExpression;
+
+/**
+ * Base class of the numeric value expressions generated by
+ * ExpressionCompiler: the result is returned unboxed, as a double or as a
+ * long (cast the way Number.longValue does). As CompiledPredicate, it is
+ * never serialized.
+ */
+public abstract class CompiledExpression {
+
+    private final ValueExpression _interpreted;
+
+    protected CompiledExpression(ValueExpression interpreted) {
+	_interpreted = interpreted;
+    }
+
+    public abstract double evalDouble(List<String> tuple);
+
+    public abstract long evalLong(List<String> tuple);
+
+    public ValueExpression getInterpreted() {
+	return _interpreted;
+    }
+
+    @Override
+    public String toString() {
+	return "Compiled " + _interpreted.toString();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.codegen;
+
+import java.util.List;
+
+import ch.epfl.data.squall.predicates.Predicate;
+import ch.epfl.data.squall.visitors.PredicateVisitor;
+
+/**
+ * Base class of the predicates generated by PredicateCompiler. Only
+ * test(tuple) is generated; everything else, and the leaf predicates which
+ * could not be compiled, go to the interpreted predicate. A generated class
+ * exists only in the JVM which compiled it, so a compiled predicate is never
+ * serialized: the operators keep the interpreted one and compile it once
+ * deployed.
+ */
+public abstract class CompiledPredicate implements Predicate {
+    private static final long serialVersionUID = 1L;
+
+    private final Predicate _interpreted;
+    private final Predicate[] _fallbacks;
+
+    protected CompiledPredicate(Predicate interpreted, Predicate[] fallbacks) {
+	_interpreted = interpreted;
+	_fallbacks = fallbacks;
+    }
+
+    @Override
+    public void accept(PredicateVisitor pv) {
+	_interpreted.accept(pv);
+    }
+
+    @Override
+    public List<Predicate> getInnerPredicates() {
+	return _interpreted.getInnerPredicates();
+    }
+
+    public Predicate getInterpreted() {
+	return _interpreted;
+    }
+
+    @Override
+    public abstract boolean test(List<String> tupleValues);
+
+    @Override
+    public boolean test(List<String> firstTupleValues,
+	    List<String> secondTupleValues) {
+	return _interpreted.test(firstTupleValues, secondTupleValues);
+    }
+
+    /*
+     * Invoked by the generated code for the leaves it does not cover
+     */
+    public final boolean testFallback(int index, List<String> tupleValues) {
+	return _fallbacks[index].test(tupleValues);
+    }
+
+    @Override
+    public String toString() {
+	return "Compiled " + _interpreted.toString();
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.codegen;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import ch.epfl.data.squall.codegen.ClassFileWriter.Label;
+import ch.epfl.data.squall.codegen.ClassFileWriter.MethodWriter;
+import ch.epfl.data.squall.expressions.Addition;
+import ch.epfl.data.squall.expressions.ColumnReference;
+import ch.epfl.data.squall.expressions.DateDiff;
+import ch.epfl.data.squall.expressions.DateSum;
+import ch.epfl.data.squall.expressions.Division;
+import ch.epfl.data.squall.expressions.IntegerYearFromDate;
+import ch.epfl.data.squall.expressions.Multiplication;
+import ch.epfl.data.squall.expressions.StringConcatenate;
+import ch.epfl.data.squall.expressions.Subtraction;
+import ch.epfl.data.squall.expressions.ValueExpression;
+import ch.epfl.data.squall.expressions.ValueSpecification;
+import ch.epfl.data.squall.types.DateType;
+import ch.epfl.data.squall.types.DoubleType;
+import ch.epfl.data.squall.types.IntegerType;
+import ch.epfl.data.squall.types.LongType;
+import ch.epfl.data.squall.types.StringType;
+import ch.epfl.data.squall.types.Type;
+import ch.epfl.data.squall.utilities.MyUtilities;
+import ch.epfl.data.squall.visitors.ValueExpressionVisitor;
+
+/**
+ * Emits the bytecode which evaluates a ValueExpression on the tuple in local
+ * 1, leaving the unboxed value on the stack. Values have one of the kinds
+ * below: ints, longs, doubles, dates as epoch-day ints and Strings. Each
+ * referenced column is parsed at most once per evaluation: the first use
+ * parses it into a local and sets a flag local, later uses read the local.
+ *
+ * Arithmetic is done in doubles and cast to the result type, as the
+ * interpreted expressions do. Expressions of other types, and DateSum,
+ * DateDiff and StringConcatenate, are not compiled (kindOf returns
+ * UNSUPPORTED).
+ */
+public class ExpressionCompiler implements ValueExpressionVisitor {
+    private static Logger LOG = Logger.getLogger(ExpressionCompiler.class);
+
+    public static final int UNSUPPORTED = -1;
+    public static final int INTEGER = 0;
+    public static final int LONG = 1;
+    public static final int DOUBLE = 2;
+    public static final int DATE = 3;
+    public static final int STRING = 4;
+
+    private static final String LIST = "java/util/List";
+    private static final String DATE_TYPE = "ch/epfl/data/squall/types/DateType";
+    private static final String EXPRESSION_BASE = "ch/epfl/data/squall/codegen/CompiledExpression";
+
+    private static int _generated = 0;
+
+    /*
+     * A numeric expression compiled to a CompiledExpression, or null if it
+     * cannot be compiled
+     */
+    public static CompiledExpression compile(ValueExpression ve) {
+	final int kind = kindOf(ve);
+	if (kind != INTEGER && kind != LONG && kind != DOUBLE)
+	    return null;
+	final String className = nextClassName();
+	final ClassFileWriter cfw = new ClassFileWriter(className,
+		EXPRESSION_BASE);
+	final String veDescriptor = "Lch/epfl/data/squall/expressions/ValueExpression;";
+
+	final MethodWriter init = cfw.method(ClassFileWriter.ACC_PUBLIC,
+		"<init>", "(" + veDescriptor + ")V", 2);
+	init.var(ClassFileWriter.ALOAD, 0, 1);
+	init.var(ClassFileWriter.ALOAD, 1, 1);
+	init.invoke(ClassFileWriter.INVOKESPECIAL, EXPRESSION_BASE, "<init>",
+		"(" + veDescriptor + ")V", 1, 0);
+	init.op(ClassFileWriter.RETURN, 0);
+
+	final ExpressionCompiler evalDouble = new ExpressionCompiler(cfw.method(
+		ClassFileWriter.ACC_PUBLIC, "evalDouble",
+		"(Ljava/util/List;)D", 2), 2);
+	evalDouble.declareColumns(ve);
+	evalDouble.emitPrologue();
+	evalDouble.emitDouble(ve);
+	evalDouble._method.op(ClassFileWriter.DRETURN, -2);
+
+	final ExpressionCompiler evalLong = new ExpressionCompiler(cfw.method(
+		ClassFileWriter.ACC_PUBLIC, "evalLong",
+		"(Ljava/util/List;)J", 2), 2);
+	evalLong.declareColumns(ve);
+	evalLong.emitPrologue();
+	evalLong.emit(ve);
+	evalLong.toLong(kind);
+	evalLong._method.op(ClassFileWriter.LRETURN, -2);
+
+	try {
+	    final Class generated = CodegenRuntime.define(className,
+		    cfw.toByteArray());
+	    return (CompiledExpression) generated.getConstructor(
+		    ValueExpression.class).newInstance(ve);
+	} catch (final Exception e) {
+	    LOG.info("Cannot compile " + ve + ": "
+		    + MyUtilities.getStackTrace(e));
+	    return null;
+	} catch (final LinkageError e) {
+	    LOG.info("Cannot compile " + ve + ": "
+		    + MyUtilities.getStackTrace(e));
+	    return null;
+	}
+    }
+
+    private static boolean isNumeric(int kind) {
+	return kind == INTEGER || kind == LONG || kind == DOUBLE;
+    }
+
+    public static int kindOf(Type type) {
+	final Class typeClass = type.getClass();
+	if (typeClass == IntegerType.class)
+	    return INTEGER;
+	else if (typeClass == LongType.class)
+	    return LONG;
+	else if (typeClass == DoubleType.class)
+	    return DOUBLE;
+	else if (typeClass == DateType.class)
+	    return DATE;
+	else if (typeClass == StringType.class)
+	    return STRING;
+	else
+	    return UNSUPPORTED;
+    }
+
+    public static int kindOf(ValueExpression ve) {
+	if (ve instanceof ColumnReference)
+	    return kindOf(ve.getType());
+	else if (ve instanceof ValueSpecification) {
+	    final int kind = kindOf(ve.getType());
+	    final Object constant = ve.eval(null);
+	    if (constant == null)
+		return UNSUPPORTED;
+	    // the constant has to match its type
+	    if ((kind == INTEGER && constant instanceof Integer)
+		    || (kind == LONG && constant instanceof Long)
+		    || (kind == DOUBLE && constant instanceof Double)
+		    || (kind == DATE && constant instanceof Date)
+		    || (kind == STRING && constant instanceof String))
+		return kind;
+	    return UNSUPPORTED;
+	} else if (ve instanceof Addition || ve instanceof Subtraction
+		|| ve instanceof Multiplication || ve instanceof Division) {
+	    for (final ValueExpression inner : (List<ValueExpression>) ve
+		    .getInnerExpressions())
+		if (!isNumeric(kindOf(inner)))
+		    return UNSUPPORTED;
+	    final int kind = kindOf(ve.getType());
+	    return isNumeric(kind) ? kind : UNSUPPORTED;
+	} else if (ve instanceof IntegerYearFromDate) {
+	    final ValueExpression date = (ValueExpression) ve
+		    .getInnerExpressions().get(0);
+	    return kindOf(date) == DATE ? INTEGER : UNSUPPORTED;
+	} else
+	    return UNSUPPORTED;
+    }
+
+    private static synchronized String nextClassName() {
+	return "ch/epfl/data/squall/codegen/GeneratedExpression" + _generated++;
+    }
+
+    private final MethodWriter _method;
+    // "column:kind" -> {value local, flag local}
+    private final Map<String, int[]> _columns = new LinkedHashMap<String, int[]>();
+    private int _nextLocal;
+    // kind of the last emitted value
+    private int _kind;
+
+    /*
+     * firstLocal is the first local which is not taken by the method
+     * arguments
+     */
+    public ExpressionCompiler(MethodWriter method, int firstLocal) {
+	_method = method;
+	_nextLocal = firstLocal;
+    }
+
+    private String columnKey(ColumnReference cr) {
+	return cr.getColumnIndex() + ":" + kindOf(cr.getType());
+    }
+
+    /*
+     * Takes the locals of the columns ve reads; all the expressions which are
+     * emitted have to be declared before emitPrologue
+     */
+    public void declareColumns(ValueExpression ve) {
+	if (ve instanceof ColumnReference) {
+	    final String key = columnKey((ColumnReference) ve);
+	    if (!_columns.containsKey(key)) {
+		final int kind = kindOf(ve.getType());
+		final int valueLocal = _nextLocal;
+		_nextLocal += (kind == LONG || kind == DOUBLE) ? 2 : 1;
+		_columns.put(key, new int[] { valueLocal, _nextLocal++ });
+	    }
+	} else
+	    for (final ValueExpression inner : (List<ValueExpression>) ve
+		    .getInnerExpressions())
+		declareColumns(inner);
+    }
+
+    /*
+     * Leaves the value of ve on the stack and returns its kind
+     */
+    public int emit(ValueExpression ve) {
+	ve.accept(this);
+	return _kind;
+    }
+
+    private void emitArithmetic(ValueExpression ve, int opcode) {
+	final List<ValueExpression> inner = ve.getInnerExpressions();
+	for (int i = 0; i < inner.size(); i++) {
+	    emitDouble(inner.get(i));
+	    if (i > 0)
+		_method.op(opcode, -2);
+	}
+	toType(kindOf(ve.getType()));
+    }
+
+    public void emitDouble(ValueExpression ve) {
+	toDouble(emit(ve));
+    }
+
+    /*
+     * The locals of the declared columns have to be assigned before their
+     * first (conditional) use
+     */
+    public void emitPrologue() {
+	for (final Map.Entry<String, int[]> column : _columns.entrySet()) {
+	    final String key = column.getKey();
+	    final int kind = Integer.parseInt(key
+		    .substring(key.indexOf(':') + 1));
+	    final int[] locals = column.getValue();
+	    if (kind == LONG) {
+		_method.op(ClassFileWriter.LCONST_0, 2);
+		_method.var(ClassFileWriter.LSTORE, locals[0], -2);
+	    } else if (kind == DOUBLE) {
+		_method.op(ClassFileWriter.DCONST_0, 2);
+		_method.var(ClassFileWriter.DSTORE, locals[0], -2);
+	    } else if (kind == STRING) {
+		_method.op(ClassFileWriter.ACONST_NULL, 1);
+		_method.var(ClassFileWriter.ASTORE, locals[0], -1);
+	    } else {
+		_method.iconst(0);
+		_method.var(ClassFileWriter.ISTORE, locals[0], -1);
+	    }
+	    _method.iconst(0);
+	    _method.var(ClassFileWriter.ISTORE, locals[1], -1);
+	}
+    }
+
+    public int getNextLocal() {
+	return _nextLocal;
+    }
+
+    private void load(int kind, int local) {
+	if (kind == LONG)
+	    _method.var(ClassFileWriter.LLOAD, local, 2);
+	else if (kind == DOUBLE)
+	    _method.var(ClassFileWriter.DLOAD, local, 2);
+	else if (kind == STRING)
+	    _method.var(ClassFileWriter.ALOAD, local, 1);
+	else
+	    _method.var(ClassFileWriter.ILOAD, local, 1);
+    }
+
+    private void store(int kind, int local) {
+	if (kind == LONG)
+	    _method.var(ClassFileWriter.LSTORE, local, -2);
+	else if (kind == DOUBLE)
+	    _method.var(ClassFileWriter.DSTORE, local, -2);
+	else if (kind == STRING)
+	    _method.var(ClassFileWriter.ASTORE, local, -1);
+	else
+	    _method.var(ClassFileWriter.ISTORE, local, -1);
+    }
+
+    public void toDouble(int kind) {
+	if (kind == INTEGER || kind == DATE)
+	    _method.op(ClassFileWriter.I2D, 1);
+	else if (kind == LONG)
+	    _method.op(ClassFileWriter.L2D, 0);
+    }
+
+    private void toLong(int kind) {
+	if (kind == INTEGER)
+	    _method.op(ClassFileWriter.I2L, 1);
+	else if (kind == DOUBLE)
+	    _method.op(ClassFileWriter.D2L, 0);
+    }
+
+    // from the double of an arithmetic expression, as NumericType.fromDouble
+    private void toType(int kind) {
+	if (kind == INTEGER)
+	    _method.op(ClassFileWriter.D2I, -1);
+	else if (kind == LONG)
+	    _method.op(ClassFileWriter.D2L, 0);
+	_kind = kind;
+    }
+
+    private void unsupported(ValueExpression ve) {
+	throw new RuntimeException("Cannot compile " + ve + "!");
+    }
+
+    @Override
+    public void visit(Addition add) {
+	// the interpreter starts from 0, which matters for -0.0
+	_method.op(ClassFileWriter.DCONST_0, 2);
+	for (final ValueExpression inner : (List<ValueExpression>) add
+		.getInnerExpressions()) {
+	    emitDouble(inner);
+	    _method.op(ClassFileWriter.DADD, -2);
+	}
+	toType(kindOf(add.getType()));
+    }
+
+    @Override
+    public void visit(ColumnReference cr) {
+	final int kind = kindOf(cr.getType());
+	final int[] locals = _columns.get(columnKey(cr));
+	if (locals == null)
+	    throw new RuntimeException("Undeclared column " + cr + "!");
+	final Label parsed = new Label();
+	_method.var(ClassFileWriter.ILOAD, locals[1], 1);
+	_method.jump(ClassFileWriter.IFNE, parsed, -1);
+	_method.var(ClassFileWriter.ALOAD, 1, 1);
+	_method.iconst(cr.getColumnIndex());
+	_method.invoke(ClassFileWriter.INVOKEINTERFACE, LIST, "get",
+		"(I)Ljava/lang/Object;", 1, 1);
+	_method.type(ClassFileWriter.CHECKCAST, "java/lang/String", 0);
+	if (kind == INTEGER)
+	    _method.invoke(ClassFileWriter.INVOKESTATIC, "java/lang/Integer",
+		    "parseInt", "(Ljava/lang/String;)I", 1, 1);
+	else if (kind == LONG)
+	    _method.invoke(ClassFileWriter.INVOKESTATIC, "java/lang/Long",
+		    "parseLong", "(Ljava/lang/String;)J", 1, 2);
+	else if (kind == DOUBLE)
+	    _method.invoke(ClassFileWriter.INVOKESTATIC, "java/lang/Double",
+		    "parseDouble", "(Ljava/lang/String;)D", 1, 2);
+	else if (kind == DATE)
+	    _method.invoke(ClassFileWriter.INVOKESTATIC, DATE_TYPE,
+		    "parseEpochDay", "(Ljava/lang/String;)I", 1, 1);
+	store(kind, locals[0]);
+	_method.iconst(1);
+	_method.var(ClassFileWriter.ISTORE, locals[1], -1);
+	_method.mark(parsed);
+	load(kind, locals[0]);
+	_kind = kind;
+    }
+
+    @Override
+    public void visit(DateDiff dd) {
+	unsupported(dd);
+    }
+
+    @Override
+    public void visit(DateSum ds) {
+	unsupported(ds);
+    }
+
+    @Override
+    public void visit(Division dvsn) {
+	emitArithmetic(dvsn, ClassFileWriter.DDIV);
+    }
+
+    @Override
+    public void visit(IntegerYearFromDate iyfd) {
+	emit(iyfd.getInnerExpressions().get(0));
+	_method.invoke(ClassFileWriter.INVOKESTATIC, DATE_TYPE,
+		"yearOfEpochDay", "(I)I", 1, 1);
+	_kind = INTEGER;
+    }
+
+    @Override
+    public void visit(Multiplication mult) {
+	emitArithmetic(mult, ClassFileWriter.DMUL);
+    }
+
+    @Override
+    public void visit(StringConcatenate sc) {
+	unsupported(sc);
+    }
+
+    @Override
+    public void visit(Subtraction sub) {
+	emitArithmetic(sub, ClassFileWriter.DSUB);
+    }
+
+    @Override
+    public void visit(ValueSpecification vs) {
+	final int kind = kindOf(vs.getType());
+	final Object constant = vs.eval(null);
+	if (kind == INTEGER)
+	    _method.iconst((Integer) constant);
+	else if (kind == LONG)
+	    _method.ldc((Long) constant);
+	else if (kind == DOUBLE)
+	    _method.ldc((Double) constant);
+	else if (kind == DATE)
+	    _method.iconst(DateType.toEpochDay((Date) constant));
+	else if (kind == STRING)
+	    _method.ldc((String) constant);
+	else
+	    unsupported(vs);
+	_kind = kind;
+    }
+}
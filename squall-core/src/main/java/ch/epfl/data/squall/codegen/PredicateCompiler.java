@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.codegen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ch.epfl.data.squall.codegen.ClassFileWriter.Label;
+import ch.epfl.data.squall.codegen.ClassFileWriter.MethodWriter;
+import ch.epfl.data.squall.expressions.ValueExpression;
+import ch.epfl.data.squall.predicates.AndPredicate;
+import ch.epfl.data.squall.predicates.BetweenPredicate;
+import ch.epfl.data.squall.predicates.ComparisonPredicate;
+import ch.epfl.data.squall.predicates.LikePredicate;
+import ch.epfl.data.squall.predicates.OrPredicate;
+import ch.epfl.data.squall.predicates.Predicate;
+import ch.epfl.data.squall.predicates.booleanPrimitive;
+import ch.epfl.data.squall.utilities.MyUtilities;
+import ch.epfl.data.squall.visitors.PredicateVisitor;
+
+/**
+ * Compiles the single-tuple test of a selection predicate into a subclass of
+ * CompiledPredicate. AND, OR and BETWEEN become short-circuit jumps, and the
+ * comparisons of compilable expressions (see ExpressionCompiler) compare
+ * unboxed values, parsing each referenced column once per tuple. The leaves
+ * which cannot be compiled (LIKE, DateSum, ...) are invoked through
+ * testFallback, so that any predicate can be compiled.
+ *
+ * Each visit emits a jump to _target if the visited predicate evaluates to
+ * _jumpIf, and falls through otherwise.
+ */
+public class PredicateCompiler implements PredicateVisitor {
+    private static Logger LOG = Logger.getLogger(PredicateCompiler.class);
+
+    private static final String PREDICATE_BASE = "ch/epfl/data/squall/codegen/CompiledPredicate";
+    private static final String PREDICATE_DESCRIPTOR = "Lch/epfl/data/squall/predicates/Predicate;";
+
+    private static int _generated = 0;
+
+    /*
+     * Returns the compiled predicate, or pred itself if nothing in it can be
+     * compiled or the compilation fails
+     */
+    public static Predicate compile(Predicate pred) {
+	if (pred == null || pred instanceof CompiledPredicate
+		|| !isCompilable(pred))
+	    return pred;
+	try {
+	    final String className = nextClassName();
+	    final ClassFileWriter cfw = new ClassFileWriter(className,
+		    PREDICATE_BASE);
+
+	    final String initDescriptor = "(" + PREDICATE_DESCRIPTOR + "["
+		    + PREDICATE_DESCRIPTOR + ")V";
+	    final MethodWriter init = cfw.method(ClassFileWriter.ACC_PUBLIC,
+		    "<init>", initDescriptor, 3);
+	    init.var(ClassFileWriter.ALOAD, 0, 1);
+	    init.var(ClassFileWriter.ALOAD, 1, 1);
+	    init.var(ClassFileWriter.ALOAD, 2, 1);
+	    init.invoke(ClassFileWriter.INVOKESPECIAL, PREDICATE_BASE, "<init>",
+		    initDescriptor, 2, 0);
+	    init.op(ClassFileWriter.RETURN, 0);
+
+	    final MethodWriter test = cfw.method(ClassFileWriter.ACC_PUBLIC,
+		    "test", "(Ljava/util/List;)Z", 2);
+	    final PredicateCompiler compiler = new PredicateCompiler(test);
+	    compiler.declareColumns(pred);
+	    compiler._expressions.emitPrologue();
+	    final Label rejected = new Label();
+	    compiler.emit(pred, rejected, false);
+	    test.iconst(1);
+	    test.op(ClassFileWriter.IRETURN, -1);
+	    test.mark(rejected);
+	    test.iconst(0);
+	    test.op(ClassFileWriter.IRETURN, -1);
+
+	    final Predicate[] fallbacks = compiler._fallbacks
+		    .toArray(new Predicate[compiler._fallbacks.size()]);
+	    final Class generated = CodegenRuntime.define(className,
+		    cfw.toByteArray());
+	    return (Predicate) generated.getConstructor(Predicate.class,
+		    Predicate[].class).newInstance(pred, fallbacks);
+	} catch (final Exception e) {
+	    LOG.info("Cannot compile " + pred + ": "
+		    + MyUtilities.getStackTrace(e));
+	    return pred;
+	} catch (final LinkageError e) {
+	    LOG.info("Cannot compile " + pred + ": "
+		    + MyUtilities.getStackTrace(e));
+	    return pred;
+	}
+    }
+
+    private static boolean isCompilable(ComparisonPredicate comparison) {
+	if (comparison.getOperation() > ComparisonPredicate.NONGREATER_OP)
+	    return false;
+	final List<ValueExpression> expressions = comparison.getExpressions();
+	final int first = ExpressionCompiler.kindOf(expressions.get(0));
+	final int second = ExpressionCompiler.kindOf(expressions.get(1));
+	// as in ComparisonPredicate, longs are compared as doubles and the
+	// other types only with themselves
+	if (first == ExpressionCompiler.UNSUPPORTED)
+	    return false;
+	else if (isDoubleCompared(first))
+	    return isDoubleCompared(second);
+	else
+	    return first == second;
+    }
+
+    /*
+     * Whether at least one leaf of pred is compiled
+     */
+    private static boolean isCompilable(Predicate pred) {
+	if (pred instanceof ComparisonPredicate)
+	    return isCompilable((ComparisonPredicate) pred);
+	else if (pred instanceof AndPredicate || pred instanceof OrPredicate
+		|| pred instanceof BetweenPredicate)
+	    for (final Predicate inner : pred.getInnerPredicates())
+		if (isCompilable(inner))
+		    return true;
+	return false;
+    }
+
+    private static boolean isDoubleCompared(int kind) {
+	return kind == ExpressionCompiler.LONG
+		|| kind == ExpressionCompiler.DOUBLE;
+    }
+
+    private static synchronized String nextClassName() {
+	return "ch/epfl/data/squall/codegen/GeneratedPredicate" + _generated++;
+    }
+
+    private final MethodWriter _method;
+    private final ExpressionCompiler _expressions;
+    private final List<Predicate> _fallbacks = new ArrayList<Predicate>();
+    private Label _target;
+    private boolean _jumpIf;
+
+    private PredicateCompiler(MethodWriter method) {
+	_method = method;
+	_expressions = new ExpressionCompiler(method, 2);
+    }
+
+    private void declareColumns(Predicate pred) {
+	if (pred instanceof ComparisonPredicate) {
+	    final ComparisonPredicate comparison = (ComparisonPredicate) pred;
+	    if (isCompilable(comparison))
+		for (final ValueExpression ve : (List<ValueExpression>) comparison
+			.getExpressions())
+		    _expressions.declareColumns(ve);
+	} else if (pred instanceof AndPredicate || pred instanceof OrPredicate
+		|| pred instanceof BetweenPredicate)
+	    for (final Predicate inner : pred.getInnerPredicates())
+		declareColumns(inner);
+    }
+
+    private void emit(Predicate pred, Label target, boolean jumpIf) {
+	final Label previousTarget = _target;
+	final boolean previousJumpIf = _jumpIf;
+	_target = target;
+	_jumpIf = jumpIf;
+	pred.accept(this);
+	_target = previousTarget;
+	_jumpIf = previousJumpIf;
+    }
+
+    private void emitFallback(Predicate pred) {
+	_method.var(ClassFileWriter.ALOAD, 0, 1);
+	_method.iconst(_fallbacks.size());
+	_method.var(ClassFileWriter.ALOAD, 1, 1);
+	_method.invoke(ClassFileWriter.INVOKEVIRTUAL, PREDICATE_BASE,
+		"testFallback", "(ILjava/util/List;)Z", 2, 1);
+	_method.jump(_jumpIf ? ClassFileWriter.IFNE : ClassFileWriter.IFEQ,
+		_target, -1);
+	_fallbacks.add(pred);
+    }
+
+    /*
+     * AND (shortCircuit false) or OR (true): the first inner predicate which
+     * evaluates to shortCircuit decides
+     */
+    private void emitJunction(List<Predicate> inner, boolean shortCircuit) {
+	if (_jumpIf == shortCircuit) {
+	    // any deciding inner predicate jumps to the target
+	    for (final Predicate pred : inner)
+		emit(pred, _target, shortCircuit);
+	    // none did: the junction is !shortCircuit, fall through
+	} else {
+	    // jump to the target only if no inner predicate decides
+	    final Label decided = new Label();
+	    for (final Predicate pred : inner)
+		emit(pred, decided, shortCircuit);
+	    _method.jump(ClassFileWriter.GOTO, _target, 0);
+	    _method.mark(decided);
+	}
+    }
+
+    /*
+     * The jump on the result of compareTo which is taken if the comparison
+     * evaluates to _jumpIf
+     */
+    private int jumpOpcode(int operation) {
+	switch (operation) {
+	case ComparisonPredicate.EQUAL_OP:
+	    return _jumpIf ? ClassFileWriter.IFEQ : ClassFileWriter.IFNE;
+	case ComparisonPredicate.NONEQUAL_OP:
+	    return _jumpIf ? ClassFileWriter.IFNE : ClassFileWriter.IFEQ;
+	case ComparisonPredicate.LESS_OP:
+	    return _jumpIf ? ClassFileWriter.IFLT : ClassFileWriter.IFGE;
+	case ComparisonPredicate.NONLESS_OP:
+	    return _jumpIf ? ClassFileWriter.IFGE : ClassFileWriter.IFLT;
+	case ComparisonPredicate.GREATER_OP:
+	    return _jumpIf ? ClassFileWriter.IFGT : ClassFileWriter.IFLE;
+	case ComparisonPredicate.NONGREATER_OP:
+	    return _jumpIf ? ClassFileWriter.IFLE : ClassFileWriter.IFGT;
+	default:
+	    throw new RuntimeException("Unsupported operation " + operation);
+	}
+    }
+
+    @Override
+    public void visit(AndPredicate and) {
+	emitJunction(and.getInnerPredicates(), false);
+    }
+
+    @Override
+    public void visit(BetweenPredicate between) {
+	emit((Predicate) between.getInnerPredicates().get(0), _target, _jumpIf);
+    }
+
+    @Override
+    public void visit(booleanPrimitive bool) {
+	if (bool.test(null) == _jumpIf)
+	    _method.jump(ClassFileWriter.GOTO, _target, 0);
+    }
+
+    @Override
+    public void visit(ComparisonPredicate comparison) {
+	if (!isCompilable(comparison)) {
+	    emitFallback(comparison);
+	    return;
+	}
+	final List<ValueExpression> expressions = comparison.getExpressions();
+	final int kind = ExpressionCompiler.kindOf(expressions.get(0));
+	if (isDoubleCompared(kind)) {
+	    _expressions.emitDouble(expressions.get(0));
+	    _expressions.emitDouble(expressions.get(1));
+	    _method.invoke(ClassFileWriter.INVOKESTATIC, "java/lang/Double",
+		    "compare", "(DD)I", 4, 1);
+	} else if (kind == ExpressionCompiler.STRING) {
+	    _expressions.emit(expressions.get(0));
+	    _expressions.emit(expressions.get(1));
+	    _method.invoke(ClassFileWriter.INVOKEVIRTUAL, "java/lang/String",
+		    "compareTo", "(Ljava/lang/String;)I", 1, 1);
+	} else {
+	    // ints and dates
+	    _expressions.emit(expressions.get(0));
+	    _expressions.emit(expressions.get(1));
+	    _method.invoke(ClassFileWriter.INVOKESTATIC, "java/lang/Integer",
+		    "compare", "(II)I", 2, 1);
+	}
+	_method.jump(jumpOpcode(comparison.getOperation()), _target, -1);
+    }
+
+    @Override
+    public void visit(LikePredicate like) {
+	emitFallback(like);
+    }
+
+    @Override
+    public void visit(OrPredicate or) {
+	emitJunction(or.getInnerPredicates(), true);
+    }
+}
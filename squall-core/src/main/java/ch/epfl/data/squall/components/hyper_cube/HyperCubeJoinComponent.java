@@ -59,6 +59,8 @@ public class HyperCubeJoinComponent extends JoinerComponent implements Component
     private List<ValueExpression> hashExpressions;
     private List<Integer> hashIndexes;
     private Predicate joinPredicate;
+    // joinPredicates[i][j], i < j, between the i-th and the j-th parent
+    private Predicate[][] joinPredicates;
     private boolean printOut;
     private InterchangingComponent interComp = null;
     private boolean printOutSet; // whether printOut was already set
@@ -71,6 +73,7 @@ public class HyperCubeJoinComponent extends JoinerComponent implements Component
             tmp.setChild(this);
             componentName += tmp.getName() + "_";
         }
+        joinPredicates = new Predicate[parents.size()][parents.size()];
     }
 
     @Override
@@ -172,18 +175,20 @@ public class HyperCubeJoinComponent extends JoinerComponent implements Component
         MyUtilities.checkBatchOutput(batchOutputMillis,
 		chain.getAggregation(), conf);
 
-        // _joiner = new StormThetaJoin();
         ArrayList<StormEmitter> emitters = new ArrayList<StormEmitter>();
         for (StormEmitter se : parents)
             emitters.add(se);
 
-//        joiner = new NaiveJoiner(emitters.get(0), emitters.get(1), this,
-//                allCompNames, joinPredicate, false,
-//                hierarchyPosition, builder, killer, conf, interComp,
-//                false, contentSensitiveThetaJoinWrapper);
-//        joiner = new StormHyperCubeJoin(emitters, this, allCompNames, joinPredicate,
-//                hierarchyPosition, builder, killer, conf, interComp, contentSensitiveThetaJoinWrapper);
-
+        // joinPredicates[i][j] is between the i-th and the j-th emitters
+        if (joinPredicate != null) {
+            if (parents.size() != 2)
+                throw new RuntimeException("A join of " + parents.size()
+                        + " relations needs a join predicate per pair of parents!");
+            if (joinPredicates[0][1] == null)
+                joinPredicates[0][1] = joinPredicate;
+        }
+        joiner = new StormHyperCubeJoin(emitters, this, allCompNames, joinPredicates,
+                hierarchyPosition, builder, killer, conf, interComp, contentSensitiveThetaJoinWrapper);
     }
     @Override
     public HyperCubeJoinComponent setBatchOutputMillis(long millis) {
@@ -234,6 +239,24 @@ public class HyperCubeJoinComponent extends JoinerComponent implements Component
         return this;
     }
 
+    /*
+     * The predicate between two parents, where first comes before second in
+     * the list of parents (the predicate tests (first, second) tuples)
+     */
+    public HyperCubeJoinComponent setJoinPredicate(Component first,
+            Component second, Predicate joinPredicate) {
+        final int firstIndex = parents.indexOf(first);
+        final int secondIndex = parents.indexOf(second);
+        if (firstIndex < 0 || secondIndex < 0)
+            throw new RuntimeException("Both " + first.getName() + " and "
+                    + second.getName() + " must be parents of " + componentName + "!");
+        if (firstIndex >= secondIndex)
+            throw new RuntimeException(first.getName() + " must come before "
+                    + second.getName() + " in the parents of " + componentName + "!");
+        joinPredicates[firstIndex][secondIndex] = joinPredicate;
+        return this;
+    }
+
     @Override
     public HyperCubeJoinComponent setPrintOut(boolean printOut) {
         this.printOutSet = true;
@@ -28,6 +28,7 @@ import scala.collection.immutable.List$;
 import scala.Tuple2;
 import ddbt.lib.Messages.*;
 import ddbt.lib.IQuery;
+import ch.epfl.data.squall.types.Type;
 import java.io.Serializable;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -49,6 +50,18 @@ public class DBToasterEngine implements Serializable {
         return result;
     }
 
+    /*
+     * Converts the fields straight into the cells of the Scala List, from the
+     * last one, without an intermediate Object[]
+     */
+    public static List<Object> convertTupleToDbtTuple(java.util.List<String> tuple, Type[] columnTypes) {
+        List<Object> result = EMPTY_LIST;
+        for (int i = columnTypes.length; i > 0; i--) {
+            result = new $colon$colon<Object>(columnTypes[i - 1].fromString(tuple.get(i - 1)), result);
+        }
+        return result;
+    }
+
     private IQuery _query; // DBToaster Query class
 
     public DBToasterEngine(String queryClass) {
@@ -73,6 +86,19 @@ public class DBToasterEngine implements Serializable {
         _query.handleEvent(new TupleEvent(TUPLE_DELETE, relationName, dbtTuple));
     }
 
+    /*
+     * The fields are converted to their types on the way. The generated
+     * queries pattern-match on a TupleEvent with a Scala List, so one of each
+     * is still built per tuple.
+     */
+    public void insertTuple(String relationName, java.util.List<String> tuple, Type[] columnTypes) {
+        _query.handleEvent(new TupleEvent(TUPLE_INSERT, relationName, convertTupleToDbtTuple(tuple, columnTypes)));
+    }
+
+    public void deleteTuple(String relationName, java.util.List<String> tuple, Type[] columnTypes) {
+        _query.handleEvent(new TupleEvent(TUPLE_DELETE, relationName, convertTupleToDbtTuple(tuple, columnTypes)));
+    }
+
     public java.util.List<Object[]> getStreamOfUpdateTuples() {
 
         java.util.List<Object[]> outputTuples = new LinkedList();
@@ -91,6 +117,21 @@ public class DBToasterEngine implements Serializable {
         return outputTuples;
     }
 
+    /*
+     * Appends the updates since the last call to the buffer
+     */
+    public void getStreamOfUpdateTuples(UpdateBuffer buffer) {
+        List<Object> updateStream = (List<Object>) _query.handleEvent(new GetStream(1));
+        for (; !updateStream.isEmpty(); updateStream = (List<Object>) updateStream.tail()) {
+            Object o = updateStream.head();
+            if (o instanceof Object[]) {
+                buffer.add((Object[]) o);
+            } else {
+                buffer.add(new Object[] {o});
+            }
+        }
+    }
+
     public void endStream() {
         _query.handleEvent(EndOfStream$.MODULE$);
     }
@@ -0,0 +1,105 @@
+/*
+ *
+ *  * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ *  * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *  *
+ *  * All rights reserved.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package ch.epfl.data.squall.dbtoaster;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reusable buffer for the update stream of a DBToaster query, filled by
+ * DBToasterEngine.getStreamOfUpdateTuples. An update is a key followed by the
+ * new value for that key, so compact keeps only the last update of each key,
+ * at the position of its first one. The keys are looked up in place, in an
+ * open-addressing table of positions which is reused across calls.
+ */
+public class UpdateBuffer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ArrayList<Object[]> _updates = new ArrayList<Object[]>();
+    // 1 + the position of a key among the compacted updates, 0 if free
+    private transient int[] _slots;
+
+    public void add(Object[] update) {
+        _updates.add(update);
+    }
+
+    public void clear() {
+        _updates.clear();
+    }
+
+    public void compact() {
+        if (_updates.size() < 2)
+            return;
+        // at most half full
+        final int numSlots = Integer.highestOneBit(_updates.size()) * 4;
+        if (_slots == null || _slots.length < numSlots)
+            _slots = new int[numSlots];
+        else
+            Arrays.fill(_slots, 0, numSlots, 0);
+        final int mask = numSlots - 1;
+        int kept = 0;
+        for (int i = 0; i < _updates.size(); i++) {
+            final Object[] update = _updates.get(i);
+            int slot = keyHash(update) & mask;
+            while (_slots[slot] != 0
+                    && !isSameKey(_updates.get(_slots[slot] - 1), update))
+                slot = (slot + 1) & mask;
+            if (_slots[slot] == 0) {
+                _slots[slot] = kept + 1;
+                _updates.set(kept++, update);
+            } else
+                _updates.set(_slots[slot] - 1, update);
+        }
+        _updates.subList(kept, _updates.size()).clear();
+    }
+
+    private static boolean isSameKey(Object[] first, Object[] second) {
+        if (first.length != second.length)
+            return false;
+        for (int i = 0; i < first.length - 1; i++)
+            if (first[i] == null ? second[i] != null : !first[i].equals(second[i]))
+                return false;
+        return true;
+    }
+
+    public Object[] get(int index) {
+        return _updates.get(index);
+    }
+
+    private static int keyHash(Object[] update) {
+        int hash = 1;
+        for (int i = 0; i < update.length - 1; i++)
+            hash = 31 * hash + (update[i] == null ? 0 : update[i].hashCode());
+        // spread the bits, the table size is a power of two
+        return hash ^ (hash >>> 16);
+    }
+
+    public boolean isEmpty() {
+        return _updates.isEmpty();
+    }
+
+    public int size() {
+        return _updates.size();
+    }
+}
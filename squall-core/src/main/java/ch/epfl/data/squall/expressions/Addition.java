@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import ch.epfl.data.squall.operators.TupleBatch;
 import ch.epfl.data.squall.types.NumericType;
 import ch.epfl.data.squall.types.Type;
 import ch.epfl.data.squall.utilities.MyUtilities;
@@ -41,12 +42,14 @@ import ch.epfl.data.squall.visitors.ValueExpressionVisitor;
  *   but rather in eval method.
  */
 public class Addition<T extends Number & Comparable<T>> implements
-	ValueExpression<T> {
+	ValueExpression<T>, BatchValueExpression {
 
     private static final long serialVersionUID = 1L;
 
     private final List<ValueExpression> _veList = new ArrayList<ValueExpression>();
     private final NumericType<T> _wrapper;
+    // scratch column of evalBatch, reused as long as it is big enough
+    private transient double[] _column;
 
     public Addition(ValueExpression ve1, ValueExpression ve2,
 	    ValueExpression... veArray) {
@@ -78,6 +81,21 @@ public class Addition<T extends Number & Comparable<T>> implements
 	return _wrapper.fromDouble(result);
     }
 
+    @Override
+    public void evalBatch(TupleBatch batch, int[] selection, int size,
+	    double[] result) {
+	Arrays.fill(result, 0, size, 0);
+	_column = BatchEvaluator.ensureCapacity(_column, size);
+	final double[] column = _column;
+	for (final ValueExpression factor : _veList) {
+	    ((BatchValueExpression) factor).evalBatch(batch, selection, size,
+		    column);
+	    for (int i = 0; i < size; i++)
+		result[i] += column[i];
+	}
+	BatchEvaluator.castToType(_wrapper, result, size);
+    }
+
     @Override
     public String evalString(List<String> tuple) {
 	final T result = eval(tuple);
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.expressions;
+
+import java.util.List;
+
+import ch.epfl.data.squall.operators.TupleBatch;
+import ch.epfl.data.squall.types.DoubleType;
+import ch.epfl.data.squall.types.IntegerType;
+import ch.epfl.data.squall.types.LongType;
+import ch.epfl.data.squall.types.NumericType;
+
+/*
+ * Helpers for evaluating BatchValueExpressions column by column
+ */
+public class BatchEvaluator {
+
+    /*
+     * Rounds a double column the way wrapper.fromDouble does
+     */
+    public static void castToType(NumericType wrapper, double[] column,
+	    int size) {
+	final Class typeClass = wrapper.getClass();
+	if (typeClass == DoubleType.class)
+	    return;
+	else if (typeClass == IntegerType.class)
+	    for (int i = 0; i < size; i++)
+		column[i] = (int) column[i];
+	else if (typeClass == LongType.class)
+	    for (int i = 0; i < size; i++)
+		column[i] = (long) column[i];
+	else
+	    for (int i = 0; i < size; i++)
+		column[i] = wrapper.toDouble(wrapper.fromDouble(column[i]));
+    }
+
+    /*
+     * Returns buffer if it holds at least size values, and a new array
+     * otherwise; the caller keeps the result for the next batches
+     */
+    public static double[] ensureCapacity(double[] buffer, int size) {
+	if (buffer != null && buffer.length >= size)
+	    return buffer;
+	return new double[size];
+    }
+
+    /*
+     * Evaluates ve into buffer, or into a new array if buffer is too small;
+     * returns the array which holds the result
+     */
+    public static double[] evalBatch(ValueExpression ve, TupleBatch batch,
+	    int[] selection, int size, double[] buffer) {
+	final double[] result = ensureCapacity(buffer, size);
+	((BatchValueExpression) ve).evalBatch(batch, selection, size, result);
+	return result;
+    }
+
+    /*
+     * true if ve and all its inner expressions are numeric
+     * BatchValueExpressions
+     */
+    public static boolean isBatchNumeric(ValueExpression ve) {
+	if (!(ve instanceof BatchValueExpression)
+		|| !(ve.getType() instanceof NumericType))
+	    return false;
+	final List<ValueExpression> inner = ve.getInnerExpressions();
+	for (final ValueExpression innerVe : inner)
+	    if (!isBatchNumeric(innerVe))
+		return false;
+	return true;
+    }
+}
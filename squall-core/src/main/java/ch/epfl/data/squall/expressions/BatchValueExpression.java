@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.expressions;
+
+import ch.epfl.data.squall.operators.TupleBatch;
+
+/*
+ * A numeric expression which can compute a whole column of a TupleBatch:
+ * result[i] is the value for the row selection[i], as a double, the same as
+ * NumericType.toDouble(eval(tuple)). Invoke it only if
+ * BatchEvaluator.isBatchNumeric holds.
+ */
+public interface BatchValueExpression {
+    public void evalBatch(TupleBatch batch, int[] selection, int size,
+	    double[] result);
+}
@@ -22,11 +22,16 @@ package ch.epfl.data.squall.expressions;
 import java.util.ArrayList;
 import java.util.List;
 
+import ch.epfl.data.squall.operators.TupleBatch;
+import ch.epfl.data.squall.types.DoubleType;
+import ch.epfl.data.squall.types.IntegerType;
+import ch.epfl.data.squall.types.LongType;
+import ch.epfl.data.squall.types.NumericType;
 import ch.epfl.data.squall.types.Type;
 import ch.epfl.data.squall.visitors.ValueExpressionVisitor;
 
 public class ColumnReference<T extends Comparable<T>> implements
-	ValueExpression<T> {
+	ValueExpression<T>, BatchValueExpression {
     private static final long serialVersionUID = 1L;
 
     private int _columnIndex;
@@ -62,6 +67,26 @@ public class ColumnReference<T extends Comparable<T>> implements
 	return _wrapper.fromString(value);
     }
 
+    @Override
+    public void evalBatch(TupleBatch batch, int[] selection, int size,
+	    double[] result) {
+	final Class typeClass = _wrapper.getClass();
+	if (typeClass == IntegerType.class || typeClass == LongType.class)
+	    for (int i = 0; i < size; i++)
+		result[i] = Long.parseLong(batch.getValue(selection[i],
+			_columnIndex));
+	else if (typeClass == DoubleType.class)
+	    for (int i = 0; i < size; i++)
+		result[i] = Double.parseDouble(batch.getValue(selection[i],
+			_columnIndex));
+	else {
+	    final NumericType numericType = (NumericType) _wrapper;
+	    for (int i = 0; i < size; i++)
+		result[i] = numericType.toDouble(_wrapper.fromString(batch
+			.getValue(selection[i], _columnIndex)));
+	}
+    }
+
     @Override
     public String evalString(List<String> tuple) {
 	return tuple.get(_columnIndex);
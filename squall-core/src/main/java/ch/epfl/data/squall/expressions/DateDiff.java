@@ -53,13 +53,8 @@ public class DateDiff implements ValueExpression<Integer> {
 
     @Override
     public Integer eval(List<String> tuple) {
-	Date dateObj1 = _ve1.eval(tuple);
-	Date dateObj2 = _ve2.eval(tuple);
-
-	long diff = dateObj2.getTime() - dateObj1.getTime();
-	int diffDays = (int) (diff / (24 * 1000 * 60 * 60));
-
-	return diffDays;
+	// whole days, also across daylight saving changes
+	return EpochDays.eval(_ve2, tuple) - EpochDays.eval(_ve1, tuple);
     }
 
     @Override
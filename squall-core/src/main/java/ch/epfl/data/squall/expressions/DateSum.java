@@ -54,11 +54,30 @@ public class DateSum implements ValueExpression<Date> {
 
     @Override
     public Date eval(List<String> tuple) {
-	final Date base = _ve.eval(tuple);
-	final Calendar c = Calendar.getInstance();
-	c.setTime(base);
-	c.add(_unit, _interval);
-	return c.getTime();
+	// dates are days, so day, week, month and year intervals are added to
+	// epoch days
+	switch (_unit) {
+	case Calendar.DAY_OF_MONTH:
+	case Calendar.DAY_OF_YEAR:
+	case Calendar.DAY_OF_WEEK:
+	    return DateType.fromEpochDay(EpochDays.eval(_ve, tuple) + _interval);
+	case Calendar.WEEK_OF_YEAR:
+	case Calendar.WEEK_OF_MONTH:
+	    return DateType.fromEpochDay(EpochDays.eval(_ve, tuple) + 7
+		    * _interval);
+	case Calendar.MONTH:
+	    return DateType.fromEpochDay(EpochDays.plusMonths(
+		    EpochDays.eval(_ve, tuple), _interval));
+	case Calendar.YEAR:
+	    return DateType.fromEpochDay(EpochDays.plusMonths(
+		    EpochDays.eval(_ve, tuple), 12 * _interval));
+	default:
+	    final Date base = _ve.eval(tuple);
+	    final Calendar c = Calendar.getInstance();
+	    c.setTime(base);
+	    c.add(_unit, _interval);
+	    return c.getTime();
+	}
     }
 
     @Override
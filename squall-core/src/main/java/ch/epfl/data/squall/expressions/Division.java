@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import ch.epfl.data.squall.operators.TupleBatch;
 import ch.epfl.data.squall.types.IntegerType;
 import ch.epfl.data.squall.types.NumericType;
 import ch.epfl.data.squall.types.Type;
@@ -40,12 +41,15 @@ import ch.epfl.data.squall.visitors.ValueExpressionVisitor;
  *   does not result in exception in the constructor,
  *   but rather in eval method.
  */
-public class Division implements ValueExpression<Integer> {
+public class Division implements ValueExpression<Integer>,
+	BatchValueExpression {
 
     private static final long serialVersionUID = 1L;
 
     private final List<ValueExpression> _veList = new ArrayList<ValueExpression>();
     private final NumericType<Integer> _wrapper = new IntegerType();
+    // scratch column of evalBatch, reused as long as it is big enough
+    private transient double[] _column;
 
     public Division(ValueExpression ve1, ValueExpression ve2,
 	    ValueExpression... veArray) {
@@ -80,6 +84,22 @@ public class Division implements ValueExpression<Integer> {
 	return _wrapper.fromDouble(result);
     }
 
+    @Override
+    public void evalBatch(TupleBatch batch, int[] selection, int size,
+	    double[] result) {
+	((BatchValueExpression) _veList.get(0)).evalBatch(batch, selection,
+		size, result);
+	_column = BatchEvaluator.ensureCapacity(_column, size);
+	final double[] column = _column;
+	for (int j = 1; j < _veList.size(); j++) {
+	    ((BatchValueExpression) _veList.get(j)).evalBatch(batch,
+		    selection, size, column);
+	    for (int i = 0; i < size; i++)
+		result[i] /= column[i];
+	}
+	BatchEvaluator.castToType(_wrapper, result, size);
+    }
+
     @Override
     public String evalString(List<String> tuple) {
 	final Integer result = eval(tuple);
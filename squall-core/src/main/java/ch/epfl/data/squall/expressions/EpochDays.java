@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.expressions;
+
+import java.util.Date;
+import java.util.List;
+
+import ch.epfl.data.squall.types.DateType;
+
+/*
+ * Evaluates date expressions to epoch days; a date column is parsed directly,
+ * without creating a Date
+ */
+final class EpochDays {
+
+    static int eval(ValueExpression<Date> ve, List<String> tuple) {
+	if (ve instanceof ColumnReference && ve.getType() instanceof DateType)
+	    return DateType.parseEpochDay(tuple.get(((ColumnReference) ve)
+		    .getColumnIndex()));
+	return DateType.toEpochDay(ve.eval(tuple));
+    }
+
+    /*
+     * As Calendar.add(MONTH, months): the day is kept, or cut to the last
+     * day of the month
+     */
+    static int plusMonths(int epochDay, int months) {
+	final int yyyymmdd = DateType.toYyyymmdd(epochDay);
+	final int total = (yyyymmdd / 10000) * 12 + (yyyymmdd / 100) % 100 - 1
+		+ months;
+	final int year = total >= 0 ? total / 12 : (total - 11) / 12;
+	final int month = total - year * 12 + 1;
+	final int firstOfMonth = DateType.epochDay(year, month, 1);
+	final int firstOfNext = month == 12 ? DateType.epochDay(year + 1, 1, 1)
+		: DateType.epochDay(year, month + 1, 1);
+	return firstOfMonth
+		+ Math.min(yyyymmdd % 100, firstOfNext - firstOfMonth) - 1;
+    }
+
+    private EpochDays() {
+    }
+}
@@ -20,10 +20,10 @@
 package ch.epfl.data.squall.expressions;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 
+import ch.epfl.data.squall.types.DateType;
 import ch.epfl.data.squall.types.IntegerType;
 import ch.epfl.data.squall.types.Type;
 import ch.epfl.data.squall.visitors.ValueExpressionVisitor;
@@ -60,19 +60,7 @@ public class IntegerYearFromDate implements ValueExpression<Integer> {
 
     @Override
     public Integer eval(List<String> tuple) {
-	final Date date = _veDate.eval(tuple);
-
-	final Calendar c = Calendar.getInstance();
-	c.setTime(date);
-	final int year = c.get(Calendar.YEAR);
-
-	/*
-	 * Alternative approach: SimpleDateFormat formatNowYear = new
-	 * SimpleDateFormat("yyyy"); String currentYear =
-	 * formatNowYear.format(date); // = '2006'
-	 */
-
-	return year;
+	return DateType.yearOfEpochDay(EpochDays.eval(_veDate, tuple));
     }
 
     @Override
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import ch.epfl.data.squall.operators.TupleBatch;
 import ch.epfl.data.squall.types.NumericType;
 import ch.epfl.data.squall.types.Type;
 import ch.epfl.data.squall.utilities.MyUtilities;
@@ -43,11 +44,13 @@ import ch.epfl.data.squall.visitors.ValueExpressionVisitor;
  * The formula applied on value expressions is: VE1 - VE2 - VE3 - ...
  */
 public class Subtraction<T extends Number & Comparable<T>> implements
-	ValueExpression<T> {
+	ValueExpression<T>, BatchValueExpression {
     private static final long serialVersionUID = 1L;
 
     private final List<ValueExpression> _veList = new ArrayList<ValueExpression>();
     private final NumericType<T> _wrapper;
+    // scratch column of evalBatch, reused as long as it is big enough
+    private transient double[] _column;
 
     public Subtraction(ValueExpression ve1, ValueExpression ve2,
 	    ValueExpression... veArray) {
@@ -85,6 +88,22 @@ public class Subtraction<T extends Number & Comparable<T>> implements
 
     }
 
+    @Override
+    public void evalBatch(TupleBatch batch, int[] selection, int size,
+	    double[] result) {
+	((BatchValueExpression) _veList.get(0)).evalBatch(batch, selection,
+		size, result);
+	_column = BatchEvaluator.ensureCapacity(_column, size);
+	final double[] column = _column;
+	for (int j = 1; j < _veList.size(); j++) {
+	    ((BatchValueExpression) _veList.get(j)).evalBatch(batch,
+		    selection, size, column);
+	    for (int i = 0; i < size; i++)
+		result[i] -= column[i];
+	}
+	BatchEvaluator.castToType(_wrapper, result, size);
+    }
+
     @Override
     public String evalString(List<String> tuple) {
 	final T result = eval(tuple);
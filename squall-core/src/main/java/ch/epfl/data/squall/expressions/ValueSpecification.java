@@ -20,8 +20,10 @@
 package ch.epfl.data.squall.expressions;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import ch.epfl.data.squall.operators.TupleBatch;
 import ch.epfl.data.squall.types.NumericType;
 import ch.epfl.data.squall.types.Type;
 import ch.epfl.data.squall.visitors.ValueExpressionVisitor;
@@ -32,7 +34,7 @@ import ch.epfl.data.squall.visitors.ValueExpressionVisitor;
  *   but rather in evalString method.
  */
 public class ValueSpecification<T extends Comparable<T>> implements
-	ValueExpression<T> {
+	ValueExpression<T>, BatchValueExpression {
     private static final long serialVersionUID = 1L;
 
     private T _constant;
@@ -58,6 +60,13 @@ public class ValueSpecification<T extends Comparable<T>> implements
 	return _constant;
     }
 
+    @Override
+    public void evalBatch(TupleBatch batch, int[] selection, int size,
+	    double[] result) {
+	Arrays.fill(result, 0, size,
+		((NumericType) _wrapper).toDouble(_constant));
+    }
+
     @Override
     public String evalString(List<String> tuple) {
 	final T value = eval(tuple);
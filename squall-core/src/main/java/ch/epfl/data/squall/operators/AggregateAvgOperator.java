@@ -28,8 +28,8 @@ import org.apache.commons.lang.ArrayUtils;
 import org.apache.log4j.Logger;
 
 import ch.epfl.data.squall.expressions.ValueExpression;
-import ch.epfl.data.squall.storage.AggregationStorage;
 import ch.epfl.data.squall.storage.BasicStore;
+import ch.epfl.data.squall.storage.PrimitiveAggregationStorage;
 import ch.epfl.data.squall.storage.WindowAggregationStorage;
 import ch.epfl.data.squall.types.NumericType;
 import ch.epfl.data.squall.types.SumCount;
@@ -67,7 +67,8 @@ public class AggregateAvgOperator implements AggregateOperator<SumCount> {
     public AggregateAvgOperator(ValueExpression ve, Map map) {
 	_ve = ve;
 	_map = map;
-	_storage = new AggregationStorage<SumCount>(this, _wrapper, _map, true);
+	_storage = PrimitiveAggregationStorage.<SumCount> create(this,
+		_wrapper, _ve, _map, true);
     }
 
     @Override
@@ -28,8 +28,8 @@ import org.apache.commons.lang.ArrayUtils;
 import org.apache.log4j.Logger;
 
 import ch.epfl.data.squall.expressions.ValueExpression;
-import ch.epfl.data.squall.storage.AggregationStorage;
 import ch.epfl.data.squall.storage.BasicStore;
+import ch.epfl.data.squall.storage.PrimitiveAggregationStorage;
 import ch.epfl.data.squall.storage.WindowAggregationStorage;
 import ch.epfl.data.squall.types.LongType;
 import ch.epfl.data.squall.types.NumericType;
@@ -64,7 +64,8 @@ public class AggregateCountOperator implements AggregateOperator<Long> {
 
     public AggregateCountOperator(Map map) {
 	_map = map;
-	_storage = new AggregationStorage<Long>(this, _wrapper, _map, true);
+	_storage = PrimitiveAggregationStorage.<Long> create(this, _wrapper,
+		null, _map, true);
     }
 
     @Override
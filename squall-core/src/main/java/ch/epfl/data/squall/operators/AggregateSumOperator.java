@@ -30,8 +30,8 @@ import org.apache.log4j.Logger;
 import ch.epfl.data.squall.expressions.Addition;
 import ch.epfl.data.squall.expressions.ValueExpression;
 import ch.epfl.data.squall.expressions.ValueSpecification;
-import ch.epfl.data.squall.storage.AggregationStorage;
 import ch.epfl.data.squall.storage.BasicStore;
+import ch.epfl.data.squall.storage.PrimitiveAggregationStorage;
 import ch.epfl.data.squall.storage.WindowAggregationStorage;
 import ch.epfl.data.squall.types.NumericType;
 import ch.epfl.data.squall.types.Type;
@@ -68,7 +68,8 @@ public class AggregateSumOperator<T extends Number & Comparable<T>> implements
 	_wrapper = (NumericType) ve.getType();
 	_ve = ve;
 	_map = map;
-	_storage = new AggregationStorage<T>(this, _wrapper, _map, true);
+	_storage = PrimitiveAggregationStorage.<T> create(this, _wrapper, _ve,
+		_map, true);
     }
 
     @Override
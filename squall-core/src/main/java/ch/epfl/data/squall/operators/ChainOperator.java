@@ -23,15 +23,19 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ch.epfl.data.squall.ewh.operators.SampleAsideAndForwardOperator;
+import ch.epfl.data.squall.storage.PrimitiveAggregationStorage;
+import ch.epfl.data.squall.utilities.metrics.TaskMetrics;
 import ch.epfl.data.squall.visitors.OperatorVisitor;
 
-public class ChainOperator implements Operator {
+public class ChainOperator implements Operator, BatchOperator {
 
     /**
 	 * 
 	 */
     private static final long serialVersionUID = 1L;
     private List<Operator> _operators = new ArrayList<Operator>();
+    // null unless DIP_METRICS is set
+    private transient TaskMetrics _metrics;
 
     // we can create an empty chainOperator and later fill it in
     public ChainOperator() {
@@ -62,6 +66,20 @@ public class ChainOperator implements Operator {
 	}
     }
 
+    /*
+     * Compiles the selection predicates and the aggregated expressions, see
+     * DIP_CODEGEN
+     */
+    public void compile() {
+	for (final Operator op : _operators)
+	    if (op instanceof SelectOperator)
+		((SelectOperator) op).compile();
+	    else if (op instanceof AggregateOperator
+		    && ((AggregateOperator) op).getStorage() instanceof PrimitiveAggregationStorage)
+		((PrimitiveAggregationStorage) ((AggregateOperator) op)
+			.getStorage()).compile();
+    }
+
     // closing the files of the printOperator
     public void finalizeProcessing() {
 	PrintOperator printOperator = getPrint();
@@ -185,6 +203,8 @@ public class ChainOperator implements Operator {
      */
     @Override
     public List<String> process(List<String> tuple, long lineageTimestamp) {
+	if (_metrics != null)
+	    return processMeasured(tuple, lineageTimestamp);
 	List<String> result = tuple;
 
 	for (final Operator operator : _operators) {
@@ -195,6 +215,56 @@ public class ChainOperator implements Operator {
 	return result;
     }
 
+    /*
+     * Batch counterpart of process: afterwards the selected rows of the batch
+     * are the tuples which have to be sent further. Operators which are not
+     * BatchOperators process the selected rows one by one.
+     */
+    @Override
+    public void processBatch(TupleBatch batch) {
+	for (int i = 0; i < _operators.size(); i++) {
+	    final Operator operator = _operators.get(i);
+	    final int numIn = batch.getSelectedCount();
+	    if (numIn == 0)
+		break;
+	    final long start = _metrics != null ? System.nanoTime() : 0;
+	    if (operator instanceof BatchOperator)
+		((BatchOperator) operator).processBatch(batch);
+	    else
+		batch.process(operator);
+	    if (_metrics != null)
+		_metrics.recordOperator(i, System.nanoTime() - start, numIn,
+			batch.getSelectedCount());
+	}
+    }
+
+    // process, timing each operator
+    private List<String> processMeasured(List<String> tuple,
+	    long lineageTimestamp) {
+	List<String> result = tuple;
+
+	for (int i = 0; i < _operators.size(); i++) {
+	    final long start = System.nanoTime();
+	    result = _operators.get(i).process(result, lineageTimestamp);
+	    _metrics.recordOperator(i, System.nanoTime() - start, 1,
+		    result == null ? 0 : 1);
+	    if (result == null)
+		break;
+	}
+	return result;
+    }
+
+    /*
+     * From now on, the process time of each operator is recorded in metrics
+     */
+    public void setMetrics(TaskMetrics metrics) {
+	final List<String> names = new ArrayList<String>();
+	for (int i = 0; i < _operators.size(); i++)
+	    names.add(i + "." + _operators.get(i).getClass().getSimpleName());
+	metrics.setOperators(names);
+	_metrics = metrics;
+    }
+
     /*
      * Delete the previously added operators and add new list of operators
      */
@@ -25,12 +25,14 @@ import java.util.Map;
 import ch.epfl.data.squall.expressions.ValueExpression;
 import ch.epfl.data.squall.storage.BasicStore;
 import ch.epfl.data.squall.storage.ValueStore;
+import ch.epfl.data.squall.utilities.ComponentRuntimeConfig;
 import ch.epfl.data.squall.utilities.MyUtilities;
 import ch.epfl.data.squall.visitors.OperatorVisitor;
 
 public class DistinctOperator implements Operator {
 
     private final Map _conf;
+    private final ComponentRuntimeConfig _runtimeConfig;
     private int _numTuplesProcessed;
     private final ProjectOperator _projection;
     private static final long serialVersionUID = 1L;
@@ -45,18 +47,21 @@ public class DistinctOperator implements Operator {
 	_storage = new ValueStore<String>(conf);
 	_projection = new ProjectOperator(projectionIndexes);
 	_conf = conf;
+	_runtimeConfig = new ComponentRuntimeConfig(conf);
     }
 
     public DistinctOperator(Map conf, List<ValueExpression> veList) {
 	_storage = new ValueStore<String>(conf);
 	_projection = new ProjectOperator(veList);
 	_conf = conf;
+	_runtimeConfig = new ComponentRuntimeConfig(conf);
     }
 
     public DistinctOperator(Map conf, ValueExpression... veArray) {
 	_storage = new ValueStore<String>(conf);
 	_projection = new ProjectOperator(veArray);
 	_conf = conf;
+	_runtimeConfig = new ComponentRuntimeConfig(conf);
     }
 
     @Override
@@ -100,7 +105,7 @@ public class DistinctOperator implements Operator {
 	final List<String> projectedTuple = _projection.process(tuple,
 		lineageTimestamp);
 	final String projectedTupleString = MyUtilities.tupleToString(
-		projectedTuple, _conf);
+		projectedTuple, _runtimeConfig);
 	if (_storage.contains(projectedTupleString) == true)
 	    return null;
 	else {
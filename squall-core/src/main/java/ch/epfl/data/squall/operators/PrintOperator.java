@@ -26,6 +26,7 @@ import java.io.PrintWriter;
 import java.util.List;
 import java.util.Map;
 
+import ch.epfl.data.squall.utilities.ComponentRuntimeConfig;
 import ch.epfl.data.squall.utilities.MyUtilities;
 import ch.epfl.data.squall.utilities.SystemParameters;
 import ch.epfl.data.squall.visitors.OperatorVisitor;
@@ -35,6 +36,7 @@ public class PrintOperator implements Operator {
 
     private int _numTuplesProcessed = 0;
     private Map _map;
+    private final ComponentRuntimeConfig _runtimeConfig;
     private String _printPath;
     private PrintWriter _writer = null;
 
@@ -46,6 +48,7 @@ public class PrintOperator implements Operator {
 
     public PrintOperator(String filename, Map map) {
 	_map = map;
+	_runtimeConfig = new ComponentRuntimeConfig(map);
 	_printPath = SystemParameters.getString(map, "DIP_DATA_PATH") + "/"
 		+ filename;
     }
@@ -104,7 +107,7 @@ public class PrintOperator implements Operator {
 	    }
 	}
 	_numTuplesProcessed++;
-	String str = MyUtilities.tupleToString(tuple, _map);
+	String str = MyUtilities.tupleToString(tuple, _runtimeConfig);
 	_writer.println(str);
 	return tuple;
     }
@@ -28,7 +28,7 @@ import ch.epfl.data.squall.expressions.ValueExpression;
 import ch.epfl.data.squall.types.StringType;
 import ch.epfl.data.squall.visitors.OperatorVisitor;
 
-public class ProjectOperator implements Operator {
+public class ProjectOperator implements Operator, BatchOperator {
     private static final long serialVersionUID = 1L;
 
     private List<ValueExpression> _veList = new ArrayList<ValueExpression>();
@@ -93,6 +93,25 @@ public class ProjectOperator implements Operator {
 	return projection;
     }
 
+    /*
+     * Column by column: each expression is evaluated over all the selected
+     * rows before moving to the next one
+     */
+    @Override
+    public void processBatch(TupleBatch batch) {
+	final int[] selection = batch.getSelection();
+	final int size = batch.getSelectedCount();
+	_numTuplesProcessed += size;
+	final List<String>[] projections = new List[size];
+	for (int i = 0; i < size; i++)
+	    projections[i] = new ArrayList<String>(_veList.size());
+	for (final ValueExpression ve : _veList)
+	    for (int i = 0; i < size; i++)
+		projections[i].add(ve.evalString(batch.getTuple(selection[i])));
+	for (int i = 0; i < size; i++)
+	    batch.setTuple(selection[i], projections[i]);
+    }
+
     @Override
     public String toString() {
 	final StringBuilder sb = new StringBuilder();
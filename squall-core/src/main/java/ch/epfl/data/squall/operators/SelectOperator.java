@@ -21,13 +21,16 @@ package ch.epfl.data.squall.operators;
 
 import java.util.List;
 
+import ch.epfl.data.squall.codegen.PredicateCompiler;
 import ch.epfl.data.squall.predicates.Predicate;
 import ch.epfl.data.squall.visitors.OperatorVisitor;
 
-public class SelectOperator implements Operator {
+public class SelectOperator implements Operator, BatchOperator {
     private static final long serialVersionUID = 1L;
 
     private final Predicate _predicate;
+    // generated in the JVM of the task, see compile
+    private transient Predicate _compiled;
 
     private int _numTuplesProcessed = 0;
 
@@ -40,6 +43,13 @@ public class SelectOperator implements Operator {
 	ov.visit(this);
     }
 
+    /*
+     * Replaces the interpreted test of single tuples by generated bytecode
+     */
+    public void compile() {
+	_compiled = PredicateCompiler.compile(_predicate);
+    }
+
     @Override
     public List<String> getContent() {
 	throw new RuntimeException(
@@ -69,12 +79,20 @@ public class SelectOperator implements Operator {
     @Override
     public List<String> process(List<String> tuple, long lineageTimestamp) {
 	_numTuplesProcessed++;
-	if (_predicate.test(tuple))
+	final Predicate predicate = _compiled != null ? _compiled : _predicate;
+	if (predicate.test(tuple))
 	    return tuple;
 	else
 	    return null;
     }
 
+    @Override
+    public void processBatch(TupleBatch batch) {
+	_numTuplesProcessed += batch.getSelectedCount();
+	batch.setSelectedCount(TupleBatch.test(_predicate, batch,
+		batch.getSelection(), batch.getSelectedCount()));
+    }
+
     @Override
     public String toString() {
 	final StringBuilder sb = new StringBuilder();
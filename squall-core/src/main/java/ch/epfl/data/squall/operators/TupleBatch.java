@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.operators;
+
+import java.util.List;
+
+import ch.epfl.data.squall.predicates.BatchPredicate;
+import ch.epfl.data.squall.predicates.Predicate;
+
+/**
+ * A batch of tuples for batch-at-a-time execution (see BatchOperator). The
+ * rows stay the tuples they were read as, and a selection vector holds the
+ * rows which are still alive, in ascending order. A filter only compacts the
+ * selection vector, so no list is allocated or copied for a dropped row.
+ * Column values are read with getValue, which lets predicates and expressions
+ * work column by column over the selected rows.
+ */
+public class TupleBatch {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final List<String>[] _tuples;
+    private final long[] _lineageTimestamps;
+    private final int[] _selection;
+    private int _size = 0;
+    private int _selectedCount = 0;
+
+    public TupleBatch() {
+	this(DEFAULT_CAPACITY);
+    }
+
+    public TupleBatch(int capacity) {
+	_tuples = new List[capacity];
+	_lineageTimestamps = new long[capacity];
+	_selection = new int[capacity];
+    }
+
+    /*
+     * Rows can be added only before the batch is processed
+     */
+    public void add(List<String> tuple, long lineageTimestamp) {
+	if (_selectedCount != _size)
+	    throw new RuntimeException(
+		    "Cannot add a tuple to an already processed batch!");
+	_tuples[_size] = tuple;
+	_lineageTimestamps[_size] = lineageTimestamp;
+	_selection[_size] = _size;
+	_size++;
+	_selectedCount++;
+    }
+
+    public int capacity() {
+	return _tuples.length;
+    }
+
+    public void clear() {
+	for (int i = 0; i < _size; i++)
+	    _tuples[i] = null;
+	_size = 0;
+	_selectedCount = 0;
+    }
+
+    public long getLineageTimestamp(int row) {
+	return _lineageTimestamps[row];
+    }
+
+    public int getSelectedCount() {
+	return _selectedCount;
+    }
+
+    /*
+     * The first getSelectedCount() positions are the alive rows
+     */
+    public int[] getSelection() {
+	return _selection;
+    }
+
+    public List<String> getTuple(int row) {
+	return _tuples[row];
+    }
+
+    public String getValue(int row, int columnIndex) {
+	return _tuples[row].get(columnIndex);
+    }
+
+    public boolean isEmpty() {
+	return _size == 0;
+    }
+
+    public boolean isFull() {
+	return _size == _tuples.length;
+    }
+
+    /*
+     * Fallback for the operators which have no batch implementation: each
+     * selected row goes through process, and is dropped if it returns null
+     */
+    public void process(Operator operator) {
+	int kept = 0;
+	for (int i = 0; i < _selectedCount; i++) {
+	    final int row = _selection[i];
+	    final List<String> result = operator.process(_tuples[row],
+		    _lineageTimestamps[row]);
+	    if (result != null) {
+		_tuples[row] = result;
+		_selection[kept++] = row;
+	    }
+	}
+	_selectedCount = kept;
+    }
+
+    public void setSelectedCount(int selectedCount) {
+	_selectedCount = selectedCount;
+    }
+
+    public void setTuple(int row, List<String> tuple) {
+	_tuples[row] = tuple;
+    }
+
+    public int size() {
+	return _size;
+    }
+
+    /*
+     * Keeps in selection[0, size) the rows which satisfy the predicate, and
+     * returns how many there are. Predicates which are not BatchPredicates
+     * are tested row by row.
+     */
+    public static int test(Predicate predicate, TupleBatch batch,
+	    int[] selection, int size) {
+	if (predicate instanceof BatchPredicate)
+	    return ((BatchPredicate) predicate).test(batch, selection, size);
+	int kept = 0;
+	for (int i = 0; i < size; i++)
+	    if (predicate.test(batch.getTuple(selection[i])))
+		selection[kept++] = selection[i];
+	return kept;
+    }
+}
@@ -23,9 +23,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import ch.epfl.data.squall.operators.TupleBatch;
 import ch.epfl.data.squall.visitors.PredicateVisitor;
 
-public class AndPredicate implements Predicate {
+public class AndPredicate implements Predicate, BatchPredicate {
     private static final long serialVersionUID = 1L;
 
     private final List<Predicate> _predicateList = new ArrayList<Predicate>();
@@ -47,6 +48,16 @@ public class AndPredicate implements Predicate {
 	return _predicateList;
     }
 
+    @Override
+    public int test(TupleBatch batch, int[] selection, int size) {
+	for (final Predicate pred : _predicateList) {
+	    if (size == 0)
+		break;
+	    size = TupleBatch.test(pred, batch, selection, size);
+	}
+	return size;
+    }
+
     @Override
     public boolean test(List<String> tupleValues) {
 	for (final Predicate pred : _predicateList)
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.predicates;
+
+import ch.epfl.data.squall.operators.TupleBatch;
+
+/*
+ * A predicate which can be tested on the rows of a TupleBatch at once. The
+ * rows to test are selection[0, size); the ones which satisfy the predicate
+ * are moved to the front of selection, in the same order, and their number is
+ * returned.
+ */
+public interface BatchPredicate {
+    public int test(TupleBatch batch, int[] selection, int size);
+}
@@ -25,11 +25,13 @@ import java.util.List;
 import org.apache.log4j.Logger;
 
 import ch.epfl.data.squall.expressions.ValueExpression;
+import ch.epfl.data.squall.operators.TupleBatch;
 import ch.epfl.data.squall.visitors.PredicateVisitor;
 
 /* This class is syntactic sugar for complex AndPredicate
  */
-public class BetweenPredicate<T extends Comparable<T>> implements Predicate {
+public class BetweenPredicate<T extends Comparable<T>> implements
+	Predicate, BatchPredicate {
     /**
 	 * 
 	 */
@@ -69,6 +71,11 @@ public class BetweenPredicate<T extends Comparable<T>> implements Predicate {
 	return result;
     }
 
+    @Override
+    public int test(TupleBatch batch, int[] selection, int size) {
+	return TupleBatch.test(_and, batch, selection, size);
+    }
+
     @Override
     public boolean test(List<String> tupleValues) {
 	return _and.test(tupleValues);
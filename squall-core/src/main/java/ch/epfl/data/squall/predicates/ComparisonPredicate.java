@@ -23,14 +23,17 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ch.epfl.data.squall.expressions.Addition;
+import ch.epfl.data.squall.expressions.BatchEvaluator;
 import ch.epfl.data.squall.expressions.ValueExpression;
 import ch.epfl.data.squall.expressions.ValueSpecification;
+import ch.epfl.data.squall.operators.TupleBatch;
 import ch.epfl.data.squall.types.IntegerType;
 import ch.epfl.data.squall.types.NumericType;
 import ch.epfl.data.squall.types.Type;
 import ch.epfl.data.squall.visitors.PredicateVisitor;
 
-public class ComparisonPredicate<T extends Comparable<T>> implements Predicate {
+public class ComparisonPredicate<T extends Comparable<T>> implements
+	Predicate, BatchPredicate {
     public static void main(String[] args) {
 	ComparisonPredicate<Integer> comparison = new ComparisonPredicate<Integer>(
 		ComparisonPredicate.SYM_BAND_WITH_BOUNDS_OP, 10,
@@ -149,6 +152,9 @@ public class ComparisonPredicate<T extends Comparable<T>> implements Predicate {
 
     private int _operation;
 
+    // columns of the numeric sides in test(batch), reused across batches
+    private transient double[] _column1, _column2;
+
     // for other operations
     public ComparisonPredicate(int op) {
 	_operation = op;
@@ -377,6 +383,25 @@ public class ComparisonPredicate<T extends Comparable<T>> implements Predicate {
 	return result;
     }
 
+    private boolean isSatisfied(int compared) {
+	switch (_operation) {
+	case EQUAL_OP:
+	    return compared == 0;
+	case NONEQUAL_OP:
+	    return compared != 0;
+	case LESS_OP:
+	    return compared < 0;
+	case NONLESS_OP:
+	    return compared >= 0;
+	case GREATER_OP:
+	    return compared > 0;
+	case NONGREATER_OP:
+	    return compared <= 0;
+	default:
+	    throw new RuntimeException("Unsupported operation " + _operation);
+	}
+    }
+
     @Override
     public boolean test(List<String> tupleValues) {
 	Comparable val1 = _ve1.eval(tupleValues);
@@ -449,6 +474,32 @@ public class ComparisonPredicate<T extends Comparable<T>> implements Predicate {
 	return result;
     }
 
+    /*
+     * Numeric sides are computed column by column and compared as doubles,
+     * as test(tupleValues) does for Long; the other sides are compared row by
+     * row.
+     */
+    @Override
+    public int test(TupleBatch batch, int[] selection, int size) {
+	int kept = 0;
+	if (BatchEvaluator.isBatchNumeric(_ve1)
+		&& BatchEvaluator.isBatchNumeric(_ve2)) {
+	    _column1 = BatchEvaluator.evalBatch(_ve1, batch, selection, size,
+		    _column1);
+	    _column2 = BatchEvaluator.evalBatch(_ve2, batch, selection, size,
+		    _column2);
+	    final double[] column1 = _column1;
+	    final double[] column2 = _column2;
+	    for (int i = 0; i < size; i++)
+		if (isSatisfied(Double.compare(column1[i], column2[i])))
+		    selection[kept++] = selection[i];
+	} else
+	    for (int i = 0; i < size; i++)
+		if (test(batch.getTuple(selection[i])))
+		    selection[kept++] = selection[i];
+	return kept;
+    }
+
     // used for direct key comparison
     public boolean test(T key1, T key2) {
 	final int compared = key1.compareTo(key2);
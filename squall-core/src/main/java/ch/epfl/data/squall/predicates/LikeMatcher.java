@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.predicates;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A LIKE pattern, compiled once into the cheapest test which decides it:
+ * equality, prefix or suffix comparison, a search of a single needle, or, for
+ * several '%'-separated segments, a left-to-right search of each segment
+ * (the leftmost match of a segment never prevents the following ones from
+ * matching, so no backtracking is needed). Needles are searched with the
+ * Horspool skip table, in which '_' matches any character. Matching
+ * allocates nothing.
+ */
+public abstract class LikeMatcher implements Serializable {
+
+    private static class AnyMatcher extends LikeMatcher {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public boolean matches(String value) {
+	    return true;
+	}
+    }
+
+    private static class ContainsMatcher extends LikeMatcher {
+	private static final long serialVersionUID = 1L;
+	private final Segment _needle;
+
+	private ContainsMatcher(Segment needle) {
+	    _needle = needle;
+	}
+
+	@Override
+	public boolean matches(String value) {
+	    return _needle.indexIn(value, 0, value.length()) >= 0;
+	}
+    }
+
+    private static class ExactMatcher extends LikeMatcher {
+	private static final long serialVersionUID = 1L;
+	private final String _literal;
+
+	private ExactMatcher(String literal) {
+	    _literal = literal;
+	}
+
+	@Override
+	public boolean matches(String value) {
+	    return _literal.equals(value);
+	}
+    }
+
+    private static class PrefixMatcher extends LikeMatcher {
+	private static final long serialVersionUID = 1L;
+	private final String _prefix;
+
+	private PrefixMatcher(String prefix) {
+	    _prefix = prefix;
+	}
+
+	@Override
+	public boolean matches(String value) {
+	    return value.startsWith(_prefix);
+	}
+    }
+
+    /*
+     * A part of the pattern between two '%'; '_' is kept as a wildcard
+     */
+    private static class Segment implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final int SKIP_TABLE_SIZE = 256;
+
+	private final char[] _chars;
+	private final boolean[] _wildcards;
+	private final boolean _hasWildcard;
+	// shift of the search window by its last character, hashed
+	private final int[] _skip = new int[SKIP_TABLE_SIZE];
+
+	private Segment(char[] chars, boolean[] wildcards) {
+	    _chars = chars;
+	    _wildcards = wildcards;
+	    final int length = chars.length;
+	    int lastWildcard = -1;
+	    boolean hasWildcard = false;
+	    for (int i = 0; i < length; i++)
+		if (wildcards[i]) {
+		    hasWildcard = true;
+		    if (i < length - 1)
+			lastWildcard = i;
+		}
+	    _hasWildcard = hasWildcard;
+	    // a wildcard matches any last character
+	    final int defaultShift = lastWildcard >= 0 ? length - 1
+		    - lastWildcard : Math.max(length, 1);
+	    for (int i = 0; i < SKIP_TABLE_SIZE; i++)
+		_skip[i] = defaultShift;
+	    // colliding characters keep the smallest shift
+	    for (int i = 0; i < length - 1; i++)
+		if (!wildcards[i]) {
+		    final int bucket = chars[i] & (SKIP_TABLE_SIZE - 1);
+		    _skip[bucket] = Math.min(_skip[bucket], length - 1 - i);
+		}
+	}
+
+	/*
+	 * The first position in [from, to) at which the segment matches
+	 * entirely, or -1
+	 */
+	private int indexIn(String value, int from, int to) {
+	    final int length = _chars.length;
+	    final int last = length - 1;
+	    if (length == 0)
+		return from <= to ? from : -1;
+	    int start = from;
+	    while (start + length <= to) {
+		final char lastChar = value.charAt(start + last);
+		if ((_wildcards[last] || lastChar == _chars[last])
+			&& matchesAt(value, start))
+		    return start;
+		start += _skip[lastChar & (SKIP_TABLE_SIZE - 1)];
+	    }
+	    return -1;
+	}
+
+	private int length() {
+	    return _chars.length;
+	}
+
+	private boolean matchesAt(String value, int start) {
+	    for (int i = 0; i < _chars.length; i++)
+		if (!_wildcards[i] && value.charAt(start + i) != _chars[i])
+		    return false;
+	    return true;
+	}
+    }
+
+    /*
+     * The first segment is anchored at the beginning of the value, the last
+     * one at its end, and the others are searched in between
+     */
+    private static class SegmentsMatcher extends LikeMatcher {
+	private static final long serialVersionUID = 1L;
+	private final Segment[] _segments;
+	private final int _minLength;
+
+	private SegmentsMatcher(Segment[] segments) {
+	    _segments = segments;
+	    int minLength = 0;
+	    for (final Segment segment : segments)
+		minLength += segment.length();
+	    _minLength = minLength;
+	}
+
+	@Override
+	public boolean matches(String value) {
+	    final int length = value.length();
+	    if (length < _minLength)
+		return false;
+	    final Segment head = _segments[0];
+	    if (_segments.length == 1)
+		return length == head.length() && head.matchesAt(value, 0);
+	    final Segment tail = _segments[_segments.length - 1];
+	    final int to = length - tail.length();
+	    if (!head.matchesAt(value, 0) || !tail.matchesAt(value, to))
+		return false;
+	    int from = head.length();
+	    for (int i = 1; i < _segments.length - 1; i++) {
+		final int found = _segments[i].indexIn(value, from, to);
+		if (found < 0)
+		    return false;
+		from = found + _segments[i].length();
+	    }
+	    return true;
+	}
+    }
+
+    private static class SuffixMatcher extends LikeMatcher {
+	private static final long serialVersionUID = 1L;
+	private final String _suffix;
+
+	private SuffixMatcher(String suffix) {
+	    _suffix = suffix;
+	}
+
+	@Override
+	public boolean matches(String value) {
+	    return value.endsWith(_suffix);
+	}
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * escape is the character which makes the next one literal, or null
+     */
+    public static LikeMatcher compile(String pattern, Character escape) {
+	// the parts between the '%'s, including the empty ones at the ends
+	final List<Segment> parts = new ArrayList<Segment>();
+	final StringBuilder chars = new StringBuilder();
+	final List<Boolean> wildcards = new ArrayList<Boolean>();
+	for (int i = 0; i < pattern.length(); i++) {
+	    final char c = pattern.charAt(i);
+	    if (escape != null && c == escape.charValue()) {
+		if (++i == pattern.length())
+		    throw new RuntimeException("LIKE pattern " + pattern
+			    + " ends with the escape character!");
+		chars.append(pattern.charAt(i));
+		wildcards.add(false);
+	    } else if (c == '%') {
+		parts.add(segment(chars, wildcards));
+		chars.setLength(0);
+		wildcards.clear();
+	    } else {
+		chars.append(c);
+		wildcards.add(c == '_');
+	    }
+	}
+	parts.add(segment(chars, wildcards));
+
+	final Segment head = parts.get(0);
+	final Segment tail = parts.get(parts.size() - 1);
+	// the empty segments in the middle come from '%%'
+	final List<Segment> segments = new ArrayList<Segment>();
+	segments.add(head);
+	boolean hasWildcard = head._hasWildcard;
+	for (int i = 1; i < parts.size() - 1; i++)
+	    if (parts.get(i).length() > 0) {
+		segments.add(parts.get(i));
+		hasWildcard |= parts.get(i)._hasWildcard;
+	    }
+	if (parts.size() > 1) {
+	    segments.add(tail);
+	    hasWildcard |= tail._hasWildcard;
+	}
+
+	if (!hasWildcard) {
+	    if (parts.size() == 1)
+		return new ExactMatcher(new String(head._chars));
+	    if (segments.size() == 2 && tail.length() == 0)
+		return head.length() == 0 ? new AnyMatcher()
+			: new PrefixMatcher(new String(head._chars));
+	    if (segments.size() == 2 && head.length() == 0)
+		return new SuffixMatcher(new String(tail._chars));
+	}
+	if (segments.size() == 3 && head.length() == 0 && tail.length() == 0)
+	    return new ContainsMatcher(segments.get(1));
+	return new SegmentsMatcher(segments.toArray(new Segment[segments
+		.size()]));
+    }
+
+    private static Segment segment(StringBuilder chars,
+	    List<Boolean> wildcards) {
+	final char[] segmentChars = new char[chars.length()];
+	chars.getChars(0, chars.length(), segmentChars, 0);
+	final boolean[] segmentWildcards = new boolean[wildcards.size()];
+	for (int i = 0; i < segmentWildcards.length; i++)
+	    segmentWildcards[i] = wildcards.get(i);
+	return new Segment(segmentChars, segmentWildcards);
+    }
+
+    public abstract boolean matches(String value);
+}
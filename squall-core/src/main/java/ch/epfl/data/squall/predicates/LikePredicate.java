@@ -24,31 +24,48 @@ import java.util.List;
 
 import ch.epfl.data.squall.expressions.ValueExpression;
 import ch.epfl.data.squall.expressions.ValueSpecification;
-import ch.epfl.data.squall.types.StringType;
+import ch.epfl.data.squall.operators.TupleBatch;
 import ch.epfl.data.squall.visitors.PredicateVisitor;
 
 /*
- * ve1 LIKE ve2 (bigger smaller)
- * WORKS ONLY for pattern '%value%'
+ * ve1 [NOT] LIKE ve2, where ve2 is the pattern. A constant pattern is
+ * compiled once into a LikeMatcher; otherwise the matcher of the last
+ * pattern is reused as long as the pattern does not change.
  */
-public class LikePredicate implements Predicate {
+public class LikePredicate implements Predicate, BatchPredicate {
     /**
 	 * 
 	 */
     private static final long serialVersionUID = 1L;
     private final ValueExpression<String> _ve1;
-    private ValueExpression<String> _ve2;
+    private final ValueExpression<String> _ve2;
+    private final boolean _isNot;
+    private final Character _escape;
+    // null if the pattern is not a constant
+    private final LikeMatcher _matcher;
+
+    private transient String _lastPattern;
+    private transient LikeMatcher _lastMatcher;
 
     public LikePredicate(ValueExpression<String> ve1,
 	    ValueExpression<String> ve2) {
+	this(ve1, ve2, false, null);
+    }
+
+    /*
+     * escape is the character which makes the next one of the pattern
+     * literal, or null
+     */
+    public LikePredicate(ValueExpression<String> ve1,
+	    ValueExpression<String> ve2, boolean isNot, Character escape) {
 	_ve1 = ve1;
 	_ve2 = ve2;
-	// WORKS ONLY for pattern '%value%'
-	if (_ve2 instanceof ValueSpecification) {
-	    String value = _ve2.eval(null);
-	    value = value.replace("%", "");
-	    _ve2 = new ValueSpecification<String>(new StringType(), value);
-	}
+	_isNot = isNot;
+	_escape = escape;
+	if (_ve2 instanceof ValueSpecification)
+	    _matcher = LikeMatcher.compile(_ve2.eval(null), escape);
+	else
+	    _matcher = null;
     }
 
     @Override
@@ -68,26 +85,57 @@ public class LikePredicate implements Predicate {
 	return new ArrayList<Predicate>();
     }
 
+    public boolean isNot() {
+	return _isNot;
+    }
+
+    private LikeMatcher matcher(String pattern) {
+	if (!pattern.equals(_lastPattern)) {
+	    _lastMatcher = LikeMatcher.compile(pattern, _escape);
+	    _lastPattern = pattern;
+	}
+	return _lastMatcher;
+    }
+
+    @Override
+    public int test(TupleBatch batch, int[] selection, int size) {
+	int kept = 0;
+	if (_matcher != null) {
+	    // the pattern is the same for the whole batch
+	    for (int i = 0; i < size; i++) {
+		final String val1 = _ve1.eval(batch.getTuple(selection[i]));
+		if (_matcher.matches(val1) != _isNot)
+		    selection[kept++] = selection[i];
+	    }
+	} else
+	    for (int i = 0; i < size; i++)
+		if (test(batch.getTuple(selection[i])))
+		    selection[kept++] = selection[i];
+	return kept;
+    }
+
     @Override
     public boolean test(List<String> tupleValues) {
 	final String val1 = _ve1.eval(tupleValues);
-	final String val2 = _ve2.eval(tupleValues);
-	return val1.contains(val2);
+	final LikeMatcher matcher = _matcher != null ? _matcher
+		: matcher(_ve2.eval(tupleValues));
+	return matcher.matches(val1) != _isNot;
     }
 
     @Override
     public boolean test(List<String> firstTupleValues,
 	    List<String> secondTupleValues) {
 	final String val1 = _ve1.eval(firstTupleValues);
-	final String val2 = _ve2.eval(firstTupleValues);
-	return val1.contains(val2);
+	final LikeMatcher matcher = _matcher != null ? _matcher
+		: matcher(_ve2.eval(secondTupleValues));
+	return matcher.matches(val1) != _isNot;
     }
 
     @Override
     public String toString() {
 	final StringBuilder sb = new StringBuilder();
 	sb.append(_ve1.toString());
-	sb.append(" LIKE ");
+	sb.append(_isNot ? " NOT LIKE " : " LIKE ");
 	sb.append(_ve2.toString());
 	return sb.toString();
     }
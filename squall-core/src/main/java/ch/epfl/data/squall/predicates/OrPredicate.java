@@ -23,13 +23,18 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import ch.epfl.data.squall.operators.TupleBatch;
 import ch.epfl.data.squall.visitors.PredicateVisitor;
 
-public class OrPredicate implements Predicate {
+public class OrPredicate implements Predicate, BatchPredicate {
     private static final long serialVersionUID = 1L;
 
     private final List<Predicate> _predicateList = new ArrayList<Predicate>();
 
+    // scratch arrays of test(batch), reallocated only when a batch is bigger
+    private transient boolean[] _accepted;
+    private transient int[] _candidates, _tested;
+
     public OrPredicate(Predicate pred1, Predicate pred2,
 	    Predicate... predicateArray) {
 	_predicateList.add(pred1);
@@ -47,6 +52,45 @@ public class OrPredicate implements Predicate {
 	return _predicateList;
     }
 
+    /*
+     * Each inner predicate is tested only on the rows which none of the
+     * previous ones accepted
+     */
+    @Override
+    public int test(TupleBatch batch, int[] selection, int size) {
+	if (_accepted == null || _accepted.length < batch.size())
+	    _accepted = new boolean[batch.size()];
+	if (_candidates == null || _candidates.length < size) {
+	    _candidates = new int[size];
+	    _tested = new int[size];
+	}
+	final boolean[] accepted = _accepted;
+	final int[] candidates = _candidates;
+	final int[] tested = _tested;
+	for (int i = 0; i < size; i++)
+	    accepted[selection[i]] = false;
+	int remaining = size;
+	System.arraycopy(selection, 0, candidates, 0, size);
+	for (final Predicate pred : _predicateList) {
+	    if (remaining == 0)
+		break;
+	    System.arraycopy(candidates, 0, tested, 0, remaining);
+	    final int passed = TupleBatch.test(pred, batch, tested, remaining);
+	    for (int i = 0; i < passed; i++)
+		accepted[tested[i]] = true;
+	    int left = 0;
+	    for (int i = 0; i < remaining; i++)
+		if (!accepted[candidates[i]])
+		    candidates[left++] = candidates[i];
+	    remaining = left;
+	}
+	int kept = 0;
+	for (int i = 0; i < size; i++)
+	    if (accepted[selection[i]])
+		selection[kept++] = selection[i];
+	return kept;
+    }
+
     @Override
     public boolean test(List<String> tupleValues) {
 	for (final Predicate pred : _predicateList)
@@ -40,7 +40,7 @@ public class AggregationStorage<V> extends KeyValueStore<Object, V> {
     private boolean _singleEntry;
     private final Type _wrapper;
     private final AggregateOperator _outerAggOp;
-    private static final String SINGLE_ENTRY_KEY = "SEK"; /* Single entry key */
+    protected static final String SINGLE_ENTRY_KEY = "SEK"; /* Single entry key */
 
     // private static final int FINAL_AGGREGATION_TIMEOUT = 10000; /* msecs */
 
@@ -86,6 +86,19 @@ public class AggregationStorage<V> extends KeyValueStore<Object, V> {
 		.contains(data);
     }
 
+    /*
+     * A tuple as the next component receives it: (group key, value), or
+     * (value) without GROUP BY
+     */
+    protected List<String> createGroupTuple(Object key, V value) {
+	final List<String> tuple = new ArrayList<String>(2);
+	if (!_singleEntry)
+	    tuple.add(String.valueOf(key));
+	tuple.add(_wrapper != null ? _wrapper.toString(value) : String
+		.valueOf(value));
+	return tuple;
+    }
+
     @Override
     public boolean equals(BasicStore store) {
 	return super.equals(store);
@@ -118,6 +131,21 @@ public class AggregationStorage<V> extends KeyValueStore<Object, V> {
 	this._singleEntry = singleEntry;
     }
 
+    /*
+     * For AggBatchOutput mode: the groups changed since the previous call,
+     * built directly from the storage. The storage is cleared, so each call
+     * returns the deltas which the next component adds to its totals.
+     */
+    public List<List<String>> takeChangedGroups() {
+	final List<List<String>> result = new ArrayList<List<String>>();
+	for (final Object key : keySet()) {
+	    final V value = super.__access(false, key).get(0);
+	    result.add(createGroupTuple(key, value));
+	}
+	reset();
+	return result;
+    }
+
     @Override
     public V update(Object... data) {
 	final Object obj = data[0];
@@ -26,6 +26,13 @@ import java.util.List;
  */
 public interface BPlusTreeStorage<KeyType> {
 
+    /*
+     * Receives the tuples of a scan one at a time
+     */
+    public interface TupleVisitor {
+	public void visit(String tuple);
+    }
+
     /**
      * Give it the operator type as defined in "ComparisonPredicate class" e.g.
      * ComparisonPredicate.EQUAL_OP, and give it key of type "KeyType" and
@@ -58,6 +65,16 @@ public interface BPlusTreeStorage<KeyType> {
      */
     public void put(KeyType key, String value);
 
+    /**
+     * The same tuples as get, which are passed to visitor as they are read
+     * instead of being collected in a list
+     * 
+     * @param operator
+     * @param key
+     * @param visitor
+     */
+    public void scan(int operator, KeyType key, int diff, TupleVisitor visitor);
+
     public void shutdown();
 
     /**
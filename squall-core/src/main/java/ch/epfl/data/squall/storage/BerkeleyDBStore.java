@@ -24,7 +24,6 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
@@ -106,12 +105,10 @@ public class BerkeleyDBStore<KeyType> implements BPlusTreeStorage<KeyType> {
 	    LongBinding.longToEntry((Long) key, keyEntry);
 	else if (key instanceof Double)
 	    DoubleBinding.doubleToEntry((Double) key, keyEntry);
-	else if (key instanceof Date) {
-	    // luckily, the order of generated Strings conforms to the order of
-	    // original Dates
-	    final Long dateLong = _dc.toLong((Date) key);
-	    LongBinding.longToEntry(dateLong, keyEntry);
-	} else
+	else if (key instanceof Date)
+	    // epoch days are in the order of the dates
+	    IntegerBinding.intToEntry(DateType.toEpochDay((Date) key), keyEntry);
+	else
 	    throw new RuntimeException("Unexpected type " + key
 		    + " in BDB.objectToEntry!");
     }
@@ -121,7 +118,6 @@ public class BerkeleyDBStore<KeyType> implements BPlusTreeStorage<KeyType> {
 
     private Database _db;
     private SecondaryDatabase _timeStampDB;
-    private static final DateType _dc = new DateType();
     private final Class<KeyType> _type;
     private int _size;
 
@@ -145,6 +141,16 @@ public class BerkeleyDBStore<KeyType> implements BPlusTreeStorage<KeyType> {
 
     }
 
+    // a visitor which appends the tuples to result
+    protected static TupleVisitor collector(final List<String> result) {
+	return new TupleVisitor() {
+	    @Override
+	    public void visit(String tuple) {
+		result.add(tuple);
+	    }
+	};
+    }
+
     private void createPath(String storagePath) {
 	try {
 	    InetAddress.getLocalHost().getCanonicalHostName();
@@ -257,10 +263,9 @@ public class BerkeleyDBStore<KeyType> implements BPlusTreeStorage<KeyType> {
 	    return LongBinding.entryToLong(keyEntry);
 	else if (_type == Double.class)
 	    return DoubleBinding.entryToDouble(keyEntry);
-	else if (_type == Date.class) {
-	    final Long dateLong = LongBinding.entryToLong(keyEntry);
-	    return _dc.fromLong(dateLong);
-	} else
+	else if (_type == Date.class)
+	    return DateType.fromEpochDay(IntegerBinding.entryToInt(keyEntry));
+	else
 	    throw new RuntimeException("Unexpected type " + _type
 		    + " in BDB.objectToEntry!");
     }
@@ -311,10 +316,8 @@ public class BerkeleyDBStore<KeyType> implements BPlusTreeStorage<KeyType> {
 	} else if (k instanceof Date) {
 	    final Date kd = (Date) k;
 	    final Integer diffd = offset;
-	    final Calendar c = Calendar.getInstance();
-	    c.setTime(kd);
-	    c.add(Calendar.DAY_OF_MONTH, diffd);
-	    result = (KeyType) c.getTime();
+	    result = (KeyType) DateType.fromEpochDay(DateType.toEpochDay(kd)
+		    + diffd);
 	} else
 	    throw new RuntimeException(
 		    "Operation in B+Tree not supported for underlying datatype "
@@ -325,35 +328,8 @@ public class BerkeleyDBStore<KeyType> implements BPlusTreeStorage<KeyType> {
     protected List<String> getRange(Object leftBoundary, boolean includeLeft,
 	    Object rightBoundary, boolean includeRight) {
 	final List<String> result = new ArrayList<String>();
-
-	// initialize left and rightBoundary
-	final DatabaseEntry keyEntry = new DatabaseEntry();
-	final DatabaseEntry dataEntry = new DatabaseEntry();
-	objectToEntry(leftBoundary, keyEntry);
-
-	// initialize cursor
-	final Cursor cursor = _db.openCursor(null, null);
-	OperationStatus status = cursor.getSearchKeyRange(keyEntry, dataEntry,
-		LockMode.DEFAULT);
-	if (status == OperationStatus.SUCCESS && !includeLeft) {
-	    // omit the first element
-	    status = cursor.getNextNoDup(keyEntry, dataEntry, LockMode.DEFAULT);
-	}
-	while (status == OperationStatus.SUCCESS) {
-	    // check if this is right of righBoundary
-	    final Object currentKey = entryToObject(keyEntry);
-	    if (!isLessEqual(currentKey, rightBoundary, includeRight))
-		break;
-
-	    // find all the data values (tuples) for the given key
-	    final String values = StringBinding.entryToString(dataEntry);
-	    final List<String> tuples = Arrays.asList(values
-		    .split(SystemParameters.BDB_TUPLE_DELIMITER));
-	    result.addAll(tuples);
-
-	    status = cursor.getNext(keyEntry, dataEntry, LockMode.DEFAULT);
-	}
-	cursor.close();
+	scanRange(leftBoundary, includeLeft, rightBoundary, includeRight,
+		collector(result));
 	return result;
     }
 
@@ -482,6 +458,68 @@ public class BerkeleyDBStore<KeyType> implements BPlusTreeStorage<KeyType> {
 	databasePut(key, value);
     }
 
+    @Override
+    public void scan(int operator, KeyType key, int diff, TupleVisitor visitor) {
+	if (operator == ComparisonPredicate.EQUAL_OP)
+	    scanEqual(key, visitor);
+	else if (operator == ComparisonPredicate.SYM_BAND_WITH_BOUNDS_OP)
+	    scanRangeIncludeEquals(key, diff, visitor);
+	else if (operator == ComparisonPredicate.SYM_BAND_NO_BOUNDS_OP)
+	    scanRangeNoEquals(key, diff, visitor);
+	else
+	    throw new RuntimeException("Unsupported OP " + operator
+		    + " in BerkeleyDBStore.");
+    }
+
+    protected void scanEqual(KeyType key, TupleVisitor visitor) {
+	final String value = getValue(key);
+	if (value != null)
+	    visitValue(value, visitor);
+    }
+
+    protected void scanRange(Object leftBoundary, boolean includeLeft,
+	    Object rightBoundary, boolean includeRight, TupleVisitor visitor) {
+	// initialize left and rightBoundary
+	final DatabaseEntry keyEntry = new DatabaseEntry();
+	final DatabaseEntry dataEntry = new DatabaseEntry();
+	objectToEntry(leftBoundary, keyEntry);
+
+	// initialize cursor
+	final Cursor cursor = _db.openCursor(null, null);
+	OperationStatus status = cursor.getSearchKeyRange(keyEntry, dataEntry,
+		LockMode.DEFAULT);
+	if (status == OperationStatus.SUCCESS && !includeLeft) {
+	    // omit the first element
+	    status = cursor.getNextNoDup(keyEntry, dataEntry, LockMode.DEFAULT);
+	}
+	while (status == OperationStatus.SUCCESS) {
+	    // check if this is right of righBoundary
+	    final Object currentKey = entryToObject(keyEntry);
+	    if (!isLessEqual(currentKey, rightBoundary, includeRight))
+		break;
+
+	    // visit all the data values (tuples) for the given key
+	    visitValue(StringBinding.entryToString(dataEntry), visitor);
+
+	    status = cursor.getNext(keyEntry, dataEntry, LockMode.DEFAULT);
+	}
+	cursor.close();
+    }
+
+    protected void scanRangeIncludeEquals(KeyType key, int diff,
+	    TupleVisitor visitor) {
+	final KeyType leftBoundary = getKeyOffset(key, -diff);
+	final KeyType rightBoundary = getKeyOffset(key, diff);
+	scanRange(leftBoundary, true, rightBoundary, true, visitor);
+    }
+
+    protected void scanRangeNoEquals(KeyType key, int diff,
+	    TupleVisitor visitor) {
+	final KeyType leftBoundary = getKeyOffset(key, -diff);
+	final KeyType rightBoundary = getKeyOffset(key, diff);
+	scanRange(leftBoundary, false, rightBoundary, false, visitor);
+    }
+
     @Override
     public void shutdown() {
 	if (_timeStampDB != null)
@@ -636,4 +674,19 @@ public class BerkeleyDBStore<KeyType> implements BPlusTreeStorage<KeyType> {
 	    System.out.println("For key = C, value = " + tuple);
 
     }
+
+    /*
+     * Visits the tuples of a stored value one at a time, so that the value
+     * of a skewed key is not split into a huge array
+     */
+    private void visitValue(String value, TupleVisitor visitor) {
+	final String delimiter = SystemParameters.BDB_TUPLE_DELIMITER;
+	int start = 0, end;
+	while ((end = value.indexOf(delimiter, start)) >= 0) {
+	    visitor.visit(value.substring(start, end));
+	    start = end + delimiter.length();
+	}
+	if (start < value.length())
+	    visitor.visit(value.substring(start));
+    }
 }
@@ -20,7 +20,6 @@
 package ch.epfl.data.squall.storage;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -71,7 +70,6 @@ public class BerkeleyDBStoreSkewed<KeyType> extends BerkeleyDBStore<KeyType> {
 
     private static Logger LOG = Logger.getLogger(BerkeleyDBStoreSkewed.class);
 
-    private final DateType _dc = new DateType();
     private Random randomGen = new Random();
 
     private int DISPERSION = 10000;
@@ -101,41 +99,23 @@ public class BerkeleyDBStoreSkewed<KeyType> extends BerkeleyDBStore<KeyType> {
 
     @Override
     protected List<String> getEqual(KeyType key) {
-	// a < x < b is equivalent to a+1 <= x <= b-1
-	// TODO does not work correctly for DOUBLES !!!!
-	// More efficient than to extract logical key from the key + random
-	final Object leftBoundary = logicalToPhysicalBound(key);
-	final Object rightBoundary = logicalToPhysicalBound(getKeyOffset(key, 1));
-	final List<String> values = getRange(leftBoundary, true, rightBoundary,
-		false);
-
-	List<String> tuples = (values != null ? new ArrayList<String>() : null);
-	for (String value : values) {
-	    tuples.addAll(Arrays.asList(value
-		    .split(SystemParameters.BDB_TUPLE_DELIMITER)));
-	}
+	final List<String> tuples = new ArrayList<String>();
+	scanEqual(key, collector(tuples));
 	return tuples;
     }
 
     @Override
     protected List<String> getRangeIncludeEquals(KeyType key, int diff) {
-	final Object leftBoundary = logicalToPhysicalBound(getKeyOffset(key,
-		-diff));
-	final Object rightBoundary = logicalToPhysicalBound(getKeyOffset(key,
-		diff + 1));
-	return getRange(leftBoundary, true, rightBoundary, false);
+	final List<String> tuples = new ArrayList<String>();
+	scanRangeIncludeEquals(key, diff, collector(tuples));
+	return tuples;
     }
 
     @Override
     protected List<String> getRangeNoEquals(KeyType key, int diff) {
-	// a < x < b is equivalent to a+1 <= x <= b-1
-	// TODO does not work correctly for DOUBLES !!!!
-	// More efficient than to extract logical key from the key + random
-	final Object leftBoundary = logicalToPhysicalBound(getKeyOffset(key,
-		-(diff - 1)));
-	final Object rightBoundary = logicalToPhysicalBound(getKeyOffset(key,
-		(diff - 1 + 1)));
-	return getRange(leftBoundary, true, rightBoundary, false);
+	final List<String> tuples = new ArrayList<String>();
+	scanRangeNoEquals(key, diff, collector(tuples));
+	return tuples;
     }
 
     private Object logicalToPhysicalBound(Object key) {
@@ -150,9 +130,8 @@ public class BerkeleyDBStoreSkewed<KeyType> extends BerkeleyDBStore<KeyType> {
 	    throw new RuntimeException("Unexpected type " + key
 		    + " in BDB.objectToEntry!");
 	} else if (key instanceof Date) {
-	    // luckily, the order of generated Strings conforms to the order of
-	    // original Dates
-	    final Long dateLong = _dc.toLong((Date) key);
+	    // epoch days are in the order of the dates
+	    final Long dateLong = (long) DateType.toEpochDay((Date) key);
 	    return logicalToPhysicalBound(dateLong);
 	} else {
 	    throw new RuntimeException("Unexpected type " + key
@@ -184,9 +163,8 @@ public class BerkeleyDBStoreSkewed<KeyType> extends BerkeleyDBStore<KeyType> {
 	    throw new RuntimeException("Unexpected type " + key
 		    + " in BDB.objectToEntry!");
 	} else if (key instanceof Date) {
-	    // luckily, the order of generated Strings conforms to the order of
-	    // original Dates
-	    final Long dateLong = _dc.toLong((Date) key);
+	    // epoch days are in the order of the dates
+	    final Long dateLong = (long) DateType.toEpochDay((Date) key);
 	    return rndExtendKey(dateLong);
 	} else {
 	    throw new RuntimeException("Unexpected type " + key
@@ -194,4 +172,37 @@ public class BerkeleyDBStoreSkewed<KeyType> extends BerkeleyDBStore<KeyType> {
 	}
     }
 
+    @Override
+    protected void scanEqual(KeyType key, TupleVisitor visitor) {
+	// a < x < b is equivalent to a+1 <= x <= b-1
+	// TODO does not work correctly for DOUBLES !!!!
+	// More efficient than to extract logical key from the key + random
+	final Object leftBoundary = logicalToPhysicalBound(key);
+	final Object rightBoundary = logicalToPhysicalBound(getKeyOffset(key, 1));
+	scanRange(leftBoundary, true, rightBoundary, false, visitor);
+    }
+
+    @Override
+    protected void scanRangeIncludeEquals(KeyType key, int diff,
+	    TupleVisitor visitor) {
+	final Object leftBoundary = logicalToPhysicalBound(getKeyOffset(key,
+		-diff));
+	final Object rightBoundary = logicalToPhysicalBound(getKeyOffset(key,
+		diff + 1));
+	scanRange(leftBoundary, true, rightBoundary, false, visitor);
+    }
+
+    @Override
+    protected void scanRangeNoEquals(KeyType key, int diff,
+	    TupleVisitor visitor) {
+	// a < x < b is equivalent to a+1 <= x <= b-1
+	// TODO does not work correctly for DOUBLES !!!!
+	// More efficient than to extract logical key from the key + random
+	final Object leftBoundary = logicalToPhysicalBound(getKeyOffset(key,
+		-(diff - 1)));
+	final Object rightBoundary = logicalToPhysicalBound(getKeyOffset(key,
+		(diff - 1 + 1)));
+	scanRange(leftBoundary, true, rightBoundary, false, visitor);
+    }
+
 }
\ No newline at end of file
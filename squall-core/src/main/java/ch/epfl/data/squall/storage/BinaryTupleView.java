@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.data.squall.utilities.BinaryTupleFormat;
+
+/**
+ * Read-only view over a tuple in the BinaryTupleFormat which lives in a
+ * ByteBuffer. Numeric fields are read in place, without building a String.
+ * The same view can be repositioned over many tuples (flyweight). As a List,
+ * the fields are decoded only when they are read, so that a join can test its
+ * predicate on a stored tuple before copying it out of the storage.
+ */
+public class BinaryTupleView extends AbstractList<String> {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private ByteBuffer _buffer;
+    private int _start;
+    private int _size;
+    // _fieldOffsets[i] is the position of the tag of the i-th field
+    private int[] _fieldOffsets = new int[16];
+
+    @Override
+    public String get(int index) {
+	if (index < 0 || index >= _size)
+	    throw new IndexOutOfBoundsException("Field " + index + " of a "
+		    + _size + "-field tuple");
+	return getString(index);
+    }
+
+    public double getDouble(int index) {
+	final int offset = _fieldOffsets[index];
+	switch (_buffer.get(offset)) {
+	case BinaryTupleFormat.TAG_DOUBLE:
+	    return _buffer.getDouble(offset + 1);
+	case BinaryTupleFormat.TAG_INT:
+	case BinaryTupleFormat.TAG_DATE:
+	    return _buffer.getInt(offset + 1);
+	case BinaryTupleFormat.TAG_LONG:
+	    return _buffer.getLong(offset + 1);
+	default:
+	    return Double.parseDouble(getString(index));
+	}
+    }
+
+    public long getLong(int index) {
+	final int offset = _fieldOffsets[index];
+	switch (_buffer.get(offset)) {
+	case BinaryTupleFormat.TAG_INT:
+	case BinaryTupleFormat.TAG_DATE:
+	    return _buffer.getInt(offset + 1);
+	case BinaryTupleFormat.TAG_LONG:
+	    return _buffer.getLong(offset + 1);
+	default:
+	    return Long.parseLong(getString(index));
+	}
+    }
+
+    public String getString(int index) {
+	final int offset = _fieldOffsets[index];
+	final byte tag = _buffer.get(offset);
+	if (tag == BinaryTupleFormat.TAG_STRING) {
+	    int position = offset + 1;
+	    int length = 0;
+	    int shift = 0;
+	    byte b;
+	    do {
+		b = _buffer.get(position++);
+		length |= (b & 0x7F) << shift;
+		shift += 7;
+	    } while ((b & 0x80) != 0);
+	    final byte[] bytes = new byte[length];
+	    final ByteBuffer duplicate = _buffer.duplicate();
+	    duplicate.position(position);
+	    duplicate.get(bytes);
+	    return new String(bytes, UTF8);
+	}
+	switch (tag) {
+	case BinaryTupleFormat.TAG_NULL:
+	    return null;
+	case BinaryTupleFormat.TAG_INT:
+	    return Integer.toString(_buffer.getInt(offset + 1));
+	case BinaryTupleFormat.TAG_LONG:
+	    return Long.toString(_buffer.getLong(offset + 1));
+	case BinaryTupleFormat.TAG_DOUBLE:
+	    return Double.toString(_buffer.getDouble(offset + 1));
+	case BinaryTupleFormat.TAG_DATE:
+	    return BinaryTupleFormat.daysToDate(_buffer.getInt(offset + 1));
+	default:
+	    throw new RuntimeException("Unknown binary tuple tag " + tag);
+	}
+    }
+
+    public byte getTag(int index) {
+	return _buffer.get(_fieldOffsets[index]);
+    }
+
+    private int fieldLength(int offset) {
+	switch (_buffer.get(offset)) {
+	case BinaryTupleFormat.TAG_NULL:
+	    return 1;
+	case BinaryTupleFormat.TAG_INT:
+	case BinaryTupleFormat.TAG_DATE:
+	    return 5;
+	case BinaryTupleFormat.TAG_LONG:
+	case BinaryTupleFormat.TAG_DOUBLE:
+	    return 9;
+	case BinaryTupleFormat.TAG_STRING:
+	    int position = offset + 1;
+	    int length = 0;
+	    int shift = 0;
+	    byte b;
+	    do {
+		b = _buffer.get(position++);
+		length |= (b & 0x7F) << shift;
+		shift += 7;
+	    } while ((b & 0x80) != 0);
+	    return position - offset + length;
+	default:
+	    throw new RuntimeException("Unknown binary tuple tag "
+		    + _buffer.get(offset));
+	}
+    }
+
+    public boolean isNull(int index) {
+	return getTag(index) == BinaryTupleFormat.TAG_NULL;
+    }
+
+    /*
+     * Positions the view over the tuple starting at start in buffer
+     */
+    public BinaryTupleView reset(ByteBuffer buffer, int start) {
+	_buffer = buffer;
+	_start = start;
+	int position = start;
+	int size = 0;
+	int shift = 0;
+	byte b;
+	do {
+	    b = buffer.get(position++);
+	    size |= (b & 0x7F) << shift;
+	    shift += 7;
+	} while ((b & 0x80) != 0);
+	_size = size;
+	if (_fieldOffsets.length < size)
+	    _fieldOffsets = new int[Math.max(size, 2 * _fieldOffsets.length)];
+	for (int i = 0; i < size; i++) {
+	    _fieldOffsets[i] = position;
+	    position += fieldLength(position);
+	}
+	return this;
+    }
+
+    @Override
+    public int size() {
+	return _size;
+    }
+
+    private byte[] toBytes(int offset, int length) {
+	final byte[] bytes = new byte[length];
+	final ByteBuffer duplicate = _buffer.duplicate();
+	duplicate.position(offset);
+	duplicate.get(bytes);
+	return bytes;
+    }
+
+    public List<String> toTuple() {
+	if (_size == 0)
+	    return new ArrayList<String>();
+	final int end = _fieldOffsets[_size - 1]
+		+ fieldLength(_fieldOffsets[_size - 1]);
+	return BinaryTupleFormat.decode(toBytes(_start, end - _start));
+    }
+}
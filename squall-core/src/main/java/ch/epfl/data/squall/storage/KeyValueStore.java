@@ -28,6 +28,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
 
@@ -45,10 +46,18 @@ public class KeyValueStore<K, V> extends BasicStore<V> {
     private Type _tc = null;
     private HashMap<K, ArrayList<V>> _memstore;
     protected static final int DEFAULT_HASH_INDICES = 256;
+    // Window semantics: the keys inserted in each time bucket, so that a purge
+    // only visits the keys which may hold expired values
+    private TreeMap<Long, HashSet<K>> _keysByTimeBucket;
+    private long _windowBucketMillis = WindowTimeIndex.DEFAULT_BUCKET_MILLIS;
 
     public KeyValueStore(int storesizemb, int hash_indices, Map conf) {
 	super(storesizemb);
 	this._memstore = new HashMap<K, ArrayList<V>>(hash_indices);
+	if (conf != null
+		&& SystemParameters.isExisting(conf, "DIP_WINDOW_BUCKET_MILLIS"))
+	    _windowBucketMillis = SystemParameters.getLong(conf,
+		    "DIP_WINDOW_BUCKET_MILLIS");
     }
 
     public KeyValueStore(int hash_indices, Map conf) {
@@ -170,6 +179,24 @@ public class KeyValueStore<K, V> extends BasicStore<V> {
 	return true;
     }
 
+    /*
+     * Window semantics: value carries a timestamp@ prefix, and its timestamp
+     * is also given apart, so that purgeState only visits the keys inserted
+     * in the expired time buckets
+     */
+    public void insert(K key, V value, long timestamp) {
+	insert(key, value);
+	if (_keysByTimeBucket == null)
+	    _keysByTimeBucket = new TreeMap<Long, HashSet<K>>();
+	final long bucketId = timestamp / _windowBucketMillis;
+	HashSet<K> bucketKeys = _keysByTimeBucket.get(bucketId);
+	if (bucketKeys == null) {
+	    bucketKeys = new HashSet<K>();
+	    _keysByTimeBucket.put(bucketId, bucketKeys);
+	}
+	bucketKeys.add(key);
+    }
+
     protected Set<K> keySet() {
 	final Set<K> memKeys = this._memstore.keySet();
 	// YANNIS: TODO
@@ -229,38 +256,57 @@ public class KeyValueStore<K, V> extends BasicStore<V> {
 	}
     }
 
-    // TODO Specific to Window Semantics: Currently Linear in state size, needs
-    // to be more efficient
+    // Specific to Window Semantics: if the values were inserted with their
+    // timestamps, only the keys from the expired time buckets are visited
     public void purgeState(long tillTimeStamp) {
-	ArrayList<V> values;
-	final Set<K> keys = this.keySet();
+	final Set<K> keys;
+	if (_keysByTimeBucket != null) {
+	    final long boundaryId = tillTimeStamp / _windowBucketMillis;
+	    keys = new HashSet<K>();
+	    for (final HashSet<K> bucketKeys : _keysByTimeBucket.headMap(
+		    boundaryId, true).values())
+		keys.addAll(bucketKeys);
+	    // the boundary bucket may still have keys with live values
+	    _keysByTimeBucket.headMap(boundaryId).clear();
+	} else
+	    keys = this.keySet();
 	for (final Iterator<K> it = keys.iterator(); it.hasNext();) {
 	    final K key = it.next();
 	    // Check memory
-	    values = this._memstore.get(key);
+	    final ArrayList<V> values = this._memstore.get(key);
 	    if (values != null) {
-		String value;
-		for (Iterator iterator = values.iterator(); iterator.hasNext();) {
-		    V v = (V) iterator.next();
-		    if (this._tc != null)
-			value = _tc.toString(v);
-		    else
-			value = v.toString();
-		    final String parts[] = value.split("\\@");
-		    final long storedTimestamp = Long.valueOf(new String(
-			    parts[0]));
-		    final String tupleString = parts[1];
-		    if (storedTimestamp < tillTimeStamp)
-			iterator.remove();
-		}
+		purgeValues(values, tillTimeStamp);
+		if (values.isEmpty())
+		    this._memstore.remove(key);
 	    }
 	    // removed !!!! use DST_TUPLE_STORAGE
 	}
     }
 
+    // compacts in place the values with a timestamp@ prefix which are not
+    // older than tillTimeStamp
+    private void purgeValues(ArrayList<V> values, long tillTimeStamp) {
+	int kept = 0;
+	for (int i = 0; i < values.size(); i++) {
+	    final V v = values.get(i);
+	    final String value;
+	    if (this._tc != null)
+		value = _tc.toString(v);
+	    else
+		value = v.toString();
+	    final long storedTimestamp = Long.parseLong(value.substring(0,
+		    value.indexOf(SystemParameters.STORE_TIMESTAMP_DELIMITER)));
+	    if (storedTimestamp >= tillTimeStamp)
+		values.set(kept++, v);
+	}
+	values.subList(kept, values.size()).clear();
+    }
+
     @Override
     public void reset() {
 	this._memstore.clear();
+	if (_keysByTimeBucket != null)
+	    _keysByTimeBucket.clear();
     }
 
     public void setTypeConversion(Type tc) {
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storage;
+
+import gnu.trove.iterator.TIntLongIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.data.squall.storage.indexes.RowIdCursor;
+import ch.epfl.data.squall.utilities.BinaryTupleFormat;
+
+/**
+ * Tuple storage which keeps the tuples outside of the Java heap, in direct
+ * ByteBuffer slabs. A live row id maps to an address (slab index, offset) and
+ * each tuple is written as [id][length][bytes]. The garbage collector only
+ * sees the slabs and the primitive map of addresses.
+ *
+ * The live bytes of each slab are counted. A slab left without live tuples is
+ * reset and reused; a full slab in which less than half of the bytes are live
+ * is compacted in place, by sliding its live tuples to its start, and its free
+ * end is reused once it becomes the current slab again. Under window
+ * semantics the tuples expire in insertion order, so the slabs mostly empty
+ * out as a whole. The slabs are allocated lazily, so that the storage can be
+ * serialized together with its bolt before the topology is started.
+ */
+public class OffHeapTupleStorage extends TupleStorage {
+    private static final long serialVersionUID = 1L;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int HEADER_BYTES = 8;
+
+    private final int _slabSize;
+
+    // key = live row id, value = (slab index << 32) | offset
+    private final TIntLongHashMap _addresses;
+
+    private transient List<ByteBuffer> _slabs;
+    // bytes of the live tuples, including the headers, per slab
+    private transient TIntArrayList _liveBytes;
+    // slabs with free bytes at their end, ready to become the current one
+    private transient TIntArrayList _freeSlabs;
+    private transient int _currentSlab;
+    // reused by getTuple and getTupleView
+    private transient BinaryTupleView _view, _probeView;
+
+    public OffHeapTupleStorage(int slabSize) {
+	_slabSize = slabSize;
+	_addresses = new TIntLongHashMap();
+    }
+
+    private long allocate(int length) {
+	final int needed = length + HEADER_BYTES;
+	if (_slabs == null) {
+	    _slabs = new ArrayList<ByteBuffer>();
+	    _liveBytes = new TIntArrayList();
+	    _freeSlabs = new TIntArrayList();
+	    _currentSlab = -1;
+	}
+	if (_currentSlab < 0
+		|| _slabs.get(_currentSlab).remaining() < needed) {
+	    final int previous = _currentSlab;
+	    _currentSlab = takeFreeSlab(needed);
+	    if (previous >= 0)
+		reclaim(previous);
+	}
+	final ByteBuffer slab = _slabs.get(_currentSlab);
+	final int offset = slab.position();
+	slab.position(offset + needed);
+	_liveBytes.set(_currentSlab, _liveBytes.get(_currentSlab) + needed);
+	return ((long) _currentSlab << 32) | offset;
+    }
+
+    @Override
+    public void clear() {
+	_lastId = -1;
+	_addresses.clear();
+	if (_slabs != null) {
+	    _freeSlabs.clear();
+	    for (int i = 0; i < _slabs.size(); i++) {
+		_slabs.get(i).clear();
+		_liveBytes.set(i, 0);
+		_freeSlabs.add(i);
+	    }
+	    _currentSlab = -1;
+	}
+	clearTimestamps();
+    }
+
+    /*
+     * Slides the live tuples of a slab to its start, in offset order, and
+     * offers its free end to the allocator. The tuples only move towards
+     * lower offsets, so copying forward never overwrites unread bytes.
+     */
+    private void compact(int slabIndex) {
+	final ByteBuffer slab = _slabs.get(slabIndex);
+	final int end = slab.position();
+	int offset = 0, target = 0;
+	while (offset < end) {
+	    final int id = slab.getInt(offset);
+	    final int recordBytes = slab.getInt(offset + 4) + HEADER_BYTES;
+	    final long address = ((long) slabIndex << 32) | offset;
+	    if (_addresses.containsKey(id) && _addresses.get(id) == address) {
+		if (target != offset) {
+		    int i = 0;
+		    for (; i + 8 <= recordBytes; i += 8)
+			slab.putLong(target + i, slab.getLong(offset + i));
+		    for (; i < recordBytes; i++)
+			slab.put(target + i, slab.get(offset + i));
+		    _addresses.put(id, ((long) slabIndex << 32) | target);
+		}
+		target += recordBytes;
+	    }
+	    offset += recordBytes;
+	}
+	slab.position(target);
+	offerSlab(slabIndex);
+    }
+
+    @Override
+    public void copy(TupleStorage t) {
+	final int[] ids = t.getIds();
+	for (int i = 0; i < ids.length; i++)
+	    put(ids[i], t.getBytes(ids[i]));
+	_lastId = Math.max(_lastId, t._lastId);
+	copyTimestamps(t, ids);
+    }
+
+    @Override
+    public RowIdCursor cursor() {
+	final TIntLongIterator iterator = _addresses.iterator();
+	return new RowIdCursor() {
+	    @Override
+	    public boolean hasNext() {
+		return iterator.hasNext();
+	    }
+
+	    @Override
+	    public int next() {
+		iterator.advance();
+		return iterator.key();
+	    }
+	};
+    }
+
+    private void freeSlab(int slabIndex) {
+	_slabs.get(slabIndex).clear();
+	_liveBytes.set(slabIndex, 0);
+	offerSlab(slabIndex);
+    }
+
+    @Override
+    public String get(int id) {
+	final byte[] bytes = getBytes(id);
+	return bytes == null ? null : new String(bytes, UTF8);
+    }
+
+    @Override
+    public byte[] getBytes(int id) {
+	if (!_addresses.containsKey(id))
+	    return null;
+	final long address = _addresses.get(id);
+	final ByteBuffer slab = slab(address).duplicate();
+	final int offset = offset(address);
+	final byte[] bytes = new byte[slab.getInt(offset + 4)];
+	slab.position(offset + HEADER_BYTES);
+	slab.get(bytes);
+	return bytes;
+    }
+
+    @Override
+    public int[] getIds() {
+	return _addresses.keys();
+    }
+
+    /*
+     * Bytes of the live tuples, including their headers
+     */
+    @Override
+    public long getSizeBytes() {
+	long size = 0;
+	if (_slabs != null)
+	    for (int i = 0; i < _liveBytes.size(); i++)
+		size += _liveBytes.get(i);
+	return size;
+    }
+
+    /*
+     * Copies the tuples to a heap map, for the callers which need one (e.g.
+     * TupleStorage.preProcess); changes to the map are not written back
+     */
+    @Override
+    public TIntObjectHashMap<byte[]> getStorage() {
+	final TIntObjectHashMap<byte[]> storage = new TIntObjectHashMap<byte[]>(
+		_addresses.size());
+	final TIntLongIterator iterator = _addresses.iterator();
+	while (iterator.hasNext()) {
+	    iterator.advance();
+	    storage.put(iterator.key(), getBytes(iterator.key()));
+	}
+	return storage;
+    }
+
+    @Override
+    public List<String> getTuple(int id) {
+	if (_view == null)
+	    _view = new BinaryTupleView();
+	final BinaryTupleView view = getView(id, _view);
+	return view == null ? null : view.toTuple();
+    }
+
+    /*
+     * The probe side of the joins tests the predicate on the stored tuple in
+     * place; only the fields which are read are decoded
+     */
+    @Override
+    public List<String> getTupleView(int id) {
+	if (_probeView == null)
+	    _probeView = new BinaryTupleView();
+	return getView(id, _probeView);
+    }
+
+    /*
+     * Positions view over the binary tuple with the given id, without copying
+     * it to the heap. Returns null if there is no such tuple.
+     */
+    public BinaryTupleView getView(int id, BinaryTupleView view) {
+	if (!_addresses.containsKey(id))
+	    return null;
+	final long address = _addresses.get(id);
+	return view.reset(slab(address), offset(address) + HEADER_BYTES);
+    }
+
+    @Override
+    public int insert(List<String> tuple) {
+	_lastId++;
+	put(_lastId, BinaryTupleFormat.encode(tuple));
+	return _lastId;
+    }
+
+    @Override
+    public int insert(String tuple) {
+	_lastId++;
+	put(_lastId, tuple.getBytes(UTF8));
+	return _lastId;
+    }
+
+    private void offerSlab(int slabIndex) {
+	if (!_freeSlabs.contains(slabIndex))
+	    _freeSlabs.add(slabIndex);
+    }
+
+    private int offset(long address) {
+	return (int) address;
+    }
+
+    private void put(int id, byte[] bytes) {
+	if (_addresses.containsKey(id))
+	    release(id);
+	write(id, bytes);
+    }
+
+    /*
+     * A slab which is not the current one is freed when it has no live
+     * tuples, and compacted when less than half of its bytes are live
+     */
+    private void reclaim(int slabIndex) {
+	if (slabIndex == _currentSlab)
+	    return;
+	final int live = _liveBytes.get(slabIndex);
+	if (live == 0)
+	    freeSlab(slabIndex);
+	else if (2 * live < _slabs.get(slabIndex).position())
+	    compact(slabIndex);
+    }
+
+    private void release(int id) {
+	final long address = _addresses.remove(id);
+	final int slabIndex = (int) (address >>> 32);
+	final int length = slab(address).getInt(offset(address) + 4);
+	_liveBytes.set(slabIndex, _liveBytes.get(slabIndex) - length
+		- HEADER_BYTES);
+	reclaim(slabIndex);
+    }
+
+    // Should be treated with care. Valid indexes From 0-->(_storage.size()-1)
+    @Override
+    public void remove(int beginIndex, int endIndex) {
+	for (int i = beginIndex; i <= endIndex; i++)
+	    if (_addresses.containsKey(i))
+		release(i);
+    }
+
+    @Override
+    public int size() {
+	return _addresses.size();
+    }
+
+    private ByteBuffer slab(long address) {
+	return _slabs.get((int) (address >>> 32));
+    }
+
+    // a slab with room for needed bytes, allocated if there is none
+    private int takeFreeSlab(int needed) {
+	for (int i = _freeSlabs.size() - 1; i >= 0; i--) {
+	    final int slabIndex = _freeSlabs.get(i);
+	    if (_slabs.get(slabIndex).remaining() >= needed) {
+		_freeSlabs.removeAt(i);
+		return slabIndex;
+	    }
+	}
+	_slabs.add(ByteBuffer.allocateDirect(Math.max(_slabSize, needed)));
+	_liveBytes.add(0);
+	return _slabs.size() - 1;
+    }
+
+    @Override
+    public List<String> toList() {
+	final int[] ids = getIds();
+	final List<String> result = new ArrayList<String>(ids.length);
+	for (int i = 0; i < ids.length; i++)
+	    result.add(get(ids[i]));
+	return result;
+    }
+
+    @Override
+    public String toString() {
+	return "OffHeapTupleStorage with " + _addresses.size()
+		+ " tuples in " + (_slabs == null ? 0 : _slabs.size())
+		+ " slabs";
+    }
+
+    private void write(int id, byte[] bytes) {
+	final long address = allocate(bytes.length);
+	final ByteBuffer slab = slab(address).duplicate();
+	final int offset = offset(address);
+	slab.putInt(offset, id);
+	slab.putInt(offset + 4, bytes.length);
+	slab.position(offset + HEADER_BYTES);
+	slab.put(bytes);
+	_addresses.put(id, address);
+    }
+}
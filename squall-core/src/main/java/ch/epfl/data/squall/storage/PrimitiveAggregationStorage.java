@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storage;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ch.epfl.data.squall.codegen.CompiledExpression;
+import ch.epfl.data.squall.codegen.ExpressionCompiler;
+import ch.epfl.data.squall.expressions.ColumnReference;
+import ch.epfl.data.squall.expressions.ValueExpression;
+import ch.epfl.data.squall.operators.AggregateOperator;
+import ch.epfl.data.squall.types.DoubleType;
+import ch.epfl.data.squall.types.IntegerType;
+import ch.epfl.data.squall.types.LongType;
+import ch.epfl.data.squall.types.NumericType;
+import ch.epfl.data.squall.types.SumCount;
+import ch.epfl.data.squall.types.SumCountType;
+import ch.epfl.data.squall.types.Type;
+import ch.epfl.data.squall.utilities.SystemParameters;
+
+/**
+ * AggregationStorage for SUM, COUNT and AVG which keeps the partial results
+ * unboxed. Group keys go to an open addressing table (linear probing) with
+ * parallel long[]/double[] accumulators, so an update allocates nothing but
+ * the returned value. Without GROUP BY, the result is kept in plain fields.
+ *
+ * A value expression which is a column reference is parsed directly from the
+ * tuple; any other expression is evaluated as usual, or by generated
+ * bytecode once compiled.
+ *
+ * The occupied slots are also listed in insertion order. In AggBatchOutput
+ * mode the storage is cleared on each send, so these are the groups which
+ * changed since the previous send; sending and clearing them costs the
+ * number of changed groups, not the size of the table.
+ */
+public class PrimitiveAggregationStorage<V> extends AggregationStorage<V> {
+    private static final long serialVersionUID = 1L;
+
+    // how the result is boxed
+    private static final int LONG_RESULT = 0;
+    private static final int INTEGER_RESULT = 1;
+    private static final int DOUBLE_RESULT = 2;
+    private static final int SUM_COUNT_RESULT = 3;
+
+    private final int _resultType;
+    private final Type _type;
+    // null for COUNT
+    private final ValueExpression _ve;
+    private final boolean _isColumnVe;
+    private final boolean _isSumCountVe;
+    // generated in the JVM of the task, see compile
+    private transient CompiledExpression _compiled;
+
+    private boolean _singleEntry;
+    private boolean _singleSet = false;
+    private long _singleLong;
+    private double _singleDouble;
+
+    private Object[] _keys;
+    private int[] _hashes;
+    private long[] _longs; // sums, counts
+    private double[] _doubles; // sums of DOUBLE_RESULT and SUM_COUNT_RESULT
+    private int[] _slots; // the first _size are occupied
+    private int _mask;
+    private int _size = 0;
+
+    /*
+     * Falls back to AggregationStorage for other result types, or if
+     * DIP_PRIMITIVE_AGGREGATION is set to false. ve is null for COUNT.
+     */
+    public static <V> AggregationStorage<V> create(AggregateOperator outerAggOp,
+	    Type wrapper, ValueExpression ve, Map map, boolean singleEntry) {
+	if (map != null && SystemParameters.isExisting(map,
+		"DIP_PRIMITIVE_AGGREGATION")
+		&& !SystemParameters.getBoolean(map, "DIP_PRIMITIVE_AGGREGATION"))
+	    return new AggregationStorage<V>(outerAggOp, wrapper, map,
+		    singleEntry);
+	final Class typeClass = wrapper.getClass();
+	if (typeClass == LongType.class || typeClass == IntegerType.class
+		|| typeClass == DoubleType.class
+		|| typeClass == SumCountType.class)
+	    return new PrimitiveAggregationStorage<V>(outerAggOp, wrapper, ve,
+		    map, singleEntry);
+	return new AggregationStorage<V>(outerAggOp, wrapper, map, singleEntry);
+    }
+
+    private PrimitiveAggregationStorage(AggregateOperator outerAggOp,
+	    Type wrapper, ValueExpression ve, Map map, boolean singleEntry) {
+	super(outerAggOp, wrapper, map, singleEntry);
+	_type = wrapper;
+	_ve = ve;
+	_singleEntry = singleEntry;
+	if (wrapper instanceof LongType)
+	    _resultType = LONG_RESULT;
+	else if (wrapper instanceof IntegerType)
+	    _resultType = INTEGER_RESULT;
+	else if (wrapper instanceof DoubleType)
+	    _resultType = DOUBLE_RESULT;
+	else
+	    _resultType = SUM_COUNT_RESULT;
+	_isColumnVe = ve instanceof ColumnReference
+		&& isParsedColumnType(ve.getType());
+	_isSumCountVe = ve != null && ve.getType() instanceof SumCountType;
+	allocate(16);
+    }
+
+    private static boolean isParsedColumnType(Type type) {
+	final Class typeClass = type.getClass();
+	return typeClass == LongType.class || typeClass == IntegerType.class
+		|| typeClass == DoubleType.class;
+    }
+
+    @Override
+    public ArrayList<V> access(Object... data) {
+	final V value;
+	if (_singleEntry)
+	    value = _singleSet ? box(_singleLong, _singleDouble) : null;
+	else {
+	    final int slot = findSlot(data[0]);
+	    value = _keys[slot] == null ? null : box(slot);
+	}
+	if (value == null)
+	    return null;
+	final ArrayList<V> result = new ArrayList<V>(1);
+	result.add(value);
+	return result;
+    }
+
+    @Override
+    public void addContent(AggregationStorage storage) {
+	if (!(storage instanceof PrimitiveAggregationStorage)
+		|| ((PrimitiveAggregationStorage) storage)._resultType
+			!= _resultType) {
+	    final Set keySet = storage.keySet();
+	    for (final Iterator it = keySet.iterator(); it.hasNext();) {
+		final Object key = it.next();
+		merge(key, storage.access(key).get(0));
+	    }
+	    return;
+	}
+	// the same accumulators: merged without boxing
+	final PrimitiveAggregationStorage other =
+		(PrimitiveAggregationStorage) storage;
+	if (other._singleEntry) {
+	    if (other._singleSet)
+		merge(SINGLE_ENTRY_KEY, other._singleLong, other._singleDouble);
+	} else
+	    for (int i = 0; i < other._size; i++) {
+		final int slot = other._slots[i];
+		merge(other._keys[slot], other._longs[slot],
+			other._doubles == null ? 0 : other._doubles[slot]);
+	    }
+    }
+
+    private void allocate(int capacity) {
+	_keys = new Object[capacity];
+	_hashes = new int[capacity];
+	_longs = new long[capacity];
+	if (_resultType == DOUBLE_RESULT || _resultType == SUM_COUNT_RESULT)
+	    _doubles = new double[capacity];
+	// at most half of the table is occupied, see slotForUpdate
+	_slots = new int[capacity / 2];
+	_mask = capacity - 1;
+    }
+
+    private V box(int slot) {
+	return box(_longs[slot], _doubles == null ? 0 : _doubles[slot]);
+    }
+
+    private V box(long longValue, double doubleValue) {
+	switch (_resultType) {
+	case LONG_RESULT:
+	    return (V) Long.valueOf(longValue);
+	case INTEGER_RESULT:
+	    return (V) Integer.valueOf((int) longValue);
+	case DOUBLE_RESULT:
+	    return (V) Double.valueOf(doubleValue);
+	default:
+	    return (V) new SumCount(doubleValue, longValue);
+	}
+    }
+
+    /*
+     * Compiles a numeric value expression which is not a column reference
+     */
+    public void compile() {
+	if (_ve != null && !_isColumnVe && !_isSumCountVe)
+	    _compiled = ExpressionCompiler.compile(_ve);
+    }
+
+    @Override
+    public boolean contains(Object... data) {
+	if (_singleEntry)
+	    return _singleSet;
+	return _keys[findSlot(data[0])] != null;
+    }
+
+    private int findSlot(Object key) {
+	final int hash = key.hashCode();
+	int slot = (hash ^ (hash >>> 16)) & _mask;
+	while (_keys[slot] != null
+		&& (_hashes[slot] != hash || !_keys[slot].equals(key)))
+	    slot = (slot + 1) & _mask;
+	return slot;
+    }
+
+    @Override
+    protected Set<Object> keySet() {
+	final Set<Object> keys = new HashSet<Object>();
+	if (_singleEntry) {
+	    if (_singleSet)
+		keys.add(SINGLE_ENTRY_KEY);
+	} else
+	    for (int i = 0; i < _size; i++)
+		keys.add(_keys[_slots[i]]);
+	return keys;
+    }
+
+    /*
+     * Adds an already aggregated value (from another storage)
+     */
+    private void merge(Object key, Object value) {
+	long longDelta = 0;
+	double doubleDelta = 0;
+	if (value instanceof SumCount) {
+	    doubleDelta = ((SumCount) value).getSum();
+	    longDelta = ((SumCount) value).getCount();
+	} else if (_resultType == DOUBLE_RESULT)
+	    doubleDelta = ((Number) value).doubleValue();
+	else
+	    longDelta = ((Number) value).longValue();
+	merge(key, longDelta, doubleDelta);
+    }
+
+    private void merge(Object key, long longDelta, double doubleDelta) {
+	if (_singleEntry)
+	    updateSingle(longDelta, doubleDelta);
+	else
+	    updateSlot(slotForUpdate(key), longDelta, doubleDelta);
+    }
+
+    @Override
+    public void onInsert(Object... data) {
+	if (_singleEntry)
+	    merge(SINGLE_ENTRY_KEY, data[0]);
+	else
+	    merge(data[0], data[1]);
+    }
+
+    @Override
+    public void printStore(PrintStream stream, boolean printStorage) {
+	if (_singleEntry) {
+	    if (_singleSet)
+		printEntry(stream, SINGLE_ENTRY_KEY,
+			box(_singleLong, _singleDouble));
+	} else
+	    for (int i = 0; i < _size; i++)
+		printEntry(stream, _keys[_slots[i]], box(_slots[i]));
+    }
+
+    private void printEntry(PrintStream stream, Object key, V value) {
+	stream.print(key);
+	stream.print(" = ");
+	stream.print(_type.toString(value));
+	stream.println("");
+    }
+
+    private void rehash() {
+	final Object[] keys = _keys;
+	final int[] hashes = _hashes;
+	final long[] longs = _longs;
+	final double[] doubles = _doubles;
+	final int[] slots = _slots;
+	allocate(2 * keys.length);
+	for (int i = 0; i < _size; i++) {
+	    final int oldSlot = slots[i];
+	    final int slot = findSlot(keys[oldSlot]);
+	    _keys[slot] = keys[oldSlot];
+	    _hashes[slot] = hashes[oldSlot];
+	    _longs[slot] = longs[oldSlot];
+	    if (doubles != null)
+		_doubles[slot] = doubles[oldSlot];
+	    _slots[i] = slot;
+	}
+    }
+
+    @Override
+    public void reset() {
+	_singleSet = false;
+	_singleLong = 0;
+	_singleDouble = 0;
+	for (int i = 0; i < _size; i++) {
+	    final int slot = _slots[i];
+	    _keys[slot] = null;
+	    _longs[slot] = 0;
+	    if (_doubles != null)
+		_doubles[slot] = 0;
+	}
+	_size = 0;
+    }
+
+    @Override
+    public void setSingleEntry(boolean singleEntry) {
+	_singleEntry = singleEntry;
+	super.setSingleEntry(singleEntry);
+    }
+
+    @Override
+    public int size() {
+	return _singleEntry ? (_singleSet ? 1 : 0) : _size;
+    }
+
+    private int slotForUpdate(Object key) {
+	int slot = findSlot(key);
+	if (_keys[slot] == null) {
+	    if (2 * (_size + 1) > _keys.length) {
+		rehash();
+		slot = findSlot(key);
+	    }
+	    _keys[slot] = key;
+	    _hashes[slot] = key.hashCode();
+	    _slots[_size++] = slot;
+	}
+	return slot;
+    }
+
+    @Override
+    public List<List<String>> takeChangedGroups() {
+	final List<List<String>> result;
+	if (_singleEntry) {
+	    result = new ArrayList<List<String>>(1);
+	    if (_singleSet)
+		result.add(createGroupTuple(SINGLE_ENTRY_KEY,
+			box(_singleLong, _singleDouble)));
+	} else {
+	    result = new ArrayList<List<String>>(_size);
+	    for (int i = 0; i < _size; i++)
+		result.add(createGroupTuple(_keys[_slots[i]], box(_slots[i])));
+	}
+	reset();
+	return result;
+    }
+
+    /*
+     * data = (tuple or value, key)
+     */
+    @Override
+    public V update(Object... data) {
+	final Object obj = data[0];
+	if (!(obj instanceof List)) {
+	    final Object key = _singleEntry ? SINGLE_ENTRY_KEY : data[1];
+	    merge(key, obj);
+	    return _singleEntry ? box(_singleLong, _singleDouble)
+		    : box(findSlot(key));
+	}
+	final List<String> tuple = (List<String>) obj;
+	long longDelta = 1;
+	double doubleDelta = 0;
+	if (_ve != null) {
+	    // SUM and AVG
+	    if (_isColumnVe) {
+		final String column = tuple.get(((ColumnReference) _ve)
+			.getColumnIndex());
+		if (_resultType == LONG_RESULT
+			|| _resultType == INTEGER_RESULT)
+		    longDelta = Long.parseLong(column);
+		else
+		    doubleDelta = Double.parseDouble(column);
+	    } else if (_isSumCountVe) {
+		final SumCount sc = (SumCount) _ve.eval(tuple);
+		doubleDelta = sc.getSum();
+		longDelta = sc.getCount();
+	    } else if (_compiled != null) {
+		if (_resultType == LONG_RESULT || _resultType == INTEGER_RESULT)
+		    longDelta = _compiled.evalLong(tuple);
+		else
+		    doubleDelta = _compiled.evalDouble(tuple);
+	    } else if (_resultType == LONG_RESULT
+		    || _resultType == INTEGER_RESULT)
+		longDelta = ((Number) _ve.eval(tuple)).longValue();
+	    else
+		doubleDelta = ((NumericType) _ve.getType()).toDouble(_ve
+			.eval(tuple));
+	}
+	if (_singleEntry) {
+	    updateSingle(longDelta, doubleDelta);
+	    return box(_singleLong, _singleDouble);
+	}
+	final int slot = slotForUpdate(data[1]);
+	updateSlot(slot, longDelta, doubleDelta);
+	return box(slot);
+    }
+
+    private void updateSingle(long longDelta, double doubleDelta) {
+	_singleSet = true;
+	_singleLong += longDelta;
+	_singleDouble += doubleDelta;
+    }
+
+    private void updateSlot(int slot, long longDelta, double doubleDelta) {
+	_longs[slot] += longDelta;
+	if (_doubles != null)
+	    _doubles[slot] += doubleDelta;
+    }
+}
@@ -20,21 +20,24 @@
 package ch.epfl.data.squall.storage;
 
 import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntLongHashMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.log4j.Logger;
+
 import ch.epfl.data.squall.predicates.Predicate;
 import ch.epfl.data.squall.storage.indexes.Index;
+import ch.epfl.data.squall.storage.indexes.RowIdCursor;
+import ch.epfl.data.squall.utilities.BinaryTupleFormat;
 import ch.epfl.data.squall.utilities.MyUtilities;
+import ch.epfl.data.squall.utilities.SystemParameters;
 import ch.epfl.data.squall.visitors.PredicateUpdateIndexesVisitor;
 
 /**
@@ -165,10 +168,16 @@ public class TupleStorage implements Serializable {
     }
 
     private static final long serialVersionUID = 1L;
+    private static Logger LOG = Logger.getLogger(TupleStorage.class);
 
     private TIntObjectHashMap<byte[]> _storage;
 
-    private int _lastId;
+    protected int _lastId;
+
+    // only for the tuples inserted with a timestamp (window semantics)
+    private TIntLongHashMap _timestamps;
+    private WindowTimeIndex _windowIndex;
+    private long _windowBucketMillis = WindowTimeIndex.DEFAULT_BUCKET_MILLIS;
 
     public TupleStorage() {
 	_storage = new TIntObjectHashMap<byte[]>();
@@ -176,12 +185,21 @@ public class TupleStorage implements Serializable {
     }
 
     public TupleStorage(TupleStorage t) {
+	this();
 	copy(t);
     }
 
     public void clear() {
 	_lastId = -1;
 	_storage.clear();
+	clearTimestamps();
+    }
+
+    protected void clearTimestamps() {
+	if (_windowIndex != null) {
+	    _timestamps.clear();
+	    _windowIndex.clear();
+	}
     }
 
     @Override
@@ -190,8 +208,53 @@ public class TupleStorage implements Serializable {
     }
 
     public void copy(TupleStorage t) {
-	_storage.putAll(t._storage);
+	final int[] ids = t.getIds();
+	for (int i = 0; i < ids.length; i++)
+	    _storage.put(ids[i], t.getBytes(ids[i]));
 	_lastId = t._lastId;
+	copyTimestamps(t, ids);
+    }
+
+    /*
+     * The timestamps of the given tuples of t, also added to the time index,
+     * so that a copy is purged as the original one
+     */
+    protected void copyTimestamps(TupleStorage t, int[] ids) {
+	if (t._windowIndex == null)
+	    return;
+	if (_windowIndex == null)
+	    _windowBucketMillis = t._windowBucketMillis;
+	for (int i = 0; i < ids.length; i++)
+	    if (t._timestamps.containsKey(ids[i]))
+		putTimestamp(ids[i], t._timestamps.get(ids[i]));
+    }
+
+    /*
+     * Streams the row ids of all the stored tuples, in no particular order,
+     * without copying them as getIds does
+     */
+    public RowIdCursor cursor() {
+	final TIntObjectIterator<byte[]> iterator = _storage.iterator();
+	return new RowIdCursor() {
+	    @Override
+	    public boolean hasNext() {
+		return iterator.hasNext();
+	    }
+
+	    @Override
+	    public int next() {
+		iterator.advance();
+		return iterator.key();
+	    }
+	};
+    }
+
+    /*
+     * Raw representation of a tuple: UTF-8 String or BinaryTupleFormat,
+     * depending on which insert method was used
+     */
+    public byte[] getBytes(int id) {
+	return _storage.get(id);
     }
 
     public String get(int id) {
@@ -203,10 +266,53 @@ public class TupleStorage implements Serializable {
 	}
     }
 
+    /*
+     * Only for the tuples inserted through insert(List<String>)
+     */
+    public List<String> getTuple(int id) {
+	return BinaryTupleFormat.decode(_storage.get(id));
+    }
+
+    /*
+     * Like getTuple, but the list may be a view over the storage which is only
+     * valid until the next call, for the probe side of a join: the matching
+     * tuples are copied into the output tuples
+     */
+    public List<String> getTupleView(int id) {
+	return getTuple(id);
+    }
+
+    /*
+     * Row ids of all the stored tuples, in no particular order
+     */
+    public int[] getIds() {
+	return _storage.keys();
+    }
+
+    /*
+     * Bytes of the stored tuples, without the overhead of the map
+     */
+    public long getSizeBytes() {
+	long size = 0;
+	final TIntObjectIterator<byte[]> iterator = _storage.iterator();
+	while (iterator.hasNext()) {
+	    iterator.advance();
+	    size += iterator.value().length;
+	}
+	return size;
+    }
+
     public TIntObjectHashMap<byte[]> getStorage() {
 	return _storage;
     }
 
+    /*
+     * Only for the tuples inserted through insert(List<String>, long)
+     */
+    public long getTimestamp(int id) {
+	return _timestamps.get(id);
+    }
+
     public int insert(String tuple) {
 	_lastId++;
 	try {
@@ -218,77 +324,107 @@ public class TupleStorage implements Serializable {
 	return _lastId;
     }
 
+    /*
+     * Stores the tuple in the BinaryTupleFormat, so that it is read back by
+     * getTuple without re-parsing a delimited String. A storage should contain
+     * either only Strings or only binary tuples.
+     */
+    public int insert(List<String> tuple) {
+	_lastId++;
+	_storage.put(_lastId, BinaryTupleFormat.encode(tuple));
+	return _lastId;
+    }
+
+    /*
+     * Stores a binary tuple together with its timestamp, which is kept as a
+     * primitive long and indexed by time for purgeState
+     */
+    public int insert(List<String> tuple, long timestamp) {
+	final int id = insert(tuple);
+	putTimestamp(id, timestamp);
+	return id;
+    }
+
     /**
      * Purge stale state
      */
     public void purgeState(long tillTimeStamp, List<Index> indexes,
 	    Predicate joinPredicate, Map conf, boolean isFirstRelations) {
-	// TODO This is linear now, needs to be optimized by indexing
-	DateFormat convDateFormat = new SimpleDateFormat(
-		"EEE MMM d HH:mm:ss zzz yyyy");
-	for (TIntObjectIterator<byte[]> it = this.getStorage().iterator(); it
-		.hasNext();) {
-	    it.advance();
-
-	    int row_id = it.key();
-	    String tuple = "";
-	    try {
-		tuple = new String(it.value(), "UTF-8");
-	    } catch (Exception e1) {
-		// e1.printStackTrace();
-		// throw new RuntimeException(e1.toString());
+	if (_windowIndex != null) {
+	    // only the expired time buckets are visited
+	    final TIntArrayList expired = _windowIndex
+		    .removeOlderThan(tillTimeStamp);
+	    for (int j = 0; j < expired.size(); j++) {
+		final int row_id = expired.get(j);
+		final List<String> tuple = getTuple(row_id);
+		remove(row_id, row_id);
+		_timestamps.remove(row_id);
+		removeFromIndexes(row_id, tuple, indexes, joinPredicate,
+			isFirstRelations);
 	    }
-	    if (tuple.equals(""))
+	    return;
+	}
+	// Tuples stored as timestamp@tupleString: linear in the state size
+	final int[] rowIds = getIds();
+	for (int j = 0; j < rowIds.length; j++) {
+	    int row_id = rowIds[j];
+	    String tuple = get(row_id);
+	    if (tuple == null || tuple.equals(""))
 		return;
-	    final String parts[] = tuple.split("\\@");
-	    if (parts.length < 2)
-		System.out.println("UNEXPECTED TIMESTAMP SIZES: "
-			+ parts.length);
-	    final long storedTimestamp = Long.valueOf(new String(parts[0]));
-	    final String tupleString = parts[1];
+	    final int delimiter = tuple
+		    .indexOf(SystemParameters.STORE_TIMESTAMP_DELIMITER);
+	    if (delimiter < 0) {
+		LOG.info("Tuple " + row_id + " has no timestamp, it is kept: "
+			+ tuple);
+		continue;
+	    }
+	    final long storedTimestamp = Long.parseLong(tuple.substring(0,
+		    delimiter));
 	    if (storedTimestamp < (tillTimeStamp)) { // delete
 		// Cleaning up storage
-		it.remove();
-		// Cleaning up indexes
-		final PredicateUpdateIndexesVisitor visitor = new PredicateUpdateIndexesVisitor(
-			isFirstRelations, MyUtilities.stringToTuple(
-				tupleString, conf));
-		joinPredicate.accept(visitor);
-		final List<String> valuesToIndex = new ArrayList<String>(
-			visitor._valuesToIndex);
-		final List<Object> typesOfValuesToIndex = new ArrayList<Object>(
-			visitor._typesOfValuesToIndex);
-		for (int i = 0; i < indexes.size(); i++)
-		    if (typesOfValuesToIndex.get(i) instanceof Integer)
-			indexes.get(i).remove(row_id,
-				Integer.parseInt(valuesToIndex.get(i)));
-		    else if (typesOfValuesToIndex.get(i) instanceof Double)
-			indexes.get(i).remove(row_id,
-				Double.parseDouble(valuesToIndex.get(i)));
-		    else if (typesOfValuesToIndex.get(i) instanceof Date)
-			try {
-			    indexes.get(i).remove(row_id,
-				    convDateFormat.parse(valuesToIndex.get(i)));
-			} catch (final ParseException e) {
-			    throw new RuntimeException(
-				    "Parsing problem in StormThetaJoin.removingIndexes "
-					    + e.getMessage());
-			}
-		    else if (typesOfValuesToIndex.get(i) instanceof String)
-			indexes.get(i).remove(row_id, valuesToIndex.get(i));
-		    else
-			throw new RuntimeException("non supported type");
-		// ended cleaning indexes
+		remove(row_id, row_id);
+		removeFromIndexes(row_id, MyUtilities.stringToTuple(
+			tuple.substring(delimiter + 1), conf), indexes,
+			joinPredicate, isFirstRelations);
 	    }
 	}
     }
 
+    private void putTimestamp(int id, long timestamp) {
+	if (_windowIndex == null) {
+	    _timestamps = new TIntLongHashMap();
+	    _windowIndex = new WindowTimeIndex(_windowBucketMillis);
+	}
+	_timestamps.put(id, timestamp);
+	_windowIndex.add(id, timestamp);
+    }
+
+    private void removeFromIndexes(int row_id, List<String> tuple,
+	    List<Index> indexes, Predicate joinPredicate,
+	    boolean isFirstRelations) {
+	if (indexes == null || joinPredicate == null)
+	    return;
+	final PredicateUpdateIndexesVisitor visitor = new PredicateUpdateIndexesVisitor(
+		isFirstRelations, tuple);
+	joinPredicate.accept(visitor);
+	for (int i = 0; i < indexes.size(); i++)
+	    indexes.get(i).remove(
+		    row_id,
+		    PredicateUpdateIndexesVisitor.toIndexKey(
+			    visitor._typesOfValuesToIndex.get(i),
+			    visitor._keysToIndex.get(i)));
+    }
+
     // Should be treated with care. Valid indexes From 0-->(_storage.size()-1)
     public void remove(int beginIndex, int endIndex) {
 	for (int i = beginIndex; i <= endIndex; i++)
 	    _storage.remove(i);
     }
 
+    public void setWindowBucketMillis(long windowBucketMillis) {
+	_windowBucketMillis = windowBucketMillis;
+    }
+
     public int size() {
 	return _storage.size();
     }
@@ -298,8 +434,8 @@ public class TupleStorage implements Serializable {
 	ArrayList<byte[]> list = new ArrayList<byte[]>(
 		_storage.valueCollection());
 	ArrayList<String> transformed = new ArrayList<String>(list.size());
-	for (int i = 0; i < transformed.size(); i++) {
-	    transformed.set(i, new String(list.get(i), "UTF-8"));
+	for (int i = 0; i < list.size(); i++) {
+	    transformed.add(new String(list.get(i), "UTF-8"));
 	}
 	return transformed;
     }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compressed block of contiguous TupleStorage rows, used to migrate the state
+ * of a joiner in one message instead of one message per tuple. A block is the
+ * number of rows followed by the length-prefixed raw representation of each
+ * row (see TupleStorage.getBytes), all of it deflated.
+ *
+ * Rows are shipped as they are stored, so the "timestamp@" prefix of the
+ * timestamped storages travels with them and does not need to be re-split.
+ */
+public class TupleStorageBlock {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /*
+     * Returns the rows as they are stored, i.e. as TupleStorage.get would
+     */
+    public static List<String> decode(byte[] block) {
+	final Inflater inflater = new Inflater();
+	try {
+	    final InputStream in = new InflaterInputStream(
+		    new ByteArrayInputStream(block), inflater, 8192);
+	    final int size = readVarInt(in);
+	    final List<String> rows = new ArrayList<String>(size);
+	    for (int i = 0; i < size; i++) {
+		final byte[] row = new byte[readVarInt(in)];
+		readFully(in, row);
+		rows.add(new String(row, UTF8));
+	    }
+	    return rows;
+	} catch (final IOException e) {
+	    throw new RuntimeException("Corrupted tuple storage block", e);
+	} finally {
+	    inflater.end();
+	}
+    }
+
+    /*
+     * Valid indexes are the same as for TupleStorage.remove
+     */
+    public static byte[] encode(TupleStorage storage, int beginIndex,
+	    int endIndex) {
+	final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	try {
+	    final DeflaterOutputStream out = new DeflaterOutputStream(bytes,
+		    deflater, 8192);
+	    writeVarInt(out, endIndex - beginIndex + 1);
+	    for (int i = beginIndex; i <= endIndex; i++) {
+		final byte[] row = storage.getBytes(i);
+		writeVarInt(out, row.length);
+		out.write(row);
+	    }
+	    out.finish();
+	} catch (final IOException e) {
+	    throw new RuntimeException(e);
+	} finally {
+	    deflater.end();
+	}
+	return bytes.toByteArray();
+    }
+
+    private static void readFully(InputStream in, byte[] row)
+	    throws IOException {
+	int position = 0;
+	while (position < row.length) {
+	    final int read = in.read(row, position, row.length - position);
+	    if (read < 0)
+		throw new IOException("Unexpected end of block");
+	    position += read;
+	}
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+	int value = 0;
+	for (int shift = 0; shift < 35; shift += 7) {
+	    final int b = in.read();
+	    if (b < 0)
+		throw new IOException("Unexpected end of block");
+	    value |= (b & 0x7F) << shift;
+	    if ((b & 0x80) == 0)
+		return value;
+	}
+	throw new IOException("Malformed varint");
+    }
+
+    private static void writeVarInt(OutputStream out, int value)
+	    throws IOException {
+	while ((value & ~0x7F) != 0) {
+	    out.write((value & 0x7F) | 0x80);
+	    value >>>= 7;
+	}
+	out.write(value);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storage;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Row-ids of a window storage grouped in time buckets of bucketMillis. A
+ * bucket which ends before the purge timestamp is dropped as a whole, so
+ * removeOlderThan costs O(expired + one bucket) instead of O(state). Tuples
+ * may arrive out of timestamp order, they only have to go to the right bucket.
+ */
+public class WindowTimeIndex implements Serializable {
+
+    private static class Bucket implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final TIntArrayList _rowIds = new TIntArrayList();
+	private final TLongArrayList _timestamps = new TLongArrayList();
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public static final long DEFAULT_BUCKET_MILLIS = 1000;
+
+    private final long _bucketMillis;
+    private final TreeMap<Long, Bucket> _buckets = new TreeMap<Long, Bucket>();
+
+    public WindowTimeIndex() {
+	this(DEFAULT_BUCKET_MILLIS);
+    }
+
+    public WindowTimeIndex(long bucketMillis) {
+	_bucketMillis = bucketMillis;
+    }
+
+    public void add(int rowId, long timestamp) {
+	final Long bucketId = bucketId(timestamp);
+	Bucket bucket = _buckets.get(bucketId);
+	if (bucket == null) {
+	    bucket = new Bucket();
+	    _buckets.put(bucketId, bucket);
+	}
+	bucket._rowIds.add(rowId);
+	bucket._timestamps.add(timestamp);
+    }
+
+    public long bucketId(long timestamp) {
+	// floor division, timestamps are normally positive
+	return timestamp >= 0 ? timestamp / _bucketMillis
+		: (timestamp + 1) / _bucketMillis - 1;
+    }
+
+    public void clear() {
+	_buckets.clear();
+    }
+
+    /*
+     * Removes from the index and returns the row-ids with a timestamp smaller
+     * than tillTimeStamp
+     */
+    public TIntArrayList removeOlderThan(long tillTimeStamp) {
+	final TIntArrayList expired = new TIntArrayList();
+	final long boundaryId = bucketId(tillTimeStamp);
+	// buckets before the boundary one are entirely expired
+	final Iterator<Map.Entry<Long, Bucket>> it = _buckets
+		.headMap(boundaryId).entrySet().iterator();
+	while (it.hasNext()) {
+	    expired.addAll(it.next().getValue()._rowIds);
+	    it.remove();
+	}
+	final Bucket boundary = _buckets.get(boundaryId);
+	if (boundary != null) {
+	    int kept = 0;
+	    for (int i = 0; i < boundary._rowIds.size(); i++)
+		if (boundary._timestamps.get(i) < tillTimeStamp)
+		    expired.add(boundary._rowIds.get(i));
+		else {
+		    boundary._rowIds.set(kept, boundary._rowIds.get(i));
+		    boundary._timestamps.set(kept, boundary._timestamps.get(i));
+		    kept++;
+		}
+	    if (kept == 0)
+		_buckets.remove(boundaryId);
+	    else {
+		boundary._rowIds.remove(kept, boundary._rowIds.size() - kept);
+		boundary._timestamps.remove(kept, boundary._timestamps.size()
+			- kept);
+	    }
+	}
+	return expired;
+    }
+}
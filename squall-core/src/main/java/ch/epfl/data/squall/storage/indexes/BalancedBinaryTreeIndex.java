@@ -21,7 +21,6 @@ package ch.epfl.data.squall.storage.indexes;
 
 import gnu.trove.list.array.TIntArrayList;
 
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
@@ -30,6 +29,7 @@ import java.util.TreeMap;
 import org.apache.log4j.Logger;
 
 import ch.epfl.data.squall.predicates.ComparisonPredicate;
+import ch.epfl.data.squall.types.DateType;
 
 public class BalancedBinaryTreeIndex<KeyType extends Comparable<KeyType>>
 	implements Index<KeyType> {
@@ -82,40 +82,51 @@ public class BalancedBinaryTreeIndex<KeyType extends Comparable<KeyType>>
     }
 
     @Override
-    public TIntArrayList getValues(int operator, KeyType key) {
+    public RowIdCursor getCursor(int operator, KeyType key) {
+	final Collection<TIntArrayList> lists = getLists(operator, key);
+	return lists == null ? null : new RowIdCursor.ListsCursor(
+		lists.iterator());
+    }
+
+    // a view of the row-id lists of all the matching keys
+    private Collection<TIntArrayList> getLists(int operator, KeyType key) {
 
 	if (operator == ComparisonPredicate.GREATER_OP) {// // find all x which
 	    // are more than the
 	    // specified key
 	    if (_diff != null)
-		return flatten(_index.subMap(key, false,
-			performOperation(key, _diff, true), false).values());
-	    return flatten(_index.headMap(key).values());
+		return _index.subMap(key, false,
+			performOperation(key, _diff, true), false).values();
+	    return _index.headMap(key).values();
 	} else if (operator == ComparisonPredicate.NONLESS_OP) {
 	    if (_diff != null)
-		return flatten(_index.subMap(key, true,
-			performOperation(key, _diff, true), true).values());
-	    return flatten(_index.headMap(key, true).values());
+		return _index.subMap(key, true,
+			performOperation(key, _diff, true), true).values();
+	    return _index.headMap(key, true).values();
 	} else if (operator == ComparisonPredicate.LESS_OP) { // find all x
 	    // which are
 	    // less than the
 	    // specified key
 	    if (_diff != null)
-		return flatten(_index.subMap(
-			performOperation(key, _diff, false), false, key, false)
-			.values());
-	    return flatten(_index.tailMap(key).values());
+		return _index.subMap(performOperation(key, _diff, false),
+			false, key, false).values();
+	    return _index.tailMap(key).values();
 	} else if (operator == ComparisonPredicate.NONGREATER_OP) {
 	    if (_diff != null)
-		return flatten(_index.subMap(
-			performOperation(key, _diff, false), true, key, true)
-			.values());
-	    return flatten(_index.tailMap(key, true).values());
+		return _index.subMap(performOperation(key, _diff, false), true,
+			key, true).values();
+	    return _index.tailMap(key, true).values();
 	} else
 	    return null;
 
     }
 
+    @Override
+    public TIntArrayList getValues(int operator, KeyType key) {
+	final Collection<TIntArrayList> lists = getLists(operator, key);
+	return lists == null ? null : flatten(lists);
+    }
+
     @Override
     public TIntArrayList getValuesWithOutOperator(KeyType key, KeyType... keys) {
 	// TODO Auto-generated method stub
@@ -147,10 +158,7 @@ public class BalancedBinaryTreeIndex<KeyType extends Comparable<KeyType>>
 	    Integer diffd = (Integer) tmpDiff;
 	    if (isInverse)
 		diffd = -1 * diffd;
-	    final Calendar c = Calendar.getInstance();
-	    c.setTime(kd);
-	    c.add(Calendar.DAY_OF_MONTH, diffd);
-	    result = c.getTime();
+	    result = DateType.fromEpochDay(DateType.toEpochDay(kd) + diffd);
 	} else
 	    LOG.info("Operation in BalancedBinaryTree not supported for underlying datatype");
 
@@ -21,12 +21,12 @@ package ch.epfl.data.squall.storage.indexes;
 
 import gnu.trove.list.array.TIntArrayList;
 
-import java.util.Calendar;
 import java.util.Date;
 
 import org.apache.log4j.Logger;
 
 import ch.epfl.data.squall.predicates.ComparisonPredicate;
+import ch.epfl.data.squall.types.DateType;
 import cherri.bheaven.bplustree.BPlusTree;
 import cherri.bheaven.bplustree.LeafNode;
 import cherri.bheaven.bplustree.Node;
@@ -124,6 +124,16 @@ public class BplusTreeIndex<KeyType extends Comparable<KeyType>> implements
 	_index = new BPlusTree<KeyType, TIntArrayList>(nf);
     }
 
+    /*
+     * Only the equality streams the stored list; myGreater and myLess still
+     * collect the row-ids of a range
+     */
+    @Override
+    public RowIdCursor getCursor(int operator, KeyType key) {
+	final TIntArrayList idsList = getValues(operator, key);
+	return idsList == null ? null : new RowIdCursor.ListsCursor(idsList);
+    }
+
     @Override
     public TIntArrayList getValues(int operator, KeyType key) {
 	if (operator == ComparisonPredicate.NONEQUAL_OP)
@@ -335,10 +345,7 @@ public class BplusTreeIndex<KeyType extends Comparable<KeyType>> implements
 	} else if (tmpK instanceof Date) {
 	    Date kd = (Date) tmpK;
 	    Integer diffd = (Integer) tmpDiff;
-	    Calendar c = Calendar.getInstance();
-	    c.setTime(kd);
-	    c.add(Calendar.DAY_OF_MONTH, diffd);
-	    result = c.getTime();
+	    result = DateType.fromEpochDay(DateType.toEpochDay(kd) + diffd);
 	} else {
 	    LOG.info("Operation in B+Tree not supported for underlying datatype");
 	}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storage.indexes;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import ch.epfl.data.squall.predicates.ComparisonPredicate;
+
+/**
+ * Theta-Join hash index for equalities over double keys. A key is stored as
+ * its Double.doubleToLongBits in a LongHashIndex, so two keys match exactly
+ * when Double.equals does, as in HashIndex<Double>.
+ */
+public class DoubleHashIndex implements Index<Double> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final LongHashIndex _index;
+
+    public DoubleHashIndex() {
+	_index = new LongHashIndex();
+    }
+
+    public DoubleHashIndex(int expectedKeys) {
+	_index = new LongHashIndex(expectedKeys);
+    }
+
+    public RowIdCursor getCursor(double key) {
+	return _index.getCursor(Double.doubleToLongBits(key));
+    }
+
+    @Override
+    public RowIdCursor getCursor(int operator, Double key) {
+	if (operator != ComparisonPredicate.EQUAL_OP)
+	    return null;
+	else
+	    return getCursor(key.doubleValue());
+    }
+
+    public int getNumKeys() {
+	return _index.getNumKeys();
+    }
+
+    public TIntArrayList getValues(double key) {
+	return _index.getValues(Double.doubleToLongBits(key));
+    }
+
+    @Override
+    public TIntArrayList getValues(int operator, Double key) {
+	if (operator != ComparisonPredicate.EQUAL_OP)
+	    return null;
+	else
+	    return getValues(key.doubleValue());
+    }
+
+    @Override
+    public TIntArrayList getValuesWithOutOperator(Double key, Double... keys) {
+	return getValues(key.doubleValue());
+    }
+
+    @Override
+    public void put(Integer row_id, Double key) {
+	put(row_id.intValue(), key.doubleValue());
+    }
+
+    public void put(int rowId, double key) {
+	_index.put(rowId, Double.doubleToLongBits(key));
+    }
+
+    @Override
+    public void remove(Integer row_id, Double key) {
+	remove(row_id.intValue(), key.doubleValue());
+    }
+
+    public void remove(int rowId, double key) {
+	_index.remove(rowId, Double.doubleToLongBits(key));
+    }
+}
@@ -40,6 +40,12 @@ public class HashIndex<KeyType> implements Index<KeyType> {
 	_index = new HashMap<KeyType, TIntArrayList>();
     }
 
+    @Override
+    public RowIdCursor getCursor(int operator, KeyType key) {
+	final TIntArrayList idsList = getValues(operator, key);
+	return idsList == null ? null : new RowIdCursor.ListsCursor(idsList);
+    }
+
     @Override
     public TIntArrayList getValues(int operator, KeyType key) {
 	if (operator != ComparisonPredicate.EQUAL_OP)
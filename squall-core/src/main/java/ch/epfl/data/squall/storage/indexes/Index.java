@@ -30,6 +30,12 @@ import java.io.Serializable;
  */
 public interface Index<KeyType> extends Serializable {
 
+    /*
+     * Streams the row-ids which getValues(operator, key) returns; null
+     * whenever getValues returns null
+     */
+    public RowIdCursor getCursor(int operator, KeyType key);
+
     public TIntArrayList getValues(int operator, KeyType key);
 
     public TIntArrayList getValuesWithOutOperator(KeyType key, KeyType... keys);
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storage.indexes;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Arrays;
+
+import ch.epfl.data.squall.predicates.ComparisonPredicate;
+
+/**
+ * Theta-Join hash index for equalities over long keys. Keys are kept
+ * unboxed in an open addressing table (linear probing), and the row-ids of a
+ * key form a chain in a RowIdChains, in insertion order, as in HashIndex.
+ */
+public class LongHashIndex implements Index<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    // a slot which never held a key; an existing key with no row-ids left
+    // has an empty chain instead
+    private static final int FREE = -2;
+
+    private long[] _keys;
+    private int[] _heads, _tails, _counts;
+    private int _mask;
+    private int _numKeys = 0;
+    private final RowIdChains _chains = new RowIdChains();
+
+    public LongHashIndex() {
+	this(16);
+    }
+
+    public LongHashIndex(int expectedKeys) {
+	int capacity = 16;
+	while (capacity < 2 * expectedKeys)
+	    capacity <<= 1;
+	allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+	_keys = new long[capacity];
+	_heads = new int[capacity];
+	_tails = new int[capacity];
+	_counts = new int[capacity];
+	Arrays.fill(_heads, FREE);
+	_mask = capacity - 1;
+    }
+
+    private int findSlot(long key) {
+	final long h = key * 0x9E3779B97F4A7C15L;
+	int slot = (int) (h ^ (h >>> 32)) & _mask;
+	while (_heads[slot] != FREE && _keys[slot] != key)
+	    slot = (slot + 1) & _mask;
+	return slot;
+    }
+
+    /*
+     * Returns null if the key was never inserted
+     */
+    public RowIdCursor getCursor(long key) {
+	final int slot = findSlot(key);
+	if (_heads[slot] == FREE)
+	    return null;
+	return _chains.cursor(_heads[slot]);
+    }
+
+    @Override
+    public RowIdCursor getCursor(int operator, Long key) {
+	if (operator != ComparisonPredicate.EQUAL_OP)
+	    return null;
+	else
+	    return getCursor(key.longValue());
+    }
+
+    public int getNumKeys() {
+	return _numKeys;
+    }
+
+    /*
+     * Returns null if the key was never inserted
+     */
+    public TIntArrayList getValues(long key) {
+	final int slot = findSlot(key);
+	if (_heads[slot] == FREE)
+	    return null;
+	return _chains.collect(_heads[slot], _counts[slot]);
+    }
+
+    @Override
+    public TIntArrayList getValues(int operator, Long key) {
+	if (operator != ComparisonPredicate.EQUAL_OP)
+	    return null;
+	else
+	    return getValues(key.longValue());
+    }
+
+    @Override
+    public TIntArrayList getValuesWithOutOperator(Long key, Long... keys) {
+	return getValues(key.longValue());
+    }
+
+    @Override
+    public void put(Integer row_id, Long key) {
+	put(row_id.intValue(), key.longValue());
+    }
+
+    public void put(int rowId, long key) {
+	final int slot = findSlot(key);
+	if (_heads[slot] == FREE) {
+	    _keys[slot] = key;
+	    _heads[slot] = RowIdChains.NIL;
+	    _tails[slot] = RowIdChains.NIL;
+	    _counts[slot] = 0;
+	    _numKeys++;
+	}
+	final int entry = _chains.append(_tails[slot], rowId);
+	if (_heads[slot] == RowIdChains.NIL)
+	    _heads[slot] = entry;
+	_tails[slot] = entry;
+	_counts[slot]++;
+	if (2 * _numKeys > _keys.length)
+	    rehash();
+    }
+
+    private void rehash() {
+	final long[] keys = _keys;
+	final int[] heads = _heads, tails = _tails, counts = _counts;
+	allocate(2 * keys.length);
+	for (int i = 0; i < keys.length; i++)
+	    if (heads[i] != FREE) {
+		final int slot = findSlot(keys[i]);
+		_keys[slot] = keys[i];
+		_heads[slot] = heads[i];
+		_tails[slot] = tails[i];
+		_counts[slot] = counts[i];
+	    }
+    }
+
+    @Override
+    public void remove(Integer row_id, Long key) {
+	remove(row_id.intValue(), key.longValue());
+    }
+
+    public void remove(int rowId, long key) {
+	final int slot = findSlot(key);
+	if (_heads[slot] == FREE)
+	    throw new RuntimeException(
+		    "Error: Removing a nonexisting key from index");
+	int previous = RowIdChains.NIL;
+	int entry = _heads[slot];
+	while (entry != RowIdChains.NIL && _chains.rowId(entry) != rowId) {
+	    previous = entry;
+	    entry = _chains.next(entry);
+	}
+	if (entry == RowIdChains.NIL)
+	    return;
+	final int next = _chains.next(entry);
+	if (previous == RowIdChains.NIL)
+	    _heads[slot] = next;
+	else
+	    _chains.setNext(previous, next);
+	if (_tails[slot] == entry)
+	    _tails[slot] = previous;
+	_chains.release(entry);
+	_counts[slot]--;
+    }
+}
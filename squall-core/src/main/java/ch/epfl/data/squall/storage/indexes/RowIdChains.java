@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storage.indexes;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Singly linked lists of row-ids kept in two parallel int arrays, shared by
+ * all the keys of a primitive hash index. An entry is addressed by its
+ * position; -1 ends a chain. Removed entries are put on a free list and
+ * reused by the next append.
+ */
+final class RowIdChains implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int NIL = -1;
+
+    private int[] _rowIds = new int[16];
+    private int[] _next = new int[16];
+    private int _size = 0;
+    private int _free = NIL;
+
+    /*
+     * Appends rowId after the entry tail (NIL for a new chain) and returns
+     * the position of the new entry
+     */
+    int append(int tail, int rowId) {
+	final int entry;
+	if (_free != NIL) {
+	    entry = _free;
+	    _free = _next[entry];
+	} else {
+	    if (_size == _rowIds.length) {
+		_rowIds = Arrays.copyOf(_rowIds, _size * 2);
+		_next = Arrays.copyOf(_next, _size * 2);
+	    }
+	    entry = _size++;
+	}
+	_rowIds[entry] = rowId;
+	_next[entry] = NIL;
+	if (tail != NIL)
+	    _next[tail] = entry;
+	return entry;
+    }
+
+    TIntArrayList collect(int head, int count) {
+	final TIntArrayList result = new TIntArrayList(count);
+	for (int entry = head; entry != NIL; entry = _next[entry])
+	    result.add(_rowIds[entry]);
+	return result;
+    }
+
+    /*
+     * Streams the chain which starts at head
+     */
+    RowIdCursor cursor(final int head) {
+	return new RowIdCursor() {
+	    private int _entry = head;
+
+	    @Override
+	    public boolean hasNext() {
+		return _entry != NIL;
+	    }
+
+	    @Override
+	    public int next() {
+		final int rowId = _rowIds[_entry];
+		_entry = _next[_entry];
+		return rowId;
+	    }
+	};
+    }
+
+    int next(int entry) {
+	return _next[entry];
+    }
+
+    void release(int entry) {
+	_next[entry] = _free;
+	_free = entry;
+    }
+
+    int rowId(int entry) {
+	return _rowIds[entry];
+    }
+
+    void setNext(int entry, int next) {
+	_next[entry] = next;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storage.indexes;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Streams row-ids one at a time, so that the matches of a probe are joined
+ * as they are found rather than collected first. A cursor reads the
+ * underlying structure lazily: it must not outlive a modification of it.
+ */
+public interface RowIdCursor {
+
+    /*
+     * Concatenation of row-id lists, which are visited only when reached
+     */
+    public static class ListsCursor implements RowIdCursor {
+	private final Iterator<TIntArrayList> _lists;
+	private TIntArrayList _current;
+	private int _position;
+
+	public ListsCursor(Iterator<TIntArrayList> lists) {
+	    _lists = lists;
+	}
+
+	public ListsCursor(TIntArrayList list) {
+	    this(Collections.singletonList(list).iterator());
+	}
+
+	@Override
+	public boolean hasNext() {
+	    while (_current == null || _position == _current.size()) {
+		if (!_lists.hasNext())
+		    return false;
+		_current = _lists.next();
+		_position = 0;
+	    }
+	    return true;
+	}
+
+	@Override
+	public int next() {
+	    return _current.get(_position++);
+	}
+    }
+
+    public static final RowIdCursor EMPTY = new RowIdCursor() {
+	@Override
+	public boolean hasNext() {
+	    return false;
+	}
+
+	@Override
+	public int next() {
+	    throw new RuntimeException("No more row-ids!");
+	}
+    };
+
+    public boolean hasNext();
+
+    /*
+     * Invoke only if hasNext holds
+     */
+    public int next();
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storage.indexes;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Intersects the row-id lists which the indexes of AND-ed join conditions
+ * return. The lists are taken from the shortest (the most selective) one on.
+ * At each step the candidates are marked in a bitmap over the row-ids, or, if
+ * the bitmap would be sparse, sorted and binary searched, whereas
+ * TIntArrayList.retainAll scans the whole second list for each candidate. The
+ * bitmap is kept between the probes and cleared through the candidates only.
+ */
+public class RowIdIntersection implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Comparator<TIntArrayList> BY_SIZE = new Comparator<TIntArrayList>() {
+	@Override
+	public int compare(TIntArrayList first, TIntArrayList second) {
+	    return Integer.compare(first.size(), second.size());
+	}
+    };
+
+    // more bitmap words than this many per row-id to visit are too sparse
+    private static final int MAX_WORDS_PER_ROW_ID = 8;
+
+    private long[] _bitmap = new long[16];
+
+    /*
+     * Returns the row-ids which are in all the lists, in the order of the
+     * longest one, or an empty list if any of them is null. The lists are
+     * not modified.
+     */
+    public TIntArrayList intersect(TIntArrayList[] lists) {
+	for (int i = 0; i < lists.length; i++)
+	    if (lists[i] == null || lists[i].isEmpty())
+		return new TIntArrayList();
+	final TIntArrayList[] bySize = lists.clone();
+	Arrays.sort(bySize, BY_SIZE);
+	TIntArrayList result = new TIntArrayList(bySize[0]);
+	for (int i = 1; i < bySize.length && !result.isEmpty(); i++)
+	    result = retain(result, bySize[i]);
+	return result;
+    }
+
+    // the row-ids of list which are also candidates
+    private TIntArrayList retain(TIntArrayList candidates, TIntArrayList list) {
+	int maxRowId = 0;
+	for (int i = 0; i < candidates.size(); i++)
+	    maxRowId = Math.max(maxRowId, candidates.get(i));
+	final int words = (maxRowId >>> 6) + 1;
+	if (words > MAX_WORDS_PER_ROW_ID * (candidates.size() + list.size()))
+	    return retainSorted(candidates, list);
+
+	if (_bitmap.length < words)
+	    _bitmap = new long[Math.max(words, 2 * _bitmap.length)];
+	for (int i = 0; i < candidates.size(); i++) {
+	    final int rowId = candidates.get(i);
+	    _bitmap[rowId >>> 6] |= 1L << rowId;
+	}
+	final TIntArrayList result = new TIntArrayList(candidates.size());
+	for (int i = 0; i < list.size(); i++) {
+	    final int rowId = list.get(i);
+	    if (rowId <= maxRowId && (_bitmap[rowId >>> 6] & (1L << rowId)) != 0)
+		result.add(rowId);
+	}
+	for (int i = 0; i < candidates.size(); i++)
+	    _bitmap[candidates.get(i) >>> 6] = 0;
+	return result;
+    }
+
+    private TIntArrayList retainSorted(TIntArrayList candidates,
+	    TIntArrayList list) {
+	final int[] sorted = candidates.toArray();
+	Arrays.sort(sorted);
+	final TIntArrayList result = new TIntArrayList(sorted.length);
+	for (int i = 0; i < list.size(); i++)
+	    if (Arrays.binarySearch(sorted, list.get(i)) >= 0)
+		result.add(list.get(i));
+	return result;
+    }
+}
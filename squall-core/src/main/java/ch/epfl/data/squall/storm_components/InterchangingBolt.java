@@ -146,8 +146,7 @@ public class InterchangingBolt extends BaseRichBolt implements StormComponent {
 		flush(bufferedTuplesRel1);
 		flush(bufferedTuplesRel2);
 		MyUtilities.processFinalAck(_numParentTasks,
-			_hierarchyPosition, _conf, stormTupleRcv, _collector,
-			null);
+			_hierarchyPosition, _conf, stormTupleRcv, _collector);
 	    }
 	    _collector.ack(stormTupleRcv);
 	    return;
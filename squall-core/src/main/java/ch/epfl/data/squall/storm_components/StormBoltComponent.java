@@ -21,6 +21,7 @@ package ch.epfl.data.squall.storm_components;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -41,9 +42,11 @@ import ch.epfl.data.squall.expressions.ValueExpression;
 import ch.epfl.data.squall.operators.AggregateOperator;
 import ch.epfl.data.squall.operators.ChainOperator;
 import ch.epfl.data.squall.operators.Operator;
+import ch.epfl.data.squall.utilities.ComponentRuntimeConfig;
+import ch.epfl.data.squall.utilities.ManualBatcher;
 import ch.epfl.data.squall.utilities.MyUtilities;
-import ch.epfl.data.squall.utilities.PeriodicAggBatchSend;
 import ch.epfl.data.squall.utilities.SystemParameters;
+import ch.epfl.data.squall.utilities.metrics.TaskMetrics;
 import ch.epfl.data.squall.window_semantics.WindowSemanticsManager;
 
 public abstract class StormBoltComponent extends BaseRichBolt implements
@@ -62,6 +65,8 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
     private final boolean _printOut;
     private final int _hierarchyPosition;
     private final StormEmitter[] _parentEmitters;
+    // the configuration read on the per-tuple paths, built in prepare
+    private ComponentRuntimeConfig _runtimeConfig;
 
     // for No ACK: the total number of tasks of all the parent components
     private int _numRemainingParents;
@@ -75,8 +80,8 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
     // for ManualBatch(Queuing) mode
     private List<Integer> _targetTaskIds;
     private int _targetParallelism;
-    private StringBuilder[] _targetBuffers;
-    private long[] _targetTimestamps;
+    private ManualBatcher _batcher;
+    private ManualBatcher.Sender _batchSender;
 
     // for CustomTimestamp mode
     private double _totalLatencyMillis;
@@ -89,6 +94,16 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
     // StatisticsCollector
     private PushStatisticCollector _sc;
 
+    // tick frequency, 0 until the first tick tuple
+    private int _tickSecs;
+    // for AggBatchOutput mode: the aggregates are flushed every
+    // _aggBatchTicks tick tuples
+    private int _aggBatchTicks;
+    private int _numTicks;
+
+    // null unless DIP_METRICS is set
+    private TaskMetrics _metrics;
+
     // EWH histogram
     private boolean _isEWHPartitioner;
 
@@ -127,28 +142,12 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
     // ManualBatchMode
     private void addToManualBatch(List<String> tuple, long timestamp) {
 	final String tupleHash = MyUtilities.createHashString(tuple,
-		_hashIndexes, _hashExpressions, _conf);
-	final int dstIndex = MyUtilities.chooseHashTargetIndex(tupleHash,
-		_targetParallelism);
-
-	// we put in queueTuple based on tupleHash
-	// the same hash is used in BatchStreamGrouping for deciding where a
-	// particular targetBuffer is to be sent
-	final String tupleString = MyUtilities.tupleToString(tuple, _conf);
-
-	if (MyUtilities.isCustomTimestampMode(_conf))
-	    if (_targetBuffers[dstIndex].length() == 0)
-		// timestamp of the first tuple being added to a buffer is the
-		// timestamp of the buffer
-		_targetTimestamps[dstIndex] = timestamp;
-	    else
-		// on a bolt, tuples might arrive out of order wrt timestamps
-		_targetTimestamps[dstIndex] = MyUtilities.getMin(timestamp,
-			_targetTimestamps[dstIndex]);
-	_targetBuffers[dstIndex].append(tupleHash)
-		.append(SystemParameters.MANUAL_BATCH_HASH_DELIMITER)
-		.append(tupleString)
-		.append(SystemParameters.MANUAL_BATCH_TUPLE_DELIMITER);
+		_hashIndexes, _hashExpressions, getRuntimeConfig());
+
+	// the batcher puts the tuple in a target buffer based on tupleHash,
+	// and the batch carries the target index to BatchStreamGrouping
+	if (_batcher.add(tupleHash, tuple, timestamp))
+	    manualBatchSend();
     }
 
     @Override
@@ -163,7 +162,7 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
 	    final List<String> outputFields = new ArrayList<String>();
 	    if (MyUtilities.isManualBatchingMode(_conf)) {
 		outputFields.add(StormComponent.COMP_INDEX);
-		outputFields.add(StormComponent.TUPLE); // string
+		outputFields.add(StormComponent.TUPLE); // binary batch
 	    } else {
 		outputFields.add(StormComponent.COMP_INDEX);
 		outputFields.add(StormComponent.TUPLE); // list of string
@@ -197,6 +196,13 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
 	}
     }
 
+    // -1 unless in ManualBatch mode with a linger time
+    private long getBatchLingerMillis() {
+	if (!MyUtilities.isManualBatchingMode(_conf))
+	    return -1;
+	return MyUtilities.getCompBatchLingerMillis(_ID, _conf);
+    }
+
     public abstract ChainOperator getChainOperator();
 
     public OutputCollector getCollector() {
@@ -207,6 +213,17 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
 	return _conf;
     }
 
+    /*
+     * Built in prepare; a subclass which does not call super.prepare gets it
+     * on the first use
+     */
+    public ComponentRuntimeConfig getRuntimeConfig() {
+	if (_runtimeConfig == null)
+	    _runtimeConfig = new ComponentRuntimeConfig(_conf,
+		    _hierarchyPosition);
+	return _runtimeConfig;
+    }
+
     // StormEmitter interface
     @Override
     public String[] getEmitterIDs() {
@@ -225,6 +242,10 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
 
     protected abstract InterchangingComponent getInterComp();
 
+    protected TaskMetrics getMetrics() {
+	return _metrics;
+    }
+
     @Override
     public String getName() {
 	return _ID;
@@ -232,28 +253,41 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
 
     public abstract long getNumSentTuples();
 
-    public abstract PeriodicAggBatchSend getPeriodicAggBatch();
+    /*
+     * Size of the stored tuples, reported to the metrics; -1 if unknown
+     */
+    protected long getStateSizeBytes() {
+	return -1;
+    }
+
+    /*
+     * componentConf (may be null) extended with the tick tuples which drive
+     * the periodic sending of the aggregates and of the manual batches
+     */
+    protected Map<String, Object> getTickConfiguration(
+	    Map<String, Object> componentConf, long aggBatchOutputMillis) {
+	final int tickSecs = MyUtilities.getTickSecs(_conf,
+		aggBatchOutputMillis, getBatchLingerMillis());
+	if (tickSecs < 0)
+	    return componentConf;
+	final Map<String, Object> result = new HashMap<String, Object>();
+	if (componentConf != null)
+	    result.putAll(componentConf);
+	result.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, tickSecs);
+	return result;
+    }
 
     protected void manualBatchSend() {
-	for (int i = 0; i < _targetParallelism; i++) {
-	    final String tupleString = _targetBuffers[i].toString();
-	    _targetBuffers[i] = new StringBuilder("");
-
-	    if (!tupleString.isEmpty())
-		// some buffers might be empty
-		if (MyUtilities.isCustomTimestampMode(_conf)
-			|| MyUtilities.isWindowTimestampMode(_conf))
-		    _collector.emit(new Values(_componentIndex, tupleString,
-			    _targetTimestamps[i]));
-		else
-		    _collector.emit(new Values(_componentIndex, tupleString));
-	}
+	_batcher.flush(_batchSender);
     }
 
     // BaseRichSpout
     @Override
     public void prepare(Map map, TopologyContext tc, OutputCollector collector) {
 	setCollector(collector);
+	_runtimeConfig = new ComponentRuntimeConfig(_conf, _hierarchyPosition);
+	if (MyUtilities.isCodegenMode(_conf) && getChainOperator() != null)
+	    getChainOperator().compile();
 	if (getInterComp() == null)
 	    _numRemainingParents = MyUtilities.getNumParentTasks(tc,
 		    Arrays.asList(_parentEmitters));
@@ -265,10 +299,21 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
 
 	_targetTaskIds = MyUtilities.findTargetTaskIds(tc);
 	_targetParallelism = _targetTaskIds.size();
-	_targetBuffers = new StringBuilder[_targetParallelism];
-	_targetTimestamps = new long[_targetParallelism];
-	for (int i = 0; i < _targetParallelism; i++)
-	    _targetBuffers[i] = new StringBuilder("");
+	if (_runtimeConfig.isManualBatching()) {
+	    _batcher = new ManualBatcher(_targetParallelism,
+		    MyUtilities.getCompBatchSize(_ID, _conf),
+		    MyUtilities.getCompBatchLingerMillis(_ID, _conf));
+	    _batchSender = new ManualBatcher.Sender() {
+		@Override
+		public void send(byte[] batch, long timestamp) {
+		    if (_runtimeConfig.isTimestampSent())
+			_collector.emit(new Values(_componentIndex, batch,
+				timestamp));
+		    else
+			_collector.emit(new Values(_componentIndex, batch));
+		}
+	    };
+	}
 
 	// initial statistics
 	printStatistics(SystemParameters.INITIAL_PRINT);
@@ -276,6 +321,9 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
 	    _sc = new PushStatisticCollector(map);
 	}
 
+	if (MyUtilities.isMetrics(_conf))
+	    registerMetrics(tc);
+
 	// equi-weight histogram
 	if (_isEWHPartitioner) {
 	    // extract sampleAside operator
@@ -315,7 +363,7 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
 		sb.append("\nComponent ").append(_ID);
 		sb.append("\nReceived tuples: ").append(getNumSentTuples());
 		sb.append(" Tuple: ").append(
-			MyUtilities.tupleToString(tuple, _conf));
+			MyUtilities.tupleToString(tuple, getRuntimeConfig()));
 		LOG.info(sb.toString());
 	    }
     }
@@ -324,12 +372,14 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
     // tupleSerialNum starts from 0
     @Override
     public void printTupleLatency(long tupleSerialNum, long timestamp) {
-	final int freqCompute = SystemParameters.getInt(_conf,
-		"FREQ_TUPLE_LOG_COMPUTE");
-	final int freqWrite = SystemParameters.getInt(_conf,
-		"FREQ_TUPLE_LOG_WRITE");
-	final int startupIgnoredTuples = SystemParameters.getInt(_conf,
-		"INIT_IGNORED_TUPLES");
+	if (_metrics != null)
+	    // every tuple, not only every FREQ_TUPLE_LOG_COMPUTE-th one
+	    _metrics.recordLatency(System.currentTimeMillis() - timestamp);
+
+	final ComponentRuntimeConfig config = getRuntimeConfig();
+	final int freqCompute = config.getFreqTupleLogCompute();
+	final int freqWrite = config.getFreqTupleLogWrite();
+	final int startupIgnoredTuples = config.getInitIgnoredTuples();
 
 	if (tupleSerialNum >= startupIgnoredTuples) {
 	    tupleSerialNum = tupleSerialNum - startupIgnoredTuples; // start
@@ -373,12 +423,56 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
 		    / _numberOfSamples + "ms.");
     }
 
+    /*
+     * The periodic sending is driven by tick tuples, so that neither the
+     * operator chain nor the collector is shared with another thread: in
+     * AggBatchOutput mode the aggregates are sent on every _aggBatchTicks-th
+     * tick, and the manual batches whose linger time expired are flushed on
+     * every tick. Returns true if stormTupleRcv is a tick tuple
+     * (it is then acked).
+     */
+    protected boolean processTick(Tuple stormTupleRcv,
+	    long aggBatchOutputMillis) {
+	if (!MyUtilities.isTickTuple(stormTupleRcv))
+	    return false;
+	if (_tickSecs == 0)
+	    _tickSecs = MyUtilities.getTickSecs(_conf, aggBatchOutputMillis,
+		    getBatchLingerMillis());
+	if (_tickSecs < 0)
+	    // only the window semantics asked for ticks
+	    return false;
+	if (MyUtilities.isAggBatchOutputMode(aggBatchOutputMillis)) {
+	    if (_aggBatchTicks == 0) {
+		_aggBatchTicks = (int) Math.max(1, Math
+			.round(aggBatchOutputMillis / (1000.0 * _tickSecs)));
+		if (_aggBatchTicks * _tickSecs * 1000L != aggBatchOutputMillis)
+		    LOG.warn("AggBatchOutput period of " + aggBatchOutputMillis
+			    + "ms: the aggregates are sent every "
+			    + _aggBatchTicks * _tickSecs + "s.");
+	    }
+	    if (++_numTicks >= _aggBatchTicks) {
+		_numTicks = 0;
+		aggBatchSend();
+	    }
+	}
+	if (_batcher != null && _batcher.isLingerExpired())
+	    manualBatchSend();
+	// the same tick tuples drive the eviction of the window state
+	if (!WindowSemanticsManager.evictStateIfSlidingWindowSemantics(this,
+		stormTupleRcv))
+	    _collector.ack(stormTupleRcv);
+	return true;
+    }
+
     // if true, we should exit from method which called this method
     protected boolean processFinalAck(List<String> tuple, Tuple stormTupleRcv) {
-	if (MyUtilities.isFinalAck(tuple, getConf())) {
+	if (getRuntimeConfig().isFinalAck(tuple)) {
 	    _numRemainingParents--;
 	    if (_numRemainingParents == 0) {
-		if (MyUtilities.isManualBatchingMode(getConf())) {
+		// the aggregates since the last tick (no-op unless in
+		// AggBatchOutput mode), before the batches are flushed
+		aggBatchSend();
+		if (getRuntimeConfig().isManualBatching()) {
 		    // flushing before sending lastAck down the hierarchy
 		    manualBatchSend();
 		}
@@ -386,7 +480,7 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
 	    }
 	    MyUtilities.processFinalAck(_numRemainingParents,
 		    getHierarchyPosition(), getConf(), stormTupleRcv,
-		    getCollector(), getPeriodicAggBatch());
+		    getCollector());
 	    if (_isEWHPartitioner) {
 		// rel size
 		Values relSize = MyUtilities.createRelSizeTuple(
@@ -397,7 +491,7 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
 		MyUtilities.processFinalAckCustomStream(
 			SystemParameters.PARTITIONER, _numRemainingParents,
 			getHierarchyPosition(), getConf(), stormTupleRcv,
-			getCollector(), getPeriodicAggBatch());
+			getCollector());
 	    }
 	    return true;
 	}
@@ -415,12 +509,33 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
     }
 
     // non-ManualBatchMode
+    private void registerMetrics(TopologyContext tc) {
+	_metrics = tc.registerMetric(TaskMetrics.NAME, new TaskMetrics(),
+		MyUtilities.getMetricsPeriodSecs(_conf));
+	if (getChainOperator() != null)
+	    getChainOperator().setMetrics(_metrics);
+	_metrics.registerGauge("state.bytes", new TaskMetrics.Gauge() {
+	    @Override
+	    public long getValue() {
+		return getStateSizeBytes();
+	    }
+	});
+	if (_batcher != null)
+	    _metrics.registerGauge("batch.buffered", new TaskMetrics.Gauge() {
+		@Override
+		public long getValue() {
+		    return _batcher.getNumBuffered();
+		}
+	    });
+    }
+
     private void regularTupleSend(List<String> tuple, Tuple stormTupleRcv,
 	    long timestamp) {
 	final Values stormTupleSnd = MyUtilities.createTupleValues(tuple,
 		timestamp, _componentIndex, _hashIndexes, _hashExpressions,
-		_conf);
-	MyUtilities.sendTuple(stormTupleSnd, stormTupleRcv, _collector, _conf);
+		getRuntimeConfig());
+	MyUtilities.sendTuple(stormTupleSnd, stormTupleRcv, _collector,
+		getRuntimeConfig());
     }
 
     protected void sendToStatisticsCollector(List<String> tuple,
@@ -464,13 +579,11 @@ public abstract class StormBoltComponent extends BaseRichBolt implements
     @Override
     public void tupleSend(List<String> tuple, Tuple stormTupleRcv,
 	    long timestamp) {
-	if (!MyUtilities.isManualBatchingMode(_conf))
+	if (!getRuntimeConfig().isManualBatching())
 	    regularTupleSend(tuple, stormTupleRcv, timestamp);
 	else {
 	    // appending tuple if it is not lastAck
 	    addToManualBatch(tuple, timestamp);
-	    if (getNumSentTuples() % MyUtilities.getCompBatchSize(_ID, _conf) == 0)
-		manualBatchSend();
 	}
     }
 }
\ No newline at end of file
@@ -25,7 +25,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
 
 import org.apache.log4j.Logger;
 
@@ -39,13 +38,15 @@ import ch.epfl.data.squall.components.ComponentProperties;
 import ch.epfl.data.squall.operators.AggregateOperator;
 import ch.epfl.data.squall.operators.ChainOperator;
 import ch.epfl.data.squall.operators.Operator;
+import ch.epfl.data.squall.operators.TupleBatch;
 import ch.epfl.data.squall.storm_components.synchronization.TopologyKiller;
 import ch.epfl.data.squall.utilities.CustomReader;
+import ch.epfl.data.squall.utilities.MappedFileReader;
 import ch.epfl.data.squall.utilities.MyUtilities;
-import ch.epfl.data.squall.utilities.PeriodicAggBatchSend;
 import ch.epfl.data.squall.utilities.SerializableFileInputStream;
 import ch.epfl.data.squall.utilities.SerializableHDFSFileInputStream;
 import ch.epfl.data.squall.utilities.SystemParameters;
+import ch.epfl.data.squall.utilities.TokenBucket;
 
 public class StormDataSource extends StormSpoutComponent {
     private static final long serialVersionUID = 1L;
@@ -55,6 +56,16 @@ public class StormDataSource extends StormSpoutComponent {
     private int _fileSection;
     private final int _fileParts;
     private CustomReader _reader = null;
+    // lines read in a single nextTuple invocation
+    private int _readBatchLines = 1;
+    // null if the reading rate is not limited
+    private TokenBucket _rateLimiter;
+    private String _readSplitDelimiter;
+    // sleeping _timeoutMillis every _timeoutFreq tuples; 0 if not throttled
+    private int _timeoutFreq;
+    private long _timeoutMillis;
+    // obsolete TIMEOUT_1MS_EVERY_XTH; 0 if not set
+    private int _timeout1msFreq;
 
     private boolean _hasReachedEOF = false;
     private boolean _hasSentEOF = false; // have sent EOF to TopologyKiller
@@ -65,12 +76,12 @@ public class StormDataSource extends StormSpoutComponent {
     private int _numSentTuples = 0;
 
     private final ChainOperator _operatorChain;
+    // batch execution mode
+    private TupleBatch _batch;
 
     // for aggregate batch sending
-    private final Semaphore _semAgg = new Semaphore(1, true);
-    private boolean _firstTime = true;
-    private PeriodicAggBatchSend _periodicAggBatch;
     private final long _aggBatchOutputMillis;
+    private long _nextAggBatchMillis;
 
     private String _name;
 
@@ -107,53 +118,36 @@ public class StormDataSource extends StormSpoutComponent {
 	    if (_operatorChain != null) {
 		final Operator lastOperator = _operatorChain.getLastOperator();
 		if (lastOperator instanceof AggregateOperator) {
-		    try {
-			_semAgg.acquire();
-		    } catch (final InterruptedException ex) {
-		    }
-
-		    // sending
+		    // sending the groups changed since the previous send
 		    final AggregateOperator agg = (AggregateOperator) lastOperator;
-		    final List<String> tuples = agg.getContent();
-		    for (final String tuple : tuples)
-			tupleSend(MyUtilities.stringToTuple(tuple, getConf()),
-				null, 0);
-		    // clearing
-		    agg.clearStorage();
-		    _semAgg.release();
+		    for (final List<String> tuple : MyUtilities
+			    .getAggBatchTuples(agg, getRuntimeConfig()))
+			tupleSend(tuple, null, 0);
 		}
 	    }
     }
 
     protected void applyOperatorsAndSend(List<String> tuple) {
-	long timestamp = 0;
-	if ((MyUtilities.isCustomTimestampMode(getConf()) && getHierarchyPosition() == StormComponent.NEXT_TO_LAST_COMPONENT)
-		|| MyUtilities.isWindowTimestampMode(getConf()))
-	    timestamp = System.currentTimeMillis();
-	if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
-	    try {
-		_semAgg.acquire();
-	    } catch (final InterruptedException ex) {
-	    }
+	final long timestamp = getReadTimestamp();
 	tuple = _operatorChain.process(tuple, timestamp);
 
-	if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
-	    _semAgg.release();
 
 	if (tuple == null)
 	    return;
 
-	_numSentTuples++;
-	_pendingTuples++;
-	printTuple(tuple);
+	send(tuple, timestamp);
+    }
 
-	if (MyUtilities
-		.isSending(getHierarchyPosition(), _aggBatchOutputMillis)) {
-	    tupleSend(tuple, null, timestamp);
-	}
-	if (MyUtilities.isPrintLatency(getHierarchyPosition(), getConf())) {
-	    printTupleLatency(_numSentTuples - 1, timestamp);
-	}
+    // batch execution mode: the timestamps are taken when the tuples are read
+    protected void applyOperatorsAndSend(TupleBatch batch) {
+	_operatorChain.processBatch(batch);
+
+
+	final int[] selection = batch.getSelection();
+	for (int i = 0; i < batch.getSelectedCount(); i++)
+	    send(batch.getTuple(selection[i]),
+		    batch.getLineageTimestamp(selection[i]));
+	batch.clear();
     }
 
     @Override
@@ -171,6 +165,8 @@ public class StormDataSource extends StormSpoutComponent {
      */
     private void eofFinalization() {
 	printContent();
+	// the aggregates since the last flush, before the last ack
+	aggBatchSend();
 
 	if (!MyUtilities.isAckEveryTuple(getConf()))
 	    if (getHierarchyPosition() == FINAL_COMPONENT) {
@@ -220,51 +216,60 @@ public class StormDataSource extends StormSpoutComponent {
 	return _pendingTuples;
     }
 
+    private long getReadTimestamp() {
+	if ((getRuntimeConfig().isCustomTimestamp() && getHierarchyPosition() == StormComponent.NEXT_TO_LAST_COMPONENT)
+		|| MyUtilities.isWindowTimestampMode(getConf()))
+	    return System.currentTimeMillis();
+	return 0;
+    }
+
     // from IRichSpout interface
     @Override
     public void nextTuple() {
-	if (_firstTime
-		&& MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
-	    _periodicAggBatch = new PeriodicAggBatchSend(_aggBatchOutputMillis,
-		    this);
-	    _firstTime = false;
+	// in AggBatchOutput mode, the aggregates are sent from the spout
+	// thread, which is the only one touching the operator chain
+	if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
+	    final long now = System.currentTimeMillis();
+	    if (_nextAggBatchMillis == 0)
+		_nextAggBatchMillis = now + _aggBatchOutputMillis;
+	    else if (now >= _nextAggBatchMillis) {
+		aggBatchSend();
+		_nextAggBatchMillis = now + _aggBatchOutputMillis;
+	    }
 	}
 
-	if (SystemParameters.isExisting(getConf(), "TIMEOUT_1MS_EVERY_XTH")) {
+	if (_timeout1msFreq > 0) {
 	    // Obsolete - this is for compatibility with old configurations
-	    final long timeout = 1;
-	    final int freqWait = SystemParameters.getInt(getConf(),
-		    "TIMEOUT_1MS_EVERY_XTH");
-	    if (_numSentTuples > 0 && _numSentTuples % freqWait == 0)
-		Utils.sleep(timeout);
+	    if (_numSentTuples > 0 && _numSentTuples % _timeout1msFreq == 0)
+		Utils.sleep(1);
 	}
 
-	if (SystemParameters.isExisting(getConf(), "TIMEOUT_EVERY_X_TUPLE")
-		&& SystemParameters.isExisting(getConf(), "TIMEOUT_X_MS")) {
-	    final int freqWait = SystemParameters.getInt(getConf(),
-		    "TIMEOUT_EVERY_X_TUPLE");
-	    final long timeout = SystemParameters.getInt(getConf(),
-		    "TIMEOUT_X_MS");
-	    if (_numSentTuples > 0 && _numSentTuples % freqWait == 0)
-		Utils.sleep(timeout);
+	if (_timeoutFreq > 0) {
+	    if (_numSentTuples > 0 && _numSentTuples % _timeoutFreq == 0)
+		Utils.sleep(_timeoutMillis);
 	}
 
-	final String line = readLine();
-	if (line == null) {
-	    if (!_hasReachedEOF) {
-		_hasReachedEOF = true;
-		// we reached EOF, first time this happens we invoke the method:
-		eofFinalization();
+	for (int i = 0; i < _readBatchLines; i++) {
+	    if (_rateLimiter != null && !_rateLimiter.tryAcquire())
+		return;
+	    final String line = readLine();
+	    if (line == null) {
+		if (!_hasReachedEOF) {
+		    _hasReachedEOF = true;
+		    if (_batch != null && !_batch.isEmpty())
+			applyOperatorsAndSend(_batch);
+		    // we reached EOF, first time this happens we invoke the
+		    // method:
+		    eofFinalization();
+		}
+		sendEOF();
+		// sleep since we are not going to do useful work,
+		// but still are looping in nextTuple method
+		Utils.sleep(SystemParameters.EOF_TIMEOUT_MILLIS);
+		return;
 	    }
-	    sendEOF();
-	    // sleep since we are not going to do useful work,
-	    // but still are looping in nextTuple method
-	    Utils.sleep(SystemParameters.EOF_TIMEOUT_MILLIS);
-	    return;
+	    processLine(line);
 	}
-
-	final List<String> tuple = MyUtilities.fileLineToTuple(line, getConf());
-	applyOperatorsAndSend(tuple);
     }
 
     // BaseRichSpout
@@ -277,6 +282,9 @@ public class StormDataSource extends StormSpoutComponent {
 	    if (_inputPath.startsWith("hdfs"))
 		_reader = new SerializableHDFSFileInputStream(_inputPath,
 			1 * 1024 * 1024, _fileSection, _fileParts);
+	    else if (MyUtilities.isMappedFileReader(getConf()))
+		_reader = new MappedFileReader(new File(_inputPath),
+			_fileSection, _fileParts, true);
 	    else
 		_reader = new SerializableFileInputStream(new File(_inputPath),
 			1 * 1024 * 1024, _fileSection, _fileParts);
@@ -286,9 +294,41 @@ public class StormDataSource extends StormSpoutComponent {
 	    LOG.info(error);
 	    throw new RuntimeException("Filename not found:" + error);
 	}
+
+	if (SystemParameters.isExisting(getConf(), "DIP_READ_BATCH_LINES"))
+	    _readBatchLines = SystemParameters.getInt(getConf(),
+		    "DIP_READ_BATCH_LINES");
+	if (SystemParameters.isExisting(getConf(), "DIP_READ_RATE_TUPLES"))
+	    _rateLimiter = new TokenBucket(SystemParameters.getLong(getConf(),
+		    "DIP_READ_RATE_TUPLES"));
+	_readSplitDelimiter = SystemParameters.getString(getConf(),
+		"DIP_READ_SPLIT_DELIMITER");
+	if (SystemParameters.isExisting(getConf(), "TIMEOUT_1MS_EVERY_XTH"))
+	    _timeout1msFreq = SystemParameters.getInt(getConf(),
+		    "TIMEOUT_1MS_EVERY_XTH");
+	if (SystemParameters.isExisting(getConf(), "TIMEOUT_EVERY_X_TUPLE")
+		&& SystemParameters.isExisting(getConf(), "TIMEOUT_X_MS")) {
+	    _timeoutFreq = SystemParameters.getInt(getConf(),
+		    "TIMEOUT_EVERY_X_TUPLE");
+	    _timeoutMillis = SystemParameters.getInt(getConf(), "TIMEOUT_X_MS");
+	}
     }
 
     // HELPER methods
+    private void processLine(String line) {
+	final List<String> tuple = MyUtilities.splitTuple(line,
+		_readSplitDelimiter);
+	if (getRuntimeConfig().isBatchExecution()) {
+	    if (_batch == null)
+		_batch = new TupleBatch(getRuntimeConfig()
+			.getBatchExecutionSize());
+	    _batch.add(tuple, getReadTimestamp());
+	    if (_batch.isFull())
+		applyOperatorsAndSend(_batch);
+	} else
+	    applyOperatorsAndSend(tuple);
+    }
+
     protected String readLine() {
 	String text = null;
 	try {
@@ -300,12 +340,26 @@ public class StormDataSource extends StormSpoutComponent {
 	return text;
     }
 
+    private void send(List<String> tuple, long timestamp) {
+	_numSentTuples++;
+	_pendingTuples++;
+	printTuple(tuple);
+
+	if (MyUtilities
+		.isSending(getHierarchyPosition(), _aggBatchOutputMillis)) {
+	    tupleSend(tuple, null, timestamp);
+	}
+	if (getRuntimeConfig().isPrintLatency()) {
+	    printTupleLatency(_numSentTuples - 1, timestamp);
+	}
+    }
+
     /*
      * sending EOF in AckEveryTuple mode when we send at least one tuple to the
      * next component
      */
     private void sendEOF() {
-	if (MyUtilities.isAckEveryTuple(getConf()))
+	if (getRuntimeConfig().isAckEveryTuple())
 	    if (_pendingTuples == 0)
 		if (!_hasSentEOF) {
 		    _hasSentEOF = true;
@@ -20,14 +20,13 @@
 package ch.epfl.data.squall.storm_components;
 
 import java.text.DateFormat;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
 
 import org.apache.log4j.Logger;
 
@@ -52,8 +51,8 @@ import ch.epfl.data.squall.storage.BerkeleyDBStore;
 import ch.epfl.data.squall.storage.BerkeleyDBStoreSkewed;
 import ch.epfl.data.squall.storm_components.synchronization.TopologyKiller;
 import ch.epfl.data.squall.thetajoin.matrix_assignment.ContentInsensitiveMatrixAssignment;
+import ch.epfl.data.squall.types.DateType;
 import ch.epfl.data.squall.utilities.MyUtilities;
-import ch.epfl.data.squall.utilities.PeriodicAggBatchSend;
 import ch.epfl.data.squall.utilities.SystemParameters;
 import ch.epfl.data.squall.utilities.statistics.StatisticsUtilities;
 import ch.epfl.data.squall.visitors.PredicateCreateIndexesVisitor;
@@ -68,8 +67,6 @@ public class StormDstBDB extends BaseRichBolt implements StormEmitter,
 
     private int _hierarchyPosition = INTERMEDIATE;
 
-    protected SimpleDateFormat _format = new SimpleDateFormat(
-	    "EEE MMM d HH:mm:ss zzz yyyy");
     private final StormEmitter _firstEmitter, _secondEmitter;
     private BPlusTreeStorage _firstRelationStorage, _secondRelationStorage;
 
@@ -106,17 +103,12 @@ public class StormDstBDB extends BaseRichBolt implements StormEmitter,
     private int _numRemainingParents;
 
     // for batch sending
-    private final Semaphore _semAgg = new Semaphore(1, true);
-    private boolean _firstTime = true;
-    private PeriodicAggBatchSend _periodicBatch;
     private final long _batchOutputMillis;
 
     private int _thisTaskID;
 
     private Calendar _cal;
     private final DateFormat _dateFormat = new SimpleDateFormat("HH:mm:ss.SSS");
-    SimpleDateFormat format = new SimpleDateFormat(
-	    "EEE MMM d HH:mm:ss zzz yyyy");
 
     private final InterchangingComponent _inter = null;
 
@@ -188,32 +180,17 @@ public class StormDstBDB extends BaseRichBolt implements StormEmitter,
 	    if (_operatorChain != null) {
 		final Operator lastOperator = _operatorChain.getLastOperator();
 		if (lastOperator instanceof AggregateOperator) {
-		    try {
-			_semAgg.acquire();
-		    } catch (final InterruptedException ex) {
-		    }
-		    // sending
+		    // sending the groups changed since the previous send
 		    final AggregateOperator agg = (AggregateOperator) lastOperator;
-		    final List<String> tuples = agg.getContent();
-		    for (final String tuple : tuples)
-			tupleSend(MyUtilities.stringToTuple(tuple, _conf),
-				null, 0);
-		    // clearing
-		    agg.clearStorage();
-		    _semAgg.release();
+		    for (final List<String> tuple : MyUtilities
+			    .getAggBatchTuples(agg, _conf))
+			tupleSend(tuple, null, 0);
 		}
 	    }
     }
 
     protected void applyOperatorsAndSend(Tuple stormTupleRcv, List<String> tuple) {
-	if (MyUtilities.isAggBatchOutputMode(_batchOutputMillis))
-	    try {
-		_semAgg.acquire();
-	    } catch (final InterruptedException ex) {
-	    }
 	tuple = _operatorChain.process(tuple, 0);
-	if (MyUtilities.isAggBatchOutputMode(_batchOutputMillis))
-	    _semAgg.release();
 
 	if (tuple == null)
 	    return;
@@ -333,11 +310,14 @@ public class StormDstBDB extends BaseRichBolt implements StormEmitter,
 
     @Override
     public void execute(Tuple stormTupleRcv) {
-	if (_firstTime && MyUtilities.isAggBatchOutputMode(_batchOutputMillis)) {
-	    _periodicBatch = new PeriodicAggBatchSend(_batchOutputMillis, this);
-	    _firstTime = false;
+	// in AggBatchOutput mode, the aggregates are sent from the executor
+	// thread on tick tuples
+	if (MyUtilities.isAggBatchOutputMode(_batchOutputMillis)
+		&& MyUtilities.isTickTuple(stormTupleRcv)) {
+	    aggBatchSend();
+	    _collector.ack(stormTupleRcv);
+	    return;
 	}
-
 	if (receivedDumpSignal(stormTupleRcv)) {
 	    MyUtilities.dumpSignal(this, stormTupleRcv, _collector);
 	    return;
@@ -391,9 +371,10 @@ public class StormDstBDB extends BaseRichBolt implements StormEmitter,
 			_secondRelationStorage.shutdown();
 		    }
 
+	    if (_numRemainingParents == 0)
+		aggBatchSend();
 	    MyUtilities.processFinalAck(_numRemainingParents,
-		    _hierarchyPosition, _conf, stormTupleRcv, _collector,
-		    _periodicBatch);
+		    _hierarchyPosition, _conf, stormTupleRcv, _collector);
 	    return;
 	}
 
@@ -420,8 +401,7 @@ public class StormDstBDB extends BaseRichBolt implements StormEmitter,
 	final PredicateUpdateIndexesVisitor visitor = new PredicateUpdateIndexesVisitor(
 		isFromFirstEmitter, tuple);
 	_joinPredicate.accept(visitor);
-	final String keyValue = new ArrayList<String>(visitor._valuesToIndex)
-		.get(0);
+	final String keyValue = visitor.getValuesToIndex().get(0);
 	// add the stormTuple to the specific storage
 	insertIntoBDBStorage(affectedStorage, keyValue, inputTupleString);
 
@@ -468,7 +448,14 @@ public class StormDstBDB extends BaseRichBolt implements StormEmitter,
 
     @Override
     public Map<String, Object> getComponentConfiguration() {
-	return _conf;
+	final int tickSecs = MyUtilities.getTickSecs(_conf,
+		_batchOutputMillis, -1);
+	if (tickSecs < 0)
+	    return _conf;
+	// tick tuples for sending the aggregates
+	final Map<String, Object> conf = new HashMap<String, Object>(_conf);
+	conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, tickSecs);
+	return conf;
     }
 
     protected Map getConf() {
@@ -506,72 +493,66 @@ public class StormDstBDB extends BaseRichBolt implements StormEmitter,
 	else if (_typeOfValueIndexed.get(0) instanceof Double)
 	    affectedStorage.put(Double.parseDouble(key), inputTupleString);
 	else if (_typeOfValueIndexed.get(0) instanceof Date)
-	    try {
-		affectedStorage.put(_format.parse(key), inputTupleString);
-	    } catch (final ParseException e) {
-		e.printStackTrace();
-	    }
+	    affectedStorage.put(DateType.parseDate(key), inputTupleString);
 	else if (_typeOfValueIndexed.get(0) instanceof String)
 	    affectedStorage.put(key, inputTupleString);
 	else
 	    throw new RuntimeException("non supported type");
     }
 
-    private void join(Tuple stormTuple, List<String> tuple,
-	    boolean isFromFirstEmitter, List<String> oppositeStorage) {
-
-	if (oppositeStorage == null || oppositeStorage.size() == 0)
-	    return;
-
-	for (int i = 0; i < oppositeStorage.size(); i++) {
-	    final String oppositeTupleString = oppositeStorage.get(i);
-
-	    final List<String> oppositeTuple = MyUtilities.stringToTuple(
-		    oppositeTupleString, getComponentConfiguration());
-	    List<String> firstTuple, secondTuple;
-	    if (isFromFirstEmitter) {
-		firstTuple = tuple;
-		secondTuple = oppositeTuple;
-	    } else {
-		firstTuple = oppositeTuple;
-		secondTuple = tuple;
-	    }
+    private void joinStoredTuple(Tuple stormTuple, List<String> tuple,
+	    boolean isFromFirstEmitter, String oppositeTupleString) {
+	final List<String> oppositeTuple = MyUtilities.stringToTuple(
+		oppositeTupleString, _conf);
+	List<String> firstTuple, secondTuple;
+	if (isFromFirstEmitter) {
+	    firstTuple = tuple;
+	    secondTuple = oppositeTuple;
+	} else {
+	    firstTuple = oppositeTuple;
+	    secondTuple = tuple;
+	}
 
-	    // Check joinCondition
-	    // if existIndexes == true, the join condition is already checked
-	    // before
-	    if (_joinPredicate == null || _existIndexes
-		    || _joinPredicate.test(firstTuple, secondTuple)) { // if
-		// null,
-		// cross
-		// product
-
-		// Create the output tuple by omitting the oppositeJoinKeys
-		// (ONLY for equi-joins since they are added
-		// by the first relation), if any (in case of cartesian product
-		// there are none)
-		List<String> outputTuple = null;
-
-		// Cartesian product - Outputs all attributes
-		outputTuple = MyUtilities.createOutputTuple(firstTuple,
-			secondTuple);
-		applyOperatorsAndSend(stormTuple, outputTuple);
-	    }
+	// Check joinCondition
+	// if existIndexes == true, the join condition is already checked
+	// before
+	if (_joinPredicate == null || _existIndexes
+		|| _joinPredicate.test(firstTuple, secondTuple)) { // if
+	    // null,
+	    // cross
+	    // product
+
+	    // Create the output tuple by omitting the oppositeJoinKeys
+	    // (ONLY for equi-joins since they are added
+	    // by the first relation), if any (in case of cartesian product
+	    // there are none)
+	    List<String> outputTuple = null;
+
+	    // Cartesian product - Outputs all attributes
+	    outputTuple = MyUtilities.createOutputTuple(firstTuple, secondTuple);
+	    applyOperatorsAndSend(stormTuple, outputTuple);
 	}
     }
 
-    protected void performJoin(Tuple stormTupleRcv, List<String> tuple,
-	    boolean isFromFirstEmitter, String keyValue,
-	    BPlusTreeStorage oppositeStorage) {
-	final List<String> tuplesToJoin = selectTupleToJoin(oppositeStorage,
-		isFromFirstEmitter, keyValue);
-	join(stormTupleRcv, tuple, isFromFirstEmitter, tuplesToJoin);
+    protected void performJoin(final Tuple stormTupleRcv,
+	    final List<String> tuple, final boolean isFromFirstEmitter,
+	    String keyValue, BPlusTreeStorage oppositeStorage) {
+	scanTuplesToJoin(oppositeStorage, isFromFirstEmitter, keyValue,
+		new BPlusTreeStorage.TupleVisitor() {
+		    @Override
+		    public void visit(String storedTuple) {
+			joinStoredTuple(stormTupleRcv, tuple,
+				isFromFirstEmitter, storedTuple);
+		    }
+		});
     }
 
     @Override
     public void prepare(Map map, TopologyContext tc, OutputCollector collector) {
 	_collector = collector;
 	createStorage();
+	if (MyUtilities.isCodegenMode(_conf) && _operatorChain != null)
+	    _operatorChain.compile();
 	if (_inter == null)
 	    _numRemainingParents = MyUtilities.getNumParentTasks(tc,
 		    _firstEmitter, _secondEmitter);
@@ -643,8 +624,10 @@ public class StormDstBDB extends BaseRichBolt implements StormEmitter,
 		SystemParameters.DUMP_RESULTS_STREAM);
     }
 
-    private List<String> selectTupleToJoin(BPlusTreeStorage oppositeStorage,
-	    boolean isFromFirstEmitter, String keyValue) {
+    // passes the tuples to join to visitor, without collecting them
+    private void scanTuplesToJoin(BPlusTreeStorage oppositeStorage,
+	    boolean isFromFirstEmitter, String keyValue,
+	    BPlusTreeStorage.TupleVisitor visitor) {
 
 	// If there is atleast one index (so we have single join conditions with
 	// 1 index per condition)
@@ -660,23 +643,18 @@ public class StormDstBDB extends BaseRichBolt implements StormEmitter,
 	final int diff = 0;
 	// Get the values from the index (check type first)
 	if (_typeOfValueIndexed.get(0) instanceof String)
-	    return oppositeStorage.get(currentOperator, keyValue, diff);
+	    oppositeStorage.scan(currentOperator, keyValue, diff, visitor);
 	// Even if valueIndexed is at first time an integer with
 	// precomputation a*col +b, it become a double
 	else if (_typeOfValueIndexed.get(0) instanceof Double)
-	    return oppositeStorage.get(currentOperator,
-		    Double.parseDouble(keyValue), diff);
+	    oppositeStorage.scan(currentOperator,
+		    Double.parseDouble(keyValue), diff, visitor);
 	else if (_typeOfValueIndexed.get(0) instanceof Integer)
-	    return oppositeStorage.get(currentOperator,
-		    Integer.parseInt(keyValue), diff);
+	    oppositeStorage.scan(currentOperator, Integer.parseInt(keyValue),
+		    diff, visitor);
 	else if (_typeOfValueIndexed.get(0) instanceof Date)
-	    try {
-		return oppositeStorage.get(currentOperator,
-			_format.parse(keyValue), diff);
-	    } catch (final ParseException e) {
-		e.printStackTrace();
-		return null;
-	    }
+	    oppositeStorage.scan(currentOperator, DateType.parseDate(keyValue),
+		    diff, visitor);
 	else
 	    throw new RuntimeException("non supported type");
 
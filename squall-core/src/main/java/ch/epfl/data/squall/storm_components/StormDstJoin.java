@@ -24,7 +24,6 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
 
 import org.apache.log4j.Logger;
 
@@ -41,8 +40,8 @@ import ch.epfl.data.squall.storage.AggregationStorage;
 import ch.epfl.data.squall.storage.BasicStore;
 import ch.epfl.data.squall.storage.KeyValueStore;
 import ch.epfl.data.squall.storm_components.synchronization.TopologyKiller;
+import ch.epfl.data.squall.utilities.ManualBatchReader;
 import ch.epfl.data.squall.utilities.MyUtilities;
-import ch.epfl.data.squall.utilities.PeriodicAggBatchSend;
 import ch.epfl.data.squall.utilities.SystemParameters;
 import ch.epfl.data.squall.utilities.statistics.StatisticsUtilities;
 import ch.epfl.data.squall.window_semantics.WindowSemanticsManager;
@@ -75,9 +74,6 @@ public class StormDstJoin extends StormBoltComponent {
     private String _name;
 
     // for batch sending
-    private final Semaphore _semAgg = new Semaphore(1, true);
-    private boolean _firstTime = true;
-    private PeriodicAggBatchSend _periodicAggBatch;
     private final long _aggBatchOutputMillis;
     private boolean _isRemoveIndex;
 
@@ -125,6 +121,9 @@ public class StormDstJoin extends StormBoltComponent {
 	if (MyUtilities.isManualBatchingMode(getConf()))
 	    currentBolt = MyUtilities.attachEmitterBatch(conf, _fullHashList,
 		    currentBolt, firstEmitter, secondEmitter);
+	else if (MyUtilities.isSkewSplitMode(getConf(), getID()))
+	    currentBolt = MyUtilities.attachEmitterSkewedHash(conf, getID(),
+		    _fullHashList, currentBolt, firstEmitter, secondEmitter);
 	else
 	    currentBolt = MyUtilities.attachEmitterHash(conf, _fullHashList,
 		    currentBolt, firstEmitter, secondEmitter);
@@ -144,29 +143,11 @@ public class StormDstJoin extends StormBoltComponent {
 	    if (_operatorChain != null) {
 		final Operator lastOperator = _operatorChain.getLastOperator();
 		if (lastOperator instanceof AggregateOperator) {
-		    try {
-			_semAgg.acquire();
-		    } catch (final InterruptedException ex) {
-		    }
-
-		    // sending
+		    // sending the groups changed since the previous send
 		    final AggregateOperator agg = (AggregateOperator) lastOperator;
-		    final List<String> tuples = agg.getContent();
-		    if (tuples != null) {
-			final String columnDelimiter = MyUtilities
-				.getColumnDelimiter(getConf());
-			for (String tuple : tuples) {
-			    tuple = tuple.replaceAll(" = ", columnDelimiter);
-			    tupleSend(
-				    MyUtilities.stringToTuple(tuple, getConf()),
-				    null, 0);
-			}
-		    }
-
-		    // clearing
-		    agg.clearStorage();
-
-		    _semAgg.release();
+		    for (final List<String> tuple : MyUtilities
+			    .getAggBatchTuples(agg, getRuntimeConfig()))
+			tupleSend(tuple, null, 0);
 		}
 	    }
     }
@@ -174,16 +155,9 @@ public class StormDstJoin extends StormBoltComponent {
     protected void applyOperatorsAndSend(Tuple stormTupleRcv,
 	    List<String> tuple, long lineageTimestamp, boolean isLastInBatch) {
 	// System.out.println("Seding Out tuple.....");
-	if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
-	    try {
-		_semAgg.acquire();
-	    } catch (final InterruptedException ex) {
-	    }
 
 	tuple = _operatorChain.process(tuple, 0);
 
-	if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
-	    _semAgg.release();
 
 	if (tuple == null)
 	    return;
@@ -197,16 +171,16 @@ public class StormDstJoin extends StormBoltComponent {
 		.isSending(getHierarchyPosition(), _aggBatchOutputMillis)
 		|| MyUtilities.isWindowTimestampMode(getConf())) {
 	    long timestamp = 0;
-	    if (MyUtilities.isCustomTimestampMode(getConf()))
+	    if (getRuntimeConfig().isCustomTimestamp())
 		timestamp = stormTupleRcv
 			.getLongByField(StormComponent.TIMESTAMP);
 	    if (MyUtilities.isWindowTimestampMode(getConf()))
 		timestamp = lineageTimestamp;
 	    tupleSend(tuple, stormTupleRcv, timestamp);
 	}
-	if (MyUtilities.isPrintLatency(getHierarchyPosition(), getConf())) {
+	if (getRuntimeConfig().isPrintLatency()) {
 	    long timestamp;
-	    if (MyUtilities.isManualBatchingMode(getConf())) {
+	    if (getRuntimeConfig().isManualBatching()) {
 		if (isLastInBatch) {
 		    timestamp = stormTupleRcv
 			    .getLongByField(StormComponent.TIMESTAMP);
@@ -222,6 +196,8 @@ public class StormDstJoin extends StormBoltComponent {
 
     @Override
     public void execute(Tuple stormTupleRcv) {
+	if (processTick(stormTupleRcv, _aggBatchOutputMillis))
+	    return;
 	// TODO
 	// short circuit that this is a window configuration
 	if (WindowSemanticsManager.evictStateIfSlidingWindowSemantics(this,
@@ -229,19 +205,12 @@ public class StormDstJoin extends StormBoltComponent {
 	    return;
 	}
 
-	if (_firstTime
-		&& MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
-	    _periodicAggBatch = new PeriodicAggBatchSend(_aggBatchOutputMillis,
-		    this);
-	    _firstTime = false;
-	}
-
 	if (receivedDumpSignal(stormTupleRcv)) {
 	    MyUtilities.dumpSignal(this, stormTupleRcv, getCollector());
 	    return;
 	}
 
-	if (!MyUtilities.isManualBatchingMode(getConf())) {
+	if (!getRuntimeConfig().isManualBatching()) {
 	    final String inputComponentIndex = stormTupleRcv
 		    .getStringByField(StormComponent.COMP_INDEX); // getString(0);
 	    final List<String> tuple = (List<String>) stormTupleRcv
@@ -258,29 +227,14 @@ public class StormDstJoin extends StormBoltComponent {
 	} else {
 	    final String inputComponentIndex = stormTupleRcv
 		    .getStringByField(StormComponent.COMP_INDEX); // getString(0);
-	    final String inputBatch = stormTupleRcv
-		    .getStringByField(StormComponent.TUPLE);// getString(1);
-
-	    final String[] wholeTuples = inputBatch
-		    .split(SystemParameters.MANUAL_BATCH_TUPLE_DELIMITER);
-	    final int batchSize = wholeTuples.length;
+	    final ManualBatchReader inputBatch = new ManualBatchReader(
+		    stormTupleRcv.getValueByField(StormComponent.TUPLE));
+	    final int batchSize = inputBatch.size();
 	    for (int i = 0; i < batchSize; i++) {
 		// parsing
-		final String currentTuple = new String(wholeTuples[i]);
-		final String[] parts = currentTuple
-			.split(SystemParameters.MANUAL_BATCH_HASH_DELIMITER);
-
-		String inputTupleHash = null;
-		String inputTupleString = null;
-		if (parts.length == 1)
-		    // lastAck
-		    inputTupleString = new String(parts[0]);
-		else {
-		    inputTupleHash = new String(parts[0]);
-		    inputTupleString = new String(parts[1]);
-		}
-		final List<String> tuple = MyUtilities.stringToTuple(
-			inputTupleString, getConf());
+		inputBatch.next();
+		final String inputTupleHash = inputBatch.getHash();
+		final List<String> tuple = inputBatch.getTuple();
 
 		// final Ack check
 		if (processFinalAck(tuple, stormTupleRcv)) {
@@ -314,7 +268,7 @@ public class StormDstJoin extends StormBoltComponent {
     // from IRichBolt
     @Override
     public Map<String, Object> getComponentConfiguration() {
-	return getConf();
+	return getTickConfiguration(getConf(), _aggBatchOutputMillis);
     }
 
     // from StormComponent interface
@@ -338,11 +292,6 @@ public class StormDstJoin extends StormBoltComponent {
 	return _numSentTuples;
     }
 
-    @Override
-    public PeriodicAggBatchSend getPeriodicAggBatch() {
-	return _periodicAggBatch;
-    }
-
     protected void performJoin(Tuple stormTupleRcv, List<String> tuple,
 	    String inputTupleHash, boolean isFromFirstEmitter,
 	    BasicStore<String> oppositeStorage, ProjectOperator projPreAgg,
@@ -368,8 +317,7 @@ public class StormDstJoin extends StormBoltComponent {
 		// end TODO
 
 		final List<String> oppositeTuple = MyUtilities.stringToTuple(
-			oppositeTupleString.toString(),
-			getComponentConfiguration());
+			oppositeTupleString.toString(), getRuntimeConfig());
 
 		List<String> firstTuple, secondTuple;
 		if (isFromFirstEmitter) {
@@ -413,7 +361,7 @@ public class StormDstJoin extends StormBoltComponent {
 		final String ts = _statDateFormat.format(_cal.getTime());
 
 		// printing
-		if (!MyUtilities.isCustomTimestampMode(getConf())) {
+		if (!getRuntimeConfig().isCustomTimestamp()) {
 		    final Runtime runtime = Runtime.getRuntime();
 		    final long memory = runtime.totalMemory()
 			    - runtime.freeMemory();
@@ -548,13 +496,19 @@ public class StormDstJoin extends StormBoltComponent {
 	    affectedStorage.update(tuple, inputTupleHash);
 	else {
 	    String inputTupleString = MyUtilities.tupleToString(tuple,
-		    getConf());
+		    getRuntimeConfig());
 	    // TODO
 	    // add the stormTuple to the specific storage
 	    inputTupleString = WindowSemanticsManager
 		    .AddTimeStampToStoredDataIfWindowSemantics(this,
 			    inputTupleString, stormTupleRcv);
-	    affectedStorage.insert(inputTupleHash, inputTupleString);
+	    if (getRuntimeConfig().isStoreTimestamp())
+		// the timestamp is also given apart, for purgeState
+		((KeyValueStore<String, String>) affectedStorage).insert(
+			inputTupleHash, inputTupleString, stormTupleRcv
+				.getLongByField(StormComponent.TIMESTAMP));
+	    else
+		affectedStorage.insert(inputTupleHash, inputTupleString);
 	}
 	performJoin(stormTupleRcv, tuple, inputTupleHash, isFromFirstEmitter,
 		oppositeStorage, projPreAgg, isLastInBatch);
@@ -566,7 +520,6 @@ public class StormDstJoin extends StormBoltComponent {
 
     @Override
     public void purgeStaleStateFromWindow() {
-	// TODO inefficient linear scan for now.
 	System.out.println("Cleaning up state");
 	((KeyValueStore<String, String>) _firstRelationStorage)
 		.purgeState(_latestTimeStamp
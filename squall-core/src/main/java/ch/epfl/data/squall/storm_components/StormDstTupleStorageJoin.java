@@ -31,8 +31,8 @@ import ch.epfl.data.squall.components.ComponentProperties;
 import ch.epfl.data.squall.predicates.Predicate;
 import ch.epfl.data.squall.storage.TupleStorage;
 import ch.epfl.data.squall.storm_components.synchronization.TopologyKiller;
+import ch.epfl.data.squall.utilities.ManualBatchReader;
 import ch.epfl.data.squall.utilities.MyUtilities;
-import ch.epfl.data.squall.utilities.PeriodicAggBatchSend;
 import ch.epfl.data.squall.utilities.SystemParameters;
 import ch.epfl.data.squall.utilities.statistics.StatisticsUtilities;
 import ch.epfl.data.squall.window_semantics.WindowSemanticsManager;
@@ -51,8 +51,8 @@ public class StormDstTupleStorageJoin extends StormJoinerBoltComponent {
 	    TopologyKiller killer, Config conf) {
 	super(firstEmitter, secondEmitter, cp, allCompNames, joinPredicate,
 		hierarchyPosition, builder, killer, conf);
-	_firstRelationStorage = new TupleStorage();
-	_secondRelationStorage = new TupleStorage();
+	_firstRelationStorage = MyUtilities.createTupleStorage(conf);
+	_secondRelationStorage = MyUtilities.createTupleStorage(conf);
 	_fullHashList = cp.getFullHashList();
 	_statsUtils = new StatisticsUtilities(getConf(), LOG);
 	final int parallelism = SystemParameters.getInt(getConf(), getID()
@@ -62,6 +62,9 @@ public class StormDstTupleStorageJoin extends StormJoinerBoltComponent {
 	if (MyUtilities.isManualBatchingMode(getConf()))
 	    currentBolt = MyUtilities.attachEmitterBatch(conf, _fullHashList,
 		    currentBolt, firstEmitter, secondEmitter);
+	else if (MyUtilities.isSkewSplitMode(getConf(), getID()))
+	    currentBolt = MyUtilities.attachEmitterSkewedHash(conf, getID(),
+		    _fullHashList, currentBolt, firstEmitter, secondEmitter);
 	else
 	    currentBolt = MyUtilities.attachEmitterHash(conf, _fullHashList,
 		    currentBolt, firstEmitter, secondEmitter);
@@ -90,23 +93,19 @@ public class StormDstTupleStorageJoin extends StormJoinerBoltComponent {
 
     @Override
     public void execute(Tuple stormTupleRcv) {
+	if (processTick(stormTupleRcv, _aggBatchOutputMillis))
+	    return;
 	// TODO
 	// short circuit that this is a window configuration
 	if (WindowSemanticsManager.evictStateIfSlidingWindowSemantics(this,
 		stormTupleRcv)) {
 	    return;
 	}
-	if (_firstTime
-		&& MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
-	    _periodicAggBatch = new PeriodicAggBatchSend(_aggBatchOutputMillis,
-		    this);
-	    _firstTime = false;
-	}
 	if (receivedDumpSignal(stormTupleRcv)) {
 	    MyUtilities.dumpSignal(this, stormTupleRcv, getCollector());
 	    return;
 	}
-	if (!MyUtilities.isManualBatchingMode(getConf())) {
+	if (!getRuntimeConfig().isManualBatching()) {
 	    final String inputComponentIndex = stormTupleRcv
 		    .getStringByField(StormComponent.COMP_INDEX); // getString(0);
 	    final List<String> tuple = (List<String>) stormTupleRcv
@@ -122,27 +121,14 @@ public class StormDstTupleStorageJoin extends StormJoinerBoltComponent {
 	} else {
 	    final String inputComponentIndex = stormTupleRcv
 		    .getStringByField(StormComponent.COMP_INDEX); // getString(0);
-	    final String inputBatch = stormTupleRcv
-		    .getStringByField(StormComponent.TUPLE);// getString(1);
-	    final String[] wholeTuples = inputBatch
-		    .split(SystemParameters.MANUAL_BATCH_TUPLE_DELIMITER);
-	    final int batchSize = wholeTuples.length;
+	    final ManualBatchReader inputBatch = new ManualBatchReader(
+		    stormTupleRcv.getValueByField(StormComponent.TUPLE));
+	    final int batchSize = inputBatch.size();
 	    for (int i = 0; i < batchSize; i++) {
 		// parsing
-		final String currentTuple = new String(wholeTuples[i]);
-		final String[] parts = currentTuple
-			.split(SystemParameters.MANUAL_BATCH_HASH_DELIMITER);
-		String inputTupleHash = null;
-		String inputTupleString = null;
-		if (parts.length == 1)
-		    // lastAck
-		    inputTupleString = new String(parts[0]);
-		else {
-		    inputTupleHash = new String(parts[0]);
-		    inputTupleString = new String(parts[1]);
-		}
-		final List<String> tuple = MyUtilities.stringToTuple(
-			inputTupleString, getConf());
+		inputBatch.next();
+		final String inputTupleHash = inputBatch.getHash();
+		final List<String> tuple = inputBatch.getTuple();
 		// final Ack check
 		if (processFinalAck(tuple, stormTupleRcv)) {
 		    if (i != batchSize - 1)
@@ -167,6 +153,12 @@ public class StormDstTupleStorageJoin extends StormJoinerBoltComponent {
 	getCollector().ack(stormTupleRcv);
     }
 
+    @Override
+    protected long getStateSizeBytes() {
+	return _firstRelationStorage.getSizeBytes()
+		+ _secondRelationStorage.getSizeBytes();
+    }
+
     @Override
     protected void printStatistics(int type) {
 	printStatistics(type, _firstRelationStorage.size(),
@@ -25,7 +25,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
 
 import org.apache.log4j.Logger;
 
@@ -45,7 +44,6 @@ import ch.epfl.data.squall.operators.ChainOperator;
 import ch.epfl.data.squall.storm_components.synchronization.TopologyKiller;
 import ch.epfl.data.squall.utilities.CustomReader;
 import ch.epfl.data.squall.utilities.MyUtilities;
-import ch.epfl.data.squall.utilities.PeriodicAggBatchSend;
 import ch.epfl.data.squall.utilities.SerializableFileInputStream;
 import ch.epfl.data.squall.utilities.SystemParameters;
 
@@ -103,9 +101,6 @@ public class StormInterchangingDataSource extends BaseRichSpout implements
     private long _sentPointer = -1;
 
     // for batch sending
-    private final Semaphore _semAgg = new Semaphore(1, true);
-    private boolean _firstTime = true;
-    private PeriodicAggBatchSend _periodicBatch;
     private final long _batchOutputMillis;
     private int _invocations; // how many time execute method is invoked
     private int _tuplesSleep; // after how many _invocations we sleep 1ms
@@ -158,19 +153,11 @@ public class StormInterchangingDataSource extends BaseRichSpout implements
 
     protected boolean applyOperatorsAndSend(List<String> tuple, int RelIndex) {
 	// do selection and projection
-	if (MyUtilities.isAggBatchOutputMode(_batchOutputMillis))
-	    try {
-		_semAgg.acquire();
-	    } catch (final InterruptedException ex) {
-	    }
 	if (RelIndex == 1)
 	    tuple = _operatorChainRel1.process(tuple, 0);
 	else
 	    tuple = _operatorChainRel2.process(tuple, 0);
 
-	if (MyUtilities.isAggBatchOutputMode(_batchOutputMillis))
-	    _semAgg.release();
-
 	if (tuple == null)
 	    return false;
 
@@ -269,11 +256,6 @@ public class StormInterchangingDataSource extends BaseRichSpout implements
     // from IRichSpout interface
     @Override
     public void nextTuple() {
-	if (_firstTime && MyUtilities.isAggBatchOutputMode(_batchOutputMillis)) {
-	    _periodicBatch = new PeriodicAggBatchSend(_batchOutputMillis, this);
-	    _firstTime = false;
-	}
-
 	if (_hasReachedEOF1 && _hasReachedEOF2) { // if both sources finished.
 	    if (!_hasReachedEOF) {
 		_hasReachedEOF = true;
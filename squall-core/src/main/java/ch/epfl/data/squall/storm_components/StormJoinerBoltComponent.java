@@ -21,16 +21,13 @@ package ch.epfl.data.squall.storm_components;
 
 import gnu.trove.list.array.TIntArrayList;
 
-import java.io.UnsupportedEncodingException;
 import java.text.DateFormat;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
 
 import org.apache.log4j.Logger;
 
@@ -41,6 +38,7 @@ import ch.epfl.data.squall.components.ComponentProperties;
 import ch.epfl.data.squall.operators.AggregateOperator;
 import ch.epfl.data.squall.operators.ChainOperator;
 import ch.epfl.data.squall.operators.Operator;
+import ch.epfl.data.squall.operators.TupleBatch;
 import ch.epfl.data.squall.predicates.ComparisonPredicate;
 import ch.epfl.data.squall.predicates.Predicate;
 import ch.epfl.data.squall.storage.BPlusTreeStorage;
@@ -48,10 +46,13 @@ import ch.epfl.data.squall.storage.BerkeleyDBStore;
 import ch.epfl.data.squall.storage.BerkeleyDBStoreSkewed;
 import ch.epfl.data.squall.storage.TupleStorage;
 import ch.epfl.data.squall.storage.indexes.Index;
+import ch.epfl.data.squall.storage.indexes.RowIdCursor;
+import ch.epfl.data.squall.storage.indexes.RowIdIntersection;
 import ch.epfl.data.squall.storm_components.synchronization.TopologyKiller;
+import ch.epfl.data.squall.types.DateType;
 import ch.epfl.data.squall.utilities.MyUtilities;
-import ch.epfl.data.squall.utilities.PeriodicAggBatchSend;
 import ch.epfl.data.squall.utilities.SystemParameters;
+import ch.epfl.data.squall.utilities.metrics.TaskMetrics;
 import ch.epfl.data.squall.utilities.statistics.StatisticsUtilities;
 import ch.epfl.data.squall.visitors.PredicateCreateIndexesVisitor;
 import ch.epfl.data.squall.visitors.PredicateUpdateIndexesVisitor;
@@ -63,28 +64,29 @@ public abstract class StormJoinerBoltComponent extends StormBoltComponent {
 	 * 
 	 */
     private static final long serialVersionUID = 1L;
+    private static Logger LOG = Logger
+	    .getLogger(StormJoinerBoltComponent.class);
     protected String _firstEmitterIndex, _secondEmitterIndex;
     protected ChainOperator _operatorChain;
     protected Predicate _joinPredicate;
     protected long _numSentTuples = 0;
+    // batch execution mode: the output tuples of a join
+    private TupleBatch _joinBatch;
 
     // join condition
     protected List<Index> _firstRelationIndexes, _secondRelationIndexes;
     protected List<Integer> _operatorForIndexes;
     protected List<Object> _typeOfValueIndexed;
     protected boolean _existIndexes = false;
+    // for several join conditions
+    private RowIdIntersection _rowIdIntersection;
 
     // for batch sending
-    protected Semaphore _semAgg = new Semaphore(1, true);
-    protected boolean _firstTime = true;
-    protected PeriodicAggBatchSend _periodicAggBatch;
     protected long _aggBatchOutputMillis;
 
     // for printing statistics for creating graphs
     protected Calendar _cal = Calendar.getInstance();
     protected DateFormat _statDateFormat = new SimpleDateFormat("HH:mm:ss.SSS");
-    protected DateFormat _convDateFormat = new SimpleDateFormat(
-	    "EEE MMM d HH:mm:ss zzz yyyy");
     protected StatisticsUtilities _statsUtils;
     protected InterchangingComponent _inter = null;
 
@@ -115,19 +117,11 @@ public abstract class StormJoinerBoltComponent extends StormBoltComponent {
 	    if (_operatorChain != null) {
 		final Operator lastOperator = _operatorChain.getLastOperator();
 		if (lastOperator instanceof AggregateOperator) {
-		    try {
-			_semAgg.acquire();
-		    } catch (final InterruptedException ex) {
-		    }
-		    // sending
+		    // sending the groups changed since the previous send
 		    final AggregateOperator agg = (AggregateOperator) lastOperator;
-		    final List<String> tuples = agg.getContent();
-		    for (final String tuple : tuples)
-			tupleSend(MyUtilities.stringToTuple(tuple, getConf()),
-				null, 0);
-		    // clearing
-		    agg.clearStorage();
-		    _semAgg.release();
+		    for (final List<String> tuple : MyUtilities
+			    .getAggBatchTuples(agg, getRuntimeConfig()))
+			tupleSend(tuple, null, 0);
 		}
 	    }
     }
@@ -141,49 +135,20 @@ public abstract class StormJoinerBoltComponent extends StormBoltComponent {
 	// next to last
 	// because we measure the latency of the last operator
 	// timestamp = System.currentTimeMillis();
-	if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
-	    try {
-		_semAgg.acquire();
-	    } catch (final InterruptedException ex) {
-	    }
 	tuple = _operatorChain.process(tuple, lineageTimestamp);
-	if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
-	    _semAgg.release();
 	if (tuple == null)
 	    return;
-	_numSentTuples++;
-	printTuple(tuple);
-	if (_numSentTuples % _statsUtils.getDipOutputFreqPrint() == 0)
-	    printStatistics(SystemParameters.OUTPUT_PRINT);
-	/*
-	 * Measuring latency from data sources and taking into account only the
-	 * last tuple in the batch
-	 * 
-	 * if (MyUtilities.isSending(getHierarchyPosition(),
-	 * _aggBatchOutputMillis)) { long timestamp = 0; if
-	 * (MyUtilities.isCustomTimestampMode(getConf())) timestamp =
-	 * stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
-	 * tupleSend(tuple, stormTupleRcv, timestamp); } if
-	 * (MyUtilities.isPrintLatency(getHierarchyPosition(), getConf())) {
-	 * long timestamp; if (MyUtilities.isManualBatchingMode(getConf())) { if
-	 * (isLastInBatch) { timestamp =
-	 * stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
-	 * printTupleLatency(_numSentTuples - 1, timestamp); } } else {
-	 * timestamp = stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
-	 * printTupleLatency(_numSentTuples - 1, timestamp); } }
-	 */
-	// Measuring latency from the previous component, and taking into
-	// account all the tuples in the batch
-	if (MyUtilities
-		.isSending(getHierarchyPosition(), _aggBatchOutputMillis)) {
+	send(stormTupleRcv, tuple, lineageTimestamp);
+    }
 
-	    // TODO Window Semantics
-	    if (!WindowSemanticsManager.sendTupleIfSlidingWindowSemantics(this,
-		    tuple, stormTupleRcv, lineageTimestamp))
-		tupleSend(tuple, stormTupleRcv, lineageTimestamp);
-	}
-	if (MyUtilities.isPrintLatency(getHierarchyPosition(), getConf()))
-	    printTupleLatency(_numSentTuples - 1, lineageTimestamp);
+    // batch execution mode
+    protected void applyOperatorsAndSend(Tuple stormTupleRcv, TupleBatch batch) {
+	_operatorChain.processBatch(batch);
+	final int[] selection = batch.getSelection();
+	for (int i = 0; i < batch.getSelectedCount(); i++)
+	    send(stormTupleRcv, batch.getTuple(selection[i]),
+		    batch.getLineageTimestamp(selection[i]));
+	batch.clear();
     }
 
     protected void createIndexes() {
@@ -295,7 +260,42 @@ public abstract class StormJoinerBoltComponent extends StormBoltComponent {
 
     @Override
     public Map<String, Object> getComponentConfiguration() {
-	return getConf();
+	return getTickConfiguration(getConf(), _aggBatchOutputMillis);
+    }
+
+    // Specific to TupleStorage
+    // the value to probe the i-th index with, or null if it does not parse
+    // (nothing in the index can then match it)
+    private Object getIndexKey(int i, Object value) {
+	try {
+	    // Even if valueIndexed is at first time an integer with
+	    // precomputation a*col +b, it become a double
+	    return PredicateUpdateIndexesVisitor.toIndexKey(
+		    _typeOfValueIndexed.get(i), value);
+	} catch (final RuntimeException e) {
+	    // NumberFormatException, or an invalid date
+	    LOG.info("Cannot probe the index with " + value + ": "
+		    + e.getMessage());
+	    return null;
+	}
+    }
+
+    // Specific to TupleStorage
+    private int getIndexOperator(int i, boolean isFromFirstEmitter) {
+	final int operator = _operatorForIndexes.get(i);
+	// Switch inequality operator if the tuple coming is from the other
+	// relation
+	if (isFromFirstEmitter) {
+	    if (operator == ComparisonPredicate.GREATER_OP)
+		return ComparisonPredicate.LESS_OP;
+	    else if (operator == ComparisonPredicate.NONGREATER_OP)
+		return ComparisonPredicate.NONLESS_OP;
+	    else if (operator == ComparisonPredicate.LESS_OP)
+		return ComparisonPredicate.GREATER_OP;
+	    else if (operator == ComparisonPredicate.NONLESS_OP)
+		return ComparisonPredicate.NONGREATER_OP;
+	}
+	return operator;
     }
 
     @Override
@@ -315,11 +315,6 @@ public abstract class StormJoinerBoltComponent extends StormBoltComponent {
 	return _numSentTuples;
     }
 
-    @Override
-    public PeriodicAggBatchSend getPeriodicAggBatch() {
-	return _periodicAggBatch;
-    }
-
     private void initialize(StormEmitter firstEmitter,
 	    StormEmitter secondEmitter, ComponentProperties cp,
 	    List<String> allCompNames, Predicate joinPredicate,
@@ -343,84 +338,132 @@ public abstract class StormJoinerBoltComponent extends StormBoltComponent {
 	else if (_typeOfValueIndexed.get(0) instanceof Double)
 	    affectedStorage.put(Double.parseDouble(key), inputTupleString);
 	else if (_typeOfValueIndexed.get(0) instanceof Date)
-	    try {
-		affectedStorage.put(_convDateFormat.parse(key),
-			inputTupleString);
-	    } catch (final ParseException e) {
-		e.printStackTrace();
-	    }
+	    affectedStorage.put(DateType.parseDate(key), inputTupleString);
 	else if (_typeOfValueIndexed.get(0) instanceof String)
 	    affectedStorage.put(key, inputTupleString);
 	else
 	    throw new RuntimeException("non supported type");
     }
 
-    // Generic: TupleStorage or BplusTree
+    // Specific for TupleStorage with binary tuples
+    // the opposite tuples are read as the cursor reaches them
     protected void join(Tuple stormTuple, List<String> tuple,
-	    boolean isFromFirstEmitter, List<String> oppositeStorage,
-	    boolean isLastInBatch) {
-
-	if (oppositeStorage == null || oppositeStorage.size() == 0)
-	    return;
-	for (int i = 0; i < oppositeStorage.size(); i++) {
-	    // TODO window semantics
-	    StringBuilder oppositeTupleString = new StringBuilder(
-		    oppositeStorage.get(i));
+	    boolean isFromFirstEmitter, TupleStorage oppositeStorage,
+	    RowIdCursor rowIds, boolean isLastInBatch) {
+	final boolean isStoreTimestamp = getRuntimeConfig().isStoreTimestamp();
+	final TaskMetrics metrics = getMetrics();
+	if (metrics != null)
+	    metrics.recordProbe();
+	while (rowIds.hasNext()) {
+	    final int rowId = rowIds.next();
+	    if (metrics != null)
+		metrics.recordCandidate();
+	    final long storedTimestamp = isStoreTimestamp ? oppositeStorage
+		    .getTimestamp(rowId) : 0;
 	    long lineageTimestamp = WindowSemanticsManager
 		    .joinPreProcessingIfSlidingWindowSemantics(this,
-			    oppositeTupleString, stormTuple);
+			    storedTimestamp, stormTuple);
 	    if (lineageTimestamp < 0)
 		continue;
-	    // end TODO
-	    final List<String> oppositeTuple = MyUtilities
-		    .stringToTuple(oppositeTupleString.toString(),
-			    getComponentConfiguration());
-	    List<String> firstTuple, secondTuple;
-	    if (isFromFirstEmitter) {
-		firstTuple = tuple;
-		secondTuple = oppositeTuple;
-	    } else {
-		firstTuple = oppositeTuple;
-		secondTuple = tuple;
-	    }
+	    // read in place, only the matches are copied to the output
+	    final List<String> oppositeTuple = oppositeStorage
+		    .getTupleView(rowId);
+	    joinPair(stormTuple, tuple, isFromFirstEmitter, oppositeTuple,
+		    lineageTimestamp, isLastInBatch);
+	}
+	flushJoinBatch(stormTuple);
+    }
 
-	    // Check joinCondition if existIndexes == true, the join condition
-	    // is already checked before
-	    if (_joinPredicate == null || _existIndexes
-		    || _joinPredicate.test(firstTuple, secondTuple)) {
-		// if null, cross product
-		// Create the output tuple by omitting the oppositeJoinKeys
-		// (ONLY for equi-joins since they are added by the first
-		// relation),
-		// if any (in case of cartesian product there are none)
-		List<String> outputTuple = null;
-		// Cartesian product - Outputs all attributes
-		outputTuple = MyUtilities.createOutputTuple(firstTuple,
-			secondTuple);
-		applyOperatorsAndSend(stormTuple, outputTuple,
-			lineageTimestamp, isLastInBatch);
-	    }
+    private void flushJoinBatch(Tuple stormTuple) {
+	if (_joinBatch != null && !_joinBatch.isEmpty())
+	    applyOperatorsAndSend(stormTuple, _joinBatch);
+    }
+
+    private void joinPair(Tuple stormTuple, List<String> tuple,
+	    boolean isFromFirstEmitter, List<String> oppositeTuple,
+	    long lineageTimestamp, boolean isLastInBatch) {
+	List<String> firstTuple, secondTuple;
+	if (isFromFirstEmitter) {
+	    firstTuple = tuple;
+	    secondTuple = oppositeTuple;
+	} else {
+	    firstTuple = oppositeTuple;
+	    secondTuple = tuple;
+	}
+
+	// Check joinCondition if existIndexes == true, the join condition
+	// is already checked before
+	if (_joinPredicate == null || _existIndexes
+		|| _joinPredicate.test(firstTuple, secondTuple)) {
+	    // if null, cross product
+	    // Create the output tuple by omitting the oppositeJoinKeys
+	    // (ONLY for equi-joins since they are added by the first
+	    // relation),
+	    // if any (in case of cartesian product there are none)
+	    if (getMetrics() != null)
+		getMetrics().recordMatch();
+	    List<String> outputTuple = null;
+	    // Cartesian product - Outputs all attributes
+	    outputTuple = MyUtilities.createOutputTuple(firstTuple, secondTuple);
+	    if (getRuntimeConfig().isBatchExecution()) {
+		if (_joinBatch == null)
+		    _joinBatch = new TupleBatch(
+			    getRuntimeConfig().getBatchExecutionSize());
+		_joinBatch.add(outputTuple, lineageTimestamp);
+		if (_joinBatch.isFull())
+		    applyOperatorsAndSend(stormTuple, _joinBatch);
+	    } else
+		applyOperatorsAndSend(stormTuple, outputTuple, lineageTimestamp,
+			isLastInBatch);
 	}
     }
 
     // Specific for BplusTrees
-    protected void performJoin(Tuple stormTupleRcv, List<String> tuple,
-	    boolean isFromFirstEmitter, String keyValue,
-	    BPlusTreeStorage oppositeStorage, boolean isLastInBatch) {
-	final List<String> tuplesToJoin = selectTupleToJoin(oppositeStorage,
-		isFromFirstEmitter, keyValue);
-	join(stormTupleRcv, tuple, isFromFirstEmitter, tuplesToJoin,
-		isLastInBatch);
+    protected void joinStoredTuple(Tuple stormTuple, List<String> tuple,
+	    boolean isFromFirstEmitter, String storedTuple,
+	    boolean isLastInBatch) {
+	if (getMetrics() != null)
+	    getMetrics().recordCandidate();
+	// TODO window semantics
+	StringBuilder oppositeTupleString = new StringBuilder(storedTuple);
+	long lineageTimestamp = WindowSemanticsManager
+		.joinPreProcessingIfSlidingWindowSemantics(this,
+			oppositeTupleString, stormTuple);
+	if (lineageTimestamp < 0)
+	    return;
+	// end TODO
+	final List<String> oppositeTuple = MyUtilities.stringToTuple(
+		oppositeTupleString.toString(), getRuntimeConfig());
+	joinPair(stormTuple, tuple, isFromFirstEmitter, oppositeTuple,
+		lineageTimestamp, isLastInBatch);
+    }
+
+    // Specific for BplusTrees
+    protected void performJoin(final Tuple stormTupleRcv,
+	    final List<String> tuple, final boolean isFromFirstEmitter,
+	    String keyValue, BPlusTreeStorage oppositeStorage,
+	    final boolean isLastInBatch) {
+	if (getMetrics() != null)
+	    getMetrics().recordProbe();
+	scanTuplesToJoin(oppositeStorage, isFromFirstEmitter, keyValue,
+		new BPlusTreeStorage.TupleVisitor() {
+		    @Override
+		    public void visit(String storedTuple) {
+			joinStoredTuple(stormTupleRcv, tuple,
+				isFromFirstEmitter, storedTuple, isLastInBatch);
+		    }
+		});
+	flushJoinBatch(stormTupleRcv);
     }
 
     // Specific for TupleStorage
     protected void performJoin(Tuple stormTupleRcv, List<String> tuple,
 	    String inputTupleHash, boolean isFromFirstEmitter,
-	    List<Index> oppositeIndexes, List<String> valuesToApplyOnIndex,
+	    List<Index> oppositeIndexes, List<Object> valuesToApplyOnIndex,
 	    TupleStorage oppositeStorage, boolean isLastInBatch) {
-	final List<String> tuplesToJoin = selectTupleToJoin(oppositeStorage,
-		oppositeIndexes, isFromFirstEmitter, valuesToApplyOnIndex);
-	join(stormTupleRcv, tuple, isFromFirstEmitter, tuplesToJoin,
+	final RowIdCursor rowIds = selectRowIdCursor(oppositeIndexes,
+		isFromFirstEmitter, valuesToApplyOnIndex, oppositeStorage);
+	join(stormTupleRcv, tuple, isFromFirstEmitter, oppositeStorage, rowIds,
 		isLastInBatch);
     }
 
@@ -432,7 +475,7 @@ public abstract class StormJoinerBoltComponent extends StormBoltComponent {
 		final int totalSize = size1 + size2;
 		final String ts = _statDateFormat.format(_cal.getTime());
 		// printing
-		if (!MyUtilities.isCustomTimestampMode(getConf())) {
+		if (!getRuntimeConfig().isCustomTimestamp()) {
 		    final Runtime runtime = Runtime.getRuntime();
 		    final long memory = runtime.totalMemory()
 			    - runtime.freeMemory();
@@ -561,10 +604,10 @@ public abstract class StormJoinerBoltComponent extends StormBoltComponent {
 	final PredicateUpdateIndexesVisitor visitor = new PredicateUpdateIndexesVisitor(
 		isFromFirstEmitter, tuple);
 	_joinPredicate.accept(visitor);
-	final String keyValue = new ArrayList<String>(visitor._valuesToIndex)
-		.get(0);
+	final String keyValue = visitor.getValuesToIndex().get(0);
 	// second, obtain value
-	String inputTupleString = MyUtilities.tupleToString(tuple, getConf());
+	String inputTupleString = MyUtilities.tupleToString(tuple,
+		getRuntimeConfig());
 	// TODO window semantics
 	// add the stormTuple to the specific storage
 	inputTupleString = WindowSemanticsManager
@@ -586,7 +629,6 @@ public abstract class StormJoinerBoltComponent extends StormBoltComponent {
 	    boolean isLastInBatch, TupleStorage _firstRelationStorage,
 	    TupleStorage _secondRelationStorage) {
 	boolean isFromFirstEmitter = false;
-	String inputTupleString = MyUtilities.tupleToString(tuple, getConf());
 	TupleStorage affectedStorage, oppositeStorage;
 	List<Index> affectedIndexes, oppositeIndexes;
 	if (_firstEmitterIndex.equals(inputComponentIndex)) {
@@ -607,13 +649,15 @@ public abstract class StormJoinerBoltComponent extends StormBoltComponent {
 	    throw new RuntimeException("InputComponentName "
 		    + inputComponentIndex + " doesn't match neither "
 		    + _firstEmitterIndex + " nor " + _secondEmitterIndex + ".");
-	// TODO window semantics
-	// add the stormTuple to the specific storage
-	inputTupleString = WindowSemanticsManager
-		.AddTimeStampToStoredDataIfWindowSemantics(this,
-			inputTupleString, stormTupleRcv);
-	final int row_id = affectedStorage.insert(inputTupleString);
-	List<String> valuesToApplyOnIndex = null;
+	// binary tuples are not re-parsed on each probe
+	final int row_id;
+	if (getRuntimeConfig().isStoreTimestamp())
+	    // the timestamp is kept apart, as a long indexed by time
+	    row_id = affectedStorage.insert(tuple,
+		    stormTupleRcv.getLongByField(StormComponent.TIMESTAMP));
+	else
+	    row_id = affectedStorage.insert(tuple);
+	List<Object> valuesToApplyOnIndex = null;
 	if (_existIndexes)
 	    valuesToApplyOnIndex = updateIndexes(inputComponentIndex, tuple,
 		    affectedIndexes, row_id);
@@ -627,8 +671,10 @@ public abstract class StormJoinerBoltComponent extends StormBoltComponent {
     }
 
     // Specific to Bplustree
-    protected List<String> selectTupleToJoin(BPlusTreeStorage oppositeStorage,
-	    boolean isFromFirstEmitter, String keyValue) {
+    // passes the tuples to join to visitor, without collecting them
+    protected void scanTuplesToJoin(BPlusTreeStorage oppositeStorage,
+	    boolean isFromFirstEmitter, String keyValue,
+	    BPlusTreeStorage.TupleVisitor visitor) {
 
 	// If there is atleast one index (so we have single join conditions with
 	// 1 index per condition)
@@ -645,109 +691,107 @@ public abstract class StormJoinerBoltComponent extends StormBoltComponent {
 	final int diff = tdiff != null ? (Integer) tdiff : 0;
 	// Get the values from the index (check type first)
 	if (_typeOfValueIndexed.get(0) instanceof String)
-	    return oppositeStorage.get(currentOperator, keyValue, diff);
+	    oppositeStorage.scan(currentOperator, keyValue, diff, visitor);
 	// Even if valueIndexed is at first time an integer with
 	// precomputation a*col +b, it become a double
 	else if (_typeOfValueIndexed.get(0) instanceof Integer)
-	    return oppositeStorage.get(currentOperator,
-		    Integer.parseInt(keyValue), diff);
+	    oppositeStorage.scan(currentOperator, Integer.parseInt(keyValue),
+		    diff, visitor);
 	else if (_typeOfValueIndexed.get(0) instanceof Long)
-	    return oppositeStorage.get(currentOperator,
-		    Long.parseLong(keyValue), diff);
+	    oppositeStorage.scan(currentOperator, Long.parseLong(keyValue),
+		    diff, visitor);
 	else if (_typeOfValueIndexed.get(0) instanceof Double)
-	    return oppositeStorage.get(currentOperator,
-		    Double.parseDouble(keyValue), diff);
+	    oppositeStorage.scan(currentOperator,
+		    Double.parseDouble(keyValue), diff, visitor);
 	else if (_typeOfValueIndexed.get(0) instanceof Date)
-	    try {
-		return oppositeStorage.get(currentOperator,
-			_convDateFormat.parse(keyValue), diff);
-	    } catch (final ParseException e) {
-		e.printStackTrace();
-		return null;
-	    }
+	    oppositeStorage.scan(currentOperator,
+		    DateType.parseDate(keyValue), diff, visitor);
 	else
 	    throw new RuntimeException("non supported type");
     }
 
     // Specific to TupleStorage
-    protected List<String> selectTupleToJoin(TupleStorage oppositeStorage,
-	    List<Index> oppositeIndexes, boolean isFromFirstEmitter,
-	    List<String> valuesToApplyOnIndex) {
-	List<String> result = new ArrayList<String>();
-	if (!_existIndexes) {
-	    try {
-		return oppositeStorage.toList();
-	    } catch (UnsupportedEncodingException e) {
-		e.printStackTrace();
-	    }
+    // streams the row-ids of the opposite tuples which should be joined
+    protected RowIdCursor selectRowIdCursor(List<Index> oppositeIndexes,
+	    boolean isFromFirstEmitter, List<Object> valuesToApplyOnIndex,
+	    TupleStorage oppositeStorage) {
+	if (!_existIndexes)
+	    return oppositeStorage.cursor();
+	if (oppositeIndexes.size() == 1) {
+	    // nothing to intersect: the index is read while joining
+	    final Object key = getIndexKey(0, valuesToApplyOnIndex.get(0));
+	    final RowIdCursor rowIds = key == null ? null : oppositeIndexes
+		    .get(0).getCursor(getIndexOperator(0, isFromFirstEmitter),
+			    key);
+	    return rowIds == null ? RowIdCursor.EMPTY : rowIds;
+	}
+	return new RowIdCursor.ListsCursor(selectRowIdsToJoin(oppositeIndexes,
+		isFromFirstEmitter, valuesToApplyOnIndex));
+    }
+
+    // Specific to TupleStorage
+    // returns null if there are no indexes (all the tuples should be joined)
+    protected TIntArrayList selectRowIdsToJoin(List<Index> oppositeIndexes,
+	    boolean isFromFirstEmitter, List<Object> valuesToApplyOnIndex) {
+	if (!_existIndexes)
+	    return null;
+	final TIntArrayList[] rowIds = new TIntArrayList[oppositeIndexes.size()];
+	for (int i = 0; i < oppositeIndexes.size(); i++) {
+	    final Object key = getIndexKey(i, valuesToApplyOnIndex.get(i));
+	    rowIds[i] = key == null ? null : oppositeIndexes.get(i).getValues(
+		    getIndexOperator(i, isFromFirstEmitter), key);
+	    if (rowIds[i] == null || rowIds[i].isEmpty())
+		return new TIntArrayList();
 	}
-	final TIntArrayList rowIds = new TIntArrayList();
 	/*
 	 * Then take the intersection of the returned row indices of all join
 	 * conditions
 	 */
-	for (int i = 0; i < oppositeIndexes.size(); i++) {
-	    TIntArrayList currentRowIds = null;
-	    final Index currentOpposIndex = oppositeIndexes.get(i);
-	    final String value = valuesToApplyOnIndex.get(i);
-	    int currentOperator = _operatorForIndexes.get(i);
-	    // Switch inequality operator if the tuple coming is from the other
-	    // relation
-	    if (isFromFirstEmitter) {
-		final int operator = currentOperator;
-		if (operator == ComparisonPredicate.GREATER_OP)
-		    currentOperator = ComparisonPredicate.LESS_OP;
-		else if (operator == ComparisonPredicate.NONGREATER_OP)
-		    currentOperator = ComparisonPredicate.NONLESS_OP;
-		else if (operator == ComparisonPredicate.LESS_OP)
-		    currentOperator = ComparisonPredicate.GREATER_OP;
-		else if (operator == ComparisonPredicate.NONLESS_OP)
-		    currentOperator = ComparisonPredicate.NONGREATER_OP;
-		else
-		    currentOperator = operator;
-	    }
-	    // Get the values from the index (check type first)
-	    if (_typeOfValueIndexed.get(i) instanceof String)
-		currentRowIds = currentOpposIndex.getValues(currentOperator,
-			value);
-	    // Even if valueIndexed is at first time an integer with
-	    // precomputation a*col +b, it become a double
-	    else if (_typeOfValueIndexed.get(i) instanceof Integer)
-		currentRowIds = currentOpposIndex.getValues(currentOperator,
-			Integer.parseInt(value));
-	    else if (_typeOfValueIndexed.get(i) instanceof Long)
-		currentRowIds = currentOpposIndex.getValues(currentOperator,
-			Long.parseLong(value));
-	    else if (_typeOfValueIndexed.get(i) instanceof Double)
-		currentRowIds = currentOpposIndex.getValues(currentOperator,
-			Double.parseDouble(value));
-	    else if (_typeOfValueIndexed.get(i) instanceof Date)
-		try {
-		    currentRowIds = currentOpposIndex.getValues(
-			    currentOperator, _convDateFormat.parse(value));
-		} catch (final ParseException e) {
-		    e.printStackTrace();
-		}
-	    else
-		throw new RuntimeException("non supported type");
-	    if (currentRowIds == null)
-		return result;
-	    if (i == 0)
-		rowIds.addAll(currentRowIds);
-	    else
-		rowIds.retainAll(currentRowIds);
-	    if (rowIds.isEmpty())
-		return result;
-	}
-	for (int i = 0; i < rowIds.size(); i++) {
-	    final int id = rowIds.get(i);
-	    result.add(oppositeStorage.get(id));
+	if (_rowIdIntersection == null)
+	    _rowIdIntersection = new RowIdIntersection();
+	return _rowIdIntersection.intersect(rowIds);
+    }
+
+    private void send(Tuple stormTupleRcv, List<String> tuple,
+	    long lineageTimestamp) {
+	_numSentTuples++;
+	printTuple(tuple);
+	if (_numSentTuples % _statsUtils.getDipOutputFreqPrint() == 0)
+	    printStatistics(SystemParameters.OUTPUT_PRINT);
+	/*
+	 * Measuring latency from data sources and taking into account only the
+	 * last tuple in the batch
+	 * 
+	 * if (MyUtilities.isSending(getHierarchyPosition(),
+	 * _aggBatchOutputMillis)) { long timestamp = 0; if
+	 * (getRuntimeConfig().isCustomTimestamp()) timestamp =
+	 * stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
+	 * tupleSend(tuple, stormTupleRcv, timestamp); } if
+	 * (getRuntimeConfig().isPrintLatency()) {
+	 * long timestamp; if (getRuntimeConfig().isManualBatching()) { if
+	 * (isLastInBatch) { timestamp =
+	 * stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
+	 * printTupleLatency(_numSentTuples - 1, timestamp); } } else {
+	 * timestamp = stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
+	 * printTupleLatency(_numSentTuples - 1, timestamp); } }
+	 */
+	// Measuring latency from the previous component, and taking into
+	// account all the tuples in the batch
+	if (MyUtilities
+		.isSending(getHierarchyPosition(), _aggBatchOutputMillis)) {
+
+	    // TODO Window Semantics
+	    if (!WindowSemanticsManager.sendTupleIfSlidingWindowSemantics(this,
+		    tuple, stormTupleRcv, lineageTimestamp))
+		tupleSend(tuple, stormTupleRcv, lineageTimestamp);
 	}
-	return result;
+	if (getRuntimeConfig().isPrintLatency())
+	    printTupleLatency(_numSentTuples - 1, lineageTimestamp);
     }
 
     // Specific to TupleStorage
-    protected List<String> updateIndexes(String inputComponentIndex,
+    // returns the evaluated keys, which also probe the opposite indexes
+    protected List<Object> updateIndexes(String inputComponentIndex,
 	    List<String> tuple, List<Index> affectedIndexes, int row_id) {
 	boolean comeFromFirstEmitter = false;
 	if (inputComponentIndex.equals(_firstEmitterIndex))
@@ -755,34 +799,14 @@ public abstract class StormJoinerBoltComponent extends StormBoltComponent {
 	final PredicateUpdateIndexesVisitor visitor = new PredicateUpdateIndexesVisitor(
 		comeFromFirstEmitter, tuple);
 	_joinPredicate.accept(visitor);
-	final List<String> valuesToIndex = new ArrayList<String>(
-		visitor._valuesToIndex);
-	final List<Object> typesOfValuesToIndex = new ArrayList<Object>(
-		visitor._typesOfValuesToIndex);
+	final List<Object> keysToIndex = visitor._keysToIndex;
+	final List<Object> typesOfValuesToIndex = visitor._typesOfValuesToIndex;
 	for (int i = 0; i < affectedIndexes.size(); i++)
-	    if (typesOfValuesToIndex.get(i) instanceof Integer)
-		affectedIndexes.get(i).put(row_id,
-			Integer.parseInt(valuesToIndex.get(i)));
-	    else if (typesOfValuesToIndex.get(i) instanceof Long)
-		affectedIndexes.get(i).put(row_id,
-			Long.parseLong(valuesToIndex.get(i)));
-	    else if (typesOfValuesToIndex.get(i) instanceof Double)
-		affectedIndexes.get(i).put(row_id,
-			Double.parseDouble(valuesToIndex.get(i)));
-	    else if (typesOfValuesToIndex.get(i) instanceof Date)
-		try {
-		    affectedIndexes.get(i).put(row_id,
-			    _convDateFormat.parse(valuesToIndex.get(i)));
-		} catch (final ParseException e) {
-		    throw new RuntimeException(
-			    "Parsing problem in StormThetaJoin.updatedIndexes "
-				    + e.getMessage());
-		}
-	    else if (typesOfValuesToIndex.get(i) instanceof String)
-		affectedIndexes.get(i).put(row_id, valuesToIndex.get(i));
-	    else
-		throw new RuntimeException("non supported type");
-	return valuesToIndex;
+	    affectedIndexes.get(i).put(
+		    row_id,
+		    PredicateUpdateIndexesVisitor.toIndexKey(
+			    typesOfValuesToIndex.get(i), keysToIndex.get(i)));
+	return keysToIndex;
     }
 
 }
\ No newline at end of file
@@ -21,7 +21,7 @@ package ch.epfl.data.squall.storm_components;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
@@ -34,9 +34,10 @@ import ch.epfl.data.squall.components.ComponentProperties;
 import ch.epfl.data.squall.operators.AggregateOperator;
 import ch.epfl.data.squall.operators.ChainOperator;
 import ch.epfl.data.squall.operators.Operator;
+import ch.epfl.data.squall.operators.TupleBatch;
 import ch.epfl.data.squall.storm_components.synchronization.TopologyKiller;
+import ch.epfl.data.squall.utilities.ManualBatchReader;
 import ch.epfl.data.squall.utilities.MyUtilities;
-import ch.epfl.data.squall.utilities.PeriodicAggBatchSend;
 import ch.epfl.data.squall.utilities.SystemParameters;
 
 public class StormOperator extends StormBoltComponent {
@@ -44,6 +45,8 @@ public class StormOperator extends StormBoltComponent {
     private static Logger LOG = Logger.getLogger(StormOperator.class);
 
     private final ChainOperator _operatorChain;
+    // batch execution mode
+    private TupleBatch _batch;
 
     private int _numSentTuples = 0;
 
@@ -51,9 +54,6 @@ public class StormOperator extends StormBoltComponent {
     private final List<String> _fullHashList;
 
     // for agg batch sending
-    private final Semaphore _semAgg = new Semaphore(1, true);
-    private boolean _firstTime = true;
-    private PeriodicAggBatchSend _periodicAggBatch;
     private final long _aggBatchOutputMillis;
 
     public StormOperator(ArrayList<Component> parentEmitters,
@@ -109,84 +109,56 @@ public class StormOperator extends StormBoltComponent {
 	    if (_operatorChain != null) {
 		final Operator lastOperator = _operatorChain.getLastOperator();
 		if (lastOperator instanceof AggregateOperator) {
-		    try {
-			_semAgg.acquire();
-		    } catch (final InterruptedException ex) {
-		    }
-
-		    // sending
+		    // sending the groups changed since the previous send
 		    final AggregateOperator agg = (AggregateOperator) lastOperator;
-		    final List<String> tuples = agg.getContent();
-		    for (final String tuple : tuples)
-			tupleSend(MyUtilities.stringToTuple(tuple, getConf()),
-				null, 0);
-
-		    // clearing
-		    agg.clearStorage();
-
-		    _semAgg.release();
+		    for (final List<String> tuple : MyUtilities
+			    .getAggBatchTuples(agg, getRuntimeConfig()))
+			tupleSend(tuple, null, 0);
 		}
 	    }
     }
 
     protected void applyOperatorsAndSend(Tuple stormTupleRcv,
 	    List<String> tuple, boolean isLastInBatch) {
-	long timestamp = 0;
-	if (MyUtilities.isCustomTimestampMode(getConf())
-		|| MyUtilities.isWindowTimestampMode(getConf()))
-	    timestamp = stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
-	if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
-	    try {
-		_semAgg.acquire();
-	    } catch (final InterruptedException ex) {
-	    }
+	final long timestamp = getTimestamp(stormTupleRcv);
 	tuple = _operatorChain.process(tuple, timestamp);
-	if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
-	    _semAgg.release();
 
 	if (tuple == null) {
 	    getCollector().ack(stormTupleRcv);
 	    return;
 	}
-	_numSentTuples++;
-	printTuple(tuple);
+	send(stormTupleRcv, tuple, timestamp, isLastInBatch);
+    }
 
-	if (MyUtilities
-		.isSending(getHierarchyPosition(), _aggBatchOutputMillis)
-		|| MyUtilities.isWindowTimestampMode(getConf())) {
-	    tupleSend(tuple, stormTupleRcv, timestamp);
-	}
-	if (MyUtilities.isPrintLatency(getHierarchyPosition(), getConf())) {
-	    if (MyUtilities.isManualBatchingMode(getConf())) {
-		if (isLastInBatch) {
-		    timestamp = stormTupleRcv
-			    .getLongByField(StormComponent.TIMESTAMP); // getLong(2);
-		    printTupleLatency(_numSentTuples - 1, timestamp);
-		}
-	    } else {
-		timestamp = stormTupleRcv
-			.getLongByField(StormComponent.TIMESTAMP); // getLong(3);
-		printTupleLatency(_numSentTuples - 1, timestamp);
-	    }
-	}
+    /*
+     * Batch execution mode: the tuples of the batch all come from
+     * stormTupleRcv; isLastFlush tells if this is the end of the received
+     * batch
+     */
+    protected void applyOperatorsAndSend(Tuple stormTupleRcv, TupleBatch batch,
+	    boolean isLastFlush) {
+	_operatorChain.processBatch(batch);
+
+	final int[] selection = batch.getSelection();
+	final int size = batch.getSelectedCount();
+	for (int i = 0; i < size; i++)
+	    send(stormTupleRcv, batch.getTuple(selection[i]),
+		    batch.getLineageTimestamp(selection[i]), isLastFlush
+			    && i == size - 1);
+	batch.clear();
     }
 
     // from IRichBolt
     @Override
     public void execute(Tuple stormTupleRcv) {
-	if (_firstTime
-		&& MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
-	    _periodicAggBatch = new PeriodicAggBatchSend(_aggBatchOutputMillis,
-		    this);
-	    _firstTime = false;
-	}
-
+	if (processTick(stormTupleRcv, _aggBatchOutputMillis))
+	    return;
 	if (receivedDumpSignal(stormTupleRcv)) {
 	    MyUtilities.dumpSignal(this, stormTupleRcv, getCollector());
 	    return;
 	}
 
-	if (!MyUtilities.isManualBatchingMode(getConf())) {
+	if (!getRuntimeConfig().isManualBatching()) {
 	    final List<String> tuple = (List<String>) stormTupleRcv
 		    .getValueByField(StormComponent.TUPLE);// getValue(1);
 
@@ -197,26 +169,23 @@ public class StormOperator extends StormBoltComponent {
 
 	} else {
 		System.out.println(stormTupleRcv.getSourceStreamId()); 
-	    final String inputBatch = stormTupleRcv
-		    .getStringByField(StormComponent.TUPLE); // getString(1);
-
-	    final String[] wholeTuples = inputBatch
-		    .split(SystemParameters.MANUAL_BATCH_TUPLE_DELIMITER);
-	    final int batchSize = wholeTuples.length;
+	    final ManualBatchReader inputBatch = new ManualBatchReader(
+		    stormTupleRcv.getValueByField(StormComponent.TUPLE));
+	    final int batchSize = inputBatch.size();
+	    final boolean isBatchExecution = MyUtilities
+		    .isBatchExecutionMode(getConf());
+	    if (isBatchExecution && _batch == null)
+		_batch = new TupleBatch(
+			getRuntimeConfig().getBatchExecutionSize());
 	    for (int i = 0; i < batchSize; i++) {
 		// parsing
-		final String currentTuple = new String(wholeTuples[i]);
-		final String[] parts = currentTuple
-			.split(SystemParameters.MANUAL_BATCH_HASH_DELIMITER);
-
-		String inputTupleString = null;
-		if (parts.length == 1)
-		    // lastAck
-		    inputTupleString = new String(parts[0]);
-		else
-		    inputTupleString = new String(parts[1]);
-		final List<String> tuple = MyUtilities.stringToTuple(
-			inputTupleString, getConf());
+		inputBatch.next();
+		final List<String> tuple = inputBatch.getTuple();
+
+		// the tuples before LAST_ACK have to be processed first
+		if (isBatchExecution && !_batch.isEmpty()
+			&& getRuntimeConfig().isFinalAck(tuple))
+		    applyOperatorsAndSend(stormTupleRcv, _batch, true);
 
 		// final Ack check
 		if (processFinalAck(tuple, stormTupleRcv)) {
@@ -227,7 +196,12 @@ public class StormOperator extends StormBoltComponent {
 		}
 
 		// processing a tuple
-		if (i == batchSize - 1)
+		if (isBatchExecution) {
+		    _batch.add(tuple, getTimestamp(stormTupleRcv));
+		    if (_batch.isFull() || i == batchSize - 1)
+			applyOperatorsAndSend(stormTupleRcv, _batch,
+				i == batchSize - 1);
+		} else if (i == batchSize - 1)
 		    applyOperatorsAndSend(stormTupleRcv, tuple, true);
 		else
 		    applyOperatorsAndSend(stormTupleRcv, tuple, false);
@@ -241,6 +215,12 @@ public class StormOperator extends StormBoltComponent {
 	return _operatorChain;
     }
 
+    // from IRichBolt
+    @Override
+    public Map<String, Object> getComponentConfiguration() {
+	return getTickConfiguration(null, _aggBatchOutputMillis);
+    }
+
     // from StormComponent
     @Override
     public String getInfoID() {
@@ -260,9 +240,11 @@ public class StormOperator extends StormBoltComponent {
 	return _numSentTuples;
     }
 
-    @Override
-    public PeriodicAggBatchSend getPeriodicAggBatch() {
-	return _periodicAggBatch;
+    private long getTimestamp(Tuple stormTupleRcv) {
+	if (getRuntimeConfig().isCustomTimestamp()
+		|| MyUtilities.isWindowTimestampMode(getConf()))
+	    return stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
+	return 0;
     }
 
     @Override
@@ -274,4 +256,29 @@ public class StormOperator extends StormBoltComponent {
     public void purgeStaleStateFromWindow() {
 	throw new RuntimeException("Window semantics is not valid here.");
     }
+
+    private void send(Tuple stormTupleRcv, List<String> tuple, long timestamp,
+	    boolean isLastInBatch) {
+	_numSentTuples++;
+	printTuple(tuple);
+
+	if (MyUtilities
+		.isSending(getHierarchyPosition(), _aggBatchOutputMillis)
+		|| MyUtilities.isWindowTimestampMode(getConf())) {
+	    tupleSend(tuple, stormTupleRcv, timestamp);
+	}
+	if (getRuntimeConfig().isPrintLatency()) {
+	    if (getRuntimeConfig().isManualBatching()) {
+		if (isLastInBatch) {
+		    timestamp = stormTupleRcv
+			    .getLongByField(StormComponent.TIMESTAMP); // getLong(2);
+		    printTupleLatency(_numSentTuples - 1, timestamp);
+		}
+	    } else {
+		timestamp = stormTupleRcv
+			.getLongByField(StormComponent.TIMESTAMP); // getLong(3);
+		printTupleLatency(_numSentTuples - 1, timestamp);
+	    }
+	}
+    }
 }
\ No newline at end of file
@@ -38,8 +38,11 @@ import ch.epfl.data.squall.expressions.ValueExpression;
 import ch.epfl.data.squall.operators.AggregateOperator;
 import ch.epfl.data.squall.operators.ChainOperator;
 import ch.epfl.data.squall.operators.Operator;
+import ch.epfl.data.squall.utilities.ComponentRuntimeConfig;
+import ch.epfl.data.squall.utilities.ManualBatcher;
 import ch.epfl.data.squall.utilities.MyUtilities;
 import ch.epfl.data.squall.utilities.SystemParameters;
+import ch.epfl.data.squall.utilities.metrics.TaskMetrics;
 
 public abstract class StormSpoutComponent extends BaseRichSpout implements
 	StormComponent, StormEmitter {
@@ -55,6 +58,8 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements
     // it's of type int, but we use String to save more space
     private final boolean _printOut;
     private final int _hierarchyPosition;
+    // the configuration read on the per-tuple paths, built in open
+    private ComponentRuntimeConfig _runtimeConfig;
 
     private final List<Integer> _hashIndexes;
     private final List<ValueExpression> _hashExpressions;
@@ -62,8 +67,8 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements
     // for ManualBatch(Queuing) mode
     private List<Integer> _targetTaskIds;
     private int _targetParallelism;
-    private StringBuilder[] _targetBuffers;
-    private long[] _targetTimestamps;
+    private ManualBatcher _batcher;
+    private ManualBatcher.Sender _batchSender;
 
     // for CustomTimestamp mode
     private double _totalLatencyMillis;
@@ -76,6 +81,9 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements
     // EWH histogram
     private boolean _isPartitioner;
 
+    // null unless DIP_METRICS is set
+    private TaskMetrics _metrics;
+
     public StormSpoutComponent(ComponentProperties cp,
 	    List<String> allCompNames, int hierarchyPosition,
 	    boolean isPartitioner, Map conf) {
@@ -94,24 +102,12 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements
     // ManualBatchMode
     private void addToManualBatch(List<String> tuple, long timestamp) {
 	final String tupleHash = MyUtilities.createHashString(tuple,
-		_hashIndexes, _hashExpressions, _conf);
-	final int dstIndex = MyUtilities.chooseHashTargetIndex(tupleHash,
-		_targetParallelism);
-
-	// we put in queueTuple based on tupleHash
-	// the same hash is used in BatchStreamGrouping for deciding where a
-	// particular targetBuffer is to be sent
-	final String tupleString = MyUtilities.tupleToString(tuple, _conf);
-
-	if (MyUtilities.isCustomTimestampMode(_conf))
-	    if (_targetBuffers[dstIndex].length() == 0)
-		// timestamp of the first tuple being added to a buffer is the
-		// timestamp of the buffer
-		_targetTimestamps[dstIndex] = timestamp;
-	_targetBuffers[dstIndex].append(tupleHash)
-		.append(SystemParameters.MANUAL_BATCH_HASH_DELIMITER)
-		.append(tupleString)
-		.append(SystemParameters.MANUAL_BATCH_TUPLE_DELIMITER);
+		_hashIndexes, _hashExpressions, getRuntimeConfig());
+
+	// the batcher puts the tuple in a target buffer based on tupleHash,
+	// and the batch carries the target index to BatchStreamGrouping
+	if (_batcher.add(tupleHash, tuple, timestamp))
+	    manualBatchSend();
     }
 
     @Override
@@ -124,7 +120,7 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements
 	final List<String> outputFields = new ArrayList<String>();
 	if (MyUtilities.isManualBatchingMode(_conf)) {
 	    outputFields.add(StormComponent.COMP_INDEX);
-	    outputFields.add(StormComponent.TUPLE); // string
+	    outputFields.add(StormComponent.TUPLE); // binary batch
 	} else {
 	    outputFields.add(StormComponent.COMP_INDEX);
 	    outputFields.add(StormComponent.TUPLE); // list of string
@@ -194,32 +190,51 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements
 
     public abstract long getNumSentTuples();
 
+    /*
+     * Built in open; a subclass which does not call super.open gets it on the
+     * first use
+     */
+    protected ComponentRuntimeConfig getRuntimeConfig() {
+	if (_runtimeConfig == null)
+	    _runtimeConfig = new ComponentRuntimeConfig(_conf,
+		    _hierarchyPosition);
+	return _runtimeConfig;
+    }
+
     private void manualBatchSend() {
-	for (int i = 0; i < _targetParallelism; i++) {
-	    final String tupleString = _targetBuffers[i].toString();
-	    _targetBuffers[i] = new StringBuilder("");
-
-	    if (!tupleString.isEmpty())
-		// some buffers might be empty
-		if (MyUtilities.isCustomTimestampMode(_conf))
-		    _collector.emit(new Values(_componentIndex, tupleString,
-			    _targetTimestamps[i]));
-		else
-		    _collector.emit(new Values(_componentIndex, tupleString));
-	}
+	_batcher.flush(_batchSender);
     }
 
     // BaseRichSpout
     @Override
     public void open(Map map, TopologyContext tc, SpoutOutputCollector collector) {
 	_collector = collector;
+	_runtimeConfig = new ComponentRuntimeConfig(_conf, _hierarchyPosition);
+	if (MyUtilities.isCodegenMode(_conf) && getChainOperator() != null)
+	    getChainOperator().compile();
 
 	_targetTaskIds = MyUtilities.findTargetTaskIds(tc);
 	_targetParallelism = _targetTaskIds.size();
-	_targetBuffers = new StringBuilder[_targetParallelism];
-	_targetTimestamps = new long[_targetParallelism];
-	for (int i = 0; i < _targetParallelism; i++)
-	    _targetBuffers[i] = new StringBuilder("");
+	if (_runtimeConfig.isManualBatching()) {
+	    // a spout cannot emit from a timer thread, so the linger time is
+	    // checked whenever a tuple is added
+	    _batcher = new ManualBatcher(_targetParallelism,
+		    MyUtilities.getCompBatchSize(_ID, _conf),
+		    MyUtilities.getCompBatchLingerMillis(_ID, _conf));
+	    _batchSender = new ManualBatcher.Sender() {
+		@Override
+		public void send(byte[] batch, long timestamp) {
+		    if (_runtimeConfig.isCustomTimestamp())
+			_collector.emit(new Values(_componentIndex, batch,
+				timestamp));
+		    else
+			_collector.emit(new Values(_componentIndex, batch));
+		}
+	    };
+	}
+
+	if (MyUtilities.isMetrics(_conf))
+	    registerMetrics(tc);
 
 	// equi-weight histogram
 	if (_isPartitioner) {
@@ -258,7 +273,7 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements
 		sb.append("\nComponent ").append(_ID);
 		sb.append("\nReceived tuples: ").append(getNumSentTuples());
 		sb.append(" Tuple: ").append(
-			MyUtilities.tupleToString(tuple, _conf));
+			MyUtilities.tupleToString(tuple, getRuntimeConfig()));
 		LOG.info(sb.toString());
 	    }
     }
@@ -267,12 +282,14 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements
     // tupleSerialNum starts from 0
     @Override
     public void printTupleLatency(long tupleSerialNum, long timestamp) {
-	final int freqCompute = SystemParameters.getInt(_conf,
-		"FREQ_TUPLE_LOG_COMPUTE");
-	final int freqWrite = SystemParameters.getInt(_conf,
-		"FREQ_TUPLE_LOG_WRITE");
-	final int startupIgnoredTuples = SystemParameters.getInt(_conf,
-		"INIT_IGNORED_TUPLES");
+	if (_metrics != null)
+	    // every tuple, not only every FREQ_TUPLE_LOG_COMPUTE-th one
+	    _metrics.recordLatency(System.currentTimeMillis() - timestamp);
+
+	final ComponentRuntimeConfig config = getRuntimeConfig();
+	final int freqCompute = config.getFreqTupleLogCompute();
+	final int freqWrite = config.getFreqTupleLogWrite();
+	final int startupIgnoredTuples = config.getInitIgnoredTuples();
 
 	if (tupleSerialNum >= startupIgnoredTuples) {
 	    tupleSerialNum = tupleSerialNum - startupIgnoredTuples; // start
@@ -317,19 +334,33 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements
 
     // HELPER METHODS
     // non-ManualBatchMode
+    private void registerMetrics(TopologyContext tc) {
+	_metrics = tc.registerMetric(TaskMetrics.NAME, new TaskMetrics(),
+		MyUtilities.getMetricsPeriodSecs(_conf));
+	if (getChainOperator() != null)
+	    getChainOperator().setMetrics(_metrics);
+	if (_batcher != null)
+	    _metrics.registerGauge("batch.buffered", new TaskMetrics.Gauge() {
+		@Override
+		public long getValue() {
+		    return _batcher.getNumBuffered();
+		}
+	    });
+    }
+
     private void regularTupleSend(List<String> tuple, long timestamp) {
 	final Values stormTupleSnd = MyUtilities.createTupleValues(tuple,
 		timestamp, _componentIndex, _hashIndexes, _hashExpressions,
-		_conf);
-	MyUtilities.sendTuple(stormTupleSnd, _collector, _conf);
+		getRuntimeConfig());
+	MyUtilities.sendTuple(stormTupleSnd, _collector, getRuntimeConfig());
     }
 
     @Override
     public void tupleSend(List<String> tuple, Tuple stormTupleRcv,
 	    long timestamp) {
-	final boolean isLastAck = MyUtilities.isFinalAck(tuple, _conf);
+	final boolean isLastAck = getRuntimeConfig().isFinalAck(tuple);
 
-	if (!MyUtilities.isManualBatchingMode(_conf)) {
+	if (!getRuntimeConfig().isManualBatching()) {
 	    if (isLastAck)
 		finalAckSend();
 	    else
@@ -337,8 +368,6 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements
 	} else if (!isLastAck) {
 	    // appending tuple if it is not lastAck
 	    addToManualBatch(tuple, timestamp);
-	    if (getNumSentTuples() % MyUtilities.getCompBatchSize(_ID, _conf) == 0)
-		manualBatchSend();
 	} else {
 	    // has to be sent separately, because of the BatchStreamGrouping
 	    // logic
@@ -21,7 +21,6 @@ package ch.epfl.data.squall.storm_components;
 
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
 
 import org.apache.log4j.Logger;
 
@@ -40,7 +39,6 @@ import ch.epfl.data.squall.operators.ProjectOperator;
 import ch.epfl.data.squall.storage.BasicStore;
 import ch.epfl.data.squall.storm_components.synchronization.TopologyKiller;
 import ch.epfl.data.squall.utilities.MyUtilities;
-import ch.epfl.data.squall.utilities.PeriodicAggBatchSend;
 import ch.epfl.data.squall.utilities.SystemParameters;
 
 @Deprecated
@@ -68,9 +66,6 @@ public class StormSrcStorage extends StormBoltComponent {
     private int _numSentTuples;
 
     // for batch sending
-    private final Semaphore _semAgg = new Semaphore(1, true);
-    private boolean _firstTime = true;
-    private PeriodicAggBatchSend _periodicAggBatch;
     private final long _batchOutputMillis;
 
     public StormSrcStorage(StormEmitter firstEmitter,
@@ -119,33 +114,17 @@ public class StormSrcStorage extends StormBoltComponent {
 	    if (_operatorChain != null) {
 		final Operator lastOperator = _operatorChain.getLastOperator();
 		if (lastOperator instanceof AggregateOperator) {
-		    try {
-			_semAgg.acquire();
-		    } catch (final InterruptedException ex) {
-		    }
-
-		    // sending
+		    // sending the groups changed since the previous send
 		    final AggregateOperator agg = (AggregateOperator) lastOperator;
-		    final List<String> tuples = agg.getContent();
-		    for (final String tuple : tuples)
-			tupleSend(MyUtilities.stringToTuple(tuple, getConf()),
-				null, 0);
-		    // clearing
-		    agg.clearStorage();
-		    _semAgg.release();
+		    for (final List<String> tuple : MyUtilities
+			    .getAggBatchTuples(agg, getRuntimeConfig()))
+			tupleSend(tuple, null, 0);
 		}
 	    }
     }
 
     private void applyOperatorsAndSend(Tuple stormTupleRcv, List<String> tuple) {
-	if (MyUtilities.isAggBatchOutputMode(_batchOutputMillis))
-	    try {
-		_semAgg.acquire();
-	    } catch (final InterruptedException ex) {
-	    }
 	tuple = _operatorChain.process(tuple, 0);
-	if (MyUtilities.isAggBatchOutputMode(_batchOutputMillis))
-	    _semAgg.release();
 
 	if (tuple == null)
 	    return;
@@ -153,23 +132,19 @@ public class StormSrcStorage extends StormBoltComponent {
 	printTuple(tuple);
 
 	if (MyUtilities.isSending(getHierarchyPosition(), _batchOutputMillis))
-	    if (MyUtilities.isCustomTimestampMode(getConf()))
+	    if (getRuntimeConfig().isCustomTimestamp())
 		tupleSend(tuple, stormTupleRcv, stormTupleRcv.getLong(3));
 	    else
 		tupleSend(tuple, stormTupleRcv, 0);
-	if (MyUtilities.isPrintLatency(getHierarchyPosition(), getConf()))
+	if (getRuntimeConfig().isPrintLatency())
 	    printTupleLatency(_numSentTuples - 1, stormTupleRcv.getLong(3));
     }
 
     // from IRichBolt
     @Override
     public void execute(Tuple stormTupleRcv) {
-	if (_firstTime && MyUtilities.isAggBatchOutputMode(_batchOutputMillis)) {
-	    _periodicAggBatch = new PeriodicAggBatchSend(_batchOutputMillis,
-		    this);
-	    _firstTime = false;
-	}
-
+	if (processTick(stormTupleRcv, _batchOutputMillis))
+	    return;
 	if (receivedDumpSignal(stormTupleRcv)) {
 	    MyUtilities.dumpSignal(this, stormTupleRcv, getCollector());
 	    return;
@@ -180,7 +155,7 @@ public class StormSrcStorage extends StormBoltComponent {
 	final String inputComponentIndex = stormTupleRcv.getString(0);
 	final List<String> tuple = (List<String>) stormTupleRcv.getValue(1);
 	final String inputTupleString = MyUtilities.tupleToString(tuple,
-		getConf());
+		getRuntimeConfig());
 	final String inputTupleHash = stormTupleRcv.getString(2);
 
 	if (processFinalAck(tuple, stormTupleRcv))
@@ -241,6 +216,12 @@ public class StormSrcStorage extends StormBoltComponent {
 	return _operatorChain;
     }
 
+    // from IRichBolt
+    @Override
+    public Map<String, Object> getComponentConfiguration() {
+	return getTickConfiguration(null, _batchOutputMillis);
+    }
+
     @Override
     public String getInfoID() {
 	final String str = "SourceStorage " + _full_ID + " has ID: " + getID();
@@ -264,11 +245,6 @@ public class StormSrcStorage extends StormBoltComponent {
 	return _numSentTuples;
     }
 
-    @Override
-    public PeriodicAggBatchSend getPeriodicAggBatch() {
-	return _periodicAggBatch;
-    }
-
     @Override
     public void prepare(Map map, TopologyContext tc, OutputCollector collector) {
 	super.prepare(map, tc, collector);
@@ -29,7 +29,9 @@ import backtype.storm.topology.TopologyBuilder;
 import backtype.storm.tuple.Tuple;
 import ch.epfl.data.squall.components.ComponentProperties;
 import ch.epfl.data.squall.dbtoaster.DBToasterEngine;
+import ch.epfl.data.squall.dbtoaster.UpdateBuffer;
 import ch.epfl.data.squall.operators.AggregateOperator;
+import ch.epfl.data.squall.operators.AggregateUpdateOperator;
 import ch.epfl.data.squall.operators.ChainOperator;
 import ch.epfl.data.squall.operators.Operator;
 import ch.epfl.data.squall.storm_components.InterchangingComponent;
@@ -40,9 +42,9 @@ import ch.epfl.data.squall.storm_components.synchronization.TopologyKiller;
 import ch.epfl.data.squall.thetajoin.matrix_assignment.HyperCubeAssignerFactory;
 import ch.epfl.data.squall.thetajoin.matrix_assignment.HyperCubeAssignment;
 import ch.epfl.data.squall.types.Type;
+import ch.epfl.data.squall.utilities.ManualBatchReader;
 import ch.epfl.data.squall.utilities.MyUtilities;
 import ch.epfl.data.squall.utilities.PartitioningScheme;
-import ch.epfl.data.squall.utilities.PeriodicAggBatchSend;
 import ch.epfl.data.squall.utilities.SystemParameters;
 import ch.epfl.data.squall.utilities.statistics.StatisticsUtilities;
 import org.apache.log4j.Logger;
@@ -53,10 +55,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
 
 public class StormDBToasterJoin extends StormBoltComponent {
 
@@ -70,9 +70,6 @@ public class StormDBToasterJoin extends StormBoltComponent {
     private final List<String> _fullHashList;
 
     // for batch sending
-    private final Semaphore _semAgg = new Semaphore(1, true);
-    private boolean _firstTime = true;
-    private PeriodicAggBatchSend _periodicAggBatch;
     private final long _aggBatchOutputMillis;
 
     // for printing statistics for creating graphs
@@ -87,6 +84,14 @@ public class StormDBToasterJoin extends StormBoltComponent {
     private StormEmitter[] _emitters;
     private Map<String, Type[]> _emitterIndexesColTypes;
 
+    // tuples handed to the query since its update stream was last read
+    private int _numPendingTuples;
+    // reused for the updates of every input batch
+    private transient UpdateBuffer _updates;
+    // if the updates only go to an AggregateUpdateOperator, only the last
+    // one of each key in a batch matters
+    private final boolean _isCompactUpdates;
+
     public StormDBToasterJoin(StormEmitter[] emitters,
                               ComponentProperties cp, List<String> allCompNames,
                               Map<String, Type[]> emitterNameColTypes,
@@ -105,6 +110,8 @@ public class StormDBToasterJoin extends StormBoltComponent {
 
         _operatorChain = cp.getChainOperator();
         _fullHashList = cp.getFullHashList();
+        _isCompactUpdates = _operatorChain.size() == 1
+                && _operatorChain.getLastOperator() instanceof AggregateUpdateOperator;
 
         _dbToasterQueryName = cp.getName() + "Impl";
 
@@ -133,8 +140,10 @@ public class StormDBToasterJoin extends StormBoltComponent {
             case HYPERCUBE:
                 long[] cardinality = getEmittersCardinality(conf);
                 LOG.info("cardinalities: " + Arrays.toString(cardinality));
+                final HyperCubeAssignerFactory factory = new HyperCubeAssignerFactory();
+                factory.setStrategy(MyUtilities.getHyperCubeStrategy(conf));
                 final HyperCubeAssignment _currentHyperCubeMappingAssignment =
-                        new HyperCubeAssignerFactory().getAssigner(parallelism, cardinality);
+                        factory.getAssigner(parallelism, cardinality);
 
                 LOG.info("assignment: " + _currentHyperCubeMappingAssignment.getMappingDimensions());
                     currentBolt = MyUtilities.hyperCubeAttachEmitterComponents(currentBolt,
@@ -177,23 +186,19 @@ public class StormDBToasterJoin extends StormBoltComponent {
         super.prepare(map, tc, collector);
 
         dbtoasterEngine = new DBToasterEngine(DBT_GEN_PKG + _dbToasterQueryName);
+        _updates = new UpdateBuffer();
     }
 
     @Override
     public void execute(Tuple stormTupleRcv) {
-        if (_firstTime
-                && MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
-            _periodicAggBatch = new PeriodicAggBatchSend(_aggBatchOutputMillis,
-                    this);
-            _firstTime = false;
-        }
-
+        if (processTick(stormTupleRcv, _aggBatchOutputMillis))
+            return;
         if (receivedDumpSignal(stormTupleRcv)) {
             MyUtilities.dumpSignal(this, stormTupleRcv, getCollector());
             return;
         }
 
-        if (!MyUtilities.isManualBatchingMode(getConf())) {
+        if (!getRuntimeConfig().isManualBatching()) {
             final String inputComponentIndex = stormTupleRcv
                     .getStringByField(StormComponent.COMP_INDEX); // getString(0);
             final List<String> tuple = (List<String>) stormTupleRcv
@@ -209,25 +214,16 @@ public class StormDBToasterJoin extends StormBoltComponent {
         } else {
             final String inputComponentIndex = stormTupleRcv
                     .getStringByField(StormComponent.COMP_INDEX); // getString(0);
-            final String inputBatch = stormTupleRcv
-                    .getStringByField(StormComponent.TUPLE);// getString(1);
-            final String[] wholeTuples = inputBatch
-                    .split(SystemParameters.MANUAL_BATCH_TUPLE_DELIMITER);
-            final int batchSize = wholeTuples.length;
+            final ManualBatchReader inputBatch = new ManualBatchReader(
+                    stormTupleRcv.getValueByField(StormComponent.TUPLE));
+            final int batchSize = inputBatch.size();
             for (int i = 0; i < batchSize; i++) {
                 // parsing
-                final String currentTuple = new String(wholeTuples[i]);
-                final String[] parts = currentTuple
-                        .split(SystemParameters.MANUAL_BATCH_HASH_DELIMITER);
-                String inputTupleString = null;
-                if (parts.length == 1)
-                    // lastAck
-                    inputTupleString = new String(parts[0]);
-                else {
-                    inputTupleString = new String(parts[1]);
-                }
-                final List<String> tuple = MyUtilities.stringToTuple(
-                        inputTupleString, getConf());
+                inputBatch.next();
+                final List<String> tuple = inputBatch.getTuple();
+                // the tuples before the LAST_ACK are still in the batch
+                if (getRuntimeConfig().isFinalAck(tuple))
+                    performJoin(stormTupleRcv);
                 // final Ack check
                 if (processFinalAck(tuple, stormTupleRcv)) {
                     if (i != batchSize - 1)
@@ -248,61 +244,49 @@ public class StormDBToasterJoin extends StormBoltComponent {
     private void processNonLastTuple(String inputComponentIndex,
                                      List<String> tuple, Tuple stormTupleRcv,
                                      boolean isLastInBatch) {
-        Type[] colRefs = _emitterIndexesColTypes.get(inputComponentIndex);
-        performJoin(stormTupleRcv, tuple, colRefs, isLastInBatch);
+        dbtoasterEngine.insertTuple(stormTupleRcv.getSourceComponent(), tuple,
+                _emitterIndexesColTypes.get(inputComponentIndex));
+        _numPendingTuples++;
+        // the updates of a manual batch are read at once, after its last tuple
+        if (isLastInBatch)
+            performJoin(stormTupleRcv);
 
     }
 
-    protected void performJoin(Tuple stormTupleRcv, List<String> tuple,
-                               Type[] columnTypes,
-                               boolean isLastInBatch) {
-
-        List<Object> typedTuple = createTypedTuple(tuple, columnTypes);
-
-        dbtoasterEngine.insertTuple(stormTupleRcv.getSourceComponent(), typedTuple.toArray());
+    protected void performJoin(Tuple stormTupleRcv) {
+        if (_numPendingTuples == 0)
+            return;
+        _numPendingTuples = 0;
 
-        List<Object[]> stream = dbtoasterEngine.getStreamOfUpdateTuples();
+        dbtoasterEngine.getStreamOfUpdateTuples(_updates);
+        if (_isCompactUpdates)
+            _updates.compact();
 
         long lineageTimestamp = 0L;
-        if (MyUtilities.isCustomTimestampMode(getConf()))
+        if (getRuntimeConfig().isCustomTimestamp())
             lineageTimestamp = stormTupleRcv
                     .getLongByField(StormComponent.TIMESTAMP);
 
-        for (Object[] u : stream) {
-            List<String> outputTuple = createStringTuple(u);
-            applyOperatorsAndSend(stormTupleRcv, outputTuple, lineageTimestamp, isLastInBatch);
+        for (int i = 0; i < _updates.size(); i++) {
+            List<String> outputTuple = createStringTuple(_updates.get(i));
+            applyOperatorsAndSend(stormTupleRcv, outputTuple, lineageTimestamp,
+                    i == _updates.size() - 1);
         }
+        _updates.clear();
 
     }
 
-    private List<Object> createTypedTuple(List<String> tuple, Type[] columnTypes) {
-        List<Object> typedTuple = new ArrayList<Object>();
-
-        for (int i = 0; i < columnTypes.length; i++) {
-            Object value = columnTypes[i].fromString(tuple.get(i));
-            typedTuple.add(value);
-        }
-        return typedTuple;
-    }
-
     private List<String> createStringTuple(Object[] typedTuple) {
-        List<String> tuple = new LinkedList<String>();
+        List<String> tuple = new ArrayList<String>(typedTuple.length);
         for (Object o : typedTuple) tuple.add("" + o);
         return tuple;
     }
 
     protected void applyOperatorsAndSend(Tuple stormTupleRcv,
                                          List<String> tuple, long lineageTimestamp, boolean isLastInBatch) {
-        if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
-            try {
-                _semAgg.acquire();
-            } catch (final InterruptedException ex) {
-            }
 
         tuple = _operatorChain.process(tuple, lineageTimestamp);
 
-        if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
-            _semAgg.release();
         if (tuple == null)
             return;
         _numSentTuples++;
@@ -316,8 +300,8 @@ public class StormDBToasterJoin extends StormBoltComponent {
             tupleSend(tuple, stormTupleRcv, lineageTimestamp);
         }
 
-        if (MyUtilities.isPrintLatency(getHierarchyPosition(), getConf())) {
-            if (!MyUtilities.isManualBatchingMode(getConf()) || isLastInBatch) {
+        if (getRuntimeConfig().isPrintLatency()) {
+            if (!getRuntimeConfig().isManualBatching() || isLastInBatch) {
                 printTupleLatency(_numSentTuples - 1, lineageTimestamp);
             }
         }
@@ -328,6 +312,12 @@ public class StormDBToasterJoin extends StormBoltComponent {
         return _operatorChain;
     }
 
+    // from IRichBolt
+    @Override
+    public Map<String, Object> getComponentConfiguration() {
+        return getTickConfiguration(null, _aggBatchOutputMillis);
+    }
+
     @Override
     protected InterchangingComponent getInterComp() {
         return null;
@@ -338,11 +328,6 @@ public class StormDBToasterJoin extends StormBoltComponent {
         return _numSentTuples;
     }
 
-    @Override
-    public PeriodicAggBatchSend getPeriodicAggBatch() {
-        return _periodicAggBatch;
-    }
-
     @Override
     protected void printStatistics(int type) {
 
@@ -359,19 +344,11 @@ public class StormDBToasterJoin extends StormBoltComponent {
             if (_operatorChain != null) {
                 final Operator lastOperator = _operatorChain.getLastOperator();
                 if (lastOperator instanceof AggregateOperator) {
-                    try {
-                        _semAgg.acquire();
-                    } catch (final InterruptedException ex) {
-                    }
-                    // sending
+                    // sending the groups changed since the previous send
                     final AggregateOperator agg = (AggregateOperator) lastOperator;
-                    final List<String> tuples = agg.getContent();
-                    for (final String tuple : tuples)
-                        tupleSend(MyUtilities.stringToTuple(tuple, getConf()),
-                                null, 0);
-                    // clearing
-                    agg.clearStorage();
-                    _semAgg.release();
+                    for (final List<String> tuple : MyUtilities
+                            .getAggBatchTuples(agg, getRuntimeConfig()))
+                        tupleSend(tuple, null, 0);
                 }
             }
     }
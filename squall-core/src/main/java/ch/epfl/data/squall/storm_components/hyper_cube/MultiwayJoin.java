@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storm_components.hyper_cube;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import ch.epfl.data.squall.predicates.AndPredicate;
+import ch.epfl.data.squall.predicates.BetweenPredicate;
+import ch.epfl.data.squall.predicates.ComparisonPredicate;
+import ch.epfl.data.squall.predicates.Predicate;
+import ch.epfl.data.squall.storage.TupleStorage;
+import ch.epfl.data.squall.storage.indexes.Index;
+import ch.epfl.data.squall.storage.indexes.RowIdIntersection;
+import ch.epfl.data.squall.utilities.MyUtilities;
+import ch.epfl.data.squall.visitors.PredicateCreateIndexesVisitor;
+import ch.epfl.data.squall.visitors.PredicateUpdateIndexesVisitor;
+
+/**
+ * Multiway join of the relations of a HyperCube task. A tuple is stored and
+ * indexed for each join predicate of its relation, and then joined with the
+ * stored tuples of all the other relations, one relation at a time.
+ *
+ * The next relation is the one with the most predicates to the relations
+ * joined so far, the smallest one among those, so that the join follows the
+ * join graph instead of building cross products. Its candidate row-ids are
+ * the intersection of the index lookups of all these predicates (from the
+ * shortest list on), which bounds the work on cyclic queries such as
+ * triangles by the most selective lookup. The stored tuples are read through
+ * the views of their storages, and copied once, into the output tuples, which
+ * are built in the order of the relations.
+ */
+public class MultiwayJoin implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int _numRelations;
+    private final TupleStorage[] _storages;
+
+    // for a pair (first, second) of relations, first < second
+    private final Predicate[][] _predicates;
+    // whether all the conditions of the predicate come from the indexes
+    private final boolean[][] _isIndexed;
+    private final List<Integer>[][] _operators;
+    private final List<Object>[][] _types;
+    // _indexes[r][s] index the tuples of r for the predicate between r and s
+    private final List<Index>[][] _indexes;
+
+    private final RowIdIntersection _rowIdIntersection = new RowIdIntersection();
+
+    /*
+     * predicates[first][second], first < second, is null if there is no
+     * predicate between the two relations
+     */
+    public MultiwayJoin(Predicate[][] predicates, Map conf) {
+	_numRelations = predicates.length;
+	_storages = new TupleStorage[_numRelations];
+	for (int r = 0; r < _numRelations; r++)
+	    _storages[r] = MyUtilities.createTupleStorage(conf);
+	_predicates = predicates;
+	_isIndexed = new boolean[_numRelations][_numRelations];
+	_operators = new List[_numRelations][_numRelations];
+	_types = new List[_numRelations][_numRelations];
+	_indexes = new List[_numRelations][_numRelations];
+	for (int first = 0; first < _numRelations; first++)
+	    for (int second = first + 1; second < _numRelations; second++) {
+		final Predicate predicate = predicates[first][second];
+		if (predicate == null)
+		    continue;
+		final PredicateCreateIndexesVisitor visitor = new PredicateCreateIndexesVisitor();
+		predicate.accept(visitor);
+		_isIndexed[first][second] = isConjunction(predicate)
+			&& !visitor._firstRelationIndexes.isEmpty();
+		_operators[first][second] = visitor._operatorForIndexes;
+		_types[first][second] = visitor._typeOfValueIndexed;
+		_indexes[first][second] = visitor._firstRelationIndexes;
+		_indexes[second][first] = visitor._secondRelationIndexes;
+	    }
+    }
+
+    // the stored tuples of relation which join the bound tuple of other
+    private TIntArrayList candidates(int relation, List<String>[] bound,
+	    int[] order, int numBound) {
+	final List<TIntArrayList> rowIdLists = new ArrayList<TIntArrayList>();
+	for (int i = 0; i < numBound; i++) {
+	    final int other = order[i];
+	    final int first = Math.min(relation, other);
+	    final int second = Math.max(relation, other);
+	    if (!_isIndexed[first][second])
+		continue;
+	    final List<Object> keys = indexKeys(other, relation, bound[other]);
+	    final List<Index> indexes = _indexes[relation][other];
+	    for (int j = 0; j < indexes.size(); j++) {
+		final int operator = probeOperator(
+			_operators[first][second].get(j), other == first);
+		final TIntArrayList rowIds = indexes.get(j).getValues(
+			operator,
+			PredicateUpdateIndexesVisitor.toIndexKey(
+				_types[first][second].get(j), keys.get(j)));
+		if (rowIds == null || rowIds.isEmpty())
+		    return new TIntArrayList();
+		rowIdLists.add(rowIds);
+	    }
+	}
+	if (rowIdLists.isEmpty())
+	    // only cross products and non-indexed predicates
+	    return new TIntArrayList(_storages[relation].getIds());
+	return _rowIdIntersection.intersect(rowIdLists
+		.toArray(new TIntArrayList[rowIdLists.size()]));
+    }
+
+    private int connections(int relation, boolean[] isBound) {
+	int result = 0;
+	for (int other = 0; other < _numRelations; other++)
+	    if (isBound[other] && predicate(relation, other) != null)
+		result++;
+	return result;
+    }
+
+    public int getNumRelations() {
+	return _numRelations;
+    }
+
+    /*
+     * Relations to join the tuples of relation with, in order; the first
+     * one is relation itself
+     */
+    public int[] getOrderToJoin(int relation) {
+	final int[] order = new int[_numRelations];
+	final boolean[] isBound = new boolean[_numRelations];
+	order[0] = relation;
+	isBound[relation] = true;
+	for (int i = 1; i < _numRelations; i++) {
+	    int next = -1, nextConnections = -1;
+	    for (int candidate = 0; candidate < _numRelations; candidate++) {
+		if (isBound[candidate])
+		    continue;
+		final int connections = connections(candidate, isBound);
+		if (connections > nextConnections
+			|| (connections == nextConnections && _storages[candidate]
+				.size() < _storages[next].size())) {
+		    next = candidate;
+		    nextConnections = connections;
+		}
+	    }
+	    order[i] = next;
+	    isBound[next] = true;
+	}
+	return order;
+    }
+
+    public TupleStorage getStorage(int relation) {
+	return _storages[relation];
+    }
+
+    // evaluated keys of the tuple of relation for the predicate with other
+    private List<Object> indexKeys(int relation, int other,
+	    List<String> tuple) {
+	final PredicateUpdateIndexesVisitor visitor = new PredicateUpdateIndexesVisitor(
+		relation < other, tuple);
+	predicate(relation, other).accept(visitor);
+	return visitor._keysToIndex;
+    }
+
+    /*
+     * Stores and indexes a tuple of relation, and returns its row-id
+     */
+    public int insert(int relation, List<String> tuple, long timestamp,
+	    boolean isStoreTimestamp) {
+	final int rowId = isStoreTimestamp ? _storages[relation].insert(tuple,
+		timestamp) : _storages[relation].insert(tuple);
+	for (int other = 0; other < _numRelations; other++) {
+	    if (other == relation
+		    || !_isIndexed[Math.min(relation, other)][Math.max(
+			    relation, other)])
+		continue;
+	    final List<Object> types = _types[Math.min(relation, other)][Math
+		    .max(relation, other)];
+	    final List<Object> keys = indexKeys(relation, other, tuple);
+	    final List<Index> indexes = _indexes[relation][other];
+	    for (int i = 0; i < indexes.size(); i++)
+		indexes.get(i).put(rowId, PredicateUpdateIndexesVisitor
+			.toIndexKey(types.get(i), keys.get(i)));
+	}
+	return rowId;
+    }
+
+    private boolean isConjunction(Predicate predicate) {
+	if (predicate instanceof ComparisonPredicate
+		|| predicate instanceof BetweenPredicate)
+	    return true;
+	if (predicate instanceof AndPredicate) {
+	    for (final Predicate inner : ((AndPredicate) predicate)
+		    .getInnerPredicates())
+		if (!isConjunction(inner))
+		    return false;
+	    return true;
+	}
+	return false;
+    }
+
+    /*
+     * The output tuples of a new tuple of relation (already inserted): the
+     * concatenation of one tuple per relation, in the order of the relations
+     */
+    public List<List<String>> join(int relation, List<String> tuple) {
+	final int[] order = getOrderToJoin(relation);
+	final List<String>[] bound = new List[_numRelations];
+	bound[relation] = tuple;
+	final List<List<String>> outputTuples = new ArrayList<List<String>>();
+	join(order, 1, bound, outputTuples);
+	return outputTuples;
+    }
+
+    private void join(int[] order, int numBound, List<String>[] bound,
+	    List<List<String>> outputTuples) {
+	if (numBound == _numRelations) {
+	    outputTuples.add(MyUtilities.createOutputTuple(Arrays
+		    .asList(bound)));
+	    return;
+	}
+	final int relation = order[numBound];
+	final TIntArrayList rowIds = candidates(relation, bound, order,
+		numBound);
+	for (int i = 0; i < rowIds.size(); i++) {
+	    // one view per storage: it stays valid while deeper relations bind
+	    final List<String> tuple = _storages[relation].getTupleView(rowIds
+		    .get(i));
+	    if (!testNonIndexed(relation, tuple, bound, order, numBound))
+		continue;
+	    bound[relation] = tuple;
+	    join(order, numBound + 1, bound, outputTuples);
+	}
+	bound[relation] = null;
+    }
+
+    private Predicate predicate(int relation, int other) {
+	return _predicates[Math.min(relation, other)][Math.max(relation, other)];
+    }
+
+    /*
+     * The indexes of the second relation of a predicate are probed with the
+     * operator as it is, those of the first one with the operator reversed
+     */
+    private int probeOperator(int operator, boolean isFromFirstRelation) {
+	if (isFromFirstRelation) {
+	    if (operator == ComparisonPredicate.GREATER_OP)
+		return ComparisonPredicate.LESS_OP;
+	    else if (operator == ComparisonPredicate.NONGREATER_OP)
+		return ComparisonPredicate.NONLESS_OP;
+	    else if (operator == ComparisonPredicate.LESS_OP)
+		return ComparisonPredicate.GREATER_OP;
+	    else if (operator == ComparisonPredicate.NONLESS_OP)
+		return ComparisonPredicate.NONGREATER_OP;
+	}
+	return operator;
+    }
+
+    // the predicates to the bound relations which the indexes do not check
+    private boolean testNonIndexed(int relation, List<String> tuple,
+	    List<String>[] bound, int[] order, int numBound) {
+	for (int i = 0; i < numBound; i++) {
+	    final int other = order[i];
+	    final int first = Math.min(relation, other);
+	    final int second = Math.max(relation, other);
+	    if (_predicates[first][second] == null || _isIndexed[first][second])
+		continue;
+	    final boolean isMatch = relation == first ? _predicates[first][second]
+		    .test(tuple, bound[other]) : _predicates[first][second]
+		    .test(bound[other], tuple);
+	    if (!isMatch)
+		return false;
+	}
+	return true;
+    }
+}
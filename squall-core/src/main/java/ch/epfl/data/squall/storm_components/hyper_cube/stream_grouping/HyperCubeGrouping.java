@@ -4,7 +4,7 @@ import backtype.storm.generated.GlobalStreamId;
 import backtype.storm.grouping.CustomStreamGrouping;
 import backtype.storm.task.WorkerTopologyContext;
 import ch.epfl.data.squall.thetajoin.matrix_assignment.HyperCubeAssignment;
-import ch.epfl.data.squall.utilities.MyUtilities;
+import ch.epfl.data.squall.utilities.ComponentRuntimeConfig;
 import org.apache.log4j.Logger;
 
 import java.util.ArrayList;
@@ -22,6 +22,8 @@ public class HyperCubeGrouping implements CustomStreamGrouping {
     private final String[] _emitterIndexes;
     private List<Integer> _targetTasks;
     private final Map _map;
+    // built in prepare, from _map
+    private transient ComponentRuntimeConfig _runtimeConfig;
 
     public HyperCubeGrouping(String[] emitterIndexes,
                              HyperCubeAssignment assignment, Map map) {
@@ -34,13 +36,13 @@ public class HyperCubeGrouping implements CustomStreamGrouping {
     @Override
     public List<Integer> chooseTasks(int taskId, List<Object> stormTuple) {
         // the following is checking for FinalAck
-        if (!MyUtilities.isManualBatchingMode(_map)) {
+        if (!_runtimeConfig.isManualBatching()) {
             final List<String> tuple = (List<String>) stormTuple.get(1); // TUPLE
-            if (MyUtilities.isFinalAck(tuple, _map))
+            if (_runtimeConfig.isFinalAck(tuple))
                 return _targetTasks;
         } else {
-            final String tupleBatch = (String) stormTuple.get(1); // TUPLE
-            if (MyUtilities.isFinalAckManualBatching(tupleBatch, _map))
+            final Object tupleBatch = stormTuple.get(1); // TUPLE
+            if (_runtimeConfig.isFinalAckManualBatching(tupleBatch))
                 // send to everyone
                 return _targetTasks;
         }
@@ -74,6 +76,7 @@ public class HyperCubeGrouping implements CustomStreamGrouping {
     @Override
     public void prepare(WorkerTopologyContext wtc, GlobalStreamId gsi,
                         List<Integer> targetTasks) {
+        _runtimeConfig = new ComponentRuntimeConfig(_map);
         _targetTasks = targetTasks;
     }
 
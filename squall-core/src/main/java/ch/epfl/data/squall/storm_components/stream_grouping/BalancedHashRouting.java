@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storm_components.stream_grouping;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.List;
+
+import ch.epfl.data.squall.utilities.MyUtilities;
+
+/*
+ * Routing table of a balanced grouping: the target index of each key of the
+ * full hash list, built once in prepare instead of List.indexOf per tuple.
+ * Key i goes to task i % numTargetTasks.
+ * A key which is not in the list is hash partitioned.
+ */
+public class BalancedHashRouting {
+
+    private static final int NO_TARGET = -1;
+
+    private final TObjectIntHashMap<String> _targetIndexes;
+    private final int _numTargetTasks;
+
+    public BalancedHashRouting(List<String> fullHashList, int numTargetTasks) {
+	_numTargetTasks = numTargetTasks;
+	_targetIndexes = new TObjectIntHashMap<String>(
+		2 * fullHashList.size(), 0.5f, NO_TARGET);
+	for (int i = 0; i < fullHashList.size(); i++)
+	    // the first occurrence wins, as with indexOf
+	    _targetIndexes.putIfAbsent(fullHashList.get(i), i % numTargetTasks);
+    }
+
+    public int chooseTargetIndex(String hash) {
+	final int targetIndex = _targetIndexes.get(hash);
+	if (targetIndex != NO_TARGET)
+	    return targetIndex;
+	return MyUtilities.chooseHashTargetIndex(hash, _numTargetTasks);
+    }
+}
@@ -26,7 +26,8 @@ import java.util.Map;
 import backtype.storm.generated.GlobalStreamId;
 import backtype.storm.grouping.CustomStreamGrouping;
 import backtype.storm.task.WorkerTopologyContext;
-import ch.epfl.data.squall.utilities.MyUtilities;
+import ch.epfl.data.squall.utilities.ComponentRuntimeConfig;
+import ch.epfl.data.squall.utilities.ManualBatchReader;
 import ch.epfl.data.squall.utilities.SystemParameters;
 
 public class BatchStreamGrouping implements CustomStreamGrouping {
@@ -39,8 +40,11 @@ public class BatchStreamGrouping implements CustomStreamGrouping {
     private int _numTargetTasks;
     private List<Integer> _targetTasks;
     private final List<String> _fullHashList;
+    private transient BalancedHashRouting _routing;
 
     private final Map _map;
+    // built in prepare, from _map
+    private transient ComponentRuntimeConfig _runtimeConfig;
 
     /*
      * fullHashList is null if grouping is not balanced
@@ -52,22 +56,19 @@ public class BatchStreamGrouping implements CustomStreamGrouping {
 
     @Override
     public List<Integer> chooseTasks(int taskId, List<Object> stormTuple) {
-	final String tupleBatch = (String) stormTuple.get(1);
-	if (MyUtilities.isFinalAckManualBatching(tupleBatch, _map))
+	final Object tupleBatch = stormTuple.get(1);
+	if (_runtimeConfig.isFinalAckManualBatching(tupleBatch))
 	    // send to everyone
 	    return _targetTasks;
 
-	final int endIndex = tupleBatch
-		.indexOf(SystemParameters.MANUAL_BATCH_HASH_DELIMITER);
-	final String aHash = tupleBatch.substring(0, endIndex);
-
+	// the sender already put the target index in the batch
+	final byte[] batch = (byte[]) tupleBatch;
 	if (!isBalanced())
-	    return Arrays.asList(_targetTasks.get(MyUtilities
-		    .chooseHashTargetIndex(aHash, _numTargetTasks)));
+	    return Arrays.asList(_targetTasks.get(ManualBatchReader
+		    .getTargetIndex(batch)));
 	else
-	    return Arrays.asList(_targetTasks.get(MyUtilities
-		    .chooseBalancedTargetIndex(aHash, _fullHashList,
-			    _numTargetTasks)));
+	    return Arrays.asList(_targetTasks.get(_routing
+		    .chooseTargetIndex(ManualBatchReader.getFirstHash(batch))));
     }
 
     private boolean isBalanced() {
@@ -77,7 +78,10 @@ public class BatchStreamGrouping implements CustomStreamGrouping {
     @Override
     public void prepare(WorkerTopologyContext wtc, GlobalStreamId gsi,
 	    List<Integer> targetTasks) {
+	_runtimeConfig = new ComponentRuntimeConfig(_map);
 	_targetTasks = targetTasks;
 	_numTargetTasks = targetTasks.size();
+	if (isBalanced())
+	    _routing = new BalancedHashRouting(_fullHashList, _numTargetTasks);
     }
 }
\ No newline at end of file
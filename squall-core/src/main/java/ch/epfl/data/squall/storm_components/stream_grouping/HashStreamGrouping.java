@@ -26,6 +26,7 @@ import java.util.Map;
 import backtype.storm.generated.GlobalStreamId;
 import backtype.storm.grouping.CustomStreamGrouping;
 import backtype.storm.task.WorkerTopologyContext;
+import ch.epfl.data.squall.utilities.ComponentRuntimeConfig;
 import ch.epfl.data.squall.utilities.MyUtilities;
 
 /*
@@ -45,8 +46,11 @@ public class HashStreamGrouping implements CustomStreamGrouping {
     private List<Integer> _targetTasks;
 
     private final List<String> _fullHashList;
+    private transient BalancedHashRouting _routing;
 
     private final Map _map;
+    // built in prepare, from _map
+    private transient ComponentRuntimeConfig _runtimeConfig;
 
     /*
      * fullHashList is null if grouping is not balanced
@@ -60,16 +64,15 @@ public class HashStreamGrouping implements CustomStreamGrouping {
     public List<Integer> chooseTasks(int taskId, List<Object> stormTuple) {
 	final List<String> tuple = (List<String>) stormTuple.get(1);
 	final String tupleHash = (String) stormTuple.get(2);
-	if (MyUtilities.isFinalAck(tuple, _map))
+	if (_runtimeConfig.isFinalAck(tuple))
 	    // send to everyone
 	    return _targetTasks;
 	if (!isBalanced())
 	    return Arrays.asList(_targetTasks.get(MyUtilities
 		    .chooseHashTargetIndex(tupleHash, _numTargetTasks)));
 	else
-	    return Arrays.asList(_targetTasks.get(MyUtilities
-		    .chooseBalancedTargetIndex(tupleHash, _fullHashList,
-			    _numTargetTasks)));
+	    return Arrays.asList(_targetTasks.get(_routing
+		    .chooseTargetIndex(tupleHash)));
     }
 
     private boolean isBalanced() {
@@ -79,8 +82,11 @@ public class HashStreamGrouping implements CustomStreamGrouping {
     @Override
     public void prepare(WorkerTopologyContext wtc, GlobalStreamId gsi,
 	    List<Integer> targetTasks) {
+	_runtimeConfig = new ComponentRuntimeConfig(_map);
 	_targetTasks = targetTasks;
 	_numTargetTasks = targetTasks.size();
+	if (isBalanced())
+	    _routing = new BalancedHashRouting(_fullHashList, _numTargetTasks);
     }
 
 }
\ No newline at end of file
@@ -27,7 +27,7 @@ import java.util.Random;
 import backtype.storm.generated.GlobalStreamId;
 import backtype.storm.grouping.CustomStreamGrouping;
 import backtype.storm.task.WorkerTopologyContext;
-import ch.epfl.data.squall.utilities.MyUtilities;
+import ch.epfl.data.squall.utilities.ComponentRuntimeConfig;
 
 /*
  * If the list of all possible hash values isspecified,
@@ -42,6 +42,8 @@ public class ShuffleStreamGrouping implements CustomStreamGrouping {
     private List<Integer> _targetTasks;
 
     private final Map _map;
+    // built in prepare, from _map
+    private transient ComponentRuntimeConfig _runtimeConfig;
 
     private Random _rndGen = new Random();
 
@@ -55,7 +57,7 @@ public class ShuffleStreamGrouping implements CustomStreamGrouping {
     @Override
     public List<Integer> chooseTasks(int taskId, List<Object> stormTuple) {
 	final List<String> tuple = (List<String>) stormTuple.get(1);
-	if (MyUtilities.isFinalAck(tuple, _map)) {
+	if (_runtimeConfig.isFinalAck(tuple)) {
 	    // send to everyone
 	    return _targetTasks;
 	} else
@@ -66,6 +68,7 @@ public class ShuffleStreamGrouping implements CustomStreamGrouping {
     @Override
     public void prepare(WorkerTopologyContext wtc, GlobalStreamId gsi,
 	    List<Integer> targetTasks) {
+	_runtimeConfig = new ComponentRuntimeConfig(_map);
 	_targetTasks = targetTasks;
 	_numTargetTasks = targetTasks.size();
     }
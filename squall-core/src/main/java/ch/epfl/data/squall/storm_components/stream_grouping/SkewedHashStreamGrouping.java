@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storm_components.stream_grouping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import backtype.storm.generated.GlobalStreamId;
+import backtype.storm.grouping.CustomStreamGrouping;
+import backtype.storm.task.WorkerTopologyContext;
+import ch.epfl.data.squall.utilities.ComponentRuntimeConfig;
+import ch.epfl.data.squall.utilities.MyUtilities;
+
+/*
+ * Hash partitioning of the two parents of an equi-join in which the hot keys
+ *   of one parent are split over several tasks.
+ * Each key owns a group of splitFactor consecutive tasks, starting with the
+ *   task it is hashed to. The split parent sends a key to that first task
+ *   until the key turns out to be a heavy hitter in the emitter, and then to
+ *   the task of the group it has sent the fewest tuples to. The replicated
+ *   parent sends each tuple to the whole group, so that every pair of tuples
+ *   meets on exactly one task, although the emitters detect the heavy hitters
+ *   independently.
+ * The replicated parent should thus be the smaller one, e.g. the primary key
+ *   side of a foreign key join.
+ */
+public class SkewedHashStreamGrouping implements CustomStreamGrouping {
+
+    private static final long serialVersionUID = 1L;
+
+    // counters per target task, for tracking the heavy hitters
+    private static final int SKETCH_COUNTERS_PER_TASK = 8;
+
+    private final Map _map;
+    // built in prepare, from _map
+    private transient ComponentRuntimeConfig _runtimeConfig;
+    private final int _splitFactor;
+    private final boolean _isSplit;
+
+    // the number of tasks on the level this stream grouping is sending to
+    private int _numTargetTasks;
+    private List<Integer> _targetTasks;
+    private int _groupSize;
+    private transient SpaceSavingSketch _sketch;
+    // tuples sent to each target index by the split parent
+    private transient long[] _sent;
+
+    public SkewedHashStreamGrouping(Map map, int splitFactor, boolean isSplit) {
+	_map = map;
+	_splitFactor = splitFactor;
+	_isSplit = isSplit;
+    }
+
+    @Override
+    public List<Integer> chooseTasks(int taskId, List<Object> stormTuple) {
+	final List<String> tuple = (List<String>) stormTuple.get(1);
+	final String tupleHash = (String) stormTuple.get(2);
+	if (_runtimeConfig.isFinalAck(tuple))
+	    // send to everyone
+	    return _targetTasks;
+	final int first = MyUtilities.chooseHashTargetIndex(tupleHash,
+		_numTargetTasks);
+	if (!_isSplit) {
+	    final List<Integer> group = new ArrayList<Integer>(_groupSize);
+	    for (int i = 0; i < _groupSize; i++)
+		group.add(_targetTasks.get((first + i) % _numTargetTasks));
+	    return group;
+	}
+	int target = first;
+	if (isHeavyHitter(tupleHash))
+	    for (int i = 1; i < _groupSize; i++) {
+		final int member = (first + i) % _numTargetTasks;
+		if (_sent[member] < _sent[target])
+		    target = member;
+	    }
+	_sent[target]++;
+	return Arrays.asList(_targetTasks.get(target));
+    }
+
+    /*
+     * A key is hot if it alone gives its task more than the average load.
+     * Nothing is hot before the sketch has seen as many tuples as it has
+     * counters.
+     */
+    private boolean isHeavyHitter(String tupleHash) {
+	final long count = _sketch.add(tupleHash);
+	return _sketch.getSeen() >= _sketch.getCapacity()
+		&& count * _numTargetTasks > _sketch.getSeen();
+    }
+
+    @Override
+    public void prepare(WorkerTopologyContext wtc, GlobalStreamId gsi,
+	    List<Integer> targetTasks) {
+	_runtimeConfig = new ComponentRuntimeConfig(_map);
+	_targetTasks = targetTasks;
+	_numTargetTasks = targetTasks.size();
+	_groupSize = Math.min(_splitFactor, _numTargetTasks);
+	if (_isSplit) {
+	    _sketch = new SpaceSavingSketch(Math.max(64,
+		    SKETCH_COUNTERS_PER_TASK * _numTargetTasks));
+	    _sent = new long[_numTargetTasks];
+	}
+    }
+}
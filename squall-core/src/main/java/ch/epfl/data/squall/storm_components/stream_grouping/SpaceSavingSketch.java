@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storm_components.stream_grouping;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/*
+ * Space-Saving sketch (Metwally et al.) of the most frequent keys of a
+ * stream, in a fixed number of counters. A key which is not tracked takes
+ * over the counter with the minimum count, so the count of a tracked key
+ * overestimates its frequency by at most seen / capacity, and every key more
+ * frequent than that is tracked. The counters form a min-heap, so an update
+ * costs O(log capacity).
+ */
+public class SpaceSavingSketch {
+
+    private static final int NOT_TRACKED = -1;
+
+    private final String[] _keys;
+    private final long[] _counts;
+    // _heap[i] is a counter, _heapPositions[counter] its place in _heap
+    private final int[] _heap;
+    private final int[] _heapPositions;
+    private final TObjectIntHashMap<String> _counters;
+    private int _size;
+    private long _seen;
+
+    public SpaceSavingSketch(int capacity) {
+	_keys = new String[capacity];
+	_counts = new long[capacity];
+	_heap = new int[capacity];
+	_heapPositions = new int[capacity];
+	_counters = new TObjectIntHashMap<String>(2 * capacity, 0.5f,
+		NOT_TRACKED);
+    }
+
+    /*
+     * Counts one more occurrence of key and returns its estimated count
+     */
+    public long add(String key) {
+	_seen++;
+	int counter = _counters.get(key);
+	if (counter == NOT_TRACKED) {
+	    if (_size < _keys.length) {
+		counter = _size;
+		_heap[_size] = counter;
+		_heapPositions[counter] = _size;
+		_size++;
+		siftUp(_heapPositions[counter]);
+	    } else {
+		// the minimum is replaced, its count carried over
+		counter = _heap[0];
+		_counters.remove(_keys[counter]);
+	    }
+	    _keys[counter] = key;
+	    _counters.put(key, counter);
+	}
+	_counts[counter]++;
+	siftDown(_heapPositions[counter]);
+	return _counts[counter];
+    }
+
+    public int getCapacity() {
+	return _keys.length;
+    }
+
+    public long getSeen() {
+	return _seen;
+    }
+
+    private void siftDown(int position) {
+	final int counter = _heap[position];
+	while (true) {
+	    int child = 2 * position + 1;
+	    if (child >= _size)
+		break;
+	    if (child + 1 < _size
+		    && _counts[_heap[child + 1]] < _counts[_heap[child]])
+		child++;
+	    if (_counts[_heap[child]] >= _counts[counter])
+		break;
+	    _heap[position] = _heap[child];
+	    _heapPositions[_heap[position]] = position;
+	    position = child;
+	}
+	_heap[position] = counter;
+	_heapPositions[counter] = position;
+    }
+
+    private void siftUp(int position) {
+	final int counter = _heap[position];
+	while (position > 0) {
+	    final int parent = (position - 1) / 2;
+	    if (_counts[_heap[parent]] <= _counts[counter])
+		break;
+	    _heap[position] = _heap[parent];
+	    _heapPositions[_heap[position]] = position;
+	    position = parent;
+	}
+	_heap[position] = counter;
+	_heapPositions[counter] = position;
+    }
+}
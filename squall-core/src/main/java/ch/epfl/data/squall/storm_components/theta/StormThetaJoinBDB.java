@@ -41,8 +41,8 @@ import ch.epfl.data.squall.storm_components.StormEmitter;
 import ch.epfl.data.squall.storm_components.StormJoinerBoltComponent;
 import ch.epfl.data.squall.storm_components.synchronization.TopologyKiller;
 import ch.epfl.data.squall.thetajoin.matrix_assignment.ContentInsensitiveMatrixAssignment;
+import ch.epfl.data.squall.utilities.ManualBatchReader;
 import ch.epfl.data.squall.utilities.MyUtilities;
-import ch.epfl.data.squall.utilities.PeriodicAggBatchSend;
 import ch.epfl.data.squall.utilities.SystemParameters;
 import ch.epfl.data.squall.utilities.statistics.StatisticsUtilities;
 import ch.epfl.data.squall.window_semantics.WindowSemanticsManager;
@@ -93,6 +93,8 @@ public class StormThetaJoinBDB extends StormJoinerBoltComponent {
 
     @Override
     public void execute(Tuple stormTupleRcv) {
+	if (processTick(stormTupleRcv, _aggBatchOutputMillis))
+	    return;
 	// TODO
 	// short circuit that this is a window configuration
 	if (WindowSemanticsManager.evictStateIfSlidingWindowSemantics(this,
@@ -100,17 +102,11 @@ public class StormThetaJoinBDB extends StormJoinerBoltComponent {
 	    return;
 	}
 
-	if (_firstTime
-		&& MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
-	    _periodicAggBatch = new PeriodicAggBatchSend(_aggBatchOutputMillis,
-		    this);
-	    _firstTime = false;
-	}
 	if (receivedDumpSignal(stormTupleRcv)) {
 	    MyUtilities.dumpSignal(this, stormTupleRcv, getCollector());
 	    return;
 	}
-	if (!MyUtilities.isManualBatchingMode(getConf())) {
+	if (!getRuntimeConfig().isManualBatching()) {
 	    final String inputComponentIndex = stormTupleRcv
 		    .getStringByField(StormComponent.COMP_INDEX); // getString(0);
 	    final List<String> tuple = (List<String>) stormTupleRcv
@@ -120,34 +116,21 @@ public class StormThetaJoinBDB extends StormJoinerBoltComponent {
 	    if (processFinalAck(tuple, stormTupleRcv))
 		return;
 	    final String inputTupleString = MyUtilities.tupleToString(tuple,
-		    getConf());
+		    getRuntimeConfig());
 	    processNonLastTuple(inputComponentIndex, tuple, inputTupleHash,
 		    stormTupleRcv, true, _firstRelationStorage,
 		    _secondRelationStorage);
 	} else {
 	    final String inputComponentIndex = stormTupleRcv
 		    .getStringByField(StormComponent.COMP_INDEX); // getString(0);
-	    final String inputBatch = stormTupleRcv
-		    .getStringByField(StormComponent.TUPLE);// getString(1);
-	    final String[] wholeTuples = inputBatch
-		    .split(SystemParameters.MANUAL_BATCH_TUPLE_DELIMITER);
-	    final int batchSize = wholeTuples.length;
+	    final ManualBatchReader inputBatch = new ManualBatchReader(
+		    stormTupleRcv.getValueByField(StormComponent.TUPLE));
+	    final int batchSize = inputBatch.size();
 	    for (int i = 0; i < batchSize; i++) {
 		// parsing
-		final String currentTuple = new String(wholeTuples[i]);
-		final String[] parts = currentTuple
-			.split(SystemParameters.MANUAL_BATCH_HASH_DELIMITER);
-		String inputTupleHash = null;
-		String inputTupleString = null;
-		if (parts.length == 1)
-		    // lastAck
-		    inputTupleString = new String(parts[0]);
-		else {
-		    inputTupleHash = new String(parts[0]);
-		    inputTupleString = new String(parts[1]);
-		}
-		final List<String> tuple = MyUtilities.stringToTuple(
-			inputTupleString, getConf());
+		inputBatch.next();
+		final String inputTupleHash = inputBatch.getHash();
+		final List<String> tuple = inputBatch.getTuple();
 		// final Ack check
 		if (processFinalAck(tuple, stormTupleRcv)) {
 		    if (i != batchSize - 1)
@@ -30,7 +30,7 @@ import backtype.storm.grouping.CustomStreamGrouping;
 import backtype.storm.task.WorkerTopologyContext;
 import ch.epfl.data.squall.thetajoin.matrix_assignment.MatrixAssignment;
 import ch.epfl.data.squall.thetajoin.matrix_assignment.MatrixAssignment.Dimension;
-import ch.epfl.data.squall.utilities.MyUtilities;
+import ch.epfl.data.squall.utilities.ComponentRuntimeConfig;
 
 public class ContentInsensitiveThetaJoinGrouping implements
 	CustomStreamGrouping {
@@ -42,6 +42,8 @@ public class ContentInsensitiveThetaJoinGrouping implements
     private final String _firstEmitterIndex, _secondEmitterIndex;
     private List<Integer> _targetTasks;
     private final Map _map;
+    // built in prepare, from _map
+    private transient ComponentRuntimeConfig _runtimeConfig;
 
     public ContentInsensitiveThetaJoinGrouping(String firstIndex,
 	    String secondIndex, MatrixAssignment assignment, Map map) {
@@ -55,13 +57,13 @@ public class ContentInsensitiveThetaJoinGrouping implements
     @Override
     public List<Integer> chooseTasks(int taskId, List<Object> stormTuple) {
 	// the following is checking for FinalAck
-	if (!MyUtilities.isManualBatchingMode(_map)) {
+	if (!_runtimeConfig.isManualBatching()) {
 	    final List<String> tuple = (List<String>) stormTuple.get(1); // TUPLE
-	    if (MyUtilities.isFinalAck(tuple, _map))
+	    if (_runtimeConfig.isFinalAck(tuple))
 		return _targetTasks;
 	} else {
-	    final String tupleBatch = (String) stormTuple.get(1); // TUPLE
-	    if (MyUtilities.isFinalAckManualBatching(tupleBatch, _map))
+	    final Object tupleBatch = stormTuple.get(1); // TUPLE
+	    if (_runtimeConfig.isFinalAckManualBatching(tupleBatch))
 		// send to everyone
 		return _targetTasks;
 	}
@@ -91,6 +93,7 @@ public class ContentInsensitiveThetaJoinGrouping implements
     @Override
     public void prepare(WorkerTopologyContext wtc, GlobalStreamId gsi,
 	    List<Integer> targetTasks) {
+	_runtimeConfig = new ComponentRuntimeConfig(_map);
 	// LOG.info("Number of tasks is : "+numTasks);
 	_targetTasks = targetTasks;
     }
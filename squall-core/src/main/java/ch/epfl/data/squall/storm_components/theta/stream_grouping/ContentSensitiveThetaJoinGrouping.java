@@ -31,7 +31,7 @@ import backtype.storm.task.WorkerTopologyContext;
 import ch.epfl.data.squall.thetajoin.matrix_assignment.MatrixAssignment;
 import ch.epfl.data.squall.thetajoin.matrix_assignment.MatrixAssignment.Dimension;
 import ch.epfl.data.squall.types.Type;
-import ch.epfl.data.squall.utilities.MyUtilities;
+import ch.epfl.data.squall.utilities.ComponentRuntimeConfig;
 
 public class ContentSensitiveThetaJoinGrouping<KeyType> implements
 	CustomStreamGrouping {
@@ -43,6 +43,8 @@ public class ContentSensitiveThetaJoinGrouping<KeyType> implements
     private final String _firstEmitterIndex, _secondEmitterIndex;
     private List<Integer> _targetTasks;
     private final Map _map;
+    // built in prepare, from _map
+    private transient ComponentRuntimeConfig _runtimeConfig;
     private final Type<KeyType> _wrapper;
 
     public ContentSensitiveThetaJoinGrouping(String firstIndex,
@@ -59,13 +61,13 @@ public class ContentSensitiveThetaJoinGrouping<KeyType> implements
     @Override
     public List<Integer> chooseTasks(int taskId, List<Object> stormTuple) {
 	// the following is checking for FinalAck
-	if (!MyUtilities.isManualBatchingMode(_map)) {
+	if (!_runtimeConfig.isManualBatching()) {
 	    final List<String> tuple = (List<String>) stormTuple.get(1); // TUPLE
-	    if (MyUtilities.isFinalAck(tuple, _map))
+	    if (_runtimeConfig.isFinalAck(tuple))
 		return _targetTasks;
 	} else {
-	    final String tupleBatch = (String) stormTuple.get(1); // TUPLE
-	    if (MyUtilities.isFinalAckManualBatching(tupleBatch, _map))
+	    final Object tupleBatch = stormTuple.get(1); // TUPLE
+	    if (_runtimeConfig.isFinalAckManualBatching(tupleBatch))
 		// send to everyone
 		return _targetTasks;
 	}
@@ -98,6 +100,7 @@ public class ContentSensitiveThetaJoinGrouping<KeyType> implements
     @Override
     public void prepare(WorkerTopologyContext wtc, GlobalStreamId gsi,
 	    List<Integer> targetTasks) {
+	_runtimeConfig = new ComponentRuntimeConfig(_map);
 	// LOG.info("Number of tasks is : "+numTasks);
 	_targetTasks = targetTasks;
     }
@@ -20,6 +20,7 @@
 package ch.epfl.data.squall.thetajoin.adaptive.advisor;
 
 import java.io.Serializable;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -147,6 +148,14 @@ public abstract class Advisor implements Serializable {
 
     protected abstract Maybe<Action> doSplit();
 
+    /**
+     * @return The decisions of the advisor so far, to be reported as metrics,
+     *         or null if it does not keep any.
+     */
+    public Map<String, Object> getMetrics() {
+	return null;
+    }
+
     /**
      * @param action
      *            The action including the new dimensions.
@@ -156,6 +165,25 @@ public abstract class Advisor implements Serializable {
 	currentColumns = action.getNewColumns();
     }
 
+    /**
+     * This is called once all the reducers have finished the migration of the
+     * last action.
+     * 
+     * @param durationMillis
+     *            Time from sending the action to the end of its migration.
+     */
+    public void updateMigrationEnded(long durationMillis) {
+    }
+
+    /**
+     * This updates the instance with the size of an arriving tuple.
+     * 
+     * @param bytes
+     *            Size of the tuple.
+     */
+    public void updateTupleBytes(long bytes) {
+    }
+
     /**
      * This updates the instance with the arrival of tuples.
      * 
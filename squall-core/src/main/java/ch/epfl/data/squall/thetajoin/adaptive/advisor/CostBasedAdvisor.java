@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.thetajoin.adaptive.advisor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.epfl.data.squall.utilities.SystemParameters;
+
+/**
+ * Advisor that migrates only when it pays off. The input load of a joiner is
+ * rateR/rows + rateS/columns, with the arrival rates smoothed over time. A new
+ * layout is chosen only if the load it saves over the next
+ * DIP_ADVISOR_HORIZON_MILLIS beats the tuples each joiner has to receive to
+ * get there, by a margin of DIP_ADVISOR_HYSTERESIS. The time the migration
+ * takes is estimated from the throughput of the previous migrations, and no
+ * savings are counted for it. As a decision is justified over the horizon, it
+ * is kept for at least DIP_ADVISOR_MIN_EPOCH_MILLIS (half the horizon by
+ * default), so that oscillating growth rates do not make the layout flip.
+ */
+public class CostBasedAdvisor extends Advisor {
+
+    private static final long serialVersionUID = 1L;
+
+    // How often the arrival rates are sampled, and their smoothing.
+    private static final long RATE_PERIOD_MILLIS = 1000;
+    private static final double RATE_ALPHA = 0.3;
+
+    // The number of tuples to be received before the first migration.
+    private long firstMigration = 1000;
+
+    private long horizonMillis = 60000;
+    private long minEpochMillis;
+    private double hysteresis = 0.2;
+    // Cost of receiving a migrated tuple, relative to an input tuple.
+    private double migrationTupleCost = 1.0;
+
+    // Arrival rates in tuples per millisecond, -1 until the first sample.
+    private double rateR = -1, rateS = -1;
+    private long lastSampleMillis, lastSampleR, lastSampleS;
+
+    private long totalTupleBytes, sizedTuples;
+    // Migration throughput in bytes per millisecond, 0 while unknown.
+    private double migrationThroughput;
+    private double lastMovedBytes;
+    private boolean isMigrating;
+    private long lastMigrationMillis;
+
+    // Exposed through getMetrics.
+    private long evaluations, migrations, rejections;
+    private double lastSavings, lastCost;
+
+    public CostBasedAdvisor(int reducerCount, int initialRows,
+	    int initialColumns, Map conf) {
+	super(reducerCount, initialRows, initialColumns);
+
+	if (SystemParameters.isExisting(conf, "DIP_FIRST_MIGRATION"))
+	    firstMigration = SystemParameters.getInt(conf,
+		    "DIP_FIRST_MIGRATION");
+	if (SystemParameters.isExisting(conf, "DIP_ADVISOR_HORIZON_MILLIS"))
+	    horizonMillis = SystemParameters.getLong(conf,
+		    "DIP_ADVISOR_HORIZON_MILLIS");
+	minEpochMillis = horizonMillis / 2;
+	if (SystemParameters.isExisting(conf, "DIP_ADVISOR_MIN_EPOCH_MILLIS"))
+	    minEpochMillis = SystemParameters.getLong(conf,
+		    "DIP_ADVISOR_MIN_EPOCH_MILLIS");
+	if (SystemParameters.isExisting(conf, "DIP_ADVISOR_HYSTERESIS"))
+	    hysteresis = SystemParameters.getDouble(conf,
+		    "DIP_ADVISOR_HYSTERESIS");
+	if (SystemParameters.isExisting(conf, "DIP_MIGRATION_TUPLE_COST"))
+	    migrationTupleCost = SystemParameters.getDouble(conf,
+		    "DIP_MIGRATION_TUPLE_COST");
+    }
+
+    @Override
+    protected Maybe<Action> doMigration() {
+	final long now = System.currentTimeMillis();
+	if (isMigrating || !sampleRates(now)
+		|| (totalRowTuples + totalColumnTuples) < firstMigration
+		|| now - lastMigrationMillis < minEpochMillis)
+	    return new Maybe<Action>();
+	evaluations++;
+
+	final double currentLoad = getLoad(currentRows, currentColumns);
+	final double avgTupleBytes = sizedTuples == 0 ? 0 : 1.0
+		* totalTupleBytes / sizedTuples;
+	int nextRows = currentRows, nextColumns = currentColumns;
+	double maxBenefit = 0, movedBytes = 0;
+	boolean isRejected = false;
+	lastSavings = 0;
+	lastCost = 0;
+	for (int n = 1; n <= reducerCount; n *= 2) {
+	    final int m = reducerCount / n;
+	    if (n == currentRows)
+		continue;
+	    final double moved = getMovedTuples(n, m);
+	    final double bytes = moved * avgTupleBytes;
+	    final double migrationMillis = migrationThroughput > 0 ? bytes
+		    / migrationThroughput : 0;
+	    final double saved = currentLoad - getLoad(n, m);
+	    if (saved <= 0)
+		continue;
+	    // a better layout, counted as rejected if none pays off
+	    isRejected = true;
+	    if (migrationMillis >= horizonMillis)
+		continue;
+	    final double savings = saved * (horizonMillis - migrationMillis);
+	    final double cost = migrationTupleCost * moved;
+	    final double benefit = savings - (1 + hysteresis) * cost;
+	    if (benefit > maxBenefit) {
+		nextRows = n;
+		nextColumns = m;
+		maxBenefit = benefit;
+		movedBytes = bytes;
+		lastSavings = savings;
+		lastCost = cost;
+	    }
+	}
+	if (nextRows == currentRows) {
+	    if (isRejected)
+		rejections++;
+	    return new Maybe<Action>();
+	}
+	migrations++;
+	isMigrating = true;
+	lastMigrationMillis = now;
+	lastMovedBytes = movedBytes;
+	return new Maybe<Action>(new Migration(reducerCount, currentRows,
+		currentColumns, nextRows, nextColumns));
+    }
+
+    @Override
+    protected Maybe<Action> doSplit() {
+	return new Maybe<Action>();
+    }
+
+    /*
+     * Input tuples per millisecond of each joiner
+     */
+    private double getLoad(int rows, int columns) {
+	return rateR / rows + rateS / columns;
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+	final Map<String, Object> metrics = new HashMap<String, Object>();
+	metrics.put("rows", currentRows);
+	metrics.put("columns", currentColumns);
+	metrics.put("evaluations", evaluations);
+	metrics.put("migrations", migrations);
+	metrics.put("rejections", rejections);
+	metrics.put("projectedSavings", lastSavings);
+	metrics.put("migrationCost", lastCost);
+	metrics.put("rowTuplesPerSec", Math.max(rateR, 0) * 1000);
+	metrics.put("columnTuplesPerSec", Math.max(rateS, 0) * 1000);
+	metrics.put("migrationBytesPerSec", migrationThroughput * 1000);
+	return metrics;
+    }
+
+    /*
+     * Tuples each joiner receives when moving to the (rows, columns) layout,
+     * from the relation whose dimension shrinks
+     */
+    private double getMovedTuples(int rows, int columns) {
+	double moved = 0;
+	if (rows < currentRows)
+	    moved += 1.0 * totalRowTuples / rows - 1.0 * totalRowTuples
+		    / currentRows;
+	if (columns < currentColumns)
+	    moved += 1.0 * totalColumnTuples / columns - 1.0
+		    * totalColumnTuples / currentColumns;
+	return moved;
+    }
+
+    /*
+     * Returns true if new rates were sampled
+     */
+    private boolean sampleRates(long now) {
+	if (lastSampleMillis == 0) {
+	    lastSampleMillis = now;
+	    lastSampleR = totalRowTuples;
+	    lastSampleS = totalColumnTuples;
+	    return false;
+	}
+	final long elapsed = now - lastSampleMillis;
+	if (elapsed < RATE_PERIOD_MILLIS)
+	    return false;
+	final double sampleR = 1.0 * (totalRowTuples - lastSampleR) / elapsed;
+	final double sampleS = 1.0 * (totalColumnTuples - lastSampleS)
+		/ elapsed;
+	if (rateR < 0) {
+	    rateR = sampleR;
+	    rateS = sampleS;
+	} else {
+	    rateR = RATE_ALPHA * sampleR + (1 - RATE_ALPHA) * rateR;
+	    rateS = RATE_ALPHA * sampleS + (1 - RATE_ALPHA) * rateS;
+	}
+	lastSampleMillis = now;
+	lastSampleR = totalRowTuples;
+	lastSampleS = totalColumnTuples;
+	return true;
+    }
+
+    @Override
+    public void updateMigrationEnded(long durationMillis) {
+	isMigrating = false;
+	if (durationMillis <= 0 || lastMovedBytes <= 0)
+	    return;
+	final double throughput = lastMovedBytes / durationMillis;
+	migrationThroughput = migrationThroughput == 0 ? throughput
+		: RATE_ALPHA * throughput + (1 - RATE_ALPHA)
+			* migrationThroughput;
+    }
+
+    @Override
+    public void updateTupleBytes(long bytes) {
+	totalTupleBytes += bytes;
+	sizedTuples++;
+    }
+}
@@ -26,13 +26,10 @@ package ch.epfl.data.squall.thetajoin.adaptive.storm_component;
 
 import gnu.trove.list.array.TIntArrayList;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
 
 import org.apache.log4j.Logger;
 
@@ -53,7 +50,9 @@ import ch.epfl.data.squall.predicates.ComparisonPredicate;
 import ch.epfl.data.squall.predicates.Predicate;
 import ch.epfl.data.squall.storage.BitVector;
 import ch.epfl.data.squall.storage.TupleStorage;
+import ch.epfl.data.squall.storage.TupleStorageBlock;
 import ch.epfl.data.squall.storage.indexes.Index;
+import ch.epfl.data.squall.storage.indexes.RowIdIntersection;
 import ch.epfl.data.squall.storm_components.InterchangingComponent;
 import ch.epfl.data.squall.storm_components.StormBoltComponent;
 import ch.epfl.data.squall.storm_components.StormComponent;
@@ -61,8 +60,8 @@ import ch.epfl.data.squall.storm_components.StormEmitter;
 import ch.epfl.data.squall.storm_components.synchronization.TopologyKiller;
 import ch.epfl.data.squall.thetajoin.adaptive.advisor.Action;
 import ch.epfl.data.squall.thetajoin.adaptive.advisor.Discard;
+import ch.epfl.data.squall.types.DateType;
 import ch.epfl.data.squall.utilities.MyUtilities;
-import ch.epfl.data.squall.utilities.PeriodicAggBatchSend;
 import ch.epfl.data.squall.utilities.SystemParameters;
 import ch.epfl.data.squall.utilities.statistics.StatisticsUtilities;
 import ch.epfl.data.squall.visitors.PredicateCreateIndexesVisitor;
@@ -110,6 +109,7 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
     private List<Integer> _operatorForIndexes;
     private List<Object> _typeOfValueIndexed;
     private boolean _existIndexes = false;
+    private RowIdIntersection _rowIdIntersection;
     private int _currentNumberOfAckedReshufflerWorkersTasks;
     private int _currentNumberOfFinalAckedParents;
     private int _thisTaskIDindex;
@@ -134,14 +134,9 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
     private final int _numParentTasks;
 
     // for statistics
-    SimpleDateFormat _format = new SimpleDateFormat(
-	    "EEE MMM d HH:mm:ss zzz yyyy");
     private final StatisticsUtilities _statsUtils;
     // for batch sending
-    private final Semaphore _semAgg = new Semaphore(1, true);
-    private boolean _firstTime = true;
 
-    private PeriodicAggBatchSend _periodicAggBatch;
 
     private final long _batchOutputMillis;
 
@@ -200,15 +195,14 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	    String tupleString = fromRelation.get(i);
 	    final int row_id = toRelation.insert(tupleString);
 	    if (_existIndexes) {
-		if (MyUtilities.isStoreTimestamp(getConf(),
-			getHierarchyPosition())) {
+		if (getRuntimeConfig().isStoreTimestamp()) {
 		    // timestamp has to be removed
 		    final String parts[] = tupleString.split("\\@");
 		    tupleString = new String(parts[1]);
 		}
 		updateIndexes(emitterIndex,
-			MyUtilities.stringToTuple(tupleString, getConf()),
-			toRelationindexes, row_id);
+			MyUtilities.stringToTuple(tupleString,
+				getRuntimeConfig()), toRelationindexes, row_id);
 	    }
 	}
     }
@@ -219,30 +213,22 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	    if (_operatorChain != null) {
 		final Operator lastOperator = _operatorChain.getLastOperator();
 		if (lastOperator instanceof AggregateOperator) {
-		    try {
-			_semAgg.acquire();
-		    } catch (final InterruptedException ex) {
-		    }
-		    // sending
+		    // sending the groups changed since the previous send
 		    final AggregateOperator agg = (AggregateOperator) lastOperator;
-		    final List<String> tuples = agg.getContent();
-		    for (final String tuple : tuples)
-			tupleSend(MyUtilities.stringToTuple(tuple, getConf()),
-				null, 0);
-		    // clearing
-		    agg.clearStorage();
-		    _semAgg.release();
+		    for (final List<String> tuple : MyUtilities
+			    .getAggBatchTuples(agg, getRuntimeConfig()))
+			tupleSend(tuple, null, 0);
 		}
 	    }
     }
 
     private void appendTimestampExisting(Values tplSend, long lineageTimestamp) {
-	if (MyUtilities.isCustomTimestampMode(getConf()))
+	if (getRuntimeConfig().isCustomTimestamp())
 	    tplSend.add(lineageTimestamp);
     }
 
     private void appendTimestampZero(Values tplSend) {
-	if (MyUtilities.isCustomTimestampMode(getConf())) {
+	if (getRuntimeConfig().isCustomTimestamp()) {
 	    final long timestamp = 0;
 	    tplSend.add(timestamp);
 	}
@@ -250,14 +236,7 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 
     protected void applyOperatorsAndSend(Tuple stormTupleRcv,
 	    List<String> tuple, long lineageTimestamp) {
-	if (MyUtilities.isAggBatchOutputMode(_batchOutputMillis))
-	    try {
-		_semAgg.acquire();
-	    } catch (final InterruptedException ex) {
-	    }
 	tuple = _operatorChain.process(tuple, lineageTimestamp);
-	if (MyUtilities.isAggBatchOutputMode(_batchOutputMillis))
-	    _semAgg.release();
 	if (tuple == null)
 	    return;
 	_numSentTuples++;
@@ -265,7 +244,7 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	printTuple(tuple);
 	if (MyUtilities.isSending(getHierarchyPosition(), _batchOutputMillis))
 	    tupleSend(tuple, stormTupleRcv, 0);
-	if (MyUtilities.isPrintLatency(getHierarchyPosition(), getConf()))
+	if (getRuntimeConfig().isPrintLatency())
 	    printTupleLatency(_numSentTuples - 1, lineageTimestamp);
     }
 
@@ -280,14 +259,14 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
     }
 
     protected void constructStorageAndIndexes() {
-	_firstRelationStorage = new TupleStorage();
-	_firstRelationStorageNewEpoch = new TupleStorage();
-	_secondRelationStorage = new TupleStorage();
-	_secondRelationStorageNewEpoch = new TupleStorage();
-	_firstTaggedRelationStorage = new TupleStorage();
-	_firstTaggedRelationStorageNewEpoch = new TupleStorage();
-	_secondTaggedRelationStorage = new TupleStorage();
-	_secondTaggedRelationStorageNewEpoch = new TupleStorage();
+	_firstRelationStorage = MyUtilities.createTupleStorage(getConf());
+	_firstRelationStorageNewEpoch = MyUtilities.createTupleStorage(getConf());
+	_secondRelationStorage = MyUtilities.createTupleStorage(getConf());
+	_secondRelationStorageNewEpoch = MyUtilities.createTupleStorage(getConf());
+	_firstTaggedRelationStorage = MyUtilities.createTupleStorage(getConf());
+	_firstTaggedRelationStorageNewEpoch = MyUtilities.createTupleStorage(getConf());
+	_secondTaggedRelationStorage = MyUtilities.createTupleStorage(getConf());
+	_secondTaggedRelationStorageNewEpoch = MyUtilities.createTupleStorage(getConf());
 	if (_joinPredicate != null) {
 	    createIndexes(1, true, false);
 	    createIndexes(1, false, false);
@@ -416,7 +395,7 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	dataStreamFields.add(StormComponent.TUPLE);
 	dataStreamFields.add(StormComponent.HASH);
 	dataStreamFields.add(StormComponent.EPOCH);
-	if (MyUtilities.isCustomTimestampMode(getConf())
+	if (getRuntimeConfig().isCustomTimestamp()
 		|| MyUtilities.isWindowTimestampMode(getConf()))
 	    dataStreamFields.add(StormComponent.TIMESTAMP);
 	declarer.declareStream(
@@ -428,21 +407,46 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 		StormComponent.MESSAGE));
     }
 
+    /*
+     * Ships the rows as they are stored, in compressed blocks of
+     * DIP_MIGRATION_BLOCK_SIZE rows; the blocks of a wave are all in flight
+     * until its ThetaJoinerMigrationSignal comes back
+     */
+    private void emitBlocks(TupleStorage emittingStorage, String emitterIndex,
+	    int beginIndex, int endIndex) {
+	final int blockSize = MyUtilities.getMigrationBlockSize(getConf());
+	for (int begin = beginIndex; begin <= endIndex; begin += blockSize) {
+	    final int end = Math.min(begin + blockSize - 1, endIndex);
+	    final Values tplSend = new Values(emitterIndex,
+		    TupleStorageBlock.encode(emittingStorage, begin, end),
+		    "N/A", _currentEpochNumber);
+	    appendTimestampZero(tplSend);
+
+	    getCollector().emit(
+		    SystemParameters.ThetaDataMigrationJoinerToReshuffler,
+		    tplSend);
+	}
+    }
+
     private void emitBulk(TupleStorage emittingStorage, String emitterIndex,
 	    int beginIndex, int endIndex) {
+	if (MyUtilities.isMigrationBlockMode(getConf())) {
+	    emitBlocks(emittingStorage, emitterIndex, beginIndex, endIndex);
+	    return;
+	}
 	for (int i = beginIndex; i <= endIndex; i++) {
 	    String tupleString = emittingStorage.get(i);
 
 	    long lineageTimestamp = 0;
-	    if (MyUtilities.isStoreTimestamp(getConf(), getHierarchyPosition())) {
+	    if (getRuntimeConfig().isStoreTimestamp()) {
 		// timestamp has to be removed
 		final String parts[] = tupleString.split("\\@");
 		lineageTimestamp = Long.valueOf(new String(parts[0]));
 		tupleString = new String(parts[1]);
 	    }
 	    final Values tplSend = new Values(emitterIndex,
-		    MyUtilities.stringToTuple(tupleString, getConf()), "N/A",
-		    _currentEpochNumber);
+		    MyUtilities.stringToTuple(tupleString, getRuntimeConfig()),
+		    "N/A", _currentEpochNumber);
 	    appendTimestampExisting(tplSend, lineageTimestamp);
 
 	    getCollector().emit(
@@ -460,12 +464,9 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
      */
     @Override
     public void execute(Tuple stormTupleRcv) {
+	if (processTick(stormTupleRcv, _batchOutputMillis))
+	    return;
 
-	if (_firstTime && MyUtilities.isAggBatchOutputMode(_batchOutputMillis)) {
-	    _periodicAggBatch = new PeriodicAggBatchSend(_batchOutputMillis,
-		    this);
-	    _firstTime = false;
-	}
 	if (receivedDumpSignal(stormTupleRcv)) {
 	    MyUtilities.dumpSignal(this, stormTupleRcv, getCollector());
 	    return;
@@ -526,14 +527,19 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 		|| inputStream.equals(SystemParameters.DATA_STREAM)) {
 	    final String inputComponentIndex = stormTupleRcv
 		    .getStringByField(StormComponent.COMP_INDEX);
+	    if (stormTupleRcv.getValueByField(StormComponent.TUPLE)
+		    instanceof byte[]) {
+		processMigrationBlock(stormTupleRcv);
+		return;
+	    }
 	    final List<String> tuple = (List<String>) stormTupleRcv
 		    .getValueByField(StormComponent.TUPLE);
 	    String inputTupleString = MyUtilities.tupleToString(tuple,
-		    getConf());
+		    getRuntimeConfig());
 	    final String inputTupleHash = stormTupleRcv
 		    .getStringByField(StormComponent.HASH);
 	    // N.B. if received at this level then data migration has ended.
-	    if (MyUtilities.isFinalAck(tuple, getConf())) {
+	    if (getRuntimeConfig().isFinalAck(tuple)) {
 		processFinalAck(stormTupleRcv);
 		return;
 	    }
@@ -562,7 +568,7 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 		    inputTupleEpochNumber, isTagged);
 	    // add the stormTuple to the specific storage
 	    long incomingTimestamp = 0;
-	    if (MyUtilities.isStoreTimestamp(getConf(), getHierarchyPosition())) {
+	    if (getRuntimeConfig().isStoreTimestamp()) {
 		incomingTimestamp = stormTupleRcv
 			.getLongByField(StormComponent.TIMESTAMP);
 		inputTupleString = incomingTimestamp
@@ -807,7 +813,7 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 
     @Override
     public Map<String, Object> getComponentConfiguration() {
-	return getConf();
+	return getTickConfiguration(getConf(), _batchOutputMillis);
     }
 
     public InputDeclarer getCurrentBolt() {
@@ -831,11 +837,6 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	return _numSentTuples;
     }
 
-    @Override
-    public PeriodicAggBatchSend getPeriodicAggBatch() {
-	return _periodicAggBatch;
-    }
-
     protected boolean identifyRelation(final String inputComponentIndex,
 	    boolean isTagged) {
 	boolean isFromFirstEmitter = false;
@@ -868,7 +869,7 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	for (int i = 0; i < oppositeStorage.size(); i++) {
 	    String oppositeTupleString = oppositeStorage.get(i);
 	    long lineageTimestamp = incomingTimestamp;
-	    if (MyUtilities.isStoreTimestamp(getConf(), getHierarchyPosition())) {
+	    if (getRuntimeConfig().isStoreTimestamp()) {
 		// timestamp has to be removed
 		final String parts[] = oppositeTupleString.split("\\@");
 		final long storedTimestamp = Long.valueOf(new String(parts[0]));
@@ -880,7 +881,7 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	    }
 
 	    final List<String> oppositeTuple = MyUtilities.stringToTuple(
-		    oppositeTupleString, getComponentConfiguration());
+		    oppositeTupleString, getRuntimeConfig());
 	    List<String> firstTuple, secondTuple;
 	    if (isFromFirstEmitter) {
 		firstTuple = tuple;
@@ -914,20 +915,20 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	for (int i = 0; i < outerRelation.size(); i++) {
 	    String tupleString = outerRelation.get(i);
 	    long incomingTimestamp = 0;
-	    if (MyUtilities.isStoreTimestamp(getConf(), getHierarchyPosition())) {
+	    if (getRuntimeConfig().isStoreTimestamp()) {
 		// timestamp has to be removed
 		final String parts[] = tupleString.split("\\@");
 		incomingTimestamp = Long.valueOf(new String(parts[0]));
 		tupleString = new String(parts[1]);
 	    }
 	    final List<String> u2tuple = MyUtilities.stringToTuple(tupleString,
-		    getConf());
+		    getRuntimeConfig());
 
 	    final PredicateUpdateIndexesVisitor u2visitor = new PredicateUpdateIndexesVisitor(
 		    fromFirstEmitter, u2tuple);
 	    _joinPredicate.accept(u2visitor);
 	    final List<String> valuesToIndex = new ArrayList<String>(
-		    u2visitor._valuesToIndex);
+		    u2visitor.getValuesToIndex());
 	    performJoin(null, u2tuple, null, fromFirstEmitter,
 		    innerRelationIndexes, valuesToIndex, innerRelation,
 		    incomingTimestamp);
@@ -938,7 +939,7 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
     protected void performDiscards(int relationNumber) {
 	final PredicateCreateIndexesVisitor visitor = new PredicateCreateIndexesVisitor();
 	_joinPredicate.accept(visitor);
-	final TupleStorage keepStorage = new TupleStorage();
+	final TupleStorage keepStorage = MyUtilities.createTupleStorage(getConf());
 	ArrayList<Index> keepIndexes;
 	String discardingEmitterIndex;
 	int discardingParts, discardingIndex;
@@ -988,15 +989,14 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 		tupleString = discardingTupleStorage.get(address);
 	    final int row_id = keepStorage.insert(tupleString);
 	    if (_existIndexes) {
-		if (MyUtilities.isStoreTimestamp(getConf(),
-			getHierarchyPosition())) {
+		if (getRuntimeConfig().isStoreTimestamp()) {
 		    // timestamp has to be removed
 		    final String parts[] = tupleString.split("\\@");
 		    tupleString = new String(parts[1]);
 		}
 		updateIndexes(discardingEmitterIndex,
-			MyUtilities.stringToTuple(tupleString, getConf()),
-			keepIndexes, row_id);
+			MyUtilities.stringToTuple(tupleString,
+				getRuntimeConfig()), keepIndexes, row_id);
 	    }
 	}
 	if (relationNumber == 1) {
@@ -1004,14 +1004,14 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	    _firstTaggedRelationIndexes = keepIndexes;
 	    _firstRelationStorage = _firstRelationStorageNewEpoch;
 	    _firstRelationIndexes = _firstRelationIndexesNewEpoch;
-	    _firstRelationStorageNewEpoch = new TupleStorage();
+	    _firstRelationStorageNewEpoch = MyUtilities.createTupleStorage(getConf());
 	    createIndexes(1, false, true);
 	} else {
 	    _secondTaggedRelationStorage = keepStorage;
 	    _secondTaggedRelationIndexes = keepIndexes;
 	    _secondRelationStorage = _secondRelationStorageNewEpoch;
 	    _secondRelationIndexes = _secondRelationIndexesNewEpoch;
-	    _secondRelationStorageNewEpoch = new TupleStorage();
+	    _secondRelationStorageNewEpoch = MyUtilities.createTupleStorage(getConf());
 	    createIndexes(2, false, true);
 	}
     }
@@ -1075,12 +1075,12 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	if (relationNumber == 1) {
 	    _firstRelationStorage = _firstRelationStorageNewEpoch;
 	    _firstRelationIndexes = _firstRelationIndexesNewEpoch;
-	    _firstRelationStorageNewEpoch = new TupleStorage();
+	    _firstRelationStorageNewEpoch = MyUtilities.createTupleStorage(getConf());
 	    createIndexes(1, false, true);// reinitialize untagged
 	} else {
 	    _secondRelationStorage = _secondRelationStorageNewEpoch;
 	    _secondRelationIndexes = _secondRelationIndexesNewEpoch;
-	    _secondRelationStorageNewEpoch = new TupleStorage();
+	    _secondRelationStorageNewEpoch = MyUtilities.createTupleStorage(getConf());
 	    createIndexes(2, false, true);// reinitialize untagged
 	}
 
@@ -1135,7 +1135,7 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	if (_statsUtils.isTestMode())
 	    if (getHierarchyPosition() == StormComponent.FINAL_COMPONENT)
 		// printing
-		if (!MyUtilities.isCustomTimestampMode(getConf())) {
+		if (!getRuntimeConfig().isCustomTimestamp()) {
 		    if (type == SystemParameters.INITIAL_PRINT) {
 			// computing variables
 			final int size1 = _firstRelationStorage.size();
@@ -1240,10 +1240,11 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 		    + first + "," + second);
 
 	    printStatistics(SystemParameters.FINAL_PRINT);
+	    aggBatchSend();
 	}
 	MyUtilities.processFinalAck(_currentNumberOfFinalAckedParents,
 		getHierarchyPosition(), getConf(), stormTupleRcv,
-		getCollector(), _periodicAggBatch);
+		getCollector());
 	return;
     }
 
@@ -1262,6 +1263,47 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	return exchangingDim;
     }
 
+    /*
+     * A block of migrated rows, each of which is processed as a tagged tuple
+     * of the ThetaDataMigrationReshufflerToJoiner stream. The rows are stored
+     * as they come, and the indexes are rebuilt from them.
+     */
+    protected void processMigrationBlock(Tuple stormTupleRcv) {
+	final String inputComponentIndex = stormTupleRcv
+		.getStringByField(StormComponent.COMP_INDEX);
+	final int inputTupleEpochNumber = stormTupleRcv
+		.getIntegerByField(StormComponent.EPOCH);
+	final List<String> rows = TupleStorageBlock.decode((byte[]) stormTupleRcv
+		.getValueByField(StormComponent.TUPLE));
+	final boolean isStoreTimestamp = getRuntimeConfig().isStoreTimestamp();
+	for (final String row : rows) {
+	    final boolean isFromFirstEmitter = identifyRelation(
+		    inputComponentIndex, true);
+	    final Quadruple tupleQuadInfo = extractQuadInfo(stormTupleRcv,
+		    SystemParameters.ThetaDataMigrationReshufflerToJoiner, row,
+		    isFromFirstEmitter, inputTupleEpochNumber, true);
+	    String tupleString = row;
+	    long incomingTimestamp = 0;
+	    if (isStoreTimestamp) {
+		final int delimiter = row
+			.indexOf(SystemParameters.STORE_TIMESTAMP_DELIMITER);
+		incomingTimestamp = Long.parseLong(row.substring(0, delimiter));
+		tupleString = row.substring(delimiter + 1);
+	    }
+	    final List<String> tuple = MyUtilities.stringToTuple(tupleString,
+		    getRuntimeConfig());
+	    final int row_id = tupleQuadInfo.affectedStorage.insert(row);
+	    List<String> valuesToApplyOnIndex = null;
+	    if (_existIndexes)
+		valuesToApplyOnIndex = updateIndexes(inputComponentIndex,
+			tuple, tupleQuadInfo.affectedIndexes, row_id);
+	    performJoin(stormTupleRcv, tuple, "N/A", isFromFirstEmitter,
+		    tupleQuadInfo.oppositeIndexes, valuesToApplyOnIndex,
+		    tupleQuadInfo.oppositeStorage, incomingTimestamp);
+	}
+	getCollector().ack(stormTupleRcv);
+    }
+
     protected void processSignalStop(final String mapping) {
 	// increment epoch number .. now all tuples of the previous
 	// epoch has been received!
@@ -1321,13 +1363,13 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	addTaggedTuples(_firstTaggedRelationStorageNewEpoch,
 		_firstTaggedRelationStorage, _firstTaggedRelationIndexes,
 		_firstEmitterIndex);
-	_firstTaggedRelationStorageNewEpoch = new TupleStorage();
+	_firstTaggedRelationStorageNewEpoch = MyUtilities.createTupleStorage(getConf());
 	createIndexes(1, true, true);
 	// add T2' to T2
 	addTaggedTuples(_secondTaggedRelationStorageNewEpoch,
 		_secondTaggedRelationStorage, _secondTaggedRelationIndexes,
 		_secondEmitterIndex);
-	_secondTaggedRelationStorageNewEpoch = new TupleStorage();
+	_secondTaggedRelationStorageNewEpoch = MyUtilities.createTupleStorage(getConf());
 	createIndexes(2, true, true);
     }
 
@@ -1347,7 +1389,8 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 	    return;
 	}
 
-	final TIntArrayList rowIds = new TIntArrayList();
+	final TIntArrayList[] rowIdLists = new TIntArrayList[oppositeIndexes
+		.size()];
 	// If there is atleast one index (so we have single join conditions with
 	// 1 index per condition)
 	// Get the row indices in the storage of the opposite relation that
@@ -1390,30 +1433,20 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 		currentRowIds = currentOpposIndex.getValues(currentOperator,
 			Integer.parseInt(value));
 	    else if (_typeOfValueIndexed.get(i) instanceof Date)
-		try {
-		    currentRowIds = currentOpposIndex.getValues(
-			    currentOperator, _format.parse(value));
-		} catch (final ParseException e) {
-		    e.printStackTrace();
-		}
+		currentRowIds = currentOpposIndex.getValues(
+			currentOperator, DateType.parseDate(value));
 	    else
 		throw new RuntimeException("non supported type");
-	    // Compute the intersection Search only within the ids that are in
-	    // rowIds from previous join
-	    // conditions If nothing returned (and since we want intersection),
-	    // no need to proceed.
-	    if (currentRowIds == null)
-		return;
-	    // If it's the first index, add everything. Else keep the
-	    // intersection
-	    if (i == 0)
-		rowIds.addAll(currentRowIds);
-	    else
-		rowIds.retainAll(currentRowIds);
-	    // If empty after intersection, return
-	    if (rowIds.isEmpty())
+	    // If nothing returned (and since we want intersection), no need to
+	    // proceed.
+	    if (currentRowIds == null || currentRowIds.isEmpty())
 		return;
+	    rowIdLists[i] = currentRowIds;
 	}
+	// Compute the intersection, from the most selective condition on
+	if (_rowIdIntersection == null)
+	    _rowIdIntersection = new RowIdIntersection();
+	final TIntArrayList rowIds = _rowIdIntersection.intersect(rowIdLists);
 	// generate tuplestorage
 	for (int i = 0; i < rowIds.size(); i++) {
 	    final int id = rowIds.get(i);
@@ -1435,31 +1468,15 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 		comeFromFirstEmitter, tuple);
 	_joinPredicate.accept(visitor);
 	final List<String> valuesToIndex = new ArrayList<String>(
-		visitor._valuesToIndex);
+		visitor.getValuesToIndex());
 	if (affectedIndexes == null)
 	    return valuesToIndex;
-	final List<Object> typesOfValuesToIndex = new ArrayList<Object>(
-		visitor._typesOfValuesToIndex);
 	for (int i = 0; i < affectedIndexes.size(); i++)
-	    if (typesOfValuesToIndex.get(i) instanceof Integer)
-		affectedIndexes.get(i).put(row_id,
-			Integer.parseInt(valuesToIndex.get(i)));
-	    else if (typesOfValuesToIndex.get(i) instanceof Double)
-		affectedIndexes.get(i).put(row_id,
-			Double.parseDouble(valuesToIndex.get(i)));
-	    else if (typesOfValuesToIndex.get(i) instanceof String)
-		affectedIndexes.get(i).put(row_id, valuesToIndex.get(i));
-	    else if (typesOfValuesToIndex.get(i) instanceof Date)
-		try {
-		    affectedIndexes.get(i).put(row_id,
-			    _format.parse(valuesToIndex.get(i)));
-		} catch (final ParseException e) {
-		    throw new RuntimeException(
-			    "Parsing problem in ThetaJoinerDynamicAdvisedEpochs.updatedIndexes "
-				    + e.getMessage());
-		}
-	    else
-		throw new RuntimeException("non supported type");
+	    affectedIndexes.get(i).put(
+		    row_id,
+		    PredicateUpdateIndexesVisitor.toIndexKey(
+			    visitor._typesOfValuesToIndex.get(i),
+			    visitor._keysToIndex.get(i)));
 	return valuesToIndex;
     }
 
@@ -1479,31 +1496,15 @@ public class ThetaJoinerAdaptiveAdvisedEpochs extends StormBoltComponent {
 		comeFromFirstEmitter, tuple);
 	_joinPredicate.accept(visitor);
 	final List<String> valuesToIndex = new ArrayList<String>(
-		visitor._valuesToIndex);
+		visitor.getValuesToIndex());
 	if (affectedIndexes == null)
 	    return valuesToIndex;
-	final List<Object> typesOfValuesToIndex = new ArrayList<Object>(
-		visitor._typesOfValuesToIndex);
 	for (int i = 0; i < affectedIndexes.size(); i++)
-	    if (typesOfValuesToIndex.get(i) instanceof Integer)
-		affectedIndexes.get(i).put(row_id,
-			Integer.parseInt(valuesToIndex.get(i)));
-	    else if (typesOfValuesToIndex.get(i) instanceof Double)
-		affectedIndexes.get(i).put(row_id,
-			Double.parseDouble(valuesToIndex.get(i)));
-	    else if (typesOfValuesToIndex.get(i) instanceof String)
-		affectedIndexes.get(i).put(row_id, valuesToIndex.get(i));
-	    else if (typesOfValuesToIndex.get(i) instanceof Date)
-		try {
-		    affectedIndexes.get(i).put(row_id,
-			    _format.parse(valuesToIndex.get(i)));
-		} catch (final ParseException e) {
-		    throw new RuntimeException(
-			    "Parsing problem in ThetaJoinerDynamicAdvisedEpochs.updatedIndexes "
-				    + e.getMessage());
-		}
-	    else
-		throw new RuntimeException("non supported type");
+	    affectedIndexes.get(i).put(
+		    row_id,
+		    PredicateUpdateIndexesVisitor.toIndexKey(
+			    visitor._typesOfValuesToIndex.get(i),
+			    visitor._keysToIndex.get(i)));
 	return valuesToIndex;
     }
 
@@ -31,6 +31,7 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 
+import backtype.storm.metric.api.IMetric;
 import backtype.storm.task.OutputCollector;
 import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.InputDeclarer;
@@ -45,6 +46,7 @@ import ch.epfl.data.squall.storm_components.StormComponent;
 import ch.epfl.data.squall.storm_components.StormEmitter;
 import ch.epfl.data.squall.thetajoin.adaptive.advisor.Action;
 import ch.epfl.data.squall.thetajoin.adaptive.advisor.Advisor;
+import ch.epfl.data.squall.thetajoin.adaptive.advisor.CostBasedAdvisor;
 import ch.epfl.data.squall.thetajoin.adaptive.advisor.Maybe;
 import ch.epfl.data.squall.thetajoin.adaptive.advisor.TheoreticalAdvisorNew;
 import ch.epfl.data.squall.utilities.MyUtilities;
@@ -113,6 +115,7 @@ public class ThetaReshufflerAdvisedEpochs extends BaseRichBolt {
      */
     private int _currentNumberOfAckedJoinWorkersTasks;
     private Advisor _mAdvisor;
+    private long _migrationStartMillis;
     // private Action _AdvisorcurrentAction = null;
     private state _currentAdvisorState = state.NORMAL;
     private int _hierarchyPosition;
@@ -171,6 +174,7 @@ public class ThetaReshufflerAdvisedEpochs extends BaseRichBolt {
 		    && _currentAdvisorState != state.FLUSHING) {
 		advisorcurrentAction = isAction.get();
 		_currentAdvisorState = state.FLUSHING;
+		_migrationStartMillis = System.currentTimeMillis();
 		LOG.info(_componentName + ":" + _taskIDLogicalIndex
 			+ " MAIN: sending new mapping:"
 			+ advisorcurrentAction.toString() + " Relation sizes "
@@ -337,24 +341,28 @@ public class ThetaReshufflerAdvisedEpochs extends BaseRichBolt {
 		.equals(SystemParameters.ThetaDataMigrationJoinerToReshuffler)) {
 	    final String inputComponentIndex = stormTupleRcv
 		    .getStringByField(StormComponent.COMP_INDEX);
-	    final List<String> tupleList = (List<String>) stormTupleRcv
+	    // a compressed block of migrated tuples is forwarded as it is
+	    final Object migratedTuple = stormTupleRcv
 		    .getValueByField(StormComponent.TUPLE);
-	    final String inputTupleString = MyUtilities.tupleToString(
-		    tupleList, _conf); // INPUT TUPLE
+	    final boolean isBlock = migratedTuple instanceof byte[];
+	    final String inputTupleString = isBlock ? null : MyUtilities
+		    .tupleToString((List<String>) migratedTuple, _conf);
 	    final String inputTupleHash = stormTupleRcv
 		    .getStringByField(StormComponent.HASH); // HashTuple
 
 	    // If ThetaJoinerMigrationSignal, send a signal back to reshuffler
 	    // the next batch.
-	    if (inputTupleString
-		    .equals(SystemParameters.ThetaJoinerMigrationSignal)) {
+	    if (!isBlock
+		    && inputTupleString
+			    .equals(SystemParameters.ThetaJoinerMigrationSignal)) {
 		processMigrationSignal(stormTupleRcv);
 		return;
 	    }
 	    // if its a DMEOF then send signal dataMigrationEnded to all the
 	    // joiners
-	    else if (inputTupleString
-		    .equals(SystemParameters.ThetaJoinerDataMigrationEOF)) {
+	    else if (!isBlock
+		    && inputTupleString
+			    .equals(SystemParameters.ThetaJoinerDataMigrationEOF)) {
 		processMigrationEOF(stormTupleRcv);
 		return;
 	    }
@@ -366,8 +374,12 @@ public class ThetaReshufflerAdvisedEpochs extends BaseRichBolt {
 			"Error --> Data migrated tuple has sent an outdated epoch number");
 	    // 1) Dont increment the counters. (this is only data migration)
 	    // 2) Forward the tuple to the meant (new) region.
-	    forwardTuple(inputComponentIndex, stormTupleRcv, inputTupleString,
-		    inputTupleHash);
+	    if (isBlock)
+		forwardBlock(inputComponentIndex, stormTupleRcv,
+			(byte[]) migratedTuple, inputTupleHash);
+	    else
+		forwardTuple(inputComponentIndex, stormTupleRcv,
+			inputTupleString, inputTupleHash);
 	}
 	/**
 	 * Case 4) Signals (Stop or Proceed or DataMigrationEnded) and might
@@ -400,7 +412,7 @@ public class ThetaReshufflerAdvisedEpochs extends BaseRichBolt {
 			+ " Reshuffler received ThetaSignalDataMigrationEnded & sent LAST_ACK");
 		MyUtilities.processFinalAck(_numRemainingParentsForLastAck,
 			StormComponent.INTERMEDIATE, _conf, stormTupleRcv,
-			_collector, null);
+			_collector);
 	    }
 	}
     }
@@ -413,23 +425,31 @@ public class ThetaReshufflerAdvisedEpochs extends BaseRichBolt {
 	return -1;
     }
 
+    /*
+     * Same as forwardTuple, for a block of migrated tuples
+     */
+    protected void forwardBlock(String inputComponentIndex,
+	    Tuple stormTupleRcv, byte[] block, String inputTupleHash) {
+	final int[] taskIndices = getMigrationTargets(inputComponentIndex,
+		stormTupleRcv);
+	for (int i = 0; i < taskIndices.length; i++) {
+	    final Values tplSend = new Values(inputComponentIndex, block,
+		    inputTupleHash, _currentEpochNumber, _currentDimExcDis);
+	    appendTimestampMigration(stormTupleRcv, tplSend);
+	    _collector.emitDirect(_taskPhysicalMapping.get(fooLogicalMappings(
+		    logicalMappings, taskIndices[i])),
+		    SystemParameters.ThetaDataMigrationReshufflerToJoiner,
+		    tplSend);
+	}
+    }
+
     /*
      * This method is used for sending the migrated data
      */
     protected void forwardTuple(String inputComponentIndex,
 	    Tuple stormTupleRcv, String inputTupleString, String inputTupleHash) {
-	final int sourceID = logicalMappings[_taskPhysicalMapping
-		.indexOf(stormTupleRcv.getSourceTask())];
-	final int[] taskIndices;
-	if (_firstEmitterIndex.equals(inputComponentIndex))
-	    taskIndices = _currentAction
-		    .getRowExchangeReducersByNewId(sourceID);
-	else if (_secondEmitterIndex.equals(inputComponentIndex))
-	    taskIndices = _currentAction
-		    .getColumnExchangeReducersByNewId(sourceID);
-	else
-	    throw new RuntimeException(
-		    "inputComponentIndex does not conform with any relation");
+	final int[] taskIndices = getMigrationTargets(inputComponentIndex,
+		stormTupleRcv);
 	for (int i = 0; i < taskIndices.length; i++) {
 	    final Values tplSend = new Values(inputComponentIndex,
 		    MyUtilities.stringToTuple(inputTupleString, _conf),
@@ -468,6 +488,22 @@ public class ThetaReshufflerAdvisedEpochs extends BaseRichBolt {
 	return str;
     }
 
+    /*
+     * The joiners of the new region of the joiner which sent the migrated data
+     */
+    private int[] getMigrationTargets(String inputComponentIndex,
+	    Tuple stormTupleRcv) {
+	final int sourceID = logicalMappings[_taskPhysicalMapping
+		.indexOf(stormTupleRcv.getSourceTask())];
+	if (_firstEmitterIndex.equals(inputComponentIndex))
+	    return _currentAction.getRowExchangeReducersByNewId(sourceID);
+	else if (_secondEmitterIndex.equals(inputComponentIndex))
+	    return _currentAction.getColumnExchangeReducersByNewId(sourceID);
+	else
+	    throw new RuntimeException(
+		    "inputComponentIndex does not conform with any relation");
+    }
+
     private String getNewMapping(Action currentAction) {
 	final int exchgDim = identifyDim(_currentAction.getPreviousRows(),
 		_currentAction.getPreviousColumns(),
@@ -495,6 +531,13 @@ public class ThetaReshufflerAdvisedEpochs extends BaseRichBolt {
 	_resufflerIndex = context.getComponentTasks(getID());
 	if (_taskIDLogicalIndex != 0)
 	    _mAdvisor = null;
+	else
+	    context.registerMetric(_componentName + "_ADVISOR", new IMetric() {
+		@Override
+		public Object getValueAndReset() {
+		    return _mAdvisor.getMetrics();
+		}
+	    }, 60);
 	_taskPhysicalMapping = context.getComponentTasks(_joinerID);
 	_collector = collector;
 	if (_secondEmitter == null) // this is an interchanging data source
@@ -521,8 +564,12 @@ public class ThetaReshufflerAdvisedEpochs extends BaseRichBolt {
 	    logicalMappings[i] = i;
 
 	final int[] initialDims = ThetaJoinUtilities.getDimensions(_initialDim);
-	_mAdvisor = new TheoreticalAdvisorNew(_numOfJoinWorkersTasks,
-		initialDims[0], initialDims[1], _conf);
+	if (MyUtilities.isCostBasedAdvisor(_conf))
+	    _mAdvisor = new CostBasedAdvisor(_numOfJoinWorkersTasks,
+		    initialDims[0], initialDims[1], _conf);
+	else
+	    _mAdvisor = new TheoreticalAdvisorNew(_numOfJoinWorkersTasks,
+		    initialDims[0], initialDims[1], _conf);
 
     }
 
@@ -536,6 +583,8 @@ public class ThetaReshufflerAdvisedEpochs extends BaseRichBolt {
 	if (_currentNumberOfAckedJoinWorkersTasks == _numOfJoinWorkersTasks) {
 	    _currentAdvisorState = state.NORMAL; // change state
 	    _currentNumberOfAckedJoinWorkersTasks = 0; // reset;
+	    _mAdvisor.updateMigrationEnded(System.currentTimeMillis()
+		    - _migrationStartMillis);
 	    LOG.info(_componentName
 		    + " :synchronizer emitting Datamigration ended"
 		    + " with epoch number:" + _currentEpochNumber + " ("
@@ -560,7 +609,7 @@ public class ThetaReshufflerAdvisedEpochs extends BaseRichBolt {
 			+ ")");
 		MyUtilities.processFinalAck(_numRemainingParentsForLastAck,
 			StormComponent.INTERMEDIATE, _conf, stormTupleRcv,
-			_collector, null);
+			_collector);
 	    }
 	}
     }
@@ -579,7 +628,7 @@ public class ThetaReshufflerAdvisedEpochs extends BaseRichBolt {
 		_isFinalAckSent = true;
 		MyUtilities.processFinalAck(_numRemainingParentsForLastAck,
 			StormComponent.INTERMEDIATE, _conf, stormTupleRcv,
-			_collector, null);
+			_collector);
 		if (_taskIDLogicalIndex == 0)
 		    LOG.info(_componentName
 			    + ":"
@@ -699,6 +748,8 @@ public class ThetaReshufflerAdvisedEpochs extends BaseRichBolt {
 	    }
 	    // ///***********//////////
 	    _mAdvisor.updateTuples(deltaRel1, deltaRel2);
+	    _mAdvisor.updateTupleBytes(MyUtilities
+		    .getUtf8Length(inputTupleString));
 	}
 
 	final int[] taskIndices = Advisor.getAssignedReducers(isFirstRel,
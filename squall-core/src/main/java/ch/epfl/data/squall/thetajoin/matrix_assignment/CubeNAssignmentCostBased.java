@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.thetajoin.matrix_assignment;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Cost-based hypercube partitioning: chooses the number of regions rd[i] of
+ * each dimension which minimizes the load of a reducer,
+ * costs[0] * sizes[0] / rd[0] + ... + costs[k-1] * sizes[k-1] / rd[k-1],
+ * such that rd[0] * ... * rd[k-1] <= r. costs[i] is the cost of a tuple of
+ * relation i (e.g. its size in bytes), 1 by default. A tuple is replicated to
+ * r / rd[i] reducers, so this is also the total replication cost divided by
+ * the number of reducers. Among assignments of equal load, the one with the
+ * fewest reducers replicates the least.
+ *
+ * The tuples are spread over the regions of their dimension at random, not
+ * by key, so that key skew does not unbalance the reducers.
+ *
+ * The optimum is found by branch and bound over the dimensions, from the most
+ * costly relation on. The bound is the fractional relaxation of the remaining
+ * dimensions, in which rd[i] is proportional to costs[i] * sizes[i] (clamped to
+ * [1, sizes[i]]), and the first solution is that relaxation rounded. This
+ * takes milliseconds for 10 relations and thousands of reducers.
+ *
+ * @param <KeyType>
+ */
+public class CubeNAssignmentCostBased<KeyType> implements Serializable, HyperCubeAssignment<KeyType> {
+
+	private static final long serialVersionUID = 1L;
+	private static Logger LOG = Logger.getLogger(CubeNAssignmentCostBased.class);
+
+	// iterations of the bisection of the relaxation
+	private static final int BISECTION_STEPS = 60;
+
+	private Random rand;
+	private int[] _rd;
+	private final int _r;
+	private long[] sizes;
+
+	// the search state, not needed after compute
+	private transient double[] _weights; // costs[i] * sizes[i], in _order
+	private transient long[] _maxRd; // sizes[i], in _order
+	private transient Integer[] _order;
+	private transient int[] _current;
+	private transient double _bestLoad;
+	private transient int _bestProduct;
+
+	public CubeNAssignmentCostBased(long[] sizes, int r, long randomSeed) {
+		this(sizes, null, r, randomSeed);
+	}
+
+	/**
+	 * costs is null if all the tuples cost the same
+	 */
+	public CubeNAssignmentCostBased(long[] sizes, double[] costs, int r, long randomSeed) {
+		rand = randomSeed == -1 ? new Random() : new Random(randomSeed);
+
+		this.sizes = sizes;
+		this._rd = new int[sizes.length];
+		this._r = r;
+		compute(costs);
+	}
+
+	private void compute(double[] costs) {
+		final int k = sizes.length;
+		if (costs != null && costs.length != k)
+			throw new RuntimeException("There are " + costs.length + " costs for " + k + " relations!");
+
+		// the most costly relations are decided first
+		_order = new Integer[k];
+		for (int i = 0; i < k; i++)
+			_order[i] = i;
+		final double[] weights = new double[k];
+		for (int i = 0; i < k; i++)
+			weights[i] = (costs == null ? 1 : costs[i]) * Math.max(1, sizes[i]);
+		Arrays.sort(_order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second) {
+				return Double.compare(weights[second], weights[first]);
+			}
+		});
+		_weights = new double[k];
+		_maxRd = new long[k];
+		for (int i = 0; i < k; i++) {
+			_weights[i] = weights[_order[i]];
+			_maxRd[i] = Math.max(1, sizes[_order[i]]);
+		}
+
+		// the rounded relaxation is the first solution
+		final int[] rounded = roundRelaxation();
+		_bestLoad = load(rounded);
+		_bestProduct = Utilities.multiply(rounded);
+		_current = new int[k];
+		final int[] best = rounded.clone();
+		search(0, _r, 0, best);
+
+		for (int i = 0; i < k; i++)
+			_rd[_order[i]] = best[i];
+		LOG.info("Cost-based hypercube assignment " + getMappingDimensions() + " for sizes "
+				+ Arrays.toString(sizes) + " and " + _r + " reducers, load " + _bestLoad);
+	}
+
+	private double load(int[] rd) {
+		double load = 0;
+		for (int i = 0; i < rd.length; i++)
+			load += _weights[i] / rd[i];
+		return load;
+	}
+
+	/*
+	 * The minimal load of the dimensions from on, in _order, with at most
+	 * budget regions, where the number of regions may be fractional. It is
+	 * reached at rd[i] = clamp(lambda * weights[i], 1, maxRd[i]), where lambda
+	 * makes the product of rd equal to budget.
+	 */
+	private double relaxedLoad(int from, double budget) {
+		final int k = _weights.length;
+		double logMax = 0;
+		for (int i = from; i < k; i++)
+			logMax += Math.log(_maxRd[i]);
+		final double logBudget = Math.log(budget);
+		if (logMax <= logBudget) {
+			double load = 0;
+			for (int i = from; i < k; i++)
+				load += _weights[i] / _maxRd[i];
+			return load;
+		}
+		// the product is not below budget, so this is a lower bound
+		final double logLambda = relaxedLogLambda(from, logBudget);
+		double load = 0;
+		for (int i = from; i < k; i++)
+			load += _weights[i] / Math.exp(relaxedLogRd(i, logLambda));
+		return load;
+	}
+
+	/*
+	 * Bisection for the smallest log(lambda) at which the product of the
+	 * relaxed rd of the dimensions from on is at least exp(logBudget)
+	 */
+	private double relaxedLogLambda(int from, double logBudget) {
+		final int k = _weights.length;
+		// the product is 1 at lo and the largest possible at hi
+		double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE;
+		for (int i = from; i < k; i++) {
+			lo = Math.min(lo, -Math.log(_weights[i]));
+			hi = Math.max(hi, Math.log(_maxRd[i] / _weights[i]));
+		}
+		for (int step = 0; step < BISECTION_STEPS; step++) {
+			final double mid = (lo + hi) / 2;
+			double logProduct = 0;
+			for (int i = from; i < k; i++)
+				logProduct += relaxedLogRd(i, mid);
+			if (logProduct < logBudget)
+				lo = mid;
+			else
+				hi = mid;
+		}
+		return hi;
+	}
+
+	private double relaxedLogRd(int i, double logLambda) {
+		return Math.min(Math.log(_maxRd[i]), Math.max(0, logLambda + Math.log(_weights[i])));
+	}
+
+	/*
+	 * The relaxation rounded down, and then increased where it saves the most
+	 * load as long as it fits in the reducers
+	 */
+	private int[] roundRelaxation() {
+		final int k = _weights.length;
+		final int[] rd = new int[k];
+		Arrays.fill(rd, 1);
+		double logMax = 0;
+		for (int i = 0; i < k; i++)
+			logMax += Math.log(_maxRd[i]);
+		if (logMax > Math.log(_r)) {
+			final double logLambda = relaxedLogLambda(0, Math.log(_r));
+			for (int i = 0; i < k; i++)
+				rd[i] = (int) Math.floor(Math.exp(relaxedLogRd(i, logLambda)));
+		} else
+			for (int i = 0; i < k; i++)
+				rd[i] = (int) _maxRd[i];
+		long product = 1;
+		for (int i = 0; i < k; i++)
+			product *= rd[i];
+		// the floors may exceed r by the rounding errors of the bisection
+		while (product > _r) {
+			final int largest = Utilities.indexOfMax(toDoubles(rd));
+			product = product / rd[largest] * (rd[largest] - 1);
+			rd[largest]--;
+		}
+		while (true) {
+			int next = -1;
+			double nextGain = 0;
+			for (int i = 0; i < k; i++) {
+				if (rd[i] >= _maxRd[i] || product / rd[i] * (rd[i] + 1) > _r)
+					continue;
+				final double gain = _weights[i] / rd[i] - _weights[i] / (rd[i] + 1);
+				if (gain > nextGain) {
+					next = i;
+					nextGain = gain;
+				}
+			}
+			if (next < 0)
+				break;
+			product = product / rd[next] * (rd[next] + 1);
+			rd[next]++;
+		}
+		return rd;
+	}
+
+	private static double[] toDoubles(int[] values) {
+		final double[] result = new double[values.length];
+		for (int i = 0; i < values.length; i++)
+			result[i] = values[i];
+		return result;
+	}
+
+	/*
+	 * Branch and bound over the dimensions from on, in _order, with at most
+	 * budget regions left
+	 */
+	private void search(int from, int budget, double load, int[] best) {
+		final int k = _weights.length;
+		if (from == k) {
+			final int product = Utilities.multiply(_current);
+			if (load < _bestLoad || (load == _bestLoad && product < _bestProduct)) {
+				_bestLoad = load;
+				_bestProduct = product;
+				Utilities.copy(_current, best);
+			}
+			return;
+		}
+		if (load + relaxedLoad(from, budget) >= _bestLoad)
+			return;
+		// for the same budget left, the largest rd is the best one, so only
+		// one rd per value of budget / rd is tried, largest first
+		int rd = (int) Math.min(budget, _maxRd[from]);
+		while (rd >= 1) {
+			final int left = budget / rd;
+			_current[from] = rd;
+			search(from + 1, left, load + _weights[from] / rd, best);
+			rd = budget / (left + 1);
+		}
+	}
+
+	private int mapRegionID(List<Integer> regionIndex) {
+		assert _rd.length == regionIndex.size();
+
+		int regionID = 0;
+		for (int i = regionIndex.size() - 1; i >= 0; i--) {
+			int dimAmount = regionIndex.get(i);
+			for (int dim = _rd.length - 1; dim > i; dim--) {
+				dimAmount *= _rd[dim];
+			}
+			regionID += dimAmount;
+		}
+
+		return regionID;
+	}
+
+	@Override
+	public List<Integer> getRegionIDs(Dimension dim) {
+		final List<Integer> regionIDs = new ArrayList<Integer>();
+
+		if (dim.val() >= 0 && dim.val() < sizes.length) {
+			final int randomIndex = rand.nextInt(_rd[dim.val()]);
+			CellIterator gen = new CellIterator(_rd, dim.val(), randomIndex);
+			while (gen.hasNext()) {
+				List<Integer> cellIndex = gen.next();
+				int regionID = mapRegionID(cellIndex);
+				regionIDs.add(regionID);
+			}
+			assert regionIDs.size() == Utilities.multiply(_rd) / _rd[dim.val()];
+		} else {
+			LOG.info("ERROR not a possible index assignment.");
+		}
+
+		return regionIDs;
+	}
+
+	@Override
+	public List<Integer> getRegionIDs(Dimension dim, KeyType key) {
+		throw new RuntimeException("This method is content-insenstive");
+	}
+
+	@Override
+	public String toString() {
+		return getMappingDimensions();
+	}
+
+	@Override
+	public String getMappingDimensions() {
+		StringBuilder sb = new StringBuilder();
+		String prefix = "";
+		for (int r : _rd) {
+			sb.append(prefix);
+			prefix = "-";
+			sb.append(r);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public int getNumberOfRegions(Dimension dim) {
+		if (dim.val() >= 0 && dim.val() < _rd.length) {
+			return _rd[dim.val()];
+		} else {
+			throw new RuntimeException("Dimension is invalid");
+		}
+	}
+
+	/**
+	 * The actual number of regions
+	 */
+	public int getNumberOfRegions() {
+		return Utilities.multiply(_rd);
+	}
+}
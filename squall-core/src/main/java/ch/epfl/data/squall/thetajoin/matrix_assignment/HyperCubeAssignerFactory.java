@@ -24,7 +24,9 @@ import java.util.Comparator;
 
 
 /**
- * Factory for hypercube partitioning. The default partitioning strategy is 
+ * Factory for hypercube partitioning. The default partitioning strategy is
+ * EQUAL_SIZE. COST_BASED also takes the per-tuple cost of each relation; the
+ * components use it if DIP_HYPERCUBE_STRATEGY says so.
  * 
  * @author Tam
  * @param <KeyType>
@@ -32,7 +34,7 @@ import java.util.Comparator;
 public class HyperCubeAssignerFactory<KeyType> {
 
 	public enum PartitionStrategy {
-		BRUTE_FORCE, EQUAL_SIZE,
+		BRUTE_FORCE, EQUAL_SIZE, COST_BASED,
 	}
 
 	private long randomSeed = -1;
@@ -40,11 +42,21 @@ public class HyperCubeAssignerFactory<KeyType> {
 	private PartitionStrategy strategy = PartitionStrategy.EQUAL_SIZE;
 
 	public HyperCubeAssignment<KeyType> getAssigner(int r, long... relationSizes) {
+		return getAssigner(r, null, relationSizes);
+	}
+
+	/**
+	 * costs[i] is the cost of a tuple of relation i; null if all the tuples
+	 * cost the same. Only COST_BASED takes the costs.
+	 */
+	public HyperCubeAssignment<KeyType> getAssigner(int r, double[] costs, long... relationSizes) {
 		switch (strategy) {
 		case BRUTE_FORCE:
 			return new CubeNAssignmentBruteForce<KeyType>(relationSizes, r, randomSeed, comparator);
 		case EQUAL_SIZE:
 			return new CubeNAssignmentEqui<KeyType>(relationSizes, r, randomSeed, comparator);
+		case COST_BASED:
+			return new CubeNAssignmentCostBased<KeyType>(relationSizes, costs, r, randomSeed);
 		default:
 			throw new AssertionError("Invalid partition strategy");
 		}
@@ -21,84 +21,204 @@ package ch.epfl.data.squall.types;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.Random;
+import java.util.TimeZone;
 
 import org.apache.log4j.Logger;
 
 import ch.epfl.data.squall.utilities.MyUtilities;
 
+/*
+ * Dates are days: a Date is the midnight of its day in the default time zone.
+ * Internally, days are handled as epoch days (days since 1970-01-01, in the
+ * proleptic Gregorian calendar), which are parsed and formatted by hand; the
+ * static methods are thread-safe, unlike SimpleDateFormat.
+ */
 public class DateType implements Type<Date> {
     private static final long serialVersionUID = 1L;
     private static Logger LOG = Logger.getLogger(DateType.class);
 
     private static final String STRING_DATE_FORMAT = "yyyy-MM-dd";
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    private static final TimeZone ZONE = TimeZone.getDefault();
+
+    // only for the strings which are not yyyy-MM-dd, as e.g. 1995-3-5
+    private static final ThreadLocal<SimpleDateFormat> LENIENT_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+	@Override
+	protected SimpleDateFormat initialValue() {
+	    return new SimpleDateFormat(STRING_DATE_FORMAT);
+	}
+    };
 
     private static DateIntegerType _dt = new DateIntegerType();
 
     private final Random _rnd = new Random();
 
-    // this cannot be static, because a static field with a constructor cannot
-    // be serialized
-    private final SimpleDateFormat string_format = new SimpleDateFormat(
-	    STRING_DATE_FORMAT);
+    /*
+     * The epoch day of a proleptic Gregorian date, month and day from 1
+     */
+    public static int epochDay(int year, int month, int day) {
+	final int y = month <= 2 ? year - 1 : year;
+	final int era = (y >= 0 ? y : y - 399) / 400;
+	final int yoe = y - era * 400;
+	final int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day
+		- 1;
+	final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+	return era * 146097 + doe - 719468;
+    }
 
-    private static final String INT_DATE_FORMAT = "yyyyMMdd";
+    /*
+     * The yyyy-MM-dd of an epoch day, for years 0 to 9999
+     */
+    public static String formatEpochDay(int epochDay) {
+	final int yyyymmdd = toYyyymmdd(epochDay);
+	final int y = yyyymmdd / 10000;
+	final int m = (yyyymmdd / 100) % 100;
+	final int d = yyyymmdd % 100;
+	final char[] buf = new char[10];
+	buf[0] = (char) ('0' + y / 1000);
+	buf[1] = (char) ('0' + (y / 100) % 10);
+	buf[2] = (char) ('0' + (y / 10) % 10);
+	buf[3] = (char) ('0' + y % 10);
+	buf[4] = '-';
+	buf[5] = (char) ('0' + m / 10);
+	buf[6] = (char) ('0' + m % 10);
+	buf[7] = '-';
+	buf[8] = (char) ('0' + d / 10);
+	buf[9] = (char) ('0' + d % 10);
+	return new String(buf);
+    }
+
+    /*
+     * The midnight of the epoch day in the default time zone, resolved as
+     * the lenient Calendar does: if the offset changes at midnight, the
+     * later of two midnights, or, if midnight is skipped, midnight in the
+     * offset before the change
+     */
+    public static Date fromEpochDay(int epochDay) {
+	final long utcMidnight = epochDay * MILLIS_PER_DAY;
+	final long before = utcMidnight
+		- ZONE.getOffset(utcMidnight - MILLIS_PER_DAY);
+	final long after = utcMidnight
+		- ZONE.getOffset(utcMidnight + MILLIS_PER_DAY);
+	final long latest = Math.max(before, after);
+	if (latest + ZONE.getOffset(latest) == utcMidnight)
+	    return new Date(latest);
+	final long earliest = Math.min(before, after);
+	if (earliest + ZONE.getOffset(earliest) == utcMidnight)
+	    return new Date(earliest);
+	return new Date(before);
+    }
+
+    /*
+     * Returns Integer.MIN_VALUE if str is not a valid yyyy-MM-dd date
+     */
+    public static int parseCanonicalEpochDay(String str) {
+	if (str.length() != 10 || str.charAt(4) != '-' || str.charAt(7) != '-')
+	    return Integer.MIN_VALUE;
+	int y = 0, m = 0, d = 0;
+	for (int i = 0; i < 10; i++) {
+	    if (i == 4 || i == 7)
+		continue;
+	    final char c = str.charAt(i);
+	    if (c < '0' || c > '9')
+		return Integer.MIN_VALUE;
+	    if (i < 4)
+		y = y * 10 + (c - '0');
+	    else if (i < 7)
+		m = m * 10 + (c - '0');
+	    else
+		d = d * 10 + (c - '0');
+	}
+	if (m < 1 || m > 12 || d < 1 || d > 31)
+	    return Integer.MIN_VALUE;
+	final int epochDay = epochDay(y, m, d);
+	// rejects e.g. 2015-02-30
+	if (toYyyymmdd(epochDay) != y * 10000 + m * 100 + d)
+	    return Integer.MIN_VALUE;
+	return epochDay;
+    }
 
-    // this cannot be static, because a static field with a constructor cannot
-    // be serialized
-    private final SimpleDateFormat int_format = new SimpleDateFormat(
-	    INT_DATE_FORMAT);
+    public static Date parseDate(String str) {
+	return fromEpochDay(parseEpochDay(str));
+    }
+
+    /*
+     * yyyy-MM-dd is parsed by hand; other strings go through the (lenient)
+     * SimpleDateFormat, as they always did
+     */
+    public static int parseEpochDay(String str) {
+	final int epochDay = parseCanonicalEpochDay(str);
+	if (epochDay != Integer.MIN_VALUE)
+	    return epochDay;
+	try {
+	    return toEpochDay(LENIENT_FORMAT.get().parse(str));
+	} catch (final ParseException pe) {
+	    final String error = MyUtilities.getStackTrace(pe);
+	    LOG.info(error);
+	    throw new RuntimeException("Invalid Date Format for " + str);
+	}
+    }
+
+    public static int toEpochDay(Date date) {
+	return toEpochDay(date.getTime());
+    }
+
+    private static int toEpochDay(long millis) {
+	final long local = millis + ZONE.getOffset(millis);
+	return (int) (local >= 0 ? local / MILLIS_PER_DAY
+		: (local - MILLIS_PER_DAY + 1) / MILLIS_PER_DAY);
+    }
+
+    /*
+     * The epoch day as the integer yyyyMMdd
+     */
+    public static int toYyyymmdd(int epochDay) {
+	final int z = epochDay + 719468;
+	final int era = (z >= 0 ? z : z - 146096) / 146097;
+	final int doe = z - era * 146097;
+	final int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+	final int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+	final int mp = (5 * doy + 2) / 153;
+	final int d = doy - (153 * mp + 2) / 5 + 1;
+	final int m = mp + (mp < 10 ? 3 : -9);
+	final int y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+	return y * 10000 + m * 100 + d;
+    }
+
+    public static int yearOfEpochDay(int epochDay) {
+	return toYyyymmdd(epochDay) / 10000;
+    }
 
     public Date addDays(Date date, int days) {
-	final Calendar c = Calendar.getInstance();
-	final int unit = Calendar.DAY_OF_MONTH;
-	c.setTime(date);
-	c.add(unit, days);
-	return c.getTime();
+	return fromEpochDay(toEpochDay(date) + days);
     }
 
     public Integer addDays(Integer dateLong, int days) {
-	Date base = fromInteger(dateLong);
-	Date result = addDays(base, days);
-	return toInteger(result);
+	final int epochDay = epochDay(dateLong / 10000, (dateLong / 100) % 100,
+		dateLong % 100);
+	return toYyyymmdd(epochDay + days);
     }
 
     public Date fromInteger(Integer dateInt) {
-	return fromString(String.valueOf(dateInt), int_format);
+	return fromLong(dateInt.longValue());
     }
 
     public Date fromLong(Long dateLong) {
-	return fromString(String.valueOf(dateLong), int_format);
+	final int yyyymmdd = dateLong.intValue();
+	return fromEpochDay(epochDay(yyyymmdd / 10000, (yyyymmdd / 100) % 100,
+		yyyymmdd % 100));
     }
 
     @Override
     public Date fromString(String str) {
-	return fromString(str, string_format);
-    }
-
-    private Date fromString(String str, SimpleDateFormat format) {
-	Date date = null;
-	try {
-	    date = format.parse(str);
-	} catch (final ParseException pe) {
-	    final String error = MyUtilities.getStackTrace(pe);
-	    LOG.info(error);
-	    throw new RuntimeException("Invalid Date Format for " + str);
-	}
-	return date;
+	return parseDate(str);
     }
 
     @Override
     public double getDistance(Date bigger, Date smaller) {
-	/*
-	 * final DateTime smallerDT = new DateTime(smaller); final DateTime
-	 * biggerDT = new DateTime(bigger); return Days.daysBetween(smallerDT,
-	 * biggerDT).getDays();
-	 */
-	long diff = bigger.getTime() - smaller.getTime();
-	return (diff / (24 * 1000 * 60 * 60));
+	return toEpochDay(bigger) - toEpochDay(smaller);
     }
 
     @Override
@@ -107,11 +227,11 @@ public class DateType implements Type<Date> {
     }
 
     public Integer toInteger(Date obj) {
-	return Integer.valueOf(int_format.format(obj));
+	return toYyyymmdd(toEpochDay(obj));
     }
 
     public Long toLong(Date obj) {
-	return Long.valueOf(int_format.format(obj));
+	return (long) toYyyymmdd(toEpochDay(obj));
     }
 
     // for printing(debugging) purposes
@@ -122,7 +242,7 @@ public class DateType implements Type<Date> {
 
     @Override
     public String toString(Date obj) {
-	return string_format.format(obj);
+	return formatEpochDay(toEpochDay(obj));
     }
 
     @Override
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.utilities;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.data.squall.types.DateType;
+
+/**
+ * Binary row format for tuples. A row is the number of fields followed by one
+ * tagged field each: ints, longs, doubles and dates are fixed-width, anything
+ * else is a length-prefixed UTF-8 string.
+ *
+ * The type of a field is detected from its content, as the operators do not
+ * carry a schema. A field is stored in a fixed-width form only if decoding it
+ * gives back exactly the same String, so encode/decode is lossless for every
+ * tuple. This pays off for the stored tuples, whose fields are read in place
+ * many times (see BinaryTupleView); the rows which are decoded right away,
+ * such as the ones sent between components, use encodeStrings, which neither
+ * parses nor formats numbers.
+ */
+public class BinaryTupleFormat {
+
+    public static final byte TAG_NULL = 0;
+    public static final byte TAG_INT = 1;
+    public static final byte TAG_LONG = 2;
+    public static final byte TAG_DOUBLE = 3;
+    // days since 1970-01-01, printed as yyyy-MM-dd
+    public static final byte TAG_DATE = 4;
+    public static final byte TAG_STRING = 5;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static List<String> decode(byte[] row) {
+	return decode(row, 0, row.length);
+    }
+
+    public static List<String> decode(byte[] row, int offset, int length) {
+	final int[] pos = new int[] { offset };
+	final int size = readVarInt(row, pos);
+	final List<String> tuple = new ArrayList<String>(size);
+	for (int i = 0; i < size; i++)
+	    tuple.add(readField(row, pos));
+	return tuple;
+    }
+
+    /*
+     * Returns the index-th field without decoding the others
+     */
+    public static String decodeField(byte[] row, int index) {
+	final int[] pos = new int[] { 0 };
+	final int size = readVarInt(row, pos);
+	if (index >= size)
+	    throw new IndexOutOfBoundsException("Field " + index
+		    + " out of a row of size " + size);
+	for (int i = 0; i < index; i++)
+	    skipField(row, pos);
+	return readField(row, pos);
+    }
+
+    public static byte[] encode(List<String> tuple) {
+	final Writer writer = new Writer(16 * (tuple.size() + 1));
+	writer.writeVarInt(tuple.size());
+	for (int i = 0; i < tuple.size(); i++)
+	    writer.writeField(tuple.get(i));
+	return writer.toByteArray();
+    }
+
+    /*
+     * Only length-prefixed strings: decode gives back the same tuple
+     */
+    public static byte[] encodeStrings(List<String> tuple) {
+	final Writer writer = new Writer(16 * (tuple.size() + 1));
+	writer.writeVarInt(tuple.size());
+	for (int i = 0; i < tuple.size(); i++)
+	    writer.writeStringField(tuple.get(i));
+	return writer.toByteArray();
+    }
+
+    public static String daysToDate(int days) {
+	return DateType.formatEpochDay(days);
+    }
+
+    /*
+     * Cheap check before Double.parseDouble: a signed number with a fraction
+     * or an exponent, e.g. 1.5 or 1.0E10 (but not NaN, Infinity or 1.5d)
+     */
+    private static boolean isDoubleCandidate(String str) {
+	final int length = str.length();
+	if (length < 3)
+	    return false;
+	final char first = str.charAt(0);
+	if (first != '-' && (first < '0' || first > '9'))
+	    return false;
+	final char last = str.charAt(length - 1);
+	if (last < '0' || last > '9')
+	    return false;
+	return str.indexOf('.') >= 0 || str.indexOf('E') >= 0;
+    }
+
+    /*
+     * Returns Long.MIN_VALUE if str is not a canonical decimal integer (an
+     * optional '-', no leading zeros, at most 18 digits so it cannot overflow)
+     */
+    private static long parseCanonicalLong(String str) {
+	final int length = str.length();
+	if (length == 0)
+	    return Long.MIN_VALUE;
+	final boolean negative = str.charAt(0) == '-';
+	final int start = negative ? 1 : 0;
+	final int digits = length - start;
+	if (digits == 0 || digits > 18)
+	    return Long.MIN_VALUE;
+	if (str.charAt(start) == '0' && (digits > 1 || negative))
+	    return Long.MIN_VALUE;
+	long result = 0;
+	for (int i = start; i < length; i++) {
+	    final char c = str.charAt(i);
+	    if (c < '0' || c > '9')
+		return Long.MIN_VALUE;
+	    result = result * 10 + (c - '0');
+	}
+	return negative ? -result : result;
+    }
+
+    private static String readField(byte[] row, int[] pos) {
+	final byte tag = row[pos[0]++];
+	switch (tag) {
+	case TAG_NULL:
+	    return null;
+	case TAG_INT:
+	    return Integer.toString(readInt(row, pos));
+	case TAG_LONG:
+	    return Long.toString(readLong(row, pos));
+	case TAG_DOUBLE:
+	    return Double.toString(Double.longBitsToDouble(readLong(row, pos)));
+	case TAG_DATE:
+	    return daysToDate(readInt(row, pos));
+	case TAG_STRING:
+	    final int length = readVarInt(row, pos);
+	    final String result = new String(row, pos[0], length, UTF8);
+	    pos[0] += length;
+	    return result;
+	default:
+	    throw new RuntimeException("Unknown binary tuple tag " + tag);
+	}
+    }
+
+    private static int readInt(byte[] row, int[] pos) {
+	final int p = pos[0];
+	pos[0] = p + 4;
+	return ((row[p] & 0xFF) << 24) | ((row[p + 1] & 0xFF) << 16)
+		| ((row[p + 2] & 0xFF) << 8) | (row[p + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] row, int[] pos) {
+	final long high = readInt(row, pos) & 0xFFFFFFFFL;
+	final long low = readInt(row, pos) & 0xFFFFFFFFL;
+	return (high << 32) | low;
+    }
+
+    private static int readVarInt(byte[] row, int[] pos) {
+	int result = 0;
+	int shift = 0;
+	byte b;
+	do {
+	    b = row[pos[0]++];
+	    result |= (b & 0x7F) << shift;
+	    shift += 7;
+	} while ((b & 0x80) != 0);
+	return result;
+    }
+
+    private static void skipField(byte[] row, int[] pos) {
+	final byte tag = row[pos[0]++];
+	switch (tag) {
+	case TAG_NULL:
+	    break;
+	case TAG_INT:
+	case TAG_DATE:
+	    pos[0] += 4;
+	    break;
+	case TAG_LONG:
+	case TAG_DOUBLE:
+	    pos[0] += 8;
+	    break;
+	case TAG_STRING:
+	    final int length = readVarInt(row, pos);
+	    pos[0] += length;
+	    break;
+	default:
+	    throw new RuntimeException("Unknown binary tuple tag " + tag);
+	}
+    }
+
+    private static class Writer {
+	private byte[] _buffer;
+	private int _position;
+
+	public Writer(int initialCapacity) {
+	    _buffer = new byte[initialCapacity];
+	}
+
+	private void ensureCapacity(int additional) {
+	    if (_position + additional > _buffer.length) {
+		int newLength = _buffer.length * 2;
+		if (newLength < _position + additional)
+		    newLength = _position + additional;
+		final byte[] newBuffer = new byte[newLength];
+		System.arraycopy(_buffer, 0, newBuffer, 0, _position);
+		_buffer = newBuffer;
+	    }
+	}
+
+	public byte[] toByteArray() {
+	    final byte[] result = new byte[_position];
+	    System.arraycopy(_buffer, 0, result, 0, _position);
+	    return result;
+	}
+
+	private void writeDouble(String value) {
+	    final double d;
+	    try {
+		d = Double.parseDouble(value);
+	    } catch (final NumberFormatException e) {
+		writeString(value);
+		return;
+	    }
+	    if (!Double.toString(d).equals(value)) {
+		writeString(value);
+		return;
+	    }
+	    ensureCapacity(9);
+	    _buffer[_position++] = TAG_DOUBLE;
+	    writeRawLong(Double.doubleToRawLongBits(d));
+	}
+
+	public void writeField(String value) {
+	    if (value == null) {
+		ensureCapacity(1);
+		_buffer[_position++] = TAG_NULL;
+		return;
+	    }
+	    final long number = parseCanonicalLong(value);
+	    if (number != Long.MIN_VALUE) {
+		if (number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+		    ensureCapacity(5);
+		    _buffer[_position++] = TAG_INT;
+		    writeRawInt((int) number);
+		} else {
+		    ensureCapacity(9);
+		    _buffer[_position++] = TAG_LONG;
+		    writeRawLong(number);
+		}
+		return;
+	    }
+	    final int days = DateType.parseCanonicalEpochDay(value);
+	    if (days != Integer.MIN_VALUE) {
+		ensureCapacity(5);
+		_buffer[_position++] = TAG_DATE;
+		writeRawInt(days);
+		return;
+	    }
+	    if (isDoubleCandidate(value))
+		writeDouble(value);
+	    else
+		writeString(value);
+	}
+
+	private void writeRawInt(int value) {
+	    _buffer[_position++] = (byte) (value >>> 24);
+	    _buffer[_position++] = (byte) (value >>> 16);
+	    _buffer[_position++] = (byte) (value >>> 8);
+	    _buffer[_position++] = (byte) value;
+	}
+
+	private void writeRawLong(long value) {
+	    writeRawInt((int) (value >>> 32));
+	    writeRawInt((int) value);
+	}
+
+	public void writeStringField(String value) {
+	    if (value == null) {
+		ensureCapacity(1);
+		_buffer[_position++] = TAG_NULL;
+	    } else
+		writeString(value);
+	}
+
+	private void writeString(String value) {
+	    final byte[] bytes = value.getBytes(UTF8);
+	    ensureCapacity(1 + 5 + bytes.length);
+	    _buffer[_position++] = TAG_STRING;
+	    writeVarInt(bytes.length);
+	    System.arraycopy(bytes, 0, _buffer, _position, bytes.length);
+	    _position += bytes.length;
+	}
+
+	public void writeVarInt(int value) {
+	    ensureCapacity(5);
+	    while ((value & ~0x7F) != 0) {
+		_buffer[_position++] = (byte) ((value & 0x7F) | 0x80);
+		value >>>= 7;
+	    }
+	    _buffer[_position++] = (byte) value;
+	}
+    }
+}
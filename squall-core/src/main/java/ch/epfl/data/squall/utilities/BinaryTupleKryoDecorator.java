@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import backtype.storm.serialization.IKryoDecorator;
+
+import com.esotericsoftware.kryo.Kryo;
+
+/**
+ * Sends the tuples in the BinaryTupleFormat whatever their List class: the
+ * operators emit ArrayLists, but also Arrays.asList, unmodifiable lists and
+ * lists converted from Scala. The common classes are registered with the
+ * BinaryTupleSerializer (Storm requires registrations in local mode), and any
+ * other List falls back to it as Kryo's default serializer.
+ *
+ * Registered by StormWrapper when DIP_BINARY_TUPLES is set.
+ */
+public class BinaryTupleKryoDecorator implements IKryoDecorator {
+
+    private static final String[] SCALA_LISTS = {
+	    "scala.collection.convert.Wrappers$SeqWrapper",
+	    "scala.collection.convert.Wrappers$MutableSeqWrapper",
+	    "scala.collection.convert.Wrappers$MutableBufferWrapper" };
+
+    @Override
+    public void decorate(Kryo kryo) {
+	final BinaryTupleSerializer serializer = new BinaryTupleSerializer();
+	kryo.addDefaultSerializer(List.class, serializer);
+	final List<Class> listClasses = new ArrayList<Class>();
+	listClasses.add(ArrayList.class);
+	listClasses.add(LinkedList.class);
+	listClasses.add(Arrays.asList().getClass());
+	listClasses.add(new ArrayList<String>().subList(0, 0).getClass());
+	listClasses.add(Collections.emptyList().getClass());
+	listClasses.add(Collections.singletonList(null).getClass());
+	listClasses.add(Collections.unmodifiableList(new ArrayList<String>())
+		.getClass());
+	listClasses.add(Collections.unmodifiableList(new LinkedList<String>())
+		.getClass());
+	for (final String className : SCALA_LISTS)
+	    try {
+		listClasses.add(Class.forName(className));
+	    } catch (final ClassNotFoundException e) {
+		throw new RuntimeException("Scala list class " + className
+			+ " not found!", e);
+	    }
+	for (final Class listClass : listClasses)
+	    kryo.register(listClass, serializer);
+    }
+}
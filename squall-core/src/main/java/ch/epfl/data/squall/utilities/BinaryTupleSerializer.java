@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Kryo serializer for the Lists Squall sends between components. Lists made
+ * of Strings only (that is, tuples) go as length-prefixed BinaryTupleFormat
+ * strings, all the other lists are written element by element as Kryo would
+ * do. Whatever the List class, it is read back as an ArrayList.
+ *
+ * Registered by BinaryTupleKryoDecorator when DIP_BINARY_TUPLES is set.
+ */
+public class BinaryTupleSerializer extends Serializer<List> {
+    private static final byte BINARY_TUPLE = 0;
+    private static final byte GENERIC_LIST = 1;
+
+    private static boolean isTuple(List list) {
+	for (int i = 0; i < list.size(); i++) {
+	    final Object field = list.get(i);
+	    if (field != null && !(field instanceof String))
+		return false;
+	}
+	return true;
+    }
+
+    @Override
+    public List read(Kryo kryo, Input input, Class<List> type) {
+	final byte kind = input.readByte();
+	if (kind == BINARY_TUPLE) {
+	    final int length = input.readInt(true);
+	    final byte[] row = input.readBytes(length);
+	    return (ArrayList) BinaryTupleFormat.decode(row);
+	} else {
+	    final int size = input.readInt(true);
+	    final ArrayList result = new ArrayList(size);
+	    kryo.reference(result);
+	    for (int i = 0; i < size; i++)
+		result.add(kryo.readClassAndObject(input));
+	    return result;
+	}
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, List list) {
+	if (isTuple(list)) {
+	    final byte[] row = BinaryTupleFormat.encodeStrings(list);
+	    output.writeByte(BINARY_TUPLE);
+	    output.writeInt(row.length, true);
+	    output.writeBytes(row);
+	} else {
+	    output.writeByte(GENERIC_LIST);
+	    output.writeInt(list.size(), true);
+	    for (int i = 0; i < list.size(); i++)
+		kryo.writeClassAndObject(output, list.get(i));
+	}
+    }
+}
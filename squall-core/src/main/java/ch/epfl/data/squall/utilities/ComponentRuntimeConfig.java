@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.epfl.data.squall.utilities;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import ch.epfl.data.squall.storm_components.StormComponent;
+import ch.epfl.data.squall.window_semantics.WindowSemanticsManager;
+
+/**
+ * Typed snapshot of the configuration which is read on the per-tuple paths.
+ * It is built once, in prepare/open of a component or in prepare of a
+ * grouping, so that the mode checks are final field reads instead of HashMap
+ * lookups and String parsing in SystemParameters.
+ *
+ * The window semantics mode is not part of the snapshot: it is a static flag
+ * (WindowSemanticsManager._IS_WINDOW_SEMANTICS) which may be set after the
+ * snapshot is taken, so it is still read as it is.
+ */
+public final class ComponentRuntimeConfig implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean _isAckEveryTuple;
+    private final boolean _isManualBatching;
+    private final boolean _isCustomTimestamp;
+    // STORE_TIMESTAMP on the last component in CUSTOM_TIMESTAMP mode
+    private final boolean _isStoreCustomTimestamp;
+    private final boolean _isPrintLatency;
+    private final boolean _isBatchExecution;
+    private final int _batchExecutionSize;
+
+    // only for the components which print latency
+    private final int _freqTupleLogCompute;
+    private final int _freqTupleLogWrite;
+    private final int _initIgnoredTuples;
+
+    private final String _splitDelimiter;
+    private final String _addDelimiter;
+
+    /*
+     * For code which does not know its position in the hierarchy, e.g. a
+     * grouping or an operator
+     */
+    public ComponentRuntimeConfig(Map conf) {
+	this(conf, -1);
+    }
+
+    public ComponentRuntimeConfig(Map conf, int hierarchyPosition) {
+	_isAckEveryTuple = MyUtilities.isAckEveryTuple(conf);
+	_isManualBatching = MyUtilities.isManualBatchingMode(conf);
+	_isCustomTimestamp = MyUtilities.isCustomTimestampMode(conf);
+	final boolean isFinal = hierarchyPosition == StormComponent.FINAL_COMPONENT;
+	_isStoreCustomTimestamp = _isCustomTimestamp && isFinal
+		&& SystemParameters.isExisting(conf, "STORE_TIMESTAMP")
+		&& SystemParameters.getBoolean(conf, "STORE_TIMESTAMP");
+	_isPrintLatency = _isCustomTimestamp && isFinal;
+	_isBatchExecution = MyUtilities.isBatchExecutionMode(conf);
+	_batchExecutionSize = _isBatchExecution ? MyUtilities
+		.getBatchExecutionSize(conf) : 0;
+
+	if (_isPrintLatency) {
+	    _freqTupleLogCompute = SystemParameters.getInt(conf,
+		    "FREQ_TUPLE_LOG_COMPUTE");
+	    _freqTupleLogWrite = SystemParameters.getInt(conf,
+		    "FREQ_TUPLE_LOG_WRITE");
+	    _initIgnoredTuples = SystemParameters.getInt(conf,
+		    "INIT_IGNORED_TUPLES");
+	} else {
+	    _freqTupleLogCompute = 0;
+	    _freqTupleLogWrite = 0;
+	    _initIgnoredTuples = 0;
+	}
+
+	_splitDelimiter = SystemParameters.getStringSilent(conf,
+		"DIP_GLOBAL_SPLIT_DELIMITER");
+	_addDelimiter = SystemParameters.getStringSilent(conf,
+		"DIP_GLOBAL_ADD_DELIMITER");
+    }
+
+    /*
+     * Also the column delimiter of the hashes
+     */
+    public String getAddDelimiter() {
+	return _addDelimiter;
+    }
+
+    public int getBatchExecutionSize() {
+	return _batchExecutionSize;
+    }
+
+    public int getFreqTupleLogCompute() {
+	return _freqTupleLogCompute;
+    }
+
+    public int getFreqTupleLogWrite() {
+	return _freqTupleLogWrite;
+    }
+
+    public int getInitIgnoredTuples() {
+	return _initIgnoredTuples;
+    }
+
+    public String getSplitDelimiter() {
+	return _splitDelimiter;
+    }
+
+    public boolean isAckEveryTuple() {
+	return _isAckEveryTuple;
+    }
+
+    public boolean isBatchExecution() {
+	return _isBatchExecution;
+    }
+
+    public boolean isCustomTimestamp() {
+	return _isCustomTimestamp;
+    }
+
+    public boolean isFinalAck(List<String> tuple) {
+	return !_isAckEveryTuple
+		&& tuple.get(0).equals(SystemParameters.LAST_ACK);
+    }
+
+    /*
+     * tupleBatch is a binary batch, or the LAST_ACK String
+     */
+    public boolean isFinalAckManualBatching(Object tupleBatch) {
+	return !_isAckEveryTuple && (tupleBatch instanceof String)
+		&& tupleBatch.equals(SystemParameters.LAST_ACK);
+    }
+
+    public boolean isManualBatching() {
+	return _isManualBatching;
+    }
+
+    public boolean isPrintLatency() {
+	return _isPrintLatency;
+    }
+
+    public boolean isStoreTimestamp() {
+	return WindowSemanticsManager._IS_WINDOW_SEMANTICS
+		|| _isStoreCustomTimestamp;
+    }
+
+    /*
+     * Whether the emitted tuples carry a TIMESTAMP field
+     */
+    public boolean isTimestampSent() {
+	return _isCustomTimestamp || WindowSemanticsManager._IS_WINDOW_SEMANTICS;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.epfl.data.squall.utilities;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Receiver side of the manual batching: iterates over the tuples of a batch
+ * built by ManualBatcher. The LAST_ACK is not batched, it is sent as a plain
+ * String and read as a batch of one tuple without a hash.
+ */
+public class ManualBatchReader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /*
+     * The hash of the first tuple, used for balanced routing
+     */
+    public static String getFirstHash(byte[] batch) {
+	final int[] pos = new int[] { ManualBatcher.HEADER_SIZE };
+	final int length = readVarInt(batch, pos);
+	return new String(batch, pos[0], length, UTF8);
+    }
+
+    /*
+     * The index of the target task, computed by the sender
+     */
+    public static int getTargetIndex(byte[] batch) {
+	return readRawInt(batch, 0);
+    }
+
+    private static int readRawInt(byte[] batch, int offset) {
+	return ((batch[offset] & 0xFF) << 24)
+		| ((batch[offset + 1] & 0xFF) << 16)
+		| ((batch[offset + 2] & 0xFF) << 8) | (batch[offset + 3] & 0xFF);
+    }
+
+    private static int readVarInt(byte[] batch, int[] pos) {
+	int result = 0;
+	int shift = 0;
+	byte b;
+	do {
+	    b = batch[pos[0]++];
+	    result |= (b & 0x7F) << shift;
+	    shift += 7;
+	} while ((b & 0x80) != 0);
+	return result;
+    }
+
+    private final byte[] _batch;
+    private final int _size;
+    private final int[] _pos = new int[] { ManualBatcher.HEADER_SIZE };
+
+    private String _hash;
+    private List<String> _tuple;
+
+    /*
+     * batch is the TUPLE field of a received storm tuple
+     */
+    public ManualBatchReader(Object batch) {
+	if (batch instanceof String) {
+	    _batch = null;
+	    _size = 1;
+	    _tuple = new ArrayList<String>(Arrays.asList((String) batch));
+	} else {
+	    _batch = (byte[]) batch;
+	    _size = readRawInt(_batch, 4);
+	}
+    }
+
+    /*
+     * null for the LAST_ACK
+     */
+    public String getHash() {
+	return _hash;
+    }
+
+    public List<String> getTuple() {
+	return _tuple;
+    }
+
+    /*
+     * Moves to the next tuple; has to be called before reading the first one
+     */
+    public void next() {
+	if (_batch == null)
+	    return;
+	final int hashLength = readVarInt(_batch, _pos);
+	_hash = new String(_batch, _pos[0], hashLength, UTF8);
+	_pos[0] += hashLength;
+	final int rowLength = readVarInt(_batch, _pos);
+	_tuple = BinaryTupleFormat.decode(_batch, _pos[0], rowLength);
+	_pos[0] += rowLength;
+    }
+
+    public int size() {
+	return _size;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.epfl.data.squall.utilities;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Sender side of the manual batching. Tuples are buffered per target task,
+ * and all the buffers are flushed once the number of buffered tuples reaches
+ * the batch size, or once the oldest buffered tuple has waited for the linger
+ * time.
+ *
+ * With a linger time, the batch size follows the observed output rate, so
+ * that a batch fills up in about one linger time: a fast stream gets big
+ * batches, a slow one gets small batches instead of holding its tuples. The
+ * batch size never exceeds the configured one.
+ *
+ * A batch is sent as a binary payload: the target index, the number of
+ * tuples, and then for each tuple its length-prefixed hash and its
+ * length-prefixed BinaryTupleFormat row (see ManualBatchReader).
+ */
+public class ManualBatcher {
+
+    /*
+     * Emits a flushed batch; timestamp is the minimum timestamp of its tuples
+     */
+    public interface Sender {
+	public void send(byte[] batch, long timestamp);
+    }
+
+    private static class TargetBuffer {
+	private byte[] _buffer = new byte[INITIAL_CAPACITY];
+	private int _position = HEADER_SIZE;
+	private int _numTuples;
+	private long _timestamp;
+
+	private void clear() {
+	    _position = HEADER_SIZE;
+	    _numTuples = 0;
+	}
+
+	private void ensureCapacity(int additional) {
+	    if (_position + additional > _buffer.length) {
+		int newLength = _buffer.length * 2;
+		if (newLength < _position + additional)
+		    newLength = _position + additional;
+		final byte[] newBuffer = new byte[newLength];
+		System.arraycopy(_buffer, 0, newBuffer, 0, _position);
+		_buffer = newBuffer;
+	    }
+	}
+
+	private byte[] toBatch(int targetIndex) {
+	    final byte[] batch = new byte[_position];
+	    System.arraycopy(_buffer, 0, batch, 0, _position);
+	    writeRawInt(batch, 0, targetIndex);
+	    writeRawInt(batch, 4, _numTuples);
+	    return batch;
+	}
+
+	private void write(String hash, byte[] row, long timestamp) {
+	    final byte[] hashBytes = hash.getBytes(UTF8);
+	    ensureCapacity(10 + hashBytes.length + row.length);
+	    writeBytes(hashBytes);
+	    writeBytes(row);
+	    // on a bolt, tuples might arrive out of order wrt timestamps
+	    if (_numTuples == 0 || timestamp < _timestamp)
+		_timestamp = timestamp;
+	    _numTuples++;
+	}
+
+	private void writeBytes(byte[] bytes) {
+	    int length = bytes.length;
+	    while ((length & ~0x7F) != 0) {
+		_buffer[_position++] = (byte) ((length & 0x7F) | 0x80);
+		length >>>= 7;
+	    }
+	    _buffer[_position++] = (byte) length;
+	    System.arraycopy(bytes, 0, _buffer, _position, bytes.length);
+	    _position += bytes.length;
+	}
+    }
+
+    // target index and number of tuples
+    public static final int HEADER_SIZE = 8;
+
+    private static final int INITIAL_CAPACITY = 256;
+    // weight of the newest rate sample
+    private static final double RATE_ALPHA = 0.3;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static void writeRawInt(byte[] batch, int offset, int value) {
+	batch[offset] = (byte) (value >>> 24);
+	batch[offset + 1] = (byte) (value >>> 16);
+	batch[offset + 2] = (byte) (value >>> 8);
+	batch[offset + 3] = (byte) value;
+    }
+
+    private final TargetBuffer[] _buffers;
+    private final int _maxBatchSize;
+    private final long _lingerMillis;
+
+    private int _batchSize;
+    private int _numBuffered;
+    // when the oldest buffered tuple was added
+    private long _firstAddMillis;
+
+    private long _lastFlushMillis;
+    // tuples per millisecond, -1 until the first flush
+    private double _rate = -1;
+
+    /*
+     * lingerMillis <= 0 means that only the batch size triggers a flush
+     */
+    public ManualBatcher(int numTargets, int maxBatchSize, long lingerMillis) {
+	if (maxBatchSize < 1)
+	    throw new RuntimeException("Batch size has to be positive, not "
+		    + maxBatchSize);
+	_buffers = new TargetBuffer[numTargets];
+	for (int i = 0; i < numTargets; i++)
+	    _buffers[i] = new TargetBuffer();
+	_maxBatchSize = maxBatchSize;
+	_lingerMillis = lingerMillis;
+	_batchSize = maxBatchSize;
+	_lastFlushMillis = System.currentTimeMillis();
+    }
+
+    /*
+     * Returns true if the buffers should be flushed
+     */
+    public boolean add(String hash, List<String> tuple, long timestamp) {
+	final int dstIndex = MyUtilities.chooseHashTargetIndex(hash,
+		_buffers.length);
+	_buffers[dstIndex].write(hash, BinaryTupleFormat.encodeStrings(tuple),
+		timestamp);
+	if (_numBuffered++ == 0 && _lingerMillis > 0)
+	    _firstAddMillis = System.currentTimeMillis();
+	return _numBuffered >= _batchSize || isLingerExpired();
+    }
+
+    public void flush(Sender sender) {
+	if (_numBuffered == 0)
+	    return;
+	if (_lingerMillis > 0)
+	    updateBatchSize();
+	for (int i = 0; i < _buffers.length; i++) {
+	    final TargetBuffer buffer = _buffers[i];
+	    if (buffer._numTuples > 0) {
+		// some buffers might be empty
+		final byte[] batch = buffer.toBatch(i);
+		final long timestamp = buffer._timestamp;
+		buffer.clear();
+		sender.send(batch, timestamp);
+	    }
+	}
+	_numBuffered = 0;
+    }
+
+    public int getBatchSize() {
+	return _batchSize;
+    }
+
+    public int getNumBuffered() {
+	return _numBuffered;
+    }
+
+    public long getLingerMillis() {
+	return _lingerMillis;
+    }
+
+    public boolean isLingerExpired() {
+	return _lingerMillis > 0
+		&& _numBuffered > 0
+		&& System.currentTimeMillis() - _firstAddMillis >= _lingerMillis;
+    }
+
+    /*
+     * A batch should fill up in about one linger time: batchSize = rate *
+     * linger
+     */
+    private void updateBatchSize() {
+	final long now = System.currentTimeMillis();
+	final long elapsed = Math.max(1, now - _lastFlushMillis);
+	_lastFlushMillis = now;
+	final double sample = (double) _numBuffered / elapsed;
+	_rate = _rate < 0 ? sample : RATE_ALPHA * sample + (1 - RATE_ALPHA)
+		* _rate;
+	final long size = Math.round(_rate * _lingerMillis);
+	_batchSize = (int) Math.max(1, Math.min(_maxBatchSize, size));
+    }
+}
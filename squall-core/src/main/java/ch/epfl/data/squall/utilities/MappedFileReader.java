@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.apache.log4j.Logger;
+
+/*
+ * CustomReader over a memory-mapped file. The file is mapped in windows of
+ * windowSize bytes, and lines are found by scanning the mapped bytes, so there
+ * is neither a heap copy of the file nor a reopen per buffer refill, as in
+ * SerializableFileInputStream. A (section, parts) pair splits the file exactly
+ * as SerializableFileInputStream does: a section reads the lines which start
+ * in it, and each section but the first one skips its first (partial) line.
+ *
+ * With prefetching, a daemon thread reads the lines ahead in chunks of
+ * LINES_PER_CHUNK, and at most PREFETCH_CHUNKS chunks wait to be consumed.
+ * Lines end with \n or \r\n.
+ */
+public class MappedFileReader implements Serializable, CustomReader {
+    private static final long serialVersionUID = 1L;
+
+    private static Logger LOG = Logger.getLogger(MappedFileReader.class);
+
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+    public static final int LINES_PER_CHUNK = 1024;
+    public static final int PREFETCH_CHUNKS = 16;
+
+    private static final String[] EOF_CHUNK = new String[0];
+
+    private final File _file;
+    private final int _windowSize;
+    private final long _fileSize;
+    // Position of the next line to read
+    private long _position;
+    // Lines which start after _sectionEnd belong to the next section
+    private final long _sectionEnd;
+
+    private transient RandomAccessFile _raf;
+    private transient FileChannel _channel;
+    private transient MappedByteBuffer _window;
+    private long _windowStart;
+    private byte[] _lineBytes = new byte[256];
+
+    // prefetching
+    private transient ArrayBlockingQueue<String[]> _chunks;
+    private transient Thread _prefetcher;
+    private transient volatile IOException _prefetchError;
+    private String[] _chunk;
+    private int _chunkPtr;
+    private boolean _eofReached = false;
+
+    public MappedFileReader(File file) throws IOException {
+	this(file, 0, 1, false);
+    }
+
+    public MappedFileReader(File file, int section, int parts, boolean prefetch)
+	    throws IOException {
+	this(file, DEFAULT_WINDOW_SIZE, section, parts, prefetch);
+    }
+
+    public MappedFileReader(File file, int windowSize, int section, int parts,
+	    boolean prefetch) throws IOException {
+	if (section >= parts)
+	    throw new RuntimeException("The section can take value from 0 to "
+		    + (parts - 1));
+	_file = file;
+	_windowSize = windowSize;
+	_raf = new RandomAccessFile(file, "r");
+	_channel = _raf.getChannel();
+	_fileSize = _channel.size();
+
+	final long sectionSize = _fileSize / parts;
+	_position = section * sectionSize;
+	if (section == parts - 1)
+	    _sectionEnd = _fileSize;
+	else
+	    _sectionEnd = _position + sectionSize;
+	// for all the sections except the first one, we discard the first line
+	if (section > 0 && _position < _fileSize)
+	    _position = findLineEnd(_position) + 1;
+
+	if (prefetch)
+	    startPrefetcher();
+    }
+
+    @Override
+    public void close() {
+	if (_prefetcher != null)
+	    _prefetcher.interrupt();
+	try {
+	    _channel.close();
+	    _raf.close();
+	} catch (final IOException e) {
+	    LOG.info(MyUtilities.getStackTrace(e));
+	}
+    }
+
+    /*
+     * Returns the position of the \n which ends the line at from, or
+     * _fileSize for the last line without \n. Afterwards, the whole line is
+     * in the mapped window.
+     */
+    private long findLineEnd(long from) throws IOException {
+	if (_window == null || from < _windowStart
+		|| from >= _windowStart + _window.limit())
+	    map(from);
+	long scanned = from;
+	while (true) {
+	    final int limit = _window.limit();
+	    for (int i = (int) (scanned - _windowStart); i < limit; i++)
+		if (_window.get(i) == '\n')
+		    return _windowStart + i;
+	    scanned = _windowStart + limit;
+	    if (scanned >= _fileSize)
+		return _fileSize;
+	    if (_windowStart == from)
+		throw new RuntimeException("A line of " + _file
+			+ " is longer than the mapped window of " + _windowSize
+			+ " bytes!");
+	    // the line continues after the window: remap from its beginning
+	    map(from);
+	}
+    }
+
+    private void map(long start) throws IOException {
+	final long size = Math.min(_windowSize, _fileSize - start);
+	_window = _channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+	_windowStart = start;
+    }
+
+    // reads without prefetching
+    private String nextLine() throws IOException {
+	if (_position > _sectionEnd || _position >= _fileSize)
+	    return null;
+	final long end = findLineEnd(_position);
+	int length = (int) (end - _position);
+	// findLineEnd left the whole line in the window
+	final int offset = (int) (_position - _windowStart);
+	if (length > 0 && _window.get(offset + length - 1) == '\r')
+	    length--;
+	if (_lineBytes.length < length)
+	    _lineBytes = new byte[Math.max(length, 2 * _lineBytes.length)];
+	_window.position(offset);
+	_window.get(_lineBytes, 0, length);
+	_position = end + 1;
+	return new String(_lineBytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String readLine() throws IOException {
+	if (_chunks == null)
+	    return nextLine();
+	if (_eofReached)
+	    return null;
+	if (_chunk == null || _chunkPtr == _chunk.length) {
+	    try {
+		_chunk = _chunks.take();
+	    } catch (final InterruptedException e) {
+		throw new IOException(e);
+	    }
+	    _chunkPtr = 0;
+	    if (_chunk == EOF_CHUNK) {
+		_eofReached = true;
+		if (_prefetchError != null)
+		    throw _prefetchError;
+		return null;
+	    }
+	}
+	return _chunk[_chunkPtr++];
+    }
+
+    private void startPrefetcher() {
+	_chunks = new ArrayBlockingQueue<String[]>(PREFETCH_CHUNKS);
+	_prefetcher = new Thread(new Runnable() {
+	    @Override
+	    public void run() {
+		try {
+		    while (true) {
+			final String[] chunk = new String[LINES_PER_CHUNK];
+			int size = 0;
+			String line;
+			while (size < LINES_PER_CHUNK
+				&& (line = nextLine()) != null)
+			    chunk[size++] = line;
+			if (size > 0)
+			    _chunks.put(size == LINES_PER_CHUNK ? chunk
+				    : Arrays.copyOf(chunk, size));
+			if (size < LINES_PER_CHUNK)
+			    break;
+		    }
+		} catch (final IOException e) {
+		    _prefetchError = e;
+		} catch (final RuntimeException e) {
+		    // e.g. a line longer than the window: readLine must not
+		    // wait forever for the chunks
+		    _prefetchError = new IOException(e);
+		} catch (final InterruptedException e) {
+		    return;
+		}
+		try {
+		    _chunks.put(EOF_CHUNK);
+		} catch (final InterruptedException e) {
+		    // closed
+		}
+	    }
+	}, "MappedFileReader-" + _file.getName());
+	_prefetcher.setDaemon(true);
+	_prefetcher.start();
+    }
+}
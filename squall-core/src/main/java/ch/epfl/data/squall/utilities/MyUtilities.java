@@ -36,6 +36,8 @@ import java.util.Map.Entry;
 import java.util.TreeMap;
 
 import ch.epfl.data.squall.storm_components.hyper_cube.stream_grouping.HyperCubeGrouping;
+import ch.epfl.data.squall.storm_components.stream_grouping.SkewedHashStreamGrouping;
+import ch.epfl.data.squall.thetajoin.matrix_assignment.HyperCubeAssignerFactory.PartitionStrategy;
 import ch.epfl.data.squall.thetajoin.matrix_assignment.HyperCubeAssignment;
 import org.apache.log4j.Logger;
 
@@ -77,6 +79,9 @@ import ch.epfl.data.squall.operators.ProjectOperator;
 import ch.epfl.data.squall.operators.SampleOperator;
 import ch.epfl.data.squall.predicates.ComparisonPredicate;
 import ch.epfl.data.squall.query_plans.QueryBuilder;
+import ch.epfl.data.squall.storage.AggregationStorage;
+import ch.epfl.data.squall.storage.OffHeapTupleStorage;
+import ch.epfl.data.squall.storage.TupleStorage;
 import ch.epfl.data.squall.storm_components.InterchangingComponent;
 import ch.epfl.data.squall.storm_components.StormComponent;
 import ch.epfl.data.squall.storm_components.StormEmitter;
@@ -499,6 +504,43 @@ public class MyUtilities {
 	return currentBolt;
     }
 
+    /*
+     * The two parents of the equi-join componentId, with the heavy hitters of
+     * one of them split over <componentId>_SKEW_SPLIT_FACTOR tasks: the
+     * parent named by <componentId>_SKEW_SPLIT_PARENT, or else the first one.
+     * The tuples of the other parent are replicated to that many tasks.
+     */
+    public static InputDeclarer attachEmitterSkewedHash(Map map,
+	    String componentId, List<String> fullHashList,
+	    InputDeclarer currentBolt, StormEmitter firstEmitter,
+	    StormEmitter secondEmitter) {
+	if (fullHashList != null)
+	    throw new RuntimeException("Component " + componentId
+		    + " cannot both split skewed keys and use a full hash list!");
+	final int splitFactor = SystemParameters.getInt(map, componentId
+		+ "_SKEW_SPLIT_FACTOR");
+	boolean isFirstSplit = true;
+	if (SystemParameters.isExisting(map, componentId + "_SKEW_SPLIT_PARENT")) {
+	    final String splitParent = SystemParameters.getString(map,
+		    componentId + "_SKEW_SPLIT_PARENT");
+	    if (splitParent.equals(secondEmitter.getName()))
+		isFirstSplit = false;
+	    else if (!splitParent.equals(firstEmitter.getName()))
+		throw new RuntimeException(splitParent
+			+ " is not a parent of " + componentId + '!');
+	}
+
+	for (final String emitterID : firstEmitter.getEmitterIDs())
+	    currentBolt = currentBolt.customGrouping(emitterID,
+		    new SkewedHashStreamGrouping(map, splitFactor,
+			    isFirstSplit));
+	for (final String emitterID : secondEmitter.getEmitterIDs())
+	    currentBolt = currentBolt.customGrouping(emitterID,
+		    new SkewedHashStreamGrouping(map, splitFactor,
+			    !isFirstSplit));
+	return currentBolt;
+    }
+
     public static InputDeclarer attachEmitterToSingle(
 	    InputDeclarer currentBolt, StormEmitter emitter1,
 	    StormEmitter... emittersArray) {
@@ -645,11 +687,6 @@ public class MyUtilities {
 	return true;
     }
 
-    public static int chooseBalancedTargetIndex(String hash,
-	    List<String> allHashes, int targetParallelism) {
-	return allHashes.indexOf(hash) % targetParallelism;
-    }
-
     public static int chooseHashTargetIndex(String hash, int targetParallelism) {
 	return Math.abs(hash.hashCode()) % targetParallelism;
     }
@@ -856,13 +893,27 @@ public class MyUtilities {
 	return actualMatrix;
     }
 
+    public static String createHashString(List<String> tuple,
+	    List<Integer> hashIndexes, List<ValueExpression> hashExpressions,
+	    ComponentRuntimeConfig config) {
+	return createHashString(tuple, hashIndexes, hashExpressions,
+		config.getAddDelimiter());
+    }
+
     public static String createHashString(List<String> tuple,
 	    List<Integer> hashIndexes, List<ValueExpression> hashExpressions,
 	    Map map) {
 	if (hashIndexes == null && hashExpressions == null)
 	    return SINGLE_HASH_KEY;
+	return createHashString(tuple, hashIndexes, hashExpressions,
+		getColumnDelimiter(map));
+    }
 
-	final String columnDelimiter = getColumnDelimiter(map);
+    private static String createHashString(List<String> tuple,
+	    List<Integer> hashIndexes, List<ValueExpression> hashExpressions,
+	    String columnDelimiter) {
+	if (hashIndexes == null && hashExpressions == null)
+	    return SINGLE_HASH_KEY;
 
 	// NOTE THAT THE HASHCOLUMN depend upon the output of the projection!!
 	final StringBuilder hashStrBuf = new StringBuilder();
@@ -937,6 +988,23 @@ public class MyUtilities {
 		+ collectionAdapter + ", keyTypeStr = " + keyTypeStr);
     }
 
+    // storage for the tuples of one relation in a TupleStorage joiner
+    public static TupleStorage createTupleStorage(Map conf) {
+	final TupleStorage storage;
+	if (isOffHeapTupleStorage(conf)) {
+	    int slabMB = DEFAULT_OFF_HEAP_SLAB_MB;
+	    if (SystemParameters.isExisting(conf, "DIP_OFF_HEAP_SLAB_MB"))
+		slabMB = SystemParameters.getInt(conf, "DIP_OFF_HEAP_SLAB_MB");
+	    storage = new OffHeapTupleStorage(slabMB * 1024 * 1024);
+	} else
+	    storage = new TupleStorage();
+	// width of the time buckets used to purge window state
+	if (SystemParameters.isExisting(conf, "DIP_WINDOW_BUCKET_MILLIS"))
+	    storage.setWindowBucketMillis(SystemParameters.getLong(conf,
+		    "DIP_WINDOW_BUCKET_MILLIS"));
+	return storage;
+    }
+
     public static List<String> createOutputTuple(List<String> firstTuple,
 	    List<String> secondTuple) {
 	final List<String> outputTuple = new ArrayList<String>();
@@ -1004,6 +1072,18 @@ public class MyUtilities {
 	return totalOutputSizeTuple;
     }
 
+    public static Values createTupleValues(List<String> tuple, long timestamp,
+	    String componentIndex, List<Integer> hashIndexes,
+	    List<ValueExpression> hashExpressions, ComponentRuntimeConfig config) {
+
+	final String outputTupleHash = MyUtilities.createHashString(tuple,
+		hashIndexes, hashExpressions, config);
+	if (config.isTimestampSent())
+	    return new Values(componentIndex, tuple, outputTupleHash, timestamp);
+	else
+	    return new Values(componentIndex, tuple, outputTupleHash);
+    }
+
     public static Values createTupleValues(List<String> tuple, long timestamp,
 	    String componentIndex, List<Integer> hashIndexes,
 	    List<ValueExpression> hashExpressions, Map conf) {
@@ -1053,9 +1133,8 @@ public class MyUtilities {
      * Different tuple<->(String, Hash) conversions
      */
     public static List<String> fileLineToTuple(String line, Map conf) {
-	final String[] columnValues = line.split(SystemParameters.getString(
-		conf, "DIP_READ_SPLIT_DELIMITER"));
-	return new ArrayList<String>(Arrays.asList(columnValues));
+	return splitTuple(line,
+		SystemParameters.getString(conf, "DIP_READ_SPLIT_DELIMITER"));
     }
 
     // collects all the task ids for "default" stream id
@@ -1086,6 +1165,43 @@ public class MyUtilities {
 	return result;
     }
 
+    /*
+     * What a component sends in AggBatchOutput mode: the groups changed since
+     * the previous send, as (group key, value) tuples, or (value) without
+     * GROUP BY. The next component adds them to its totals.
+     */
+    public static List<List<String>> getAggBatchTuples(AggregateOperator agg,
+	    ComponentRuntimeConfig config) {
+	return getAggBatchTuples(agg, config.getAddDelimiter(),
+		config.getSplitDelimiter());
+    }
+
+    public static List<List<String>> getAggBatchTuples(AggregateOperator agg,
+	    Map conf) {
+	return getAggBatchTuples(agg, getColumnDelimiter(conf),
+		SystemParameters.getString(conf, "DIP_GLOBAL_SPLIT_DELIMITER"));
+    }
+
+    private static List<List<String>> getAggBatchTuples(
+	    AggregateOperator agg, String columnDelimiter, String splitDelimiter) {
+	if (agg.getStorage() instanceof AggregationStorage)
+	    return ((AggregationStorage) agg.getStorage()).takeChangedGroups();
+	// the window semantics: the content is printed and parsed back
+	final List<List<String>> result = new ArrayList<List<String>>();
+	final List<String> content = agg.getContent();
+	if (content != null)
+	    for (final String tuple : content)
+		result.add(splitTuple(tuple.replace(" = ", columnDelimiter),
+			splitDelimiter));
+	agg.clearStorage();
+	return result;
+    }
+
+    // number of tuples in a TupleBatch in batch execution mode
+    public static int getBatchExecutionSize(Map conf) {
+	return SystemParameters.getInt(conf, "DIP_BATCH_EXECUTION_SIZE");
+    }
+
     // Previously HASH_DELIMITER = "-" in SystemParameters, but now is the same
     // as DIP_GLOBAL_ADD_DELIMITER
     // we need it for preaggregation
@@ -1097,6 +1213,20 @@ public class MyUtilities {
 	return SystemParameters.getInt(map, compName + "_BS");
     }
 
+    /*
+     * How long a tuple may wait in a manual batch; -1 if it waits until the
+     * batch is full
+     */
+    public static long getCompBatchLingerMillis(String compName, Map map) {
+	final String compKey = compName + "_BATCH_LINGER_MILLIS";
+	if (SystemParameters.isExisting(map, compKey))
+	    return SystemParameters.getLong(map, compKey);
+	else if (SystemParameters.isExisting(map, "DIP_BATCH_LINGER_MILLIS"))
+	    return SystemParameters.getLong(map, "DIP_BATCH_LINGER_MILLIS");
+	else
+	    return -1;
+    }
+
     public static Type getDominantNumericType(List<ValueExpression> veList) {
 	Type wrapper = veList.get(0).getType();
 	for (int i = 1; i < veList.size(); i++) {
@@ -1118,6 +1248,17 @@ public class MyUtilities {
 		+ filePrefix + "_" + queryId;
     }
 
+    /*
+     * How the hypercube components choose the shares of the relations:
+     * EQUAL_SIZE unless DIP_HYPERCUBE_STRATEGY is set (e.g. to COST_BASED)
+     */
+    public static PartitionStrategy getHyperCubeStrategy(Map conf) {
+	if (!SystemParameters.isExisting(conf, "DIP_HYPERCUBE_STRATEGY"))
+	    return PartitionStrategy.EQUAL_SIZE;
+	return PartitionStrategy.valueOf(SystemParameters.getString(conf,
+		"DIP_HYPERCUBE_STRATEGY").toUpperCase());
+    }
+
     public static String getKeyRegionFilename(Map conf) {
 	String queryId = MyUtilities.getQueryID(conf);
 	return SystemParameters.getString(conf, "DIP_KEY_REGION_ROOT") + "/"
@@ -1165,6 +1306,25 @@ public class MyUtilities {
 	return first > second ? first : second;
     }
 
+    // number of TupleStorage rows per compressed migration block
+    public static int getMigrationBlockSize(Map conf) {
+	return SystemParameters.getInt(conf, "DIP_MIGRATION_BLOCK_SIZE");
+    }
+
+    public static String getMetricsFile(Map conf) {
+	if (SystemParameters.isExisting(conf, "DIP_METRICS_FILE"))
+	    return SystemParameters.getString(conf, "DIP_METRICS_FILE");
+	else
+	    return DEFAULT_METRICS_FILE;
+    }
+
+    public static int getMetricsPeriodSecs(Map conf) {
+	if (SystemParameters.isExisting(conf, "DIP_METRICS_PERIOD_SECS"))
+	    return SystemParameters.getInt(conf, "DIP_METRICS_PERIOD_SECS");
+	else
+	    return DEFAULT_METRICS_PERIOD_SECS;
+    }
+
     public static int getMin(int first, int second) {
 	return first < second ? first : second;
     }
@@ -1226,12 +1386,69 @@ public class MyUtilities {
 	return result.toString();
     }
 
+    /*
+     * Tick frequency, in seconds, of a bolt which sends periodically: the
+     * aggregates in AggBatchOutput mode, and the manual batches which have
+     * waited for the linger time (lingerMillis <= 0 if there is no linger
+     * time). Returns -1 if the bolt needs no tick tuples. A more frequent tick
+     * which is already set for the window semantics is kept.
+     *
+     * Storm ticks have a granularity of a second. A sub-second AggBatchOutput
+     * period is rejected; with a sub-second linger time, the batches of a bolt
+     * which stopped receiving tuples are flushed on the next tick.
+     */
+    public static int getTickSecs(Map conf, long aggBatchOutputMillis,
+	    long lingerMillis) {
+	long tickSecs = Long.MAX_VALUE;
+	if (isAggBatchOutputMode(aggBatchOutputMillis)) {
+	    if (aggBatchOutputMillis < 1000)
+		throw new RuntimeException("AggBatchOutput period of "
+			+ aggBatchOutputMillis
+			+ "ms is below the one second granularity of ticks!");
+	    tickSecs = aggBatchOutputMillis / 1000;
+	}
+	if (lingerMillis > 0) {
+	    if (lingerMillis < 1000)
+		LOG.warn("Linger time of " + lingerMillis
+			+ "ms: the batches of an idle bolt wait for a tick,"
+			+ " which comes every second.");
+	    tickSecs = Math.min(tickSecs, Math.max(1, lingerMillis / 1000));
+	}
+	if (tickSecs == Long.MAX_VALUE)
+	    return -1;
+	final Object windowTick = conf.get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS);
+	if (windowTick != null)
+	    tickSecs = Math.min(tickSecs,
+		    Long.parseLong(String.valueOf(windowTick)));
+	return (int) tickSecs;
+    }
+
     public static double getUsedMemoryMBs() {
 	Runtime runtime = Runtime.getRuntime();
 	long memory = runtime.totalMemory() - runtime.freeMemory();
 	return memory / 1024.0 / 1024.0;
     }
 
+    /*
+     * The number of bytes of str encoded as UTF-8, without encoding it
+     */
+    public static int getUtf8Length(String str) {
+	int length = 0;
+	for (int i = 0; i < str.length(); i++) {
+	    final char c = str.charAt(i);
+	    if (c < 0x80)
+		length++;
+	    else if (c < 0x800)
+		length += 2;
+	    else if (Character.isSurrogate(c))
+		// a pair of surrogates takes 4 bytes
+		length += 2;
+	    else
+		length += 3;
+	}
+	return length;
+    }
+
     // assumes TreeMap where non-mentioned elements have value of their closest
     // left neighbor
     public static <K, V> V getValue(TreeMap<K, V> treeMap, K key) {
@@ -1287,6 +1504,30 @@ public class MyUtilities {
 	return mode.equalsIgnoreCase("AUTO");
     }
 
+    // the operator chains process a TupleBatch at once
+    public static boolean isBatchExecutionMode(Map conf) {
+	return SystemParameters.isExisting(conf, "DIP_BATCH_EXECUTION_SIZE")
+		&& getBatchExecutionSize(conf) > 1;
+    }
+
+    // selections and aggregated expressions are compiled to bytecode
+    public static boolean isCodegenMode(Map conf) {
+	return SystemParameters.isExisting(conf, "DIP_CODEGEN")
+		&& SystemParameters.getBoolean(conf, "DIP_CODEGEN");
+    }
+
+    // adaptive theta joins migrate only when the savings beat the costs
+    public static boolean isCostBasedAdvisor(Map conf) {
+	return SystemParameters.isExisting(conf, "DIP_ADAPTIVE_ADVISOR")
+		&& SystemParameters.getString(conf, "DIP_ADAPTIVE_ADVISOR")
+			.equalsIgnoreCase("COST_BASED");
+    }
+
+    public static boolean isBinaryTuples(Map conf) {
+	return SystemParameters.isExisting(conf, "DIP_BINARY_TUPLES")
+		&& SystemParameters.getBoolean(conf, "DIP_BINARY_TUPLES");
+    }
+
     public static boolean isBDB(Map conf) {
 	return SystemParameters.isExisting(conf, "DIP_IS_BDB")
 		&& SystemParameters.getBoolean(conf, "DIP_IS_BDB");
@@ -1389,8 +1630,12 @@ public class MyUtilities {
 	return tupleString.equals(SystemParameters.LAST_ACK);
     }
 
-    public static boolean isFinalAckManualBatching(String tupleString, Map map) {
-	return (!isAckEveryTuple(map)) && isFinalAck(tupleString);
+    /*
+     * tupleBatch is a binary batch, or the LAST_ACK String
+     */
+    public static boolean isFinalAckManualBatching(Object tupleBatch, Map map) {
+	return (!isAckEveryTuple(map)) && (tupleBatch instanceof String)
+		&& isFinalAck((String) tupleBatch);
     }
 
     public static boolean isIIPrecBoth(Map conf) {
@@ -1421,6 +1666,11 @@ public class MyUtilities {
 		.equalsIgnoreCase("BOTH"));
     }
 
+    public static boolean isMappedFileReader(Map conf) {
+	return SystemParameters.isExisting(conf, "DIP_MMAP_READER")
+		&& SystemParameters.getBoolean(conf, "DIP_MMAP_READER");
+    }
+
     public static boolean isManualBatchingMode(Map map) {
 	return SystemParameters.isExisting(map, "BATCH_SEND_MODE")
 		&& SystemParameters.getString(map, "BATCH_SEND_MODE")
@@ -1473,6 +1723,26 @@ public class MyUtilities {
 	return true;
     }
 
+    /*
+     * Components register TaskMetrics, reported by the MetricsReporter
+     */
+    public static boolean isMetrics(Map conf) {
+	return SystemParameters.isExisting(conf, "DIP_METRICS")
+		&& SystemParameters.getBoolean(conf, "DIP_METRICS");
+    }
+
+    // adaptive joiners migrate their state as compressed TupleStorage blocks
+    public static boolean isMigrationBlockMode(Map conf) {
+	return SystemParameters.isExisting(conf, "DIP_MIGRATION_BLOCK_SIZE")
+		&& getMigrationBlockSize(conf) > 0;
+    }
+
+    public static boolean isOffHeapTupleStorage(Map conf) {
+	return SystemParameters.isExisting(conf, "DIP_TUPLE_STORAGE")
+		&& SystemParameters.getString(conf, "DIP_TUPLE_STORAGE")
+			.equalsIgnoreCase("OFF_HEAP");
+    }
+
     public static boolean isOutputSampleSize(List<String> tuple) {
 	return tuple.get(0).equals(SystemParameters.OUTPUT_SAMPLE_SIZE);
     }
@@ -1498,6 +1768,13 @@ public class MyUtilities {
 		&& !isAggBatchOutputMode(batchOutputMillis);
     }
 
+    public static boolean isSkewSplitMode(Map map, String componentId) {
+	return SystemParameters.isExisting(map, componentId
+		+ "_SKEW_SPLIT_FACTOR")
+		&& SystemParameters.getInt(map, componentId
+			+ "_SKEW_SPLIT_FACTOR") > 1;
+    }
+
     public static boolean isStatisticsCollector(Map map, int hierarchyPosition) {
 	return hierarchyPosition == StormComponent.FINAL_COMPONENT
 		&& SystemParameters.isExisting(map, "DIP_STATISTIC_COLLECTOR")
@@ -1629,18 +1906,6 @@ public class MyUtilities {
 	collector.ack(stormTupleRcv);
     }
 
-    public static void processFinalAck(int numRemainingParents,
-	    int hierarchyPosition, Map conf, Tuple stormTupleRcv,
-	    OutputCollector collector, PeriodicAggBatchSend periodicBatch) {
-	if (numRemainingParents == 0)
-	    if (periodicBatch != null) {
-		periodicBatch.cancel();
-		periodicBatch.getComponent().aggBatchSend();
-	    }
-	processFinalAck(numRemainingParents, hierarchyPosition, conf,
-		stormTupleRcv, collector);
-    }
-
     public static void processFinalAckCustomStream(String streamId,
 	    int numRemainingParents, int hierarchyPosition, Map conf,
 	    Tuple stormTupleRcv, OutputCollector collector) {
@@ -1660,19 +1925,6 @@ public class MyUtilities {
 	collector.ack(stormTupleRcv);
     }
 
-    public static void processFinalAckCustomStream(String streamId,
-	    int numRemainingParents, int hierarchyPosition, Map conf,
-	    Tuple stormTupleRcv, OutputCollector collector,
-	    PeriodicAggBatchSend periodicBatch) {
-	if (numRemainingParents == 0)
-	    if (periodicBatch != null) {
-		periodicBatch.cancel();
-		periodicBatch.getComponent().aggBatchSend();
-	    }
-	processFinalAckCustomStream(streamId, numRemainingParents,
-		hierarchyPosition, conf, stormTupleRcv, collector);
-    }
-
     /*
      * Read query plans - read as verbatim
      */
@@ -1737,6 +1989,16 @@ public class MyUtilities {
 	}
     }
 
+    public static void sendTuple(String streamId, Values stormTupleSnd,
+	    Tuple stormTupleRcv, OutputCollector collector,
+	    ComponentRuntimeConfig config) {
+	// stormTupleRcv is equals to null when we send tuples in batch fashion
+	if (config.isAckEveryTuple() && stormTupleRcv != null)
+	    collector.emit(streamId, stormTupleRcv, stormTupleSnd);
+	else
+	    collector.emit(streamId, stormTupleSnd);
+    }
+
     public static void sendTuple(String streamId, Values stormTupleSnd,
 	    Tuple stormTupleRcv, OutputCollector collector, Map conf) {
 	// stormTupleRcv is equals to null when we send tuples in batch fashion
@@ -1746,6 +2008,15 @@ public class MyUtilities {
 	    collector.emit(streamId, stormTupleSnd);
     }
 
+    // this is for Spout
+    public static void sendTuple(Values stormTupleSnd,
+	    SpoutOutputCollector collector, ComponentRuntimeConfig config) {
+	if (config.isAckEveryTuple())
+	    collector.emit(stormTupleSnd, "T"); // as short as possible
+	else
+	    collector.emit(stormTupleSnd);
+    }
+
     // this is for Spout
     public static void sendTuple(Values stormTupleSnd,
 	    SpoutOutputCollector collector, Map conf) {
@@ -1774,6 +2045,15 @@ public class MyUtilities {
      * no acking at the end, because for one tuple arrived in JoinComponent, we
      * might have multiple tuples to be sent.
      */
+    public static void sendTuple(Values stormTupleSnd, Tuple stormTupleRcv,
+	    OutputCollector collector, ComponentRuntimeConfig config) {
+	// stormTupleRcv is equals to null when we send tuples in batch fashion
+	if (config.isAckEveryTuple() && stormTupleRcv != null)
+	    collector.emit(stormTupleRcv, stormTupleSnd);
+	else
+	    collector.emit(stormTupleSnd);
+    }
+
     public static void sendTuple(Values stormTupleSnd, Tuple stormTupleRcv,
 	    OutputCollector collector, Map conf) {
 	// stormTupleRcv is equals to null when we send tuples in batch fashion
@@ -1796,12 +2076,61 @@ public class MyUtilities {
 	}
     }
 
+    /*
+     * The same as splitting with a regex, but without a regex for a
+     * single-character delimiter
+     */
+    public static List<String> splitTuple(String tupleString,
+	    String splitDelimiter) {
+	final char delimiter = literalDelimiter(splitDelimiter);
+	if (delimiter == 0) {
+	    final String[] columnValues = tupleString.split(splitDelimiter);
+	    return new ArrayList<String>(Arrays.asList(columnValues));
+	}
+	// no regex for a single-character delimiter; the semantics are the same
+	// as of String.split (trailing empty strings are removed)
+	final ArrayList<String> columnValues = new ArrayList<String>();
+	int start = 0;
+	int end;
+	while ((end = tupleString.indexOf(delimiter, start)) >= 0) {
+	    columnValues.add(tupleString.substring(start, end));
+	    start = end + 1;
+	}
+	columnValues.add(tupleString.substring(start));
+	if (tupleString.length() == 0)
+	    return columnValues;
+	int size = columnValues.size();
+	while (size > 0 && columnValues.get(size - 1).length() == 0)
+	    columnValues.remove(--size);
+	return columnValues;
+    }
+
+    public static List<String> stringToTuple(String tupleString,
+	    ComponentRuntimeConfig config) {
+	return splitTuple(tupleString, config.getSplitDelimiter());
+    }
+
     public static List<String> stringToTuple(String tupleString, Map conf) { // arraylist
 	// 2
 	// values
-	final String[] columnValues = tupleString.split(SystemParameters
-		.getString(conf, "DIP_GLOBAL_SPLIT_DELIMITER"));
-	return new ArrayList<String>(Arrays.asList(columnValues));
+	return splitTuple(tupleString,
+		SystemParameters.getString(conf, "DIP_GLOBAL_SPLIT_DELIMITER"));
+    }
+
+    /*
+     * Returns the character a regex splits on if it matches exactly one
+     * literal character (e.g. "\\|" or ","), and 0 otherwise
+     */
+    private static char literalDelimiter(String regex) {
+	if (regex == null)
+	    return 0;
+	if (regex.length() == 1
+		&& ".$|()[]{}^?*+\\".indexOf(regex.charAt(0)) < 0)
+	    return regex.charAt(0);
+	if (regex.length() == 2 && regex.charAt(0) == '\\'
+		&& !Character.isLetterOrDigit(regex.charAt(1)))
+	    return regex.charAt(1);
+	return 0;
     }
 
     public static InputDeclarer thetaAttachEmitterComponents(
@@ -1923,22 +2252,35 @@ public class MyUtilities {
 	return strKey;
     }
 
+    public static String tupleToString(List<String> tuple,
+	    ComponentRuntimeConfig config) {
+	return tupleToString(tuple, config.getAddDelimiter());
+    }
+
     public static String tupleToString(List<String> tuple, Map conf) {
-	String tupleString = "";
-	for (int i = 0; i < tuple.size(); i++)
-	    if (i == tuple.size() - 1)
-		tupleString += tuple.get(i);
-	    else
-		tupleString += tuple.get(i)
-			+ SystemParameters.getString(conf,
-				"DIP_GLOBAL_ADD_DELIMITER");
+	return tupleToString(tuple,
+		SystemParameters.getString(conf, "DIP_GLOBAL_ADD_DELIMITER"));
+    }
+
+    private static String tupleToString(List<String> tuple, String delimiter) {
+	final StringBuilder tupleString = new StringBuilder();
+	for (int i = 0; i < tuple.size(); i++) {
+	    if (i > 0)
+		tupleString.append(delimiter);
+	    tupleString.append(tuple.get(i));
+	}
 	// this cause a bug when space (" ") is the last character:
 	// tupleString=tupleString.trim();
-	return tupleString;
+	return tupleString.toString();
     }
 
     private static Logger LOG = Logger.getLogger(MyUtilities.class);
 
+    private static final int DEFAULT_OFF_HEAP_SLAB_MB = 64;
+
+    private static final String DEFAULT_METRICS_FILE = "squall_metrics.csv";
+    private static final int DEFAULT_METRICS_PERIOD_SECS = 10;
+
     public static final String SINGLE_HASH_KEY = "SingleHashEntry";
 
 }
@@ -1,57 +0,0 @@
-/*
- * Copyright (c) 2011-2015 EPFL DATA Laboratory
- * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
- *
- * All rights reserved.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package ch.epfl.data.squall.utilities;
-
-import java.util.Timer;
-import java.util.TimerTask;
-
-import ch.epfl.data.squall.storm_components.StormComponent;
-
-public class PeriodicAggBatchSend extends Timer {
-
-    public class PeriodicTask extends TimerTask {
-	private final StormComponent _comp;
-
-	public PeriodicTask(StormComponent comp) {
-	    _comp = comp;
-	}
-
-	@Override
-	public void run() {
-	    _comp.aggBatchSend();
-	}
-    }
-
-    private final PeriodicTask _pt;
-
-    private final StormComponent _comp;
-
-    public PeriodicAggBatchSend(long period, StormComponent comp) {
-	_comp = comp;
-	_pt = new PeriodicTask(comp);
-
-	scheduleAtFixedRate(_pt, 0, period);
-    }
-
-    public StormComponent getComponent() {
-	return _comp;
-    }
-
-}
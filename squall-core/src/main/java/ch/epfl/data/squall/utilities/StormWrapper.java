@@ -45,6 +45,7 @@ import backtype.storm.generated.TopologyInfo;
 import backtype.storm.generated.TopologySummary;
 import backtype.storm.topology.TopologyBuilder;
 import backtype.storm.utils.NimbusClient;
+import ch.epfl.data.squall.utilities.metrics.MetricsReporter;
 
 public class StormWrapper {
     private static void clusterKillTopology(Map conf, String topologyName) {
@@ -153,6 +154,15 @@ public class StormWrapper {
 		conf.setMaxSpoutPending(tp);
 	    }
 
+	if (MyUtilities.isBinaryTuples(conf))
+	    // tuples (Lists of Strings) are sent in the BinaryTupleFormat
+	    conf.registerDecorator(BinaryTupleKryoDecorator.class);
+
+	if (MyUtilities.isMetrics(conf))
+	    // the TaskMetrics of all the components end up in one file
+	    conf.registerMetricsConsumer(MetricsReporter.class,
+		    MyUtilities.getMetricsFile(conf), 1);
+
 	if (distributed) {
 	    if (SystemParameters.isExisting(conf, "DIP_NUM_WORKERS")) {
 		// by default we use existing value from storm.yaml
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.utilities;
+
+import java.io.Serializable;
+
+/*
+ * Rate limiter: tokens are added at ratePerSecond and at most capacity of them
+ * are kept. It never blocks, a caller without a token has to come back later
+ * (e.g. a spout returns from nextTuple).
+ */
+public class TokenBucket implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final double _tokensPerNano;
+    private final double _capacity;
+    private double _tokens;
+    private long _lastRefill = -1;
+
+    public TokenBucket(long ratePerSecond) {
+	// bursts of at most 100ms
+	this(ratePerSecond, Math.max(1, ratePerSecond / 10));
+    }
+
+    public TokenBucket(long ratePerSecond, long capacity) {
+	if (ratePerSecond <= 0 || capacity <= 0)
+	    throw new RuntimeException(
+		    "The rate and the capacity of a TokenBucket have to be positive!");
+	_tokensPerNano = ratePerSecond / 1e9;
+	_capacity = capacity;
+	_tokens = capacity;
+    }
+
+    private void refill() {
+	final long now = System.nanoTime();
+	if (_lastRefill >= 0)
+	    _tokens = Math.min(_capacity, _tokens + (now - _lastRefill)
+		    * _tokensPerNano);
+	_lastRefill = now;
+    }
+
+    public boolean tryAcquire() {
+	refill();
+	if (_tokens < 1)
+	    return false;
+	_tokens -= 1;
+	return true;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.epfl.data.squall.utilities.metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * High dynamic range histogram of non-negative longs (latencies in millis,
+ * process times in nanos). Values are counted in log-linear buckets with two
+ * significant decimal digits, so every percentile is reported within 1% of
+ * the exact value, with a fixed footprint and no allocation on record.
+ *
+ * Values above the highest trackable value are counted as the highest one.
+ */
+public class LatencyHistogram {
+
+    // 2 * 10^2 distinct values per power of two, rounded up
+    private static final int SUB_BUCKET_HALF_COUNT_MAGNITUDE = 7;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+    private static final int SUB_BUCKET_MASK = (SUB_BUCKET_HALF_COUNT << 1) - 1;
+
+    /*
+     * Inverse of encode
+     */
+    public static LatencyHistogram decode(byte[] bytes) {
+	final int[] pos = new int[] { 0 };
+	final LatencyHistogram histogram = new LatencyHistogram(readVarLong(
+		bytes, pos));
+	histogram._min = readVarLong(bytes, pos);
+	histogram._max = readVarLong(bytes, pos);
+	histogram._sum = readVarLong(bytes, pos);
+	int index = -1;
+	while (pos[0] < bytes.length) {
+	    index += (int) readVarLong(bytes, pos);
+	    final long count = readVarLong(bytes, pos);
+	    histogram._counts[index] = count;
+	    histogram._totalCount += count;
+	}
+	return histogram;
+    }
+
+    private static long readVarLong(byte[] bytes, int[] pos) {
+	long result = 0;
+	int shift = 0;
+	byte b;
+	do {
+	    b = bytes[pos[0]++];
+	    result |= (long) (b & 0x7F) << shift;
+	    shift += 7;
+	} while ((b & 0x80) != 0);
+	return result;
+    }
+
+    private final long _highestTrackableValue;
+    private final long[] _counts;
+
+    private long _totalCount;
+    private long _min = Long.MAX_VALUE;
+    private long _max;
+    private long _sum;
+
+    public LatencyHistogram(long highestTrackableValue) {
+	if (highestTrackableValue < 2 * SUB_BUCKET_HALF_COUNT)
+	    highestTrackableValue = 2 * SUB_BUCKET_HALF_COUNT;
+	_highestTrackableValue = highestTrackableValue;
+	_counts = new long[countsIndex(highestTrackableValue) + 1];
+    }
+
+    /*
+     * Adds all the values recorded by other
+     */
+    public void add(LatencyHistogram other) {
+	if (other._totalCount == 0)
+	    return;
+	for (int i = 0; i < other._counts.length; i++)
+	    if (other._counts[i] != 0) {
+		final long value = Math.min(valueFromIndex(i),
+			_highestTrackableValue);
+		_counts[countsIndex(value)] += other._counts[i];
+	    }
+	_totalCount += other._totalCount;
+	_sum += other._sum;
+	_min = Math.min(_min, other._min);
+	_max = Math.max(_max, other._max);
+    }
+
+    private int countsIndex(long value) {
+	final int bucketIndex = 63 - Long.numberOfLeadingZeros(value
+		| SUB_BUCKET_MASK) - SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+	final int subBucketIndex = (int) (value >>> bucketIndex);
+	return (bucketIndex << SUB_BUCKET_HALF_COUNT_MAGNITUDE) + subBucketIndex;
+    }
+
+    /*
+     * Sparse form: the header, then (index delta, count) pairs of the
+     * non-empty buckets, all as varints
+     */
+    public byte[] encode() {
+	final ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+	writeVarLong(out, _highestTrackableValue);
+	writeVarLong(out, _min);
+	writeVarLong(out, _max);
+	writeVarLong(out, _sum);
+	int lastIndex = -1;
+	for (int i = 0; i < _counts.length; i++)
+	    if (_counts[i] != 0) {
+		writeVarLong(out, i - lastIndex);
+		writeVarLong(out, _counts[i]);
+		lastIndex = i;
+	    }
+	return out.toByteArray();
+    }
+
+    public long getMax() {
+	return _max;
+    }
+
+    public double getMean() {
+	return _totalCount == 0 ? 0 : (double) _sum / _totalCount;
+    }
+
+    public long getMin() {
+	return _totalCount == 0 ? 0 : _min;
+    }
+
+    public long getTotalCount() {
+	return _totalCount;
+    }
+
+    /*
+     * The highest value v such that percentile% of the recorded values are
+     * <= v, up to the precision of the buckets
+     */
+    public long getValueAtPercentile(double percentile) {
+	if (_totalCount == 0)
+	    return 0;
+	final long countAtPercentile = Math.max(1,
+		(long) Math.ceil(percentile / 100 * _totalCount));
+	long cumulative = 0;
+	for (int i = 0; i < _counts.length; i++) {
+	    cumulative += _counts[i];
+	    if (cumulative >= countAtPercentile)
+		return Math.min(_max, highestEquivalentValue(i));
+	}
+	return _max;
+    }
+
+    private long highestEquivalentValue(int index) {
+	final int bucketIndex = Math.max(0,
+		(index >> SUB_BUCKET_HALF_COUNT_MAGNITUDE) - 1);
+	return valueFromIndex(index) + (1L << bucketIndex) - 1;
+    }
+
+    public void record(long value) {
+	if (value < 0)
+	    value = 0;
+	_sum += value;
+	if (value < _min)
+	    _min = value;
+	if (value > _max)
+	    _max = value;
+	_counts[countsIndex(Math.min(value, _highestTrackableValue))]++;
+	_totalCount++;
+    }
+
+    public void reset() {
+	Arrays.fill(_counts, 0);
+	_totalCount = 0;
+	_min = Long.MAX_VALUE;
+	_max = 0;
+	_sum = 0;
+    }
+
+    private long valueFromIndex(int index) {
+	int bucketIndex = (index >> SUB_BUCKET_HALF_COUNT_MAGNITUDE) - 1;
+	int subBucketIndex = (index & (SUB_BUCKET_HALF_COUNT - 1))
+		+ SUB_BUCKET_HALF_COUNT;
+	if (bucketIndex < 0) {
+	    subBucketIndex -= SUB_BUCKET_HALF_COUNT;
+	    bucketIndex = 0;
+	}
+	return (long) subBucketIndex << bucketIndex;
+    }
+
+    private void writeVarLong(ByteArrayOutputStream out, long value) {
+	while ((value & ~0x7FL) != 0) {
+	    out.write((int) ((value & 0x7F) | 0x80));
+	    value >>>= 7;
+	}
+	out.write((int) value);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.epfl.data.squall.utilities.metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+import backtype.storm.metric.api.IMetricsConsumer;
+import backtype.storm.task.IErrorReporter;
+import backtype.storm.task.TopologyContext;
+import ch.epfl.data.squall.utilities.MyUtilities;
+
+/**
+ * Storm metrics consumer which appends every data point to a local CSV file
+ * (time,component,task,metric,value) and exposes the latest values through
+ * JMX.
+ *
+ * Histograms of the TaskMetrics are written as their count, mean, max and
+ * percentiles, once per task and once per component (task "all"), where the
+ * component one accumulates all its tasks since the topology started. Storm
+ * built-in metrics, such as the queue depths in __receive.population and
+ * __sendqueue.population, are written as they come.
+ */
+public class MetricsReporter implements IMetricsConsumer, MetricsReporterMBean {
+    private static Logger LOG = Logger.getLogger(MetricsReporter.class);
+
+    private static final String ALL_TASKS = "all";
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+    private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99",
+	    "p999" };
+
+    private PrintWriter _writer;
+    private ObjectName _mbeanName;
+
+    // component -> metric -> histogram of all the tasks
+    private final Map<String, Map<String, LatencyHistogram>> _componentHistograms = new HashMap<String, Map<String, LatencyHistogram>>();
+    // "component task metric" -> latest value, for JMX
+    private final Map<String, String> _latest = new TreeMap<String, String>();
+
+    @Override
+    public void cleanup() {
+	if (_writer != null)
+	    _writer.close();
+	if (_mbeanName != null)
+	    try {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+			_mbeanName);
+	    } catch (final Exception ex) {
+		LOG.info(MyUtilities.getStackTrace(ex));
+	    }
+    }
+
+    @Override
+    public synchronized String[] getMetrics() {
+	final String[] metrics = new String[_latest.size()];
+	int i = 0;
+	for (final Map.Entry<String, String> entry : _latest.entrySet())
+	    metrics[i++] = entry.getKey() + " " + entry.getValue();
+	return metrics;
+    }
+
+    @Override
+    public void handleDataPoints(TaskInfo taskInfo,
+	    Collection<DataPoint> dataPoints) {
+	for (final DataPoint dataPoint : dataPoints)
+	    if (dataPoint.value instanceof Map) {
+		// the TaskMetrics and most of the Storm built-in metrics
+		final String prefix = dataPoint.name.equals(TaskMetrics.NAME) ? ""
+			: dataPoint.name + ".";
+		for (final Object entry : ((Map) dataPoint.value).entrySet()) {
+		    final Map.Entry metric = (Map.Entry) entry;
+		    report(taskInfo, prefix + metric.getKey(),
+			    metric.getValue());
+		}
+	    } else
+		report(taskInfo, dataPoint.name, dataPoint.value);
+	_writer.flush();
+    }
+
+    @Override
+    public void prepare(Map stormConf, Object registrationArgument,
+	    TopologyContext context, IErrorReporter errorReporter) {
+	final File file = new File((String) registrationArgument);
+	try {
+	    final boolean isNew = !file.exists();
+	    _writer = new PrintWriter(new FileWriter(file, true));
+	    if (isNew)
+		_writer.println("time,component,task,metric,value");
+	} catch (final IOException ex) {
+	    throw new RuntimeException("Cannot write the metrics to "
+		    + file.getAbsolutePath() + ": " + ex.getMessage());
+	}
+
+	try {
+	    _mbeanName = new ObjectName(
+		    "ch.epfl.data.squall:type=MetricsReporter,name="
+			    + ObjectName.quote(context.getStormId() + "-"
+				    + context.getThisTaskId()));
+	    ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+		    _mbeanName);
+	} catch (final Exception ex) {
+	    // the file is still written
+	    _mbeanName = null;
+	    LOG.info("Metrics are not exposed through JMX: "
+		    + MyUtilities.getStackTrace(ex));
+	}
+	LOG.info("Writing the metrics to " + file.getAbsolutePath());
+    }
+
+    private void report(TaskInfo taskInfo, String metric, Object value) {
+	final String task = String.valueOf(taskInfo.srcTaskId);
+	if (value instanceof byte[]) {
+	    final LatencyHistogram histogram = LatencyHistogram
+		    .decode((byte[]) value);
+	    write(taskInfo, task, metric, histogram);
+
+	    Map<String, LatencyHistogram> histograms = _componentHistograms
+		    .get(taskInfo.srcComponentId);
+	    if (histograms == null) {
+		histograms = new HashMap<String, LatencyHistogram>();
+		_componentHistograms.put(taskInfo.srcComponentId, histograms);
+	    }
+	    final LatencyHistogram total = histograms.get(metric);
+	    if (total == null)
+		histograms.put(metric, histogram);
+	    else
+		total.add(histogram);
+	    write(taskInfo, ALL_TASKS, metric, histograms.get(metric));
+	} else if (value instanceof Number)
+	    write(taskInfo, task, metric, value.toString());
+	// anything else (e.g. nested maps of __system) is not a single value
+    }
+
+    private void write(TaskInfo taskInfo, String task, String metric,
+	    LatencyHistogram histogram) {
+	write(taskInfo, task, metric + ".count",
+		String.valueOf(histogram.getTotalCount()));
+	write(taskInfo, task, metric + ".mean",
+		String.valueOf(histogram.getMean()));
+	for (int i = 0; i < PERCENTILES.length; i++)
+	    write(taskInfo, task, metric + "." + PERCENTILE_NAMES[i],
+		    String.valueOf(histogram
+			    .getValueAtPercentile(PERCENTILES[i])));
+	write(taskInfo, task, metric + ".max",
+		String.valueOf(histogram.getMax()));
+    }
+
+    private void write(TaskInfo taskInfo, String task, String metric,
+	    String value) {
+	_writer.println(taskInfo.timestamp + "," + taskInfo.srcComponentId
+		+ "," + task + "," + metric + "," + value);
+	synchronized (this) {
+	    _latest.put(taskInfo.srcComponentId + " " + task + " " + metric,
+		    value);
+	}
+    }
+}
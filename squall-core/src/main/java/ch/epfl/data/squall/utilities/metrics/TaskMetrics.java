@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.epfl.data.squall.utilities.metrics;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import backtype.storm.metric.api.IMetric;
+
+/**
+ * Metrics of one task, registered through the Storm metrics API (see
+ * DIP_METRICS) and handed to the MetricsReporter once per period:
+ * <ul>
+ * <li>end-to-end latency of the tuples, in millis</li>
+ * <li>process time per tuple of each operator of the ChainOperator, in
+ * nanos, with its input and output counts</li>
+ * <li>index probes of a join, the candidate rows they return and the ones
+ * which joined</li>
+ * <li>gauges, such as the state size in bytes</li>
+ * </ul>
+ * Histograms are sent encoded, so that the reporter can merge the tasks of a
+ * component. Histograms and counters restart after each report.
+ *
+ * A task records from its executor thread only, which is also the thread
+ * Storm collects the metrics from.
+ */
+public class TaskMetrics implements IMetric {
+
+    public interface Gauge {
+	/*
+	 * A negative value is not reported
+	 */
+	public long getValue();
+    }
+
+    public static final String NAME = "squall";
+
+    // longer latencies are counted as one hour
+    private static final long MAX_LATENCY_MILLIS = 3600L * 1000;
+    // longer process times are counted as one minute
+    private static final long MAX_PROCESS_NANOS = 60L * 1000 * 1000 * 1000;
+
+    private final LatencyHistogram _latency = new LatencyHistogram(
+	    MAX_LATENCY_MILLIS);
+
+    private String[] _operatorNames = new String[0];
+    private LatencyHistogram[] _operatorNanos = new LatencyHistogram[0];
+    private long[] _operatorIn = new long[0];
+    private long[] _operatorOut = new long[0];
+
+    private long _probes;
+    private long _candidates;
+    private long _matches;
+
+    private final Map<String, Gauge> _gauges = new LinkedHashMap<String, Gauge>();
+
+    @Override
+    public Object getValueAndReset() {
+	final Map<String, Object> values = new HashMap<String, Object>();
+	if (_latency.getTotalCount() > 0)
+	    values.put("latency.millis", _latency.encode());
+	_latency.reset();
+
+	for (int i = 0; i < _operatorNames.length; i++)
+	    if (_operatorIn[i] > 0) {
+		final String prefix = "operator." + _operatorNames[i];
+		values.put(prefix + ".nanos", _operatorNanos[i].encode());
+		values.put(prefix + ".in", _operatorIn[i]);
+		values.put(prefix + ".out", _operatorOut[i]);
+		values.put(prefix + ".selectivity", (double) _operatorOut[i]
+			/ _operatorIn[i]);
+		_operatorNanos[i].reset();
+		_operatorIn[i] = 0;
+		_operatorOut[i] = 0;
+	    }
+
+	if (_probes > 0) {
+	    values.put("join.probes", _probes);
+	    values.put("join.candidates", _candidates);
+	    values.put("join.matches", _matches);
+	    if (_candidates > 0)
+		values.put("join.selectivity", (double) _matches / _candidates);
+	    _probes = 0;
+	    _candidates = 0;
+	    _matches = 0;
+	}
+
+	for (final Map.Entry<String, Gauge> gauge : _gauges.entrySet()) {
+	    final long value = gauge.getValue().getValue();
+	    if (value >= 0)
+		values.put(gauge.getKey(), value);
+	}
+	return values;
+    }
+
+    /*
+     * A candidate is an opposite tuple returned by a probe
+     */
+    public void recordCandidate() {
+	_candidates++;
+    }
+
+    public void recordLatency(long millis) {
+	_latency.record(millis);
+    }
+
+    public void recordMatch() {
+	_matches++;
+    }
+
+    /*
+     * numIn tuples went through the index-th operator in nanos, and numOut
+     * went out of it; for a batch, the average time per tuple is recorded
+     */
+    public void recordOperator(int index, long nanos, int numIn, int numOut) {
+	_operatorNanos[index].record(nanos / numIn);
+	_operatorIn[index] += numIn;
+	_operatorOut[index] += numOut;
+    }
+
+    public void recordProbe() {
+	_probes++;
+    }
+
+    public void registerGauge(String name, Gauge gauge) {
+	_gauges.put(name, gauge);
+    }
+
+    /*
+     * names are in the order of the operators in the chain
+     */
+    public void setOperators(List<String> names) {
+	final int size = names.size();
+	_operatorNames = names.toArray(new String[size]);
+	_operatorNanos = new LatencyHistogram[size];
+	for (int i = 0; i < size; i++)
+	    _operatorNanos[i] = new LatencyHistogram(MAX_PROCESS_NANOS);
+	_operatorIn = new long[size];
+	_operatorOut = new long[size];
+    }
+}
@@ -34,8 +34,11 @@ import ch.epfl.data.squall.predicates.Predicate;
 import ch.epfl.data.squall.predicates.booleanPrimitive;
 import ch.epfl.data.squall.storage.indexes.BalancedBinaryTreeIndex;
 import ch.epfl.data.squall.storage.indexes.BplusTreeIndex;
+import ch.epfl.data.squall.storage.indexes.DoubleHashIndex;
 import ch.epfl.data.squall.storage.indexes.HashIndex;
 import ch.epfl.data.squall.storage.indexes.Index;
+import ch.epfl.data.squall.storage.indexes.IntHashIndex;
+import ch.epfl.data.squall.storage.indexes.LongHashIndex;
 
 public class PredicateCreateIndexesVisitor implements PredicateVisitor {
 
@@ -84,15 +87,16 @@ public class PredicateCreateIndexesVisitor implements PredicateVisitor {
 	_typeOfValueIndexed.add(comparison.getType());
 
 	if (comparison.getOperation() == ComparisonPredicate.EQUAL_OP) {
+	    // numeric keys are indexed unboxed
 	    if (comparison.getType() instanceof Integer) {
-		_firstRelationIndexes.add(new HashIndex<Integer>());
-		_secondRelationIndexes.add(new HashIndex<Integer>());
+		_firstRelationIndexes.add(new IntHashIndex());
+		_secondRelationIndexes.add(new IntHashIndex());
 	    } else if (comparison.getType() instanceof Double) {
-		_firstRelationIndexes.add(new HashIndex<Double>());
-		_secondRelationIndexes.add(new HashIndex<Double>());
+		_firstRelationIndexes.add(new DoubleHashIndex());
+		_secondRelationIndexes.add(new DoubleHashIndex());
 	    } else if (comparison.getType() instanceof Long) {
-		_firstRelationIndexes.add(new HashIndex<Long>());
-		_secondRelationIndexes.add(new HashIndex<Long>());
+		_firstRelationIndexes.add(new LongHashIndex());
+		_secondRelationIndexes.add(new LongHashIndex());
 	    } else if (comparison.getType() instanceof String) {
 		_firstRelationIndexes.add(new HashIndex<String>());
 		_secondRelationIndexes.add(new HashIndex<String>());
@@ -20,6 +20,7 @@
 package ch.epfl.data.squall.visitors;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import ch.epfl.data.squall.expressions.ValueExpression;
@@ -30,14 +31,46 @@ import ch.epfl.data.squall.predicates.LikePredicate;
 import ch.epfl.data.squall.predicates.OrPredicate;
 import ch.epfl.data.squall.predicates.Predicate;
 import ch.epfl.data.squall.predicates.booleanPrimitive;
+import ch.epfl.data.squall.types.DateType;
 
 public class PredicateUpdateIndexesVisitor implements PredicateVisitor {
 
+    /*
+     * The key to put in or probe an index of the type of the given initial
+     * value with: the evaluated value itself if it has that type, and its
+     * string parsed otherwise (e.g. an integer column in a double index)
+     */
+    public static Object toIndexKey(Object type, Object value) {
+	if (type.getClass() == value.getClass())
+	    return value;
+	final String str = toIndexString(value);
+	if (type instanceof String)
+	    return str;
+	else if (type instanceof Integer)
+	    return Integer.parseInt(str);
+	else if (type instanceof Long)
+	    return Long.parseLong(str);
+	else if (type instanceof Double)
+	    return Double.parseDouble(str);
+	else if (type instanceof Date)
+	    return DateType.parseDate(str);
+	else
+	    throw new RuntimeException("non supported type");
+    }
+
+    // dates go as yyyy-MM-dd, which DateType.parseDate reads by hand
+    private static String toIndexString(Object value) {
+	if (value instanceof Date)
+	    return DateType.formatEpochDay(DateType.toEpochDay((Date) value));
+	return value.toString();
+    }
+
     private final List<String> _tuple;
 
     private final boolean _comeFromFirstEmitter;
 
-    public ArrayList<String> _valuesToIndex;
+    // the evaluated values, e.g. a Date for a date column
+    public ArrayList<Object> _keysToIndex;
     public ArrayList<Object> _typesOfValuesToIndex;
 
     public PredicateUpdateIndexesVisitor(boolean comeFromFirstEmitter,
@@ -45,10 +78,21 @@ public class PredicateUpdateIndexesVisitor implements PredicateVisitor {
 	_comeFromFirstEmitter = comeFromFirstEmitter;
 	_tuple = tuple;
 
-	_valuesToIndex = new ArrayList<String>();
+	_keysToIndex = new ArrayList<Object>();
 	_typesOfValuesToIndex = new ArrayList<Object>();
     }
 
+    /*
+     * The values as strings, for the storages keyed by string
+     */
+    public ArrayList<String> getValuesToIndex() {
+	final ArrayList<String> values = new ArrayList<String>(
+		_keysToIndex.size());
+	for (final Object key : _keysToIndex)
+	    values.add(toIndexString(key));
+	return values;
+    }
+
     @Override
     public void visit(AndPredicate and) {
 	for (final Predicate pred : and.getInnerPredicates())
@@ -76,7 +120,7 @@ public class PredicateUpdateIndexesVisitor implements PredicateVisitor {
 	else
 	    val = (ValueExpression) comparison.getExpressions().get(1);
 
-	_valuesToIndex.add(val.eval(_tuple).toString());
+	_keysToIndex.add(val.eval(_tuple));
 	_typesOfValuesToIndex.add(val.getType().getInitialValue());
     }
 
@@ -67,30 +67,38 @@ public class WindowSemanticsManager {
     public static long joinPreProcessingIfSlidingWindowSemantics(
 	    StormBoltComponent sbc, StringBuilder oppositeTupleString,
 	    Tuple stormTuple) {
-	// TODO
+	long storedTimestamp = 0;
+	if (MyUtilities.isStoreTimestamp(sbc.getConf(),
+		sbc.getHierarchyPosition())) {
+	    // timestamp has to be removed
+	    final int delimiter = oppositeTupleString
+		    .indexOf(SystemParameters.STORE_TIMESTAMP_DELIMITER);
+	    if (delimiter < 0)
+		System.out.println("UNEXPECTED TIMESTAMP SIZES: 1");
+	    storedTimestamp = Long.parseLong(oppositeTupleString.substring(0,
+		    delimiter));
+	    oppositeTupleString.delete(0, delimiter + 1);
+	}
+	return joinPreProcessingIfSlidingWindowSemantics(sbc, storedTimestamp,
+		stormTuple);
+    }
+
+    /*
+     * Same as above, for a timestamp which is stored apart from the tuple (0
+     * if timestamps are not stored).
+     */
+    public static long joinPreProcessingIfSlidingWindowSemantics(
+	    StormBoltComponent sbc, long storedTimestamp, Tuple stormTuple) {
 	long lineageTimestamp = 0;
 	final long receivedTupleTimestamp;
-	long storedTimestamp = 0;
 	if (WindowSemanticsManager._IS_WINDOW_SEMANTICS
 		| MyUtilities.isCustomTimestampMode(sbc.getConf()))
 	    lineageTimestamp = stormTuple
 		    .getLongByField(StormComponent.TIMESTAMP);
 	receivedTupleTimestamp = lineageTimestamp;
-	if (MyUtilities.isStoreTimestamp(sbc.getConf(),
-		sbc.getHierarchyPosition())) {
-	    // timestamp has to be removed
-	    final String parts[] = oppositeTupleString.toString().split("\\@");
-	    if (parts.length < 2)
-		System.out.println("UNEXPECTED TIMESTAMP SIZES: "
-			+ parts.length);
-	    storedTimestamp = Long.valueOf(new String(parts[0]));
-	    oppositeTupleString.setLength(0);
-	    oppositeTupleString.append(parts[1]);
-	    // now we set the maximum TS to the tuple
-	    if (storedTimestamp > lineageTimestamp)
-		lineageTimestamp = storedTimestamp;
-	}
-	// TODO
+	// now we set the maximum TS to the tuple
+	if (storedTimestamp > lineageTimestamp)
+	    lineageTimestamp = storedTimestamp;
 
 	// Sliding Window Overrides sliding windows TumblingWindow semantics
 	// Check join condition for Window Joins (if not within boundaries,
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.codegen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.data.squall.expressions.Addition;
+import ch.epfl.data.squall.expressions.ColumnReference;
+import ch.epfl.data.squall.expressions.Division;
+import ch.epfl.data.squall.expressions.IntegerYearFromDate;
+import ch.epfl.data.squall.expressions.Multiplication;
+import ch.epfl.data.squall.expressions.Subtraction;
+import ch.epfl.data.squall.expressions.ValueExpression;
+import ch.epfl.data.squall.expressions.ValueSpecification;
+import ch.epfl.data.squall.types.DateType;
+import ch.epfl.data.squall.types.DoubleType;
+import ch.epfl.data.squall.types.IntegerType;
+import ch.epfl.data.squall.types.LongType;
+import ch.epfl.data.squall.types.StringType;
+
+/*
+ * Random numeric expressions, compiled by the ExpressionCompiler, against the
+ * interpreted expressions on random tuples of the schema below, some of them
+ * with null or unparseable fields. The generators are also used by
+ * PredicateCompilerTest.
+ */
+public class ExpressionCompilerTest {
+
+    // int, long, double, date, string, int
+    static final int INT_COLUMN = 0, LONG_COLUMN = 1, DOUBLE_COLUMN = 2,
+	    DATE_COLUMN = 3, STRING_COLUMN = 4, SECOND_INT_COLUMN = 5;
+
+    private static final String[] INTS = { "-3", "-1", "0", "1", "2", "7",
+	    "2147483647" };
+    private static final String[] LONGS = { "-2", "0", "1", "3",
+	    "10000000000", "-9007199254740993" };
+    private static final String[] DOUBLES = { "-1.5", "-0.0", "0.0", "1.0",
+	    "2.5", "3", "1e300", "NaN" };
+    private static final String[] DATES = { "1995-03-04", "1995-03-05",
+	    "1996-01-01", "1995-3-5", "1970-01-01" };
+    private static final String[] STRINGS = { "", "a", "ab", "b", "B", "é" };
+    private static final String[] BAD_FIELDS = { null, "", "x", "1.5",
+	    "1995-13-45" };
+
+    static ValueExpression column(int index) {
+	switch (index) {
+	case INT_COLUMN:
+	case SECOND_INT_COLUMN:
+	    return new ColumnReference<Integer>(new IntegerType(), index);
+	case LONG_COLUMN:
+	    return new ColumnReference<Long>(new LongType(), index);
+	case DOUBLE_COLUMN:
+	    return new ColumnReference<Double>(new DoubleType(), index);
+	case DATE_COLUMN:
+	    return new ColumnReference<Date>(new DateType(), index);
+	default:
+	    return new ColumnReference<String>(new StringType(), index);
+	}
+    }
+
+    /*
+     * An expression of the given kind, except for the arithmetic ones, which
+     * take the type MyUtilities.getDominantNumericType gives them (use kindOf)
+     */
+    static ValueExpression expression(Random random, int kind, int depth) {
+	final boolean isLeaf = depth == 0 || random.nextInt(3) == 0;
+	switch (kind) {
+	case ExpressionCompiler.INTEGER:
+	    if (isLeaf) {
+		final int leaf = random.nextInt(4);
+		if (leaf == 0)
+		    return column(INT_COLUMN);
+		else if (leaf == 1)
+		    return column(SECOND_INT_COLUMN);
+		else if (leaf == 2)
+		    return new ValueSpecification<Integer>(new IntegerType(),
+			    Integer.valueOf(pick(random, INTS)));
+		return new IntegerYearFromDate(expression(random,
+			ExpressionCompiler.DATE, 0));
+	    }
+	    return arithmetic(random, kind, depth);
+	case ExpressionCompiler.LONG:
+	    if (isLeaf)
+		return random.nextBoolean() ? column(LONG_COLUMN)
+			: new ValueSpecification<Long>(new LongType(),
+				Long.valueOf(pick(random, LONGS)));
+	    return arithmetic(random, kind, depth);
+	case ExpressionCompiler.DOUBLE:
+	    if (isLeaf)
+		return random.nextBoolean() ? column(DOUBLE_COLUMN)
+			: new ValueSpecification<Double>(new DoubleType(),
+				Double.valueOf(pick(random, DOUBLES)));
+	    return arithmetic(random, kind, depth);
+	case ExpressionCompiler.DATE:
+	    return random.nextBoolean() ? column(DATE_COLUMN)
+		    : new ValueSpecification<Date>(new DateType(),
+			    DateType.parseDate(pick(random, DATES)));
+	default:
+	    return random.nextBoolean() ? column(STRING_COLUMN)
+		    : new ValueSpecification<String>(new StringType(), pick(
+			    random, STRINGS));
+	}
+    }
+
+    // the first operand has the kind, the others are at most as wide
+    private static ValueExpression arithmetic(Random random, int kind,
+	    int depth) {
+	final ValueExpression first = expression(random, kind, depth - 1);
+	final ValueExpression[] others = new ValueExpression[random.nextInt(3)];
+	for (int i = 0; i < others.length; i++)
+	    others[i] = expression(random, random.nextInt(kind + 1), depth - 1);
+	final ValueExpression second = expression(random,
+		random.nextInt(kind + 1), depth - 1);
+	switch (random.nextInt(4)) {
+	case 0:
+	    return new Addition(first, second, others);
+	case 1:
+	    return new Subtraction(first, second, others);
+	case 2:
+	    return new Multiplication(first, second, others);
+	default:
+	    return new Division(first, second, others);
+	}
+    }
+
+    static String pick(Random random, String[] values) {
+	return values[random.nextInt(values.length)];
+    }
+
+    static List<String> tuple(Random random) {
+	final List<String> tuple = new ArrayList<String>(Arrays.asList(
+		pick(random, INTS), pick(random, LONGS), pick(random, DOUBLES),
+		pick(random, DATES), pick(random, STRINGS), pick(random, INTS)));
+	// a null or unparseable field
+	if (random.nextInt(8) == 0)
+	    tuple.set(random.nextInt(tuple.size()), pick(random, BAD_FIELDS));
+	return tuple;
+    }
+
+    /*
+     * The value as a String, or the class of the exception it throws
+     */
+    static String outcome(ValueExpression ve, List<String> tuple, boolean isLong) {
+	try {
+	    final Number value = (Number) ve.eval(tuple);
+	    return String.valueOf(isLong ? value.longValue() : value
+		    .doubleValue());
+	} catch (final RuntimeException e) {
+	    return e.getClass().getName();
+	}
+    }
+
+    static String outcome(CompiledExpression compiled, List<String> tuple,
+	    boolean isLong) {
+	try {
+	    return String.valueOf(isLong ? compiled.evalLong(tuple) : compiled
+		    .evalDouble(tuple));
+	} catch (final RuntimeException e) {
+	    return e.getClass().getName();
+	}
+    }
+
+    @Test
+    public void testColumns() {
+	final Random random = new Random(1);
+	for (int kind = ExpressionCompiler.INTEGER; kind <= ExpressionCompiler.DOUBLE; kind++) {
+	    final ValueExpression ve = column(kind);
+	    final CompiledExpression compiled = ExpressionCompiler.compile(ve);
+	    assertNotNull(ve.toString(), compiled);
+	    for (int i = 0; i < 200; i++)
+		check(ve, compiled, tuple(random));
+	}
+	// only the numeric expressions are compiled
+	assertEquals(null, ExpressionCompiler.compile(column(DATE_COLUMN)));
+	assertEquals(null, ExpressionCompiler.compile(column(STRING_COLUMN)));
+    }
+
+    private void check(ValueExpression ve, CompiledExpression compiled,
+	    List<String> tuple) {
+	assertEquals(ve + " on " + tuple, outcome(ve, tuple, false),
+		outcome(compiled, tuple, false));
+	assertEquals(ve + " on " + tuple, outcome(ve, tuple, true),
+		outcome(compiled, tuple, true));
+    }
+
+    @Test
+    public void testRandom() {
+	final Random random = new Random(42);
+	for (int i = 0; i < 500; i++) {
+	    final int kind = random.nextInt(ExpressionCompiler.DOUBLE + 1);
+	    final ValueExpression ve = expression(random, kind, 3);
+	    final CompiledExpression compiled = ExpressionCompiler.compile(ve);
+	    assertNotNull(ve.toString(), compiled);
+	    for (int j = 0; j < 40; j++)
+		check(ve, compiled, tuple(random));
+	}
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.codegen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.data.squall.expressions.ValueExpression;
+import ch.epfl.data.squall.expressions.ValueSpecification;
+import ch.epfl.data.squall.predicates.AndPredicate;
+import ch.epfl.data.squall.predicates.BetweenPredicate;
+import ch.epfl.data.squall.predicates.ComparisonPredicate;
+import ch.epfl.data.squall.predicates.LikePredicate;
+import ch.epfl.data.squall.predicates.OrPredicate;
+import ch.epfl.data.squall.predicates.Predicate;
+import ch.epfl.data.squall.predicates.booleanPrimitive;
+import ch.epfl.data.squall.types.IntegerType;
+import ch.epfl.data.squall.types.LongType;
+import ch.epfl.data.squall.types.StringType;
+
+/*
+ * Random predicates, compiled by the PredicateCompiler, against the
+ * interpreted predicates on the random tuples of ExpressionCompilerTest. The
+ * outcome of a test is its result or the class of the exception it throws:
+ * both evaluate the same leaves, in the same order.
+ */
+public class PredicateCompilerTest {
+
+    private static final String[] PATTERNS = { "%", "a%", "%b", "_", "" };
+
+    private static Predicate comparison(Random random, int depth) {
+	final int operation = random.nextInt(ComparisonPredicate.NONGREATER_OP + 1);
+	final int kind = random.nextInt(ExpressionCompiler.STRING + 1);
+	final ValueExpression first = ExpressionCompilerTest.expression(random,
+		kind, depth);
+	return new ComparisonPredicate(operation, first, other(random,
+		ExpressionCompiler.kindOf(first), depth));
+    }
+
+    // an expression which the interpreter can compare with one of kind
+    private static ValueExpression other(Random random, int kind, int depth) {
+	while (true) {
+	    final int otherKind = kind == ExpressionCompiler.LONG
+		    || kind == ExpressionCompiler.DOUBLE ? ExpressionCompiler.LONG
+		    + random.nextInt(2) : kind;
+	    final ValueExpression other = ExpressionCompilerTest.expression(
+		    random, otherKind, depth);
+	    final int actual = ExpressionCompiler.kindOf(other);
+	    if (actual == kind
+		    || (kind == ExpressionCompiler.LONG || kind == ExpressionCompiler.DOUBLE)
+		    && (actual == ExpressionCompiler.LONG || actual == ExpressionCompiler.DOUBLE))
+		return other;
+	}
+    }
+
+    private static Predicate leaf(Random random) {
+	switch (random.nextInt(6)) {
+	case 0:
+	    return new LikePredicate(
+		    ExpressionCompilerTest
+			    .column(ExpressionCompilerTest.STRING_COLUMN),
+		    new ValueSpecification<String>(new StringType(),
+			    ExpressionCompilerTest.pick(random, PATTERNS)),
+		    random.nextBoolean(), null);
+	case 1:
+	    return new booleanPrimitive(random.nextBoolean());
+	case 2:
+	    final int kind = random.nextInt(ExpressionCompiler.DATE + 1);
+	    final ValueExpression ve = ExpressionCompilerTest.expression(
+		    random, kind, 1);
+	    final int actual = ExpressionCompiler.kindOf(ve);
+	    return new BetweenPredicate(ve, random.nextBoolean(), other(
+		    random, actual, 0), random.nextBoolean(), other(random,
+		    actual, 0));
+	default:
+	    return comparison(random, random.nextInt(3));
+	}
+    }
+
+    private static Predicate predicate(Random random, int depth) {
+	if (depth == 0 || random.nextInt(3) == 0)
+	    return leaf(random);
+	final Predicate first = predicate(random, depth - 1);
+	final Predicate second = predicate(random, depth - 1);
+	final Predicate[] others = random.nextBoolean() ? new Predicate[0]
+		: new Predicate[] { predicate(random, depth - 1) };
+	return random.nextBoolean() ? new AndPredicate(first, second, others)
+		: new OrPredicate(first, second, others);
+    }
+
+    private static String outcome(Predicate pred, List<String> tuple) {
+	try {
+	    return String.valueOf(pred.test(tuple));
+	} catch (final RuntimeException e) {
+	    return e.getClass().getName();
+	}
+    }
+
+    private void check(Predicate pred, Random random, int numTuples) {
+	final Predicate compiled = PredicateCompiler.compile(pred);
+	for (int i = 0; i < numTuples; i++) {
+	    final List<String> tuple = ExpressionCompilerTest.tuple(random);
+	    assertEquals(pred + " on " + tuple, outcome(pred, tuple), outcome(
+		    compiled, tuple));
+	}
+    }
+
+    @Test
+    public void testColumnKinds() {
+	// each kind of column against each comparison
+	final Random random = new Random(7);
+	for (int column = 0; column <= ExpressionCompilerTest.SECOND_INT_COLUMN; column++)
+	    for (int operation = 0; operation <= ComparisonPredicate.NONGREATER_OP; operation++) {
+		final ValueExpression ve = ExpressionCompilerTest.column(column);
+		final Predicate pred = new ComparisonPredicate(operation, ve,
+			other(random, ExpressionCompiler.kindOf(ve), 0));
+		assertTrue(pred.toString(),
+			PredicateCompiler.compile(pred) instanceof CompiledPredicate);
+		check(pred, random, 200);
+	    }
+    }
+
+    @Test
+    public void testNotCompilable() {
+	// no compiled leaf: the interpreted predicate is kept
+	final Predicate like = new LikePredicate(
+		ExpressionCompilerTest.column(ExpressionCompilerTest.STRING_COLUMN),
+		new ValueSpecification<String>(new StringType(), "a%"), false,
+		null);
+	assertSame(like, PredicateCompiler.compile(like));
+	final Predicate or = new OrPredicate(like, new booleanPrimitive(true));
+	assertSame(or, PredicateCompiler.compile(or));
+    }
+
+    @Test
+    public void testRandom() {
+	final Random random = new Random(42);
+	int numCompiled = 0;
+	for (int i = 0; i < 1000; i++) {
+	    final Predicate pred = predicate(random, 3);
+	    if (PredicateCompiler.compile(pred) instanceof CompiledPredicate)
+		numCompiled++;
+	    check(pred, random, 30);
+	}
+	assertTrue(String.valueOf(numCompiled), numCompiled > 500);
+    }
+
+    @Test
+    public void testShortCircuits() {
+	// a bad field behind a deciding leaf is never parsed
+	final Predicate isOne = new ComparisonPredicate(
+		ComparisonPredicate.EQUAL_OP,
+		ExpressionCompilerTest.column(ExpressionCompilerTest.INT_COLUMN),
+		new ValueSpecification<Integer>(
+			new IntegerType(), 1));
+	final Predicate positiveLong = new ComparisonPredicate(
+		ComparisonPredicate.GREATER_OP,
+		ExpressionCompilerTest.column(ExpressionCompilerTest.LONG_COLUMN),
+		new ValueSpecification<Long>(
+			new LongType(), 0L));
+	final Predicate and = PredicateCompiler.compile(new AndPredicate(isOne,
+		positiveLong));
+	final Predicate or = PredicateCompiler.compile(new OrPredicate(isOne,
+		positiveLong));
+	final List<String> tuple = Arrays.asList("2", "x", "0.0",
+		"1995-03-05", "a", "0");
+	assertEquals(false, and.test(tuple));
+	assertEquals("java.lang.NumberFormatException", outcome(or, tuple));
+	tuple.set(0, "1");
+	assertEquals(true, or.test(tuple));
+	assertEquals("java.lang.NumberFormatException", outcome(and, tuple));
+    }
+}
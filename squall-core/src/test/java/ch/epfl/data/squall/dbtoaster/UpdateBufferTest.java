@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.dbtoaster;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * The compacted updates against a LinkedHashMap from the keys to their last
+ * update, which keeps the keys in the order of their first update
+ */
+public class UpdateBufferTest {
+
+    @Test
+    public void testCompact() {
+	final Random random = new Random(42);
+	final UpdateBuffer buffer = new UpdateBuffer();
+	// the same buffer, and its table, for batches of all sizes
+	for (int batch = 0; batch < 200; batch++) {
+	    final Map<List<Object>, Object[]> expected = new LinkedHashMap<List<Object>, Object[]>();
+	    final int size = random.nextInt(batch % 10 == 0 ? 2000 : 20);
+	    for (int i = 0; i < size; i++) {
+		// keys of one or two columns, some null, then the value
+		final Object first = random.nextInt(10) == 0 ? null : Long
+			.valueOf(random.nextInt(50));
+		final Object[] update = random.nextBoolean() ? new Object[] {
+			first, random.nextDouble() } : new Object[] { first,
+			"k" + random.nextInt(5), random.nextDouble() };
+		buffer.add(update);
+		final List<Object> key = Arrays.asList(update).subList(0,
+			update.length - 1);
+		if (expected.containsKey(key))
+		    expected.put(key, update);
+		else
+		    expected.put(new ArrayList<Object>(key), update);
+	    }
+	    buffer.compact();
+	    assertEquals(expected.size(), buffer.size());
+	    int i = 0;
+	    for (final Object[] update : expected.values())
+		assertArrayEquals(update, buffer.get(i++));
+	    buffer.clear();
+	}
+    }
+}
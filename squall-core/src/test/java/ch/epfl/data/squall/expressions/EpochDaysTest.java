@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.expressions;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.data.squall.types.DateType;
+
+/*
+ * The date arithmetic on epoch days against Calendar.add
+ */
+public class EpochDaysTest {
+
+    private static final int[] MONTHS = { -25, -12, -1, 1, 2, 11, 12, 13, 48 };
+
+    @Test
+    public void testDateDiff() {
+	final List<String> tuple = Arrays.asList("1995-03-05", "1996-03-05");
+	final DateDiff diff = new DateDiff(new ColumnReference<Date>(
+		new DateType(), 0), new ColumnReference<Date>(new DateType(),
+		1));
+	assertEquals(Integer.valueOf(366), diff.eval(tuple));
+    }
+
+    @Test
+    public void testPlusMonths() {
+	final Calendar calendar = Calendar.getInstance();
+	calendar.clear();
+	calendar.set(1990, Calendar.JANUARY, 1);
+	while (calendar.get(Calendar.YEAR) < 2010) {
+	    final int epochDay = DateType.toEpochDay(calendar.getTime());
+	    for (final int months : MONTHS) {
+		final Calendar expected = (Calendar) calendar.clone();
+		expected.add(Calendar.MONTH, months);
+		assertEquals(DateType.formatEpochDay(epochDay) + " + " + months,
+			DateType.toEpochDay(expected.getTime()),
+			EpochDays.plusMonths(epochDay, months));
+	    }
+	    calendar.add(Calendar.DAY_OF_MONTH, 1);
+	}
+    }
+
+    @Test
+    public void testYear() {
+	final List<String> tuple = Arrays.asList("1999-12-31", "2000-01-01");
+	assertEquals(Integer.valueOf(1999), new IntegerYearFromDate(
+		new ColumnReference<Date>(new DateType(), 0)).eval(tuple));
+	assertEquals(Integer.valueOf(2000), new IntegerYearFromDate(
+		new ColumnReference<Date>(new DateType(), 1)).eval(tuple));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.predicates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import ch.epfl.data.squall.expressions.ColumnReference;
+import ch.epfl.data.squall.expressions.ValueSpecification;
+import ch.epfl.data.squall.types.StringType;
+
+/*
+ * LIKE patterns against String.matches on the equivalent regular expression
+ */
+public class LikeMatcherTest {
+
+    private static final String[][] TABLE = {
+	    // pattern, then the values to match
+	    { "", "", "a", "%" },
+	    { "%", "", "a", "abc", "%" },
+	    { "%%", "", "a" },
+	    { "_", "", "a", "ab", "_" },
+	    { "_%_", "", "a", "ab", "abc" },
+	    { "%_%", "", "a", "ab" },
+	    { "abc", "abc", "abcd", "xabc", "ab" },
+	    { "ab%", "ab", "abc", "xab", "a" },
+	    { "%ab", "ab", "xab", "abx", "b" },
+	    { "%ab%", "ab", "xaby", "a b", "ba" },
+	    { "a_c", "abc", "ac", "abbc", "a_c" },
+	    { "%a_a%", "aa", "aba", "xabay", "abba" },
+	    // overlapping segments, where the leftmost match must be taken
+	    { "%aa%aa%", "aaa", "aaaa", "aabaa", "aaba" },
+	    { "%aba%bab%", "ababab", "abab", "abaxbab", "babaaba" },
+	    { "a%a%a", "aa", "aaa", "abaca", "aaab" },
+	    { "%ab%b", "abb", "ab", "abab", "xabyb", "bab" },
+	    { "a%%b", "ab", "axxb", "ba" },
+	    // '_' in the needles of the skip table
+	    { "%a__b%", "axxb", "axb", "xxaxxbxx", "axxxb" },
+	    { "%_b_%", "b", "abc", "bb", "xbx" },
+	    // the escape character is '!'
+	    { "100!%", "100%", "100", "1000" },
+	    { "%!%%", "%", "a%b", "ab" },
+	    { "!_%", "_", "_a", "a" },
+	    { "a!!b", "a!b", "a!!b", "ab" },
+	    { "%!_!%_", "_%x", "a_%xy", "_x" },
+	    // TPC-H Q9, Q13, Q16 and Q20
+	    { "%green%", "forest green lace", "green", "gree n", "Green" },
+	    { "%special%requests%", "special requests", "specialrequests",
+		    "requests special", "xx special yy requests zz" },
+	    { "MEDIUM POLISHED%", "MEDIUM POLISHED TIN", "MEDIUM POLISHED",
+		    "MEDIUM BRUSHED TIN" },
+	    { "%Customer%Complaints%", "Customer Complaints",
+		    "xCustomer yComplaints z", "Complaints Customer" },
+	    { "forest%", "forest green", "forest", "green forest" } };
+
+    private static final char ESCAPE = '!';
+
+    private static boolean expected(String pattern, String value) {
+	final StringBuilder regex = new StringBuilder();
+	for (int i = 0; i < pattern.length(); i++) {
+	    final char c = pattern.charAt(i);
+	    if (c == ESCAPE)
+		regex.append(Pattern.quote(String.valueOf(pattern
+			.charAt(++i))));
+	    else if (c == '%')
+		regex.append(".*");
+	    else if (c == '_')
+		regex.append('.');
+	    else
+		regex.append(Pattern.quote(String.valueOf(c)));
+	}
+	return Pattern.compile(regex.toString(), Pattern.DOTALL).matcher(value)
+		.matches();
+    }
+
+    private static String random(Random random, String alphabet, int length) {
+	final StringBuilder sb = new StringBuilder();
+	for (int i = 0; i < length; i++)
+	    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+	return sb.toString();
+    }
+
+    @Test
+    public void testNotLike() {
+	final LikePredicate notLike = new LikePredicate(
+		new ColumnReference<String>(new StringType(), 0),
+		new ValueSpecification<String>(new StringType(),
+			"%special%requests%"), true, null);
+	assertFalse(notLike.test(Arrays.asList("special requests")));
+	assertFalse(notLike.test(Arrays.asList("special customer requests")));
+	assertTrue(notLike.test(Arrays.asList("a special request")));
+	assertTrue(notLike.test(Arrays.asList("no requests")));
+    }
+
+    @Test
+    public void testPatternColumn() {
+	// the pattern is only known per tuple
+	final LikePredicate like = new LikePredicate(
+		new ColumnReference<String>(new StringType(), 0),
+		new ColumnReference<String>(new StringType(), 1), false,
+		ESCAPE);
+	for (final String[] row : TABLE)
+	    for (int i = 1; i < row.length; i++) {
+		final List<String> tuple = Arrays.asList(row[i], row[0]);
+		assertEquals(row[0] + " / " + row[i],
+			expected(row[0], row[i]), like.test(tuple));
+	    }
+    }
+
+    @Test
+    public void testRandom() {
+	final Random random = new Random(42);
+	for (int i = 0; i < 2000; i++) {
+	    final String pattern = random(random, "ab%_", random.nextInt(7));
+	    final LikeMatcher matcher = LikeMatcher.compile(pattern, null);
+	    for (int j = 0; j < 20; j++) {
+		final String value = random(random, "ab", random.nextInt(9));
+		assertEquals(pattern + " / " + value, expected(pattern, value),
+			matcher.matches(value));
+	    }
+	}
+    }
+
+    @Test
+    public void testTable() {
+	for (final String[] row : TABLE) {
+	    final LikeMatcher matcher = LikeMatcher.compile(row[0], ESCAPE);
+	    for (int i = 1; i < row.length; i++)
+		assertEquals(row[0] + " / " + row[i], expected(row[0], row[i]),
+			matcher.matches(row[i]));
+	}
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testTrailingEscape() {
+	LikeMatcher.compile("abc!", ESCAPE);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.data.squall.types.DateType;
+import ch.epfl.data.squall.utilities.BinaryTupleFormat;
+
+/*
+ * The tuples of an OffHeapTupleStorage with small slabs, through random
+ * inserts and removals which free and compact the slabs, against a heap map
+ */
+public class OffHeapTupleStorageTest {
+
+    private static List<String> tuple(Random random, int id) {
+	final StringBuilder comment = new StringBuilder();
+	for (int i = random.nextInt(30); i > 0; i--)
+	    comment.append((char) ('a' + random.nextInt(26)));
+	return Arrays.asList(String.valueOf(id), "1995-03-0"
+		+ (1 + random.nextInt(9)), String.valueOf(random.nextDouble()),
+		comment.toString());
+    }
+
+    @Test
+    public void testCompaction() {
+	final OffHeapTupleStorage storage = new OffHeapTupleStorage(256);
+	final Map<Integer, List<String>> expected = new HashMap<Integer, List<String>>();
+	final Random random = new Random(42);
+	for (int round = 0; round < 2000; round++) {
+	    final List<String> tuple = tuple(random, round);
+	    expected.put(storage.insert(tuple), tuple);
+	    // most tuples die young, some live long
+	    if (round >= 10 && random.nextInt(4) != 0) {
+		final int victim = round - 1 - random.nextInt(10);
+		storage.remove(victim, victim);
+		expected.remove(victim);
+	    }
+	    if (round % 100 == 0)
+		check(storage, expected);
+	}
+	check(storage, expected);
+	final BinaryTupleView view = new BinaryTupleView();
+	for (int id = 0; id < 2000; id++)
+	    if (!expected.containsKey(id)) {
+		assertNull(storage.getTuple(id));
+		assertNull(storage.getView(id, view));
+	    }
+    }
+
+    private void check(OffHeapTupleStorage storage,
+	    Map<Integer, List<String>> expected) {
+	assertEquals(expected.size(), storage.size());
+	long bytes = 0;
+	for (final Map.Entry<Integer, List<String>> entry : expected
+		.entrySet()) {
+	    assertEquals(entry.getValue(), storage.getTuple(entry.getKey()));
+	    assertEquals(entry.getValue(), storage.getTupleView(entry.getKey()));
+	    bytes += BinaryTupleFormat.encode(entry.getValue()).length + 8;
+	}
+	assertEquals(bytes, storage.getSizeBytes());
+    }
+
+    @Test
+    public void testView() {
+	final OffHeapTupleStorage storage = new OffHeapTupleStorage(1024);
+	final int id = storage.insert(Arrays.asList("7", "1995-03-05", "2.5",
+		"text", null));
+	final BinaryTupleView view = storage.getView(id, new BinaryTupleView());
+	assertEquals(5, view.size());
+	assertEquals(7L, view.getLong(0));
+	assertEquals(7.0, view.getDouble(0), 0);
+	assertEquals(BinaryTupleFormat.TAG_DATE, view.getTag(1));
+	assertEquals(DateType.parseEpochDay("1995-03-05"), view.getLong(1));
+	assertEquals(view.getLong(1), view.getDouble(1), 0);
+	assertEquals("1995-03-05", view.get(1));
+	assertEquals(2.5, view.getDouble(2), 0);
+	assertEquals("text", view.get(3));
+	assertNull(view.get(4));
+	assertEquals(Arrays.asList("7", "1995-03-05", "2.5", "text", null),
+		view.toTuple());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storm_components.hyper_cube;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.data.squall.expressions.ColumnReference;
+import ch.epfl.data.squall.predicates.AndPredicate;
+import ch.epfl.data.squall.predicates.ComparisonPredicate;
+import ch.epfl.data.squall.predicates.OrPredicate;
+import ch.epfl.data.squall.predicates.Predicate;
+import ch.epfl.data.squall.types.IntegerType;
+import ch.epfl.data.squall.utilities.MyUtilities;
+
+/*
+ * The incremental 3-way joins of R(a, b), S(c, d) and T(e, f), with the
+ * tuples arriving in a random order, against the nested loops over the
+ * final relations: each output tuple is produced once, by its last tuple.
+ * The joins run on the heap and on the off-heap storages.
+ */
+public class MultiwayJoinTest {
+
+    private static final IntegerType INT = new IntegerType();
+
+    private static ColumnReference<Integer> column(int index) {
+	return new ColumnReference<Integer>(INT, index);
+    }
+
+    private static Predicate compare(int op, int first, int second) {
+	return new ComparisonPredicate<Integer>(op, column(first),
+		column(second));
+    }
+
+    private static void check(Predicate[][] predicates, long seed) {
+	check(predicates, seed, new HashMap<String, String>());
+	final Map<String, String> offHeap = new HashMap<String, String>();
+	offHeap.put("DIP_TUPLE_STORAGE", "OFF_HEAP");
+	offHeap.put("DIP_OFF_HEAP_SLAB_MB", "1");
+	check(predicates, seed, offHeap);
+    }
+
+    private static void check(Predicate[][] predicates, long seed,
+	    Map<String, String> conf) {
+	final Random random = new Random(seed);
+	final List<int[]> arrivals = new ArrayList<int[]>();
+	final List<List<String>>[] tuples = new List[3];
+	for (int r = 0; r < 3; r++) {
+	    tuples[r] = new ArrayList<List<String>>();
+	    for (int i = 0; i < 40; i++) {
+		tuples[r].add(Arrays.asList(String.valueOf(random.nextInt(10)),
+			String.valueOf(random.nextInt(10))));
+		arrivals.add(new int[] { r, i });
+	    }
+	}
+	Collections.shuffle(arrivals, random);
+
+	final MultiwayJoin join = new MultiwayJoin(predicates, conf);
+	final List<String> actual = new ArrayList<String>();
+	for (final int[] arrival : arrivals) {
+	    final List<String> tuple = tuples[arrival[0]].get(arrival[1]);
+	    join.insert(arrival[0], tuple, 0, false);
+	    for (final List<String> output : join.join(arrival[0], tuple))
+		actual.add(output.toString());
+	}
+
+	final List<String> expected = new ArrayList<String>();
+	for (final List<String> r : tuples[0])
+	    for (final List<String> s : tuples[1])
+		for (final List<String> t : tuples[2]) {
+		    final List<List<String>> bound = Arrays.asList(r, s, t);
+		    boolean isMatch = true;
+		    for (int first = 0; first < 3; first++)
+			for (int second = first + 1; second < 3; second++)
+			    if (predicates[first][second] != null)
+				isMatch &= predicates[first][second].test(
+					bound.get(first), bound.get(second));
+		    if (isMatch)
+			expected.add(MyUtilities.createOutputTuple(bound)
+				.toString());
+		}
+	Collections.sort(expected);
+	Collections.sort(actual);
+	assertTrue(expected.size() > 0);
+	assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testChain() {
+	// R.a < S.c and S.d <= T.e, with no predicate between R and T
+	final Predicate[][] predicates = new Predicate[3][3];
+	predicates[0][1] = compare(ComparisonPredicate.LESS_OP, 0, 0);
+	predicates[1][2] = compare(ComparisonPredicate.NONGREATER_OP, 1, 0);
+	check(predicates, 42);
+    }
+
+    @Test
+    public void testNonIndexed() {
+	// R.b > S.d, S.c = T.e and S.d >= T.f, R.a = T.e or R.b < T.f
+	final Predicate[][] predicates = new Predicate[3][3];
+	predicates[0][1] = compare(ComparisonPredicate.GREATER_OP, 1, 1);
+	predicates[1][2] = new AndPredicate(compare(
+		ComparisonPredicate.EQUAL_OP, 0, 0), compare(
+		ComparisonPredicate.NONLESS_OP, 1, 1));
+	predicates[0][2] = new OrPredicate(compare(
+		ComparisonPredicate.EQUAL_OP, 0, 0), compare(
+		ComparisonPredicate.LESS_OP, 1, 1));
+	check(predicates, 7);
+    }
+
+    @Test
+    public void testTriangle() {
+	// R.a <= S.c, S.d > T.e and T.f between R.a and R.b
+	final Predicate[][] predicates = new Predicate[3][3];
+	predicates[0][1] = compare(ComparisonPredicate.NONGREATER_OP, 0, 0);
+	predicates[1][2] = compare(ComparisonPredicate.GREATER_OP, 1, 0);
+	predicates[0][2] = new AndPredicate(compare(
+		ComparisonPredicate.NONGREATER_OP, 0, 1), compare(
+		ComparisonPredicate.NONLESS_OP, 1, 1));
+	check(predicates, 1);
+    }
+}
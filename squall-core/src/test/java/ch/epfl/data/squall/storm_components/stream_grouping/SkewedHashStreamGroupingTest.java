@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storm_components.stream_grouping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.data.squall.utilities.MyUtilities;
+
+/*
+ * A skewed stream through the split parent of a SkewedHashStreamGrouping
+ * over 8 tasks, with a split factor of 4
+ */
+public class SkewedHashStreamGroupingTest {
+
+    private static final int TASKS = 8;
+    private static final int SPLIT_FACTOR = 4;
+    // task ids are not target indexes
+    private static final int FIRST_TASK = 100;
+
+    private static SkewedHashStreamGrouping grouping(boolean isSplit) {
+	final SkewedHashStreamGrouping grouping = new SkewedHashStreamGrouping(
+		new HashMap<String, String>(), SPLIT_FACTOR, isSplit);
+	final List<Integer> tasks = new ArrayList<Integer>();
+	for (int i = 0; i < TASKS; i++)
+	    tasks.add(FIRST_TASK + i);
+	grouping.prepare(null, null, tasks);
+	return grouping;
+    }
+
+    private static List<Integer> route(SkewedHashStreamGrouping grouping,
+	    String key) {
+	final List<Object> stormTuple = Arrays.<Object> asList("0",
+		Arrays.asList(key, "payload"), key);
+	return grouping.chooseTasks(0, stormTuple);
+    }
+
+    // the task the key is hashed to
+    private static int hashTask(String key) {
+	return FIRST_TASK + MyUtilities.chooseHashTargetIndex(key, TASKS);
+    }
+
+    @Test
+    public void testSkewedStream() {
+	final SkewedHashStreamGrouping split = grouping(true);
+	final SkewedHashStreamGrouping replicated = grouping(false);
+	final Random random = new Random(42);
+	final Map<Integer, Integer> hotTasks = new HashMap<Integer, Integer>();
+	int hotTuples = 0;
+	for (int i = 0; i < 100000; i++) {
+	    // half of the tuples have the same key
+	    final boolean isHot = random.nextBoolean();
+	    final String key = isHot ? "hot" : "cold" + random.nextInt(10000);
+	    final List<Integer> targets = route(split, key);
+	    assertEquals(1, targets.size());
+	    final int task = targets.get(0);
+	    // every pair of tuples meets: the split target is in the group
+	    // the replicated parent sends the key to
+	    assertTrue(key, route(replicated, key).contains(task));
+	    if (isHot) {
+		hotTuples++;
+		final Integer count = hotTasks.get(task);
+		hotTasks.put(task, count == null ? 1 : count + 1);
+	    } else
+		// cold keys keep the deterministic hash routing
+		assertEquals(key, hashTask(key), task);
+	}
+	// the hot key is split evenly over its whole group
+	assertEquals(SPLIT_FACTOR, hotTasks.size());
+	for (final int count : hotTasks.values())
+	    assertTrue(hotTasks.toString(), count > hotTuples / SPLIT_FACTOR
+		    * 0.9);
+    }
+
+    @Test
+    public void testReplicatedGroup() {
+	final SkewedHashStreamGrouping replicated = grouping(false);
+	for (int i = 0; i < 100; i++) {
+	    final String key = "key" + i;
+	    final List<Integer> group = route(replicated, key);
+	    assertEquals(SPLIT_FACTOR, group.size());
+	    final int first = hashTask(key) - FIRST_TASK;
+	    for (int j = 0; j < SPLIT_FACTOR; j++)
+		assertEquals(FIRST_TASK + (first + j) % TASKS,
+			(int) group.get(j));
+	}
+    }
+}
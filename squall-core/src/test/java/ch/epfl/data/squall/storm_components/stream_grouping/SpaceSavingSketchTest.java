@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.storm_components.stream_grouping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * The Space-Saving guarantees on a skewed stream: after each update, the
+ * estimated count of the key is at least its frequency and at most its
+ * frequency plus seen / capacity. A key more frequent than seen / capacity
+ * is thus never estimated from the minimum counter, i.e. it stays tracked.
+ */
+public class SpaceSavingSketchTest {
+
+    private static final int CAPACITY = 64;
+
+    // a Zipf-like stream: key i has a weight of 1 / (i + 1)
+    private static String[] zipf(int numKeys, int length, long seed) {
+	final double[] cumulative = new double[numKeys];
+	double total = 0;
+	for (int i = 0; i < numKeys; i++) {
+	    total += 1.0 / (i + 1);
+	    cumulative[i] = total;
+	}
+	final Random random = new Random(seed);
+	final String[] stream = new String[length];
+	for (int j = 0; j < length; j++) {
+	    final double point = random.nextDouble() * total;
+	    int key = 0;
+	    while (cumulative[key] < point)
+		key++;
+	    stream[j] = "key" + key;
+	}
+	return stream;
+    }
+
+    @Test
+    public void testErrorBound() {
+	final SpaceSavingSketch sketch = new SpaceSavingSketch(CAPACITY);
+	final Map<String, Long> frequencies = new HashMap<String, Long>();
+	for (final String key : zipf(10000, 200000, 42)) {
+	    final Long previous = frequencies.get(key);
+	    final long frequency = previous == null ? 1 : previous + 1;
+	    frequencies.put(key, frequency);
+	    final long estimate = sketch.add(key);
+	    assertTrue(key + " estimated " + estimate + " < " + frequency,
+		    estimate >= frequency);
+	    assertTrue(key + " estimated " + estimate + " > " + frequency
+		    + " + " + sketch.getSeen() + " / " + CAPACITY, estimate
+		    * CAPACITY <= frequency * CAPACITY + sketch.getSeen());
+	}
+	assertEquals(200000, sketch.getSeen());
+    }
+
+    @Test
+    public void testHeavyHitters() {
+	final SpaceSavingSketch sketch = new SpaceSavingSketch(CAPACITY);
+	final Random random = new Random(7);
+	// 30% and 10% of the stream on two keys, the rest on 100000 keys
+	long hot = 0, warm = 0;
+	for (int i = 0; i < 100000; i++) {
+	    final int draw = random.nextInt(10);
+	    if (draw < 3) {
+		hot++;
+		assertEquals(hot, sketch.add("hot"), sketch.getSeen()
+			/ CAPACITY);
+	    } else if (draw == 3) {
+		warm++;
+		assertEquals(warm, sketch.add("warm"), sketch.getSeen()
+			/ CAPACITY);
+	    } else
+		sketch.add("cold" + random.nextInt(100000));
+	}
+	// the cold keys keep replacing each other in the minimum counter
+	assertTrue(sketch.add("hot") > sketch.add("cold-1") * 10);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.thetajoin.adaptive.advisor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/*
+ * Decisions of the CostBasedAdvisor of 16 joiners, starting from 4x4, after
+ * one sampling period of the arrival rates
+ */
+public class CostBasedAdvisorTest {
+
+    private static final int REDUCERS = 16;
+
+    private static Map<String, String> conf() {
+	final Map<String, String> conf = new HashMap<String, String>();
+	conf.put("DIP_FIRST_MIGRATION", "100");
+	return conf;
+    }
+
+    private static Maybe<Action> advise(CostBasedAdvisor advisor,
+	    long rowTuples, long columnTuples) throws InterruptedException {
+	// the first call only starts sampling the rates
+	assertTrue(advisor.advise().isNone());
+	Thread.sleep(1100);
+	advisor.updateTuples(rowTuples, columnTuples);
+	return advisor.advise();
+    }
+
+    @Test
+    public void testBalancedStays() throws InterruptedException {
+	final CostBasedAdvisor advisor = new CostBasedAdvisor(REDUCERS, 4, 4,
+		conf());
+	assertTrue(advise(advisor, 100000, 100000).isNone());
+	assertEquals(0L, advisor.getMetrics().get("rejections"));
+    }
+
+    @Test
+    public void testCostlyMigrationRejected() throws InterruptedException {
+	// the savings over a 10ms horizon do not pay for the moved tuples
+	final Map<String, String> conf = conf();
+	conf.put("DIP_ADVISOR_HORIZON_MILLIS", "10");
+	final CostBasedAdvisor advisor = new CostBasedAdvisor(REDUCERS, 4, 4,
+		conf);
+	assertTrue(advise(advisor, 200000, 2000).isNone());
+	assertEquals(1L, advisor.getMetrics().get("rejections"));
+    }
+
+    @Test
+    public void testSkewedColumns() throws InterruptedException {
+	final CostBasedAdvisor advisor = new CostBasedAdvisor(REDUCERS, 4, 4,
+		conf());
+	final Maybe<Action> action = advise(advisor, 2000, 200000);
+	assertFalse(action.isNone());
+	assertEquals(1, action.get().getNewRows());
+	assertEquals(16, action.get().getNewColumns());
+    }
+
+    @Test
+    public void testSkewedRows() throws InterruptedException {
+	final CostBasedAdvisor advisor = new CostBasedAdvisor(REDUCERS, 4, 4,
+		conf());
+	final Maybe<Action> action = advise(advisor, 200000, 2000);
+	assertFalse(action.isNone());
+	assertEquals(16, action.get().getNewRows());
+	assertEquals(1, action.get().getNewColumns());
+	// a migration is in progress: no other decision until it ends
+	advisor.updateMapping(action.get());
+	advisor.updateTuples(200000, 2000);
+	assertTrue(advisor.advise().isNone());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.thetajoin.matrix_assignment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.data.squall.thetajoin.matrix_assignment.HyperCubeAssignment.Dimension;
+
+/**
+ * The shares chosen by branch and bound against an exhaustive search of all
+ * the assignments which fit in the reducers.
+ */
+public class CubeNAssignmentCostBasedTest {
+
+	private static final double EPSILON = 1e-9;
+
+	/*
+	 * The minimal load, and the fewest reducers reaching it, over all rd with
+	 * 1 <= rd[i] <= max(1, sizes[i]) and a product of at most r
+	 */
+	private static double[] exhaustive(long[] sizes, double[] costs, int r) {
+		final double[] best = { Double.MAX_VALUE, Double.MAX_VALUE };
+		exhaustive(sizes, costs, 0, r, 0, 1, best);
+		return best;
+	}
+
+	private static void exhaustive(long[] sizes, double[] costs, int dim, int budget, double load, int product,
+			double[] best) {
+		if (dim == sizes.length) {
+			if (load < best[0] - EPSILON || (load < best[0] + EPSILON && product < best[1])) {
+				best[0] = load;
+				best[1] = product;
+			}
+			return;
+		}
+		final long maxRd = Math.max(1, sizes[dim]);
+		for (int rd = 1; rd <= budget && rd <= maxRd; rd++)
+			exhaustive(sizes, costs, dim + 1, budget / rd, load + weight(sizes, costs, dim) / rd, product * rd, best);
+	}
+
+	private static double load(long[] sizes, double[] costs, CubeNAssignmentCostBased<?> assignment) {
+		double load = 0;
+		for (int i = 0; i < sizes.length; i++)
+			load += weight(sizes, costs, i) / assignment.getNumberOfRegions(Dimension.d(i));
+		return load;
+	}
+
+	private static double weight(long[] sizes, double[] costs, int i) {
+		return (costs == null ? 1 : costs[i]) * Math.max(1, sizes[i]);
+	}
+
+	private void check(long[] sizes, double[] costs, int r) {
+		final CubeNAssignmentCostBased<Integer> assignment = new CubeNAssignmentCostBased<Integer>(sizes, costs, r,
+				42);
+		final String message = Arrays.toString(sizes) + " " + Arrays.toString(costs) + " r=" + r + ": "
+				+ assignment.getMappingDimensions();
+		final double[] expected = exhaustive(sizes, costs, r);
+		final double load = load(sizes, costs, assignment);
+		assertTrue(message, assignment.getNumberOfRegions() <= r);
+		assertEquals(message, expected[0], load, EPSILON * expected[0]);
+		assertEquals(message, (int) expected[1], assignment.getNumberOfRegions());
+	}
+
+	@Test
+	public void testEqualSizes() {
+		check(new long[] { 1000, 1000 }, null, 16);
+		check(new long[] { 1000, 1000, 1000 }, null, 27);
+		check(new long[] { 1000, 1000, 1000 }, null, 30);
+	}
+
+	@Test
+	public void testRandom() {
+		final Random random = new Random(7);
+		for (int test = 0; test < 300; test++) {
+			final int k = 2 + random.nextInt(3);
+			final long[] sizes = new long[k];
+			final double[] costs = test % 2 == 0 ? null : new double[k];
+			for (int i = 0; i < k; i++) {
+				// some relations are smaller than the number of reducers
+				sizes[i] = random.nextInt(4) == 0 ? random.nextInt(5) : 1 + random.nextInt(100000);
+				if (costs != null)
+					costs[i] = 1 + random.nextInt(100);
+			}
+			check(sizes, costs, 1 + random.nextInt(200));
+		}
+	}
+
+	@Test
+	public void testRegions() {
+		final CubeNAssignmentCostBased<Integer> assignment = new CubeNAssignmentCostBased<Integer>(
+				new long[] { 10000, 100, 1000 }, 64, 42);
+		for (int i = 0; i < 3; i++) {
+			final List<Integer> regions = assignment.getRegionIDs(Dimension.d(i));
+			assertEquals(assignment.getNumberOfRegions() / assignment.getNumberOfRegions(Dimension.d(i)),
+					regions.size());
+			for (final int region : regions)
+				assertTrue(region >= 0 && region < assignment.getNumberOfRegions());
+		}
+	}
+
+	@Test
+	public void testSkewed() {
+		check(new long[] { 1000000, 10, 10 }, null, 64);
+		check(new long[] { 1000000, 1000, 1 }, null, 100);
+		check(new long[] { 100, 100 }, new double[] { 1, 50 }, 48);
+	}
+}
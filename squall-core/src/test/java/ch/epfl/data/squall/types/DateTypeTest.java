@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.types;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.junit.Test;
+
+/*
+ * The epoch days of DateType against SimpleDateFormat and Calendar, in the
+ * default time zone, for every day from 1900 to 2100
+ */
+public class DateTypeTest {
+
+    private static final SimpleDateFormat FORMAT = new SimpleDateFormat(
+	    "yyyy-MM-dd");
+
+    private static Calendar firstDay() {
+	final Calendar calendar = Calendar.getInstance();
+	calendar.clear();
+	calendar.set(1900, Calendar.JANUARY, 1);
+	return calendar;
+    }
+
+    @Test
+    public void testFormat() {
+	final Calendar calendar = firstDay();
+	int epochDay = DateType.epochDay(1900, 1, 1);
+	while (calendar.get(Calendar.YEAR) <= 2100) {
+	    final Date date = calendar.getTime();
+	    assertEquals(FORMAT.format(date),
+		    DateType.formatEpochDay(epochDay));
+	    assertEquals(epochDay, DateType.toEpochDay(date));
+	    assertEquals(calendar.get(Calendar.YEAR),
+		    DateType.yearOfEpochDay(epochDay));
+	    calendar.add(Calendar.DAY_OF_MONTH, 1);
+	    epochDay++;
+	}
+    }
+
+    @Test
+    public void testInvalidCanonical() {
+	final String[] invalid = { "2015-02-29", "2015-02-30", "1900-02-29",
+		"2015-13-01", "2015-00-10", "2015-04-31", "2015-01-00",
+		"15-01-01", "2015/01/01", "2015-1-01", "2015-01-0a" };
+	for (final String str : invalid)
+	    assertEquals(str, Integer.MIN_VALUE,
+		    DateType.parseCanonicalEpochDay(str));
+    }
+
+    @Test
+    public void testLenientParse() throws ParseException {
+	assertEquals(DateType.parseEpochDay("1995-03-05"),
+		DateType.parseEpochDay("1995-3-5"));
+	assertEquals(FORMAT.parse("2015-03-02"),
+		DateType.parseDate("2015-02-30"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNotADate() {
+	DateType.parseEpochDay("not a date");
+    }
+
+    @Test
+    public void testParse() throws ParseException {
+	final Calendar calendar = firstDay();
+	while (calendar.get(Calendar.YEAR) <= 2100) {
+	    final String str = FORMAT.format(calendar.getTime());
+	    final Date expected = FORMAT.parse(str);
+	    assertEquals(str, DateType.toEpochDay(expected),
+		    DateType.parseCanonicalEpochDay(str));
+	    assertEquals(str, expected, DateType.parseDate(str));
+	    calendar.add(Calendar.DAY_OF_MONTH, 1);
+	}
+    }
+
+    @Test
+    public void testYyyymmdd() {
+	final DateType dateType = new DateType();
+	assertEquals(Integer.valueOf(20000229), dateType.addDays(20000228, 1));
+	assertEquals(Integer.valueOf(19990301), dateType.addDays(19990228, 1));
+	assertEquals(Integer.valueOf(20001231), dateType.addDays(20010101, -1));
+	assertEquals(DateType.parseDate("1998-12-01"),
+		dateType.fromLong(19981201L));
+	assertEquals(Integer.valueOf(19981201),
+		dateType.toInteger(DateType.parseDate("1998-12-01")));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/*
+ * Round trips of the Lists the operators emit through a Kryo decorated as
+ * Storm does when DIP_BINARY_TUPLES is set
+ */
+public class BinaryTupleSerializerTest {
+
+    private static final List<String> TUPLE = Arrays.asList("7", "007",
+	    "-12345678901", "1.50", "2.5", "1995-03-05", "1995-3-5", null, "",
+	    "text|with|delimiters", "é");
+
+    private static Kryo kryo() {
+	final Kryo kryo = new Kryo();
+	// Storm in local mode, without the fall back on Java serialization
+	kryo.setRegistrationRequired(true);
+	kryo.register(String.class);
+	kryo.register(Integer.class);
+	new BinaryTupleKryoDecorator().decorate(kryo);
+	return kryo;
+    }
+
+    private static Object roundTrip(Kryo kryo, Object value) {
+	final Output output = new Output(256, -1);
+	kryo.writeClassAndObject(output, value);
+	return kryo.readClassAndObject(new Input(output.toBytes()));
+    }
+
+    @Test
+    public void testEncodeStrings() {
+	final byte[] row = BinaryTupleFormat.encodeStrings(TUPLE);
+	assertEquals(TUPLE, BinaryTupleFormat.decode(row));
+	// no field is parsed on the way
+	for (int i = 0; i < TUPLE.size(); i++)
+	    assertEquals(TUPLE.get(i), BinaryTupleFormat.decodeField(row, i));
+    }
+
+    @Test
+    public void testGenericList() {
+	final List<Object> list = new ArrayList<Object>();
+	list.add("index");
+	list.add(42);
+	list.add(new ArrayList<String>(TUPLE));
+	assertEquals(list, roundTrip(kryo(), list));
+    }
+
+    @Test
+    public void testListClasses() {
+	final Kryo kryo = kryo();
+	final List<List<String>> lists = new ArrayList<List<String>>();
+	lists.add(new ArrayList<String>(TUPLE));
+	lists.add(new LinkedList<String>(TUPLE));
+	lists.add(TUPLE);
+	lists.add(new ArrayList<String>(TUPLE).subList(1, 4));
+	lists.add(Collections.unmodifiableList(new ArrayList<String>(TUPLE)));
+	lists.add(Collections.unmodifiableList(new LinkedList<String>(TUPLE)));
+	lists.add(Collections.<String> emptyList());
+	lists.add(Collections.singletonList("1"));
+	lists.add(scala.collection.JavaConversions
+		.seqAsJavaList(scala.collection.JavaConversions
+			.asScalaBuffer(new LinkedList<String>(TUPLE)).toList()));
+	for (final List<String> list : lists) {
+	    assertSame(BinaryTupleSerializer.class,
+		    kryo.getRegistration(list.getClass()).getSerializer()
+			    .getClass());
+	    assertEquals(list.getClass().getName(), list,
+		    roundTrip(kryo, list));
+	}
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2011-2015 EPFL DATA Laboratory
+ * Copyright (c) 2014-2015 The Squall Collaboration (see NOTICE)
+ *
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ch.epfl.data.squall.utilities;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/*
+ * The lines of all the sections of a file, read through small mapped windows,
+ * are the lines of the file, each exactly once
+ */
+public class MappedFileReaderTest {
+
+    // longer than any line of the file, but much shorter than the file
+    private static final int WINDOW_SIZE = 256;
+
+    private static File _file;
+    private static List<String> _lines = new ArrayList<String>();
+
+    @BeforeClass
+    public static void createFile() throws IOException {
+	_file = File.createTempFile("squall_mapped_", ".tbl");
+	final Random random = new Random(42);
+	final StringBuilder sb = new StringBuilder();
+	for (int i = 0; i < 500; i++) {
+	    final StringBuilder line = new StringBuilder();
+	    final int length = random.nextInt(40);
+	    for (int j = 0; j < length; j++)
+		line.append(random.nextInt(10) == 0 ? "é" : "|"
+			+ random.nextInt(100));
+	    _lines.add(line.toString());
+	    sb.append(line).append(i % 3 == 0 ? "\r\n" : "\n");
+	}
+	// the last line has no \n
+	_lines.add("last");
+	sb.append("last");
+	final FileOutputStream out = new FileOutputStream(_file);
+	out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+	out.close();
+    }
+
+    @AfterClass
+    public static void deleteFile() {
+	_file.delete();
+    }
+
+    private List<String> readAll(int parts, boolean prefetch)
+	    throws IOException {
+	final List<String> lines = new ArrayList<String>();
+	for (int section = 0; section < parts; section++) {
+	    final MappedFileReader reader = new MappedFileReader(_file,
+		    WINDOW_SIZE, section, parts, prefetch);
+	    String line;
+	    while ((line = reader.readLine()) != null)
+		lines.add(line);
+	    reader.close();
+	}
+	return lines;
+    }
+
+    @Test(expected = IOException.class)
+    public void testLongLinePrefetch() throws IOException {
+	final MappedFileReader reader = new MappedFileReader(_file, 16, 0, 1,
+		true);
+	try {
+	    while (reader.readLine() != null)
+		;
+	} finally {
+	    reader.close();
+	}
+    }
+
+    @Test
+    public void testPrefetch() throws IOException {
+	assertEquals(_lines, readAll(1, true));
+	assertEquals(_lines, readAll(3, true));
+    }
+
+    @Test
+    public void testSections() throws IOException {
+	for (int parts = 1; parts <= 16; parts++)
+	    assertEquals("parts=" + parts, _lines, readAll(parts, false));
+    }
+}
@@ -40,6 +40,7 @@ import ch.epfl.data.squall.operators.ChainOperator;
 import ch.epfl.data.squall.operators.Operator;
 import ch.epfl.data.squall.storm_components.StormComponent;
 import ch.epfl.data.squall.storm_components.StormEmitter;
+import ch.epfl.data.squall.utilities.ManualBatcher;
 import ch.epfl.data.squall.utilities.MyUtilities;
 import ch.epfl.data.squall.utilities.SystemParameters;
 
@@ -65,8 +66,8 @@ public abstract class StormSynchronizedSpoutComponent extends BaseSignalSpout
     // for ManualBatch(Queuing) mode
     private List<Integer> _targetTaskIds;
     private int _targetParallelism;
-    private StringBuilder[] _targetBuffers;
-    private long[] _targetTimestamps;
+    private ManualBatcher _batcher;
+    private ManualBatcher.Sender _batchSender;
 
     // for CustomTimestamp mode
     private double _totalLatencyMillis;
@@ -99,23 +100,11 @@ public abstract class StormSynchronizedSpoutComponent extends BaseSignalSpout
     private void addToManualBatch(List<String> tuple, long timestamp) {
 	final String tupleHash = MyUtilities.createHashString(tuple,
 		_hashIndexes, _hashExpressions, _conf);
-	final int dstIndex = MyUtilities.chooseHashTargetIndex(tupleHash,
-		_targetParallelism);
-
-	// we put in queueTuple based on tupleHash
-	// the same hash is used in BatchStreamGrouping for deciding where a
-	// particular targetBuffer is to be sent
-	final String tupleString = MyUtilities.tupleToString(tuple, _conf);
-
-	if (MyUtilities.isCustomTimestampMode(_conf))
-	    if (_targetBuffers[dstIndex].length() == 0)
-		// timestamp of the first tuple being added to a buffer is the
-		// timestamp of the buffer
-		_targetTimestamps[dstIndex] = timestamp;
-	_targetBuffers[dstIndex].append(tupleHash)
-		.append(SystemParameters.MANUAL_BATCH_HASH_DELIMITER)
-		.append(tupleString)
-		.append(SystemParameters.MANUAL_BATCH_TUPLE_DELIMITER);
+
+	// the batcher puts the tuple in a target buffer based on tupleHash,
+	// and the batch carries the target index to BatchStreamGrouping
+	if (_batcher.add(tupleHash, tuple, timestamp))
+	    manualBatchSend();
     }
 
     @Override
@@ -128,7 +117,7 @@ public abstract class StormSynchronizedSpoutComponent extends BaseSignalSpout
 	final List<String> outputFields = new ArrayList<String>();
 	if (MyUtilities.isManualBatchingMode(_conf)) {
 	    outputFields.add(StormComponent.COMP_INDEX);
-	    outputFields.add(StormComponent.TUPLE); // string
+	    outputFields.add(StormComponent.TUPLE); // binary batch
 	} else {
 	    outputFields.add(StormComponent.COMP_INDEX);
 	    outputFields.add(StormComponent.TUPLE); // list of string
@@ -203,18 +192,7 @@ public abstract class StormSynchronizedSpoutComponent extends BaseSignalSpout
     public abstract long getNumSentTuples();
 
     private void manualBatchSend() {
-	for (int i = 0; i < _targetParallelism; i++) {
-	    final String tupleString = _targetBuffers[i].toString();
-	    _targetBuffers[i] = new StringBuilder("");
-
-	    if (!tupleString.isEmpty())
-		// some buffers might be empty
-		if (MyUtilities.isCustomTimestampMode(_conf))
-		    _collector.emit(new Values(_componentIndex, tupleString,
-			    _targetTimestamps[i]));
-		else
-		    _collector.emit(new Values(_componentIndex, tupleString));
-	}
+	_batcher.flush(_batchSender);
     }
     
     @Override
@@ -231,10 +209,23 @@ public abstract class StormSynchronizedSpoutComponent extends BaseSignalSpout
 
 	_targetTaskIds = MyUtilities.findTargetTaskIds(tc);
 	_targetParallelism = _targetTaskIds.size();
-	_targetBuffers = new StringBuilder[_targetParallelism];
-	_targetTimestamps = new long[_targetParallelism];
-	for (int i = 0; i < _targetParallelism; i++)
-	    _targetBuffers[i] = new StringBuilder("");
+	if (MyUtilities.isManualBatchingMode(_conf)) {
+	    // a spout cannot emit from a timer thread, so the linger time is
+	    // checked whenever a tuple is added
+	    _batcher = new ManualBatcher(_targetParallelism,
+		    MyUtilities.getCompBatchSize(_ID, _conf),
+		    MyUtilities.getCompBatchLingerMillis(_ID, _conf));
+	    _batchSender = new ManualBatcher.Sender() {
+		@Override
+		public void send(byte[] batch, long timestamp) {
+		    if (MyUtilities.isCustomTimestampMode(_conf))
+			_collector.emit(new Values(_componentIndex, batch,
+				timestamp));
+		    else
+			_collector.emit(new Values(_componentIndex, batch));
+		}
+	    };
+	}
 
 	// equi-weight histogram
 	if (_isPartitioner) {
@@ -360,8 +351,6 @@ public abstract class StormSynchronizedSpoutComponent extends BaseSignalSpout
 	} else if (!isLastAck) {
 	    // appending tuple if it is not lastAck
 	    addToManualBatch(tuple, timestamp);
-	    if (getNumSentTuples() % MyUtilities.getCompBatchSize(_ID, _conf) == 0)
-		manualBatchSend();
 	} else {
 	    // has to be sent separately, because of the BatchStreamGrouping
 	    // logic
@@ -383,8 +372,6 @@ public abstract class StormSynchronizedSpoutComponent extends BaseSignalSpout
 	} else if (!isLastAck) {
 	    // appending tuple if it is not lastAck
 	    addToManualBatch(tuple, timestamp);
-	    if (getNumSentTuples() % MyUtilities.getCompBatchSize(_ID, _conf) == 0)
-		manualBatchSend();
 	} else {
 	    // has to be sent separately, because of the BatchStreamGrouping
 	    // logic